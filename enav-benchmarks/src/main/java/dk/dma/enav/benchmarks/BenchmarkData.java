@@ -0,0 +1,185 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.benchmarks;
+
+import java.util.Locale;
+import java.util.Random;
+
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.geometry.PositionTime;
+
+/**
+ * Generators of realistic, reproducible benchmark data. Positions are spread over the inner Danish waters and
+ * the western Baltic, and routes are random walks with leg lengths typical of coastal passages. All generators
+ * are deterministic for a given seed.
+ */
+final class BenchmarkData {
+
+    /** Area covered by generated positions. */
+    static final double MIN_LAT = 54.5, MAX_LAT = 58.0, MIN_LON = 8.0, MAX_LON = 15.0;
+
+    private BenchmarkData() {}
+
+    /**
+     * Returns uniformly distributed positions in the benchmark area.
+     *
+     * @param seed
+     *            the random seed
+     * @param n
+     *            the number of positions
+     * @return the positions
+     */
+    static Position[] positions(long seed, int n) {
+        Random r = new Random(seed);
+        Position[] result = new Position[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = Position.create(MIN_LAT + r.nextDouble() * (MAX_LAT - MIN_LAT),
+                    MIN_LON + r.nextDouble() * (MAX_LON - MIN_LON));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a vessel track sampled every 10 seconds at 8 to 20 knots, slowly changing course.
+     *
+     * @param seed
+     *            the random seed
+     * @param n
+     *            the number of positions
+     * @return the track
+     */
+    static PositionTime[] track(long seed, int n) {
+        Random r = new Random(seed);
+        PositionTime[] result = new PositionTime[n];
+        Position p = positions(seed, 1)[0];
+        double course = r.nextDouble() * 360;
+        long time = 1400000000000L;
+        for (int i = 0; i < n; i++) {
+            result[i] = p.withTime(time);
+            course = (course + r.nextGaussian() * 2 + 360) % 360;
+            double speed = 8 + r.nextDouble() * 12;
+            p = p.positionAt(course, speed * 1852 / 360); // 10 seconds
+            if (!inArea(p)) {
+                course = (course + 180) % 360;
+            }
+            time += 10000;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the waypoints of a random route, with legs of 0.5 to 15 nautical miles.
+     *
+     * @param seed
+     *            the random seed
+     * @param n
+     *            the number of waypoints
+     * @return the waypoints
+     */
+    static Position[] waypoints(long seed, int n) {
+        Random r = new Random(seed);
+        Position[] result = new Position[n];
+        Position p = positions(seed, 1)[0];
+        double course = r.nextDouble() * 360;
+        for (int i = 0; i < n; i++) {
+            result[i] = p;
+            course = (course + r.nextGaussian() * 30 + 360) % 360;
+            Position next = p.positionAt(course, (0.5 + r.nextDouble() * 14.5) * 1852);
+            if (!inArea(next)) {
+                course = (course + 180) % 360;
+                next = p.positionAt(course, 1852);
+            }
+            p = next;
+        }
+        return result;
+    }
+
+    private static boolean inArea(Position p) {
+        return p.getLatitude() >= MIN_LAT && p.getLatitude() <= MAX_LAT && p.getLongitude() >= MIN_LON
+                && p.getLongitude() <= MAX_LON;
+    }
+
+    /** Returns a route in the tab separated TXT format. */
+    static String txtRoute(long seed, int n) {
+        StringBuilder sb = new StringBuilder("Benchmark route\tCopenhagen\tAarhus\n");
+        Position[] wps = waypoints(seed, n);
+        for (int i = 0; i < n; i++) {
+            double lat = wps[i].getLatitude(), lon = wps[i].getLongitude();
+            sb.append(String.format(Locale.US, "WP_%03d\t%02d %06.3f%s\t%03d %06.3f%s\t%.2f\t %d\t%.3f\t%.3f\n", i + 1,
+                    (int) Math.abs(lat), Math.abs(lat) % 1 * 60, lat < 0 ? "S" : "N", (int) Math.abs(lon),
+                    Math.abs(lon) % 1 * 60, lon < 0 ? "W" : "E", 10.0 + i % 5, i % 2, 0.1, 0.5));
+        }
+        return sb.toString();
+    }
+
+    /** Returns a route in the ROU format. */
+    static String rouRoute(long seed, int n) {
+        StringBuilder sb = new StringBuilder("Chart system route file: Benchmark.rou\n");
+        sb.append("ROUTE HEADER INFORMATION:\nRoute name: Benchmark route\nSOG default: 1.000000e+001\n");
+        sb.append("Number of waypoints: ").append(n).append("\n\n");
+        Position[] wps = waypoints(seed, n);
+        for (int i = 0; i < n; i++) {
+            sb.append("WAYPOINT: ").append(i).append('\n');
+            sb.append("Name: WP ").append(i).append('\n');
+            sb.append(String.format(Locale.US, "Latitude: %.8e\nLongitude: %.8e\n", wps[i].getLatitude(),
+                    wps[i].getLongitude()));
+            sb.append("Turn radius: 5.000000e-001\n");
+            sb.append(String.format(Locale.US, "SOG: %.6e\n", 10.0 + i % 5));
+            sb.append("Leg type: ").append(i % 2).append('\n');
+            sb.append("Circles: 1.909859e+001 1.000000e-001 1.000000e-001 1.000000e+000 1.000000e-001\n\n");
+        }
+        return sb.toString();
+    }
+
+    /** Returns a route in the Transas RT3 format. */
+    static String rt3Route(long seed, int n) {
+        StringBuilder sb = new StringBuilder("<TSH_Route RtVersion=\"3\" RtName=\"Benchmark route\">\n");
+        sb.append("\t<WayPoints WPCount=\"").append(n).append("\">\n");
+        Position[] wps = waypoints(seed, n);
+        for (int i = 0; i < n; i++) {
+            sb.append(String.format(Locale.US, "\t\t<WayPoint WPName=\"WP %d\" LegType=\"%d\" RudderAngle=\"0\" "
+                    + "Lat=\"%s\" Lon=\"%s\" PortXTE=\"0.1\" StbXTE=\"0.1\" TurnRate=\"0\" TurnRadius=\"0.3\" "
+                    + "ArrivalC=\"0\"/>\n", i, i % 2, wps[i].getLatitude() * 60, wps[i].getLongitude() * 60));
+        }
+        sb.append("\t</WayPoints>\n");
+        sb.append("\t<Calculations>\n\t\t<Calculation CalcName=\"Benchmark route\">\n");
+        for (int i = 0; i < n; i++) {
+            sb.append(String.format(Locale.US, "\t\t\t<WayPointEx Speed=\"%.1f\"/>\n", 10.0 + i % 5));
+        }
+        sb.append("\t\t</Calculation>\n\t</Calculations>\n</TSH_Route>\n");
+        return sb.toString();
+    }
+
+    /** Returns a route in the Sperry VisionMaster ROUTE format. */
+    static String routeRoute(long seed, int n) {
+        StringBuilder sb = new StringBuilder("<NewDataSet>\n  <Summaries>\n    <Name>Benchmark route</Name>\n");
+        sb.append("    <DepartureTime>2011-05-26T04:26:26.523+00:00</DepartureTime>\n  </Summaries>\n");
+        Position[] wps = waypoints(seed, n);
+        for (int i = 0; i < n; i++) {
+            sb.append("  <ControlPoints>\n    <RouteName>Benchmark route</RouteName>\n");
+            sb.append("    <SequenceNumber>").append(i + 1).append("</SequenceNumber>\n");
+            sb.append("    <Name>WP ").append(i + 1).append("</Name>\n");
+            sb.append("    <Latitude>").append(Math.toRadians(wps[i].getLatitude())).append("</Latitude>\n");
+            sb.append("    <Longitude>").append(Math.toRadians(wps[i].getLongitude())).append("</Longitude>\n");
+            sb.append("    <TurnRadius>966.82133492996763</TurnRadius>\n");
+            sb.append("    <DepartingTrackSpeed>5.1444444444444448</DepartingTrackSpeed>\n");
+            sb.append("    <DepartingControlLineType>").append(i % 2 == 0 ? "RhumbLine" : "GreatCircle")
+                    .append("</DepartingControlLineType>\n");
+            sb.append("  </ControlPoints>\n");
+        }
+        sb.append("</NewDataSet>\n");
+        return sb.toString();
+    }
+}
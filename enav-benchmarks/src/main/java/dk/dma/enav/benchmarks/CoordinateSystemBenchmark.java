@@ -0,0 +1,73 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Distance calculations in both coordinate systems between random pairs of positions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CoordinateSystemBenchmark {
+
+    private static final int SIZE = 1024;
+
+    @Param({ "CARTESIAN", "GEODETIC" })
+    CoordinateSystem cs;
+
+    Position[] from;
+
+    Position[] to;
+
+    int i;
+
+    @Setup
+    public void setup() {
+        from = BenchmarkData.positions(1, SIZE);
+        to = BenchmarkData.positions(2, SIZE);
+    }
+
+    @Benchmark
+    public double distanceBetween() {
+        i = i + 1 & SIZE - 1;
+        return cs.distanceBetween(from[i], to[i]);
+    }
+
+    @Benchmark
+    public double distanceTo() {
+        i = i + 1 & SIZE - 1;
+        return from[i].distanceTo(to[i], cs);
+    }
+}
@@ -0,0 +1,94 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.benchmarks;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.geometry.grid.Cell;
+import dk.dma.enav.model.geometry.grid.Grid;
+
+/**
+ * Cell lookups in grids of different resolutions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GridBenchmark {
+
+    private static final int SIZE = 1024;
+
+    @Param({ "0.01", "0.1", "1" })
+    double resolution;
+
+    Grid grid;
+
+    Position[] positions;
+
+    BoundingBox[] boxes;
+
+    int i;
+
+    @Setup
+    public void setup() {
+        grid = Grid.create(resolution);
+        positions = BenchmarkData.positions(1, SIZE);
+        Position[] other = BenchmarkData.positions(2, SIZE);
+        boxes = new BoundingBox[SIZE];
+        for (int j = 0; j < SIZE; j++) {
+            // boxes of up to 0.5 x 0.5 degrees, typical of a chart view or an area of interest
+            Position p = positions[j], q = other[j];
+            Position corner = Position.create(p.getLatitude() + (q.getLatitude() - p.getLatitude()) / 8,
+                    p.getLongitude() + (q.getLongitude() - p.getLongitude()) / 16);
+            boxes[j] = BoundingBox.create(p, corner, CoordinateSystem.CARTESIAN);
+        }
+    }
+
+    @Benchmark
+    public Cell getCell() {
+        i = i + 1 & SIZE - 1;
+        return grid.getCell(positions[i]);
+    }
+
+    @Benchmark
+    public Set<Cell> getNearbyCells() {
+        i = i + 1 & SIZE - 1;
+        return grid.getNearbyCells(positions[i], resolution * 2);
+    }
+
+    @Benchmark
+    public Set<Cell> getCells() {
+        i = i + 1 & SIZE - 1;
+        return grid.getCells(boxes[i]);
+    }
+}
@@ -0,0 +1,78 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Dead reckoning and bearing calculations on single positions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PositionBenchmark {
+
+    private static final int SIZE = 1024;
+
+    Position[] from;
+
+    Position[] to;
+
+    double[] bearings;
+
+    double[] distances;
+
+    int i;
+
+    @Setup
+    public void setup() {
+        from = BenchmarkData.positions(1, SIZE);
+        to = BenchmarkData.positions(2, SIZE);
+        bearings = new double[SIZE];
+        distances = new double[SIZE];
+        for (int j = 0; j < SIZE; j++) {
+            bearings[j] = j * 360.0 / SIZE;
+            distances[j] = 100 + j * 50;
+        }
+    }
+
+    @Benchmark
+    public Position positionAt() {
+        i = i + 1 & SIZE - 1;
+        return from[i].positionAt(bearings[i], distances[i]);
+    }
+
+    @Benchmark
+    public double rhumbLineBearingTo() {
+        i = i + 1 & SIZE - 1;
+        return from[i].rhumbLineBearingTo(to[i]);
+    }
+}
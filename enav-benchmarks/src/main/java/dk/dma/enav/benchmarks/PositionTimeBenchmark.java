@@ -0,0 +1,66 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.enav.model.geometry.PositionTime;
+
+/**
+ * Interpolation and extrapolation along a vessel track.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PositionTimeBenchmark {
+
+    private static final int SIZE = 1024;
+
+    PositionTime[] track;
+
+    int i;
+
+    @Setup
+    public void setup() {
+        track = BenchmarkData.track(1, SIZE + 1);
+    }
+
+    @Benchmark
+    public PositionTime createInterpolated() {
+        i = i + 1 & SIZE - 1;
+        PositionTime p1 = track[i], p2 = track[i + 1];
+        return PositionTime.createInterpolated(p1, p2, (p1.getTime() + p2.getTime()) / 2);
+    }
+
+    @Benchmark
+    public PositionTime createExtrapolated() {
+        i = i + 1 & SIZE - 1;
+        return PositionTime.createExtrapolated(track[i], 45, 12, track[i].getTime() + 60000);
+    }
+}
@@ -0,0 +1,87 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.serialization.RouteParser;
+
+/**
+ * Parsing of large synthetic routes in each of the supported file formats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouteParserBenchmark {
+
+    @Param({ "TXT", "ROU", "RT3", "ROUTE" })
+    String format;
+
+    @Param({ "100", "10000" })
+    int waypoints;
+
+    byte[] data;
+
+    Map<String, String> config;
+
+    @Setup
+    public void setup() {
+        String route;
+        switch (format) {
+        case "TXT":
+            route = BenchmarkData.txtRoute(1, waypoints);
+            break;
+        case "ROU":
+            route = BenchmarkData.rouRoute(1, waypoints);
+            break;
+        case "RT3":
+            route = BenchmarkData.rt3Route(1, waypoints);
+            break;
+        case "ROUTE":
+            route = BenchmarkData.routeRoute(1, waypoints);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+        data = route.getBytes(StandardCharsets.UTF_8);
+        config = Collections.singletonMap("name", "Benchmark route");
+    }
+
+    @Benchmark
+    public Route parse() throws IOException {
+        return RouteParser.getRouteParser("benchmark." + format, new ByteArrayInputStream(data), config).parse();
+    }
+}
@@ -0,0 +1,93 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.serialization.BinaryRouteParser;
+import dk.dma.enav.serialization.BinaryRouteWriter;
+import dk.dma.enav.serialization.RouteParser;
+import dk.dma.enav.serialization.RouteWriter;
+
+/**
+ * Writing of large synthetic routes in each of the supported file formats, and the binary format compared to Java
+ * serialization.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouteWriterBenchmark {
+
+    @Param({ "TXT", "ROU", "RT3", "ROUTE", "BRT" })
+    String format;
+
+    @Param({ "100", "10000" })
+    int waypoints;
+
+    Route route;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] txt = BenchmarkData.txtRoute(1, waypoints).getBytes(StandardCharsets.UTF_8);
+        route = RouteParser.getRouteParser("benchmark.txt", new ByteArrayInputStream(txt),
+                Collections.<String, String> emptyMap()).parse();
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RouteWriter.getRouteWriter("benchmark." + format, out, Collections.<String, String> emptyMap()).write(route);
+        return out.size();
+    }
+
+    @Benchmark
+    public Route binaryRoundTrip() throws IOException {
+        return BinaryRouteParser.fromBytes(BinaryRouteWriter.toBytes(route));
+    }
+
+    @Benchmark
+    public Object serializationRoundTrip() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(route);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return in.readObject();
+        }
+    }
+}
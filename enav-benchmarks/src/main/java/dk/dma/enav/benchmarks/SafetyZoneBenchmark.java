@@ -0,0 +1,96 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dk.dma.enav.model.geometry.Ellipse;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.safety.SafetyZones;
+
+/**
+ * Construction of safety zones and containment and intersection tests between them. The vessels are placed
+ * within a few nautical miles of a common geodetic reference, as in a traffic picture around a single vessel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SafetyZoneBenchmark {
+
+    private static final int SIZE = 1024;
+
+    Position reference;
+
+    Position[] positions;
+
+    float[] cogs;
+
+    float[] loas;
+
+    Ellipse[] zones;
+
+    int i;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(1);
+        reference = Position.create(55.7, 12.6);
+        positions = new Position[SIZE];
+        cogs = new float[SIZE];
+        loas = new float[SIZE];
+        zones = new Ellipse[SIZE];
+        for (int j = 0; j < SIZE; j++) {
+            positions[j] = reference.positionAt(r.nextDouble() * 360, r.nextDouble() * 5 * 1852);
+            cogs[j] = r.nextFloat() * 360;
+            loas[j] = 50 + r.nextFloat() * 250;
+            zones[j] = SafetyZones.safetyZone(reference, positions[j], cogs[j], 12, loas[j], loas[j] / 6,
+                    loas[j] / 2, loas[j] / 12);
+        }
+    }
+
+    @Benchmark
+    public Ellipse safetyZone() {
+        i = i + 1 & SIZE - 1;
+        return SafetyZones.safetyZone(reference, positions[i], cogs[i], 12, loas[i], loas[i] / 6, loas[i] / 2,
+                loas[i] / 12);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        i = i + 1 & SIZE - 1;
+        return zones[i].contains(positions[i + 1 & SIZE - 1]);
+    }
+
+    @Benchmark
+    public boolean intersects() {
+        i = i + 1 & SIZE - 1;
+        return zones[i].intersects(zones[i + 1 & SIZE - 1]);
+    }
+}
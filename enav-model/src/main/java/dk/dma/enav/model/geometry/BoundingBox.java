@@ -16,6 +16,10 @@ package dk.dma.enav.model.geometry;
 
 import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * A box bounded by two parallels and two meridians. The corners of the box are its vertices as a polygon, but unlike
+ * other polygons the edges are parallels and meridians in both coordinate systems.
+ */
 public final class BoundingBox extends Polygon {
     /** serialVersionUID */
     private static final long serialVersionUID = 1L;
@@ -27,7 +31,7 @@ public final class BoundingBox extends Polygon {
 
     private BoundingBox(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude,
             CoordinateSystem cs) {
-        super(cs);
+        super(cs, minLatitude, maxLatitude, minLongitude, maxLongitude);
         this.minLatitude = minLatitude;
         this.maxLatitude = maxLatitude;
         this.minLongitude = minLongitude;
@@ -35,19 +39,81 @@ public final class BoundingBox extends Polygon {
     }
 
     public boolean contains(Position point) {
-        return point.getLatitude() >= minLatitude && point.getLongitude() >= minLongitude
-                && point.getLatitude() <= maxLatitude && point.getLongitude() <= maxLongitude;
+        return contains(point.getLatitude(), point.getLongitude());
+    }
+
+    @Override
+    public boolean contains(double latitude, double longitude) {
+        return latitude >= minLatitude && longitude >= minLongitude && latitude <= maxLatitude
+                && longitude <= maxLongitude;
     }
     
     @Override
     public boolean contains(Element element) {
         if (element instanceof Position) {
             return contains((Position)element);
+        } else if (element instanceof Polygon) {
+            // The bounds of a polygon include the parts of its edges bulging towards the poles
+            Polygon polygon = (Polygon) element;
+            if (polygon.getMinLat() < minLatitude || polygon.getMaxLat() > maxLatitude) {
+                return false;
+            }
+            for (int shift = -360; shift <= 360; shift += 360) {
+                if (polygon.getMinLon() + shift >= minLongitude && polygon.getMaxLon() + shift <= maxLongitude) {
+                    return true;
+                }
+            }
+            return false;
         } else {
             return super.contains(element);
         }
     }
 
+    @Override
+    public boolean intersects(Element element) {
+        if (element instanceof Position) {
+            return contains((Position) element);
+        } else if (element instanceof BoundingBox) {
+            return intersects((BoundingBox) element);
+        } else if (element instanceof Polygon) {
+            return ((Polygon) element).intersects(this);
+        } else {
+            return super.intersects(element);
+        }
+    }
+
+    /**
+     * Returns a prepared form of this box. The prepared box is bounded by the same parallels and meridians as the box.
+     * 
+     * @return a prepared form of this box
+     */
+    @Override
+    public PreparedPolygon prepare() {
+        return new PreparedPolygon(this, false, new double[] { minLatitude, minLatitude, maxLatitude, maxLatitude },
+                new double[] { minLongitude, maxLongitude, maxLongitude, minLongitude });
+    }
+
+    @Override
+    public int size() {
+        return 4;
+    }
+
+    @Override
+    public Position getVertex(int index) {
+        switch (index) {
+        case 0:
+            return Position.create(minLatitude, minLongitude);
+        case 1:
+            return Position.create(minLatitude, maxLongitude);
+        case 2:
+            return Position.create(maxLatitude, maxLongitude);
+        case 3:
+            return Position.create(maxLatitude, minLongitude);
+        default:
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: 4");
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -101,18 +167,22 @@ public final class BoundingBox extends Polygon {
         return Position.create(minLatitude, maxLongitude);
     }
 
+    @Override
     public double getMaxLat() {
         return maxLatitude;
     }
 
+    @Override
     public double getMaxLon() {
         return maxLongitude;
     }
 
+    @Override
     public double getMinLat() {
         return minLatitude;
     }
 
+    @Override
     public double getMinLon() {
         return minLongitude;
     }
@@ -50,6 +50,11 @@ public class Circle extends Area {
     @Override
     public boolean contains(Element element) {
         if (element instanceof Position) {
+            if (cs == CoordinateSystem.GEODETIC) {
+                Position p = (Position) element;
+                return DistanceAlgorithm.VINCENTY.isWithin(center.latitude, center.longitude, p.latitude, p.longitude,
+                        radius);
+            }
             return center.distanceTo(element, cs) <= radius;
         } else if (element instanceof Circle) {
             Circle c = (Circle) element;
@@ -70,7 +70,7 @@ public enum CoordinateSystem {
 
         @Override
         double distanceBetween(double latitude1, double longitude1, double latitude2, double longitude2) {
-            return vincentyFormula(latitude1, longitude1, latitude2, longitude2, VincentyCalculationType.DISTANCE);
+            return DistanceAlgorithm.VINCENTY.distance(latitude1, longitude1, latitude2, longitude2);
         }
 
         @Override
@@ -85,6 +85,24 @@ public enum CoordinateSystem {
      */
     public static final double EARTH_MEAN_RADIUS_KM = 6371.0087714;
 
+    /** Meters per degree of latitude on a sphere with the mean radius of the earth. */
+    public static final double METERS_PER_DEGREE = Math.toRadians(EARTH_MEAN_RADIUS_KM * 1000);
+
+    /** Meters per nautical mile. */
+    public static final double NAUTICAL_MILE = 1852;
+
+    /** Semi-major axis of the WGS-84 ellipsoid in meters. */
+    private static final double WGS84_A = 6378137;
+
+    /** Semi-minor axis of the WGS-84 ellipsoid in meters. */
+    private static final double WGS84_B = 6356752.3142;
+
+    /** Flattening of the WGS-84 ellipsoid. */
+    private static final double WGS84_F = 1 / 298.257223563;
+
+    /** Second eccentricity squared of the WGS-84 ellipsoid, (a^2 - b^2) / b^2. */
+    private static final double WGS84_EP2 = (WGS84_A * WGS84_A - WGS84_B * WGS84_B) / (WGS84_B * WGS84_B);
+
     abstract double areaCircle(double latitude, double longitude, double radius);
 
     abstract double distanceBetween(double latitude1, double longitude1, double latitude2, double longitude2);
@@ -110,9 +128,8 @@ public enum CoordinateSystem {
      */
     static double vincentyFormula(double latitude1, double longitude1, double latitude2, double longitude2,
             VincentyCalculationType type) {
-        double a = 6378137;
-        double b = 6356752.3142;
-        double f = 1 / 298.257223563; // WGS-84 ellipsiod
+        final double b = WGS84_B;
+        final double f = WGS84_F;
         double L = Math.toRadians(longitude2 - longitude1);
         double U1 = Math.atan((1 - f) * Math.tan(Math.toRadians(latitude1)));
         double U2 = Math.atan((1 - f) * Math.tan(Math.toRadians(latitude2)));
@@ -156,7 +173,7 @@ public enum CoordinateSystem {
             return Double.NaN; // formula failed to converge
         }
 
-        double uSq = cosSqAlpha * (a * a - b * b) / (b * b);
+        double uSq = cosSqAlpha * WGS84_EP2;
         double A = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
         double B = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
         double deltaSigma = B
@@ -0,0 +1,236 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.asin;
+import static java.lang.Math.cos;
+import static java.lang.Math.min;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toRadians;
+
+/**
+ * Algorithms for calculating the geodesic (great circle) distance in meters between two points, ordered from the
+ * fastest and least accurate to the slowest and most accurate. Each algorithm provides an {@link #getErrorBound(double)
+ * error bound} that can be used to screen large numbers of pairs with a fast algorithm and only refine those close to a
+ * threshold with an accurate one, see {@link #isWithin(double, double, double, double, double)}.
+ */
+public enum DistanceAlgorithm {
+
+    /**
+     * Pythagoras on an equirectangular projection of a sphere. Falls back to {@link #HAVERSINE} for distances above
+     * 100 km or latitudes above 80 degrees where the projection is no longer accurate.
+     */
+    EQUIRECTANGULAR(DistanceAlgorithm.SPHERE_RELATIVE_ERROR, DistanceAlgorithm.SPHERE_ABSOLUTE_ERROR) {
+        @Override
+        public double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+            double dLon = longitude2 - longitude1;
+            if (dLon > 180) {
+                dLon -= 360;
+            } else if (dLon < -180) {
+                dLon += 360;
+            }
+            double x = toRadians(dLon) * cos(toRadians((latitude1 + latitude2) / 2));
+            double y = toRadians(latitude2 - latitude1);
+            double distance = sqrt(x * x + y * y) * EARTH_MEAN_RADIUS;
+            if (distance > 100000 || abs(latitude1) > 80 || abs(latitude2) > 80) {
+                return HAVERSINE.distance(latitude1, longitude1, latitude2, longitude2);
+            }
+            return distance;
+        }
+    },
+
+    /** The haversine formula on a sphere with the mean radius of the earth. */
+    HAVERSINE(DistanceAlgorithm.SPHERE_RELATIVE_ERROR, DistanceAlgorithm.SPHERE_ABSOLUTE_ERROR) {
+        @Override
+        public double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+            double lat1 = toRadians(latitude1);
+            double lat2 = toRadians(latitude2);
+            double sinDLat = sin((lat2 - lat1) / 2);
+            double sinDLon = sin(toRadians(longitude2 - longitude1) / 2);
+            double a = sinDLat * sinDLat + cos(lat1) * cos(lat2) * sinDLon * sinDLon;
+            return 2 * EARTH_MEAN_RADIUS * asin(min(1, sqrt(a)));
+        }
+    },
+
+    /**
+     * Thaddeus Vincenty's iterative inverse formula on the WGS-84 ellipsoid. For nearly antipodal points, where the
+     * formula fails to converge, {@link #KARNEY} is used instead.
+     */
+    VINCENTY(0, 0.001) {
+        @Override
+        public double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+            double distance = CoordinateSystem.vincentyFormula(latitude1, longitude1, latitude2, longitude2,
+                    CoordinateSystem.VincentyCalculationType.DISTANCE);
+            return Double.isNaN(distance) ? KARNEY.distance(latitude1, longitude1, latitude2, longitude2) : distance;
+        }
+    },
+
+    /** Charles Karney's method on the WGS-84 ellipsoid, accurate to nanometers and robust for all pairs of points. */
+    KARNEY(0, 1e-6) {
+        @Override
+        public double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+            return KarneyGeodesic.distance(latitude1, longitude1, latitude2, longitude2);
+        }
+    };
+
+    /** The mean radius of the earth in meters. */
+    static final double EARTH_MEAN_RADIUS = CoordinateSystem.EARTH_MEAN_RADIUS_KM * 1000;
+
+    /** Largest relative error of a sphere with the mean radius compared to the WGS-84 ellipsoid (measured 0.561%). */
+    private static final double SPHERE_RELATIVE_ERROR = 0.0057;
+
+    /** Allowance for rounding errors of the spherical algorithms in meters. */
+    private static final double SPHERE_ABSOLUTE_ERROR = 0.01;
+
+    /** The algorithm used for screening by {@link #isWithin(double, double, double, double, double)}. */
+    private static final DistanceAlgorithm SCREEN = EQUIRECTANGULAR;
+
+    private final double relativeError;
+
+    private final double absoluteError;
+
+    DistanceAlgorithm(double relativeError, double absoluteError) {
+        this.relativeError = relativeError;
+        this.absoluteError = absoluteError;
+    }
+
+    /**
+     * Returns the geodesic distance in meters between the two points.
+     *
+     * @return the distance in meters
+     */
+    public abstract double distance(double latitude1, double longitude1, double latitude2, double longitude2);
+
+    /**
+     * Returns the geodesic distance in meters between the two positions.
+     *
+     * @param p1
+     *            the first position
+     * @param p2
+     *            the second position
+     * @return the distance in meters
+     */
+    public final double distance(Position p1, Position p2) {
+        return distance(p1.latitude, p1.longitude, p2.latitude, p2.longitude);
+    }
+
+    /**
+     * Calculates the distance from one point to each of a number of points.
+     *
+     * @param latitude
+     *            the latitude of the point to measure from
+     * @param longitude
+     *            the longitude of the point to measure from
+     * @param latitudes
+     *            the latitudes of the points to measure to
+     * @param longitudes
+     *            the longitudes of the points to measure to
+     * @param distances
+     *            the array to store the distances in, at least as long as latitudes
+     */
+    public final void distances(double latitude, double longitude, double[] latitudes, double[] longitudes,
+            double[] distances) {
+        for (int i = 0; i < latitudes.length; i++) {
+            distances[i] = distance(latitude, longitude, latitudes[i], longitudes[i]);
+        }
+    }
+
+    /**
+     * Calculates the pairwise distances between two arrays of points.
+     *
+     * @param latitudes1
+     *            the latitudes of the first points
+     * @param longitudes1
+     *            the longitudes of the first points
+     * @param latitudes2
+     *            the latitudes of the second points
+     * @param longitudes2
+     *            the longitudes of the second points
+     * @param distances
+     *            the array to store the distances in, at least as long as latitudes1
+     */
+    public final void distances(double[] latitudes1, double[] longitudes1, double[] latitudes2, double[] longitudes2,
+            double[] distances) {
+        for (int i = 0; i < latitudes1.length; i++) {
+            distances[i] = distance(latitudes1[i], longitudes1[i], latitudes2[i], longitudes2[i]);
+        }
+    }
+
+    /**
+     * Returns an upper bound of the absolute error of a distance calculated by this algorithm, compared to the true
+     * geodesic distance on the WGS-84 ellipsoid.
+     *
+     * @param distance
+     *            a distance calculated by this algorithm
+     * @return the error bound in meters
+     */
+    public final double getErrorBound(double distance) {
+        return distance * relativeError + absoluteError;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the distance between the two points, as calculated by this algorithm, is at most the
+     * specified range. The distance is first calculated with {@link #EQUIRECTANGULAR}, and only calculated with this
+     * algorithm if the result is within the error bound of the range.
+     *
+     * @param range
+     *            the range in meters
+     * @return true if the distance between the points is at most the range
+     */
+    public final boolean isWithin(double latitude1, double longitude1, double latitude2, double longitude2, double range) {
+        double screened = SCREEN.distance(latitude1, longitude1, latitude2, longitude2);
+        if (this == SCREEN) {
+            return screened <= range;
+        }
+        double bound = SCREEN.getErrorBound(screened) + getErrorBound(screened);
+        if (screened - bound > range) {
+            return false;
+        } else if (screened + bound <= range) {
+            return true;
+        }
+        return distance(latitude1, longitude1, latitude2, longitude2) <= range;
+    }
+
+    /**
+     * Finds the points within the specified range of a point, see {@link #isWithin(double, double, double, double,
+     * double)}.
+     *
+     * @param latitude
+     *            the latitude of the point to measure from
+     * @param longitude
+     *            the longitude of the point to measure from
+     * @param latitudes
+     *            the latitudes of the points to test
+     * @param longitudes
+     *            the longitudes of the points to test
+     * @param range
+     *            the range in meters
+     * @param indices
+     *            the array to store the indices of the points within range in, at least as long as latitudes
+     * @return the number of points within range
+     */
+    public final int indicesWithin(double latitude, double longitude, double[] latitudes, double[] longitudes,
+            double range, int[] indices) {
+        int count = 0;
+        for (int i = 0; i < latitudes.length; i++) {
+            if (isWithin(latitude, longitude, latitudes[i], longitudes[i], range)) {
+                indices[count++] = i;
+            }
+        }
+        return count;
+    }
+}
@@ -20,10 +20,10 @@ import dk.dma.enav.util.geometry.Point;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.DoubleBinaryOperator;
 
 import static dk.dma.enav.util.compass.CompassUtils.cartesian2compass;
 import static java.lang.StrictMath.cos;
-import static java.lang.StrictMath.pow;
 import static java.lang.StrictMath.sin;
 import static java.lang.StrictMath.sqrt;
 import static java.lang.StrictMath.toRadians;
@@ -54,6 +54,15 @@ public final class Ellipse extends Area {
 
     private final CoordinateConverter coordinateConverter;
 
+    /** cos and sin of thetaDeg, used to rotate points into the frame of the ellipse axes. */
+    private final double cosTheta, sinTheta;
+
+    /** 1/alpha^2 and 1/beta^2. */
+    private final double invAlpha2, invBeta2;
+
+    /** Maps a projected point to its squared distance from the center, in units of the ellipse radius. */
+    private final DoubleBinaryOperator normalizedDistance = this::normalizedDistance;
+
     /**
      * Create an ellipse with center in the geodetic reference point.
      *
@@ -64,14 +73,7 @@ public final class Ellipse extends Area {
      * @param cs
      */
     public Ellipse(Position geodeticReference, double alpha, double beta, double thetaDeg, CoordinateSystem cs) {
-        super(cs);
-        this.geodeticReference = geodeticReference;
-        this.coordinateConverter = geodeticReference == null ? null : new CoordinateConverter(geodeticReference.longitude, geodeticReference.latitude);
-        this.dx = 0.0;
-        this.dy = 0.0;
-        this.alpha = alpha;
-        this.beta = beta;
-        this.thetaDeg = thetaDeg;
+        this(geodeticReference, 0.0, 0.0, alpha, beta, thetaDeg, cs);
     }
 
     /**
@@ -88,12 +90,16 @@ public final class Ellipse extends Area {
     public Ellipse(Position geodeticReference, double dx, double dy, double alpha, double beta, double thetaDeg, CoordinateSystem cs) {
         super(cs);
         this.geodeticReference = geodeticReference;
-        this.coordinateConverter = geodeticReference == null ? null : new CoordinateConverter(geodeticReference.longitude, geodeticReference.latitude);
+        this.coordinateConverter = geodeticReference == null ? null : CoordinateConverter.create(geodeticReference.longitude, geodeticReference.latitude);
         this.dx = dx;
         this.dy = dy;
         this.alpha = alpha;
         this.beta = beta;
         this.thetaDeg = thetaDeg;
+        this.cosTheta = cos(toRadians(thetaDeg));
+        this.sinTheta = sin(toRadians(thetaDeg));
+        this.invAlpha2 = 1.0 / (alpha * alpha);
+        this.invBeta2 = 1.0 / (beta * beta);
     }
 
     @Override
@@ -199,10 +205,52 @@ public final class Ellipse extends Area {
     }
 
     private boolean contains(Position position) {
-        final double x = coordinateConverter.lon2x(position.getLongitude(), position.getLatitude());
-        final double y = coordinateConverter.lat2y(position.getLongitude(), position.getLatitude());
-        final Point p = new Point(x, y).rotate(Point.ORIGIN, -thetaDeg); // Small hack: Rotate p minus Theta instead of ellipse theta.
-        return pow(p.getX(), 2.0)/pow(alpha, 2) + pow(p.getY(), 2.0)/pow(beta, 2.0) <= 1.0;
+        return contains(position.getLatitude(), position.getLongitude());
+    }
+
+    /**
+     * Returns true if the specified point is contained in this ellipse. This method does not allocate any objects.
+     *
+     * @param latitude the latitude of the point.
+     * @param longitude the longitude of the point.
+     * @return true if the point is contained in this ellipse.
+     */
+    public boolean contains(double latitude, double longitude) {
+        if (geodeticReference == null) {
+            throw new UnsupportedOperationException("Can not compute whether an ellipse without geodetic reference contains a position.");
+        }
+        return coordinateConverter.project(longitude, latitude, normalizedDistance) <= 1.0;
+    }
+
+    private double normalizedDistance(double x, double y) {
+        // Translate to the center of the ellipse and rotate by minus theta to align with its axes
+        x -= dx;
+        y -= dy;
+        final double u = cosTheta * x + sinTheta * y;
+        final double v = cosTheta * y - sinTheta * x;
+        return u * u * invAlpha2 + v * v * invBeta2;
+    }
+
+    /**
+     * Determines for each of the specified points whether it is contained in this ellipse.
+     *
+     * @param latitudes the latitudes of the points.
+     * @param longitudes the longitudes of the points.
+     * @param result the array to store the results in; result[i] is set to true if point i is contained in this ellipse.
+     * @return the number of points contained in this ellipse.
+     */
+    public int containsAll(double[] latitudes, double[] longitudes, boolean[] result) {
+        if (latitudes.length != longitudes.length || result.length < latitudes.length) {
+            throw new IllegalArgumentException("Array lengths do not match: " + latitudes.length + ", "
+                    + longitudes.length + ", " + result.length);
+        }
+        int count = 0;
+        for (int i = 0; i < latitudes.length; i++) {
+            if (result[i] = contains(latitudes[i], longitudes[i])) {
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
@@ -232,10 +280,10 @@ public final class Ellipse extends Area {
 
         // Convert to geodetic
         List<Position> perimeter = new ArrayList<>(n);
+        double[] lonLat = new double[2];
         for (Point point : rotatedPerimeter) {
-            double lon = coordinateConverter.x2Lon(point.getX(), point.getY());
-            double lat = coordinateConverter.y2Lat(point.getX(), point.getY());
-            perimeter.add(Position.create(lat, lon));
+            coordinateConverter.toLonLat(point.getX(), point.getY(), lonLat);
+            perimeter.add(Position.create(lonLat[1], lonLat[0]));
         }
 
         return perimeter;
@@ -0,0 +1,580 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * The distance calculation is ported from GeographicLib, which carries the following notice:
+ *
+ * Copyright (c) Charles Karney (2011-2013) <charles@karney.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated
+ * documentation files (the "Software"), to deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the
+ * Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * See http://geographiclib.sourceforge.net/ for more information.
+ */
+package dk.dma.enav.model.geometry;
+
+/**
+ * Solves the inverse geodesic problem on the WGS-84 ellipsoid using the method of Charles F. F. Karney, <a
+ * href="http://dx.doi.org/10.1007/s00190-012-0578-z">Algorithms for geodesics</a>, J. Geodesy 87, 43-55 (2013).
+ * <p>
+ * Unlike Vincenty's formula, the method converges for all pairs of points, including nearly antipodal ones, and is
+ * accurate to about 15 nanometers. This is a port of the distance calculation of GeographicLib using series expansions
+ * to sixth order in the third flattening.
+ */
+final class KarneyGeodesic {
+
+    /** Equatorial radius of WGS-84 in meters. */
+    static final double A = 6378137;
+
+    /** Flattening of WGS-84. */
+    static final double F = 1 / 298.257223563;
+
+    private static final double F1 = 1 - F;
+
+    private static final double E2 = F * (2 - F);
+
+    private static final double EP2 = E2 / (F1 * F1);
+
+    /** Third flattening. */
+    private static final double N = F / (2 - F);
+
+    private static final double B = A * F1;
+
+    private static final int ORDER = 6;
+
+    private static final int MAXIT1 = 20;
+
+    private static final int MAXIT2 = MAXIT1 + 53 + 10;
+
+    private static final double TINY = Math.sqrt(Double.MIN_NORMAL);
+
+    private static final double TOL0 = Math.ulp(1.0);
+
+    private static final double TOL1 = 200 * TOL0;
+
+    private static final double TOL2 = Math.sqrt(TOL0);
+
+    private static final double TOLB = TOL0 * TOL2;
+
+    private static final double XTHRESH = 1000 * TOL2;
+
+    private static final double ETOL2 = 0.1 * TOL2 / Math.sqrt(Math.max(0.001, Math.abs(F)) * Math.min(1.0, 1 - F / 2) / 2);
+
+    /** Coefficients of A3 as a polynomial in eps. */
+    private static final double[] A3X = new double[ORDER];
+
+    /** Coefficients of C3[l] as polynomials in eps. */
+    private static final double[] C3X = new double[ORDER * (ORDER - 1) / 2];
+
+    static {
+        final double[] coeffA3 = { -3, 128, -2, -3, 64, -1, -3, -1, 16, 3, -1, -2, 8, 1, -1, 2, 1, 1 };
+        int o = 0, k = 0;
+        for (int j = ORDER - 1; j >= 0; --j) {
+            int m = Math.min(ORDER - j - 1, j);
+            A3X[k++] = polyval(m, coeffA3, o, N) / coeffA3[o + m + 1];
+            o += m + 2;
+        }
+        final double[] coeffC3 = { 3, 128, 2, 5, 128, -1, 3, 3, 64, -1, 0, 1, 8, -1, 1, 4, 5, 256, 1, 3, 128, -3, -2,
+                3, 64, 1, -3, 2, 32, 7, 512, -10, 9, 384, 5, -9, 5, 192, 7, 512, -14, 7, 512, 21, 2560 };
+        o = 0;
+        k = 0;
+        for (int l = 1; l < ORDER; ++l) {
+            for (int j = ORDER - 1; j >= l; --j) {
+                int m = Math.min(ORDER - j - 1, j);
+                C3X[k++] = polyval(m, coeffC3, o, N) / coeffC3[o + m + 1];
+                o += m + 2;
+            }
+        }
+    }
+
+    private KarneyGeodesic() {}
+
+    /**
+     * Returns the geodesic distance in meters between the two points.
+     *
+     * @return the geodesic distance in meters, or NaN if a latitude is outside [-90, 90]
+     */
+    static double distance(double lat1, double lon1, double lat2, double lon2) {
+        if (Math.abs(lat1) > 90 || Math.abs(lat2) > 90) {
+            return Double.NaN;
+        }
+        lat1 = angRound(lat1);
+        lat2 = angRound(lat2);
+
+        // Longitude difference in [0, 180] and its complement 180 - lon12
+        final Work w = new Work();
+        double lon12 = angDiff(w, lon1, lon2);
+        double lon12e = w.angDiffError;
+        int lonsign = lon12 >= 0 ? 1 : -1;
+        lon12 = lonsign * angRound(lon12);
+        double lon12s = angRound((180 - lon12) - lonsign * lon12e);
+        double lam12 = Math.toRadians(lon12);
+        double slam12, clam12;
+        if (lon12 > 90) {
+            slam12 = sind(lon12s);
+            clam12 = -cosd(lon12s);
+        } else {
+            slam12 = sind(lon12);
+            clam12 = cosd(lon12);
+        }
+
+        // Swap points so that the point with the higher absolute latitude is point 1, and make lat1 <= 0
+        if (Math.abs(lat1) < Math.abs(lat2)) {
+            double t = lat1;
+            lat1 = lat2;
+            lat2 = t;
+        }
+        if (lat1 > 0) {
+            lat1 = -lat1;
+            lat2 = -lat2;
+        }
+
+        double sbet1 = F1 * sind(lat1), cbet1 = cosd(lat1);
+        double r = Math.hypot(sbet1, cbet1);
+        sbet1 /= r;
+        cbet1 = Math.max(TINY, cbet1 / r);
+
+        double sbet2 = F1 * sind(lat2), cbet2 = cosd(lat2);
+        r = Math.hypot(sbet2, cbet2);
+        sbet2 /= r;
+        cbet2 = Math.max(TINY, cbet2 / r);
+
+        if (cbet1 < -sbet1) {
+            if (cbet2 == cbet1) {
+                sbet2 = sbet2 < 0 ? sbet1 : -sbet1;
+            }
+        } else if (Math.abs(sbet2) == -sbet1) {
+            cbet2 = cbet1;
+        }
+
+        final double dn1 = Math.sqrt(1 + EP2 * sbet1 * sbet1);
+        final double dn2 = Math.sqrt(1 + EP2 * sbet2 * sbet2);
+
+        double sig12, s12x = Double.NaN;
+
+        boolean meridian = lat1 == -90 || slam12 == 0;
+        if (meridian) {
+            // Endpoints are on a single full meridian, so the geodesic might lie on it
+            double calp1 = clam12, calp2 = 1;
+            double ssig1 = sbet1, csig1 = calp1 * cbet1;
+            double ssig2 = sbet2, csig2 = calp2 * cbet2;
+            sig12 = Math.atan2(Math.max(0.0, csig1 * ssig2 - ssig1 * csig2), csig1 * csig2 + ssig1 * ssig2);
+            lengths(w, N, sig12, ssig1, csig1, dn1, ssig2, csig2, dn2, true);
+            s12x = w.s12b;
+            double m12x = w.m12b;
+            if (sig12 < 1 || m12x >= 0) {
+                if (sig12 < 3 * TINY || sig12 < TOL0 && (s12x < 0 || m12x < 0)) {
+                    s12x = 0;
+                }
+                s12x *= B;
+            } else {
+                meridian = false;
+            }
+        }
+
+        if (!meridian && sbet1 == 0 && lon12s >= F * 180) {
+            // Geodesic runs along the equator
+            s12x = A * lam12;
+        } else if (!meridian) {
+            inverseStart(w, sbet1, cbet1, sbet2, cbet2, lam12, slam12, clam12);
+            sig12 = w.sig12;
+            double salp1 = w.salp1, calp1 = w.calp1;
+            if (sig12 >= 0) {
+                // Short line
+                s12x = sig12 * B * w.dnm;
+            } else {
+                // Newton's method on lambda12(alp1) - lam12 = 0, keeping a bracket around the root
+                double salp1a = TINY, calp1a = 1, salp1b = TINY, calp1b = -1;
+                boolean tripn = false, tripb = false;
+                for (int numit = 0; numit < MAXIT2; ++numit) {
+                    lambda12(w, sbet1, cbet1, dn1, sbet2, cbet2, dn2, salp1, calp1, slam12, clam12, numit < MAXIT1);
+                    double v = w.lam12;
+                    if (tripb || !(Math.abs(v) >= (tripn ? 8 : 1) * TOL0)) {
+                        break;
+                    }
+                    if (v > 0 && (numit > MAXIT1 || calp1 / salp1 > calp1b / salp1b)) {
+                        salp1b = salp1;
+                        calp1b = calp1;
+                    } else if (v < 0 && (numit > MAXIT1 || calp1 / salp1 < calp1a / salp1a)) {
+                        salp1a = salp1;
+                        calp1a = calp1;
+                    }
+                    if (numit < MAXIT1 && w.dlam12 > 0) {
+                        double dalp1 = -v / w.dlam12;
+                        double sdalp1 = Math.sin(dalp1), cdalp1 = Math.cos(dalp1);
+                        double nsalp1 = salp1 * cdalp1 + calp1 * sdalp1;
+                        if (nsalp1 > 0 && Math.abs(dalp1) < Math.PI) {
+                            calp1 = calp1 * cdalp1 - salp1 * sdalp1;
+                            salp1 = nsalp1;
+                            r = Math.hypot(salp1, calp1);
+                            salp1 /= r;
+                            calp1 /= r;
+                            tripn = Math.abs(v) <= 16 * TOL0;
+                            continue;
+                        }
+                    }
+                    // Bisect the bracket
+                    salp1 = (salp1a + salp1b) / 2;
+                    calp1 = (calp1a + calp1b) / 2;
+                    r = Math.hypot(salp1, calp1);
+                    salp1 /= r;
+                    calp1 /= r;
+                    tripn = false;
+                    tripb = Math.abs(salp1a - salp1) + (calp1a - calp1) < TOLB
+                            || Math.abs(salp1 - salp1b) + (calp1 - calp1b) < TOLB;
+                }
+                lengths(w, w.eps, w.sig12, w.ssig1, w.csig1, dn1, w.ssig2, w.csig2, dn2, false);
+                s12x = w.s12b * B;
+            }
+        }
+        return 0 + s12x;
+    }
+
+    /** Computes the distance (s12b) and optionally the reduced length (m12b), both missing a factor of b. */
+    private static void lengths(Work w, double eps, double sig12, double ssig1, double csig1, double dn1, double ssig2,
+            double csig2, double dn2, boolean reducedLength) {
+        double a1 = a1m1f(eps);
+        c1f(eps, w.c1a);
+        double b1 = sinCosSeries(true, ssig2, csig2, w.c1a) - sinCosSeries(true, ssig1, csig1, w.c1a);
+        w.s12b = (1 + a1) * (sig12 + b1);
+        if (reducedLength) {
+            double a2 = a2m1f(eps);
+            c2f(eps, w.c2a);
+            double m0x = a1 - a2;
+            double b2 = sinCosSeries(true, ssig2, csig2, w.c2a) - sinCosSeries(true, ssig1, csig1, w.c2a);
+            double j12 = m0x * sig12 + ((1 + a1) * b1 - (1 + a2) * b2);
+            w.m12b = dn2 * (csig1 * ssig2) - dn1 * (ssig1 * csig2) - csig1 * csig2 * j12;
+        }
+    }
+
+    /** Computes a starting point for Newton's method, or the solution (sig12 >= 0) for short lines. */
+    private static void inverseStart(Work w, double sbet1, double cbet1, double sbet2, double cbet2, double lam12,
+            double slam12, double clam12) {
+        w.sig12 = -1;
+        double sbet12 = sbet2 * cbet1 - cbet2 * sbet1;
+        double cbet12 = cbet2 * cbet1 + sbet2 * sbet1;
+        double sbet12a = sbet2 * cbet1 + cbet2 * sbet1;
+        boolean shortline = cbet12 >= 0 && sbet12 < 0.5 && cbet2 * lam12 < 0.5;
+        double somg12, comg12;
+        if (shortline) {
+            double sbetm2 = (sbet1 + sbet2) * (sbet1 + sbet2);
+            sbetm2 /= sbetm2 + (cbet1 + cbet2) * (cbet1 + cbet2);
+            w.dnm = Math.sqrt(1 + EP2 * sbetm2);
+            double omg12 = lam12 / (F1 * w.dnm);
+            somg12 = Math.sin(omg12);
+            comg12 = Math.cos(omg12);
+        } else {
+            somg12 = slam12;
+            comg12 = clam12;
+        }
+
+        w.salp1 = cbet2 * somg12;
+        w.calp1 = comg12 >= 0 ? sbet12 + cbet2 * sbet1 * somg12 * somg12 / (1 + comg12) : sbet12a - cbet2 * sbet1
+                * somg12 * somg12 / (1 - comg12);
+
+        double ssig12 = Math.hypot(w.salp1, w.calp1);
+        double csig12 = sbet1 * sbet2 + cbet1 * cbet2 * comg12;
+
+        if (shortline && ssig12 < ETOL2) {
+            w.sig12 = Math.atan2(ssig12, csig12);
+        } else if (csig12 >= 0 || ssig12 >= 6 * Math.abs(N) * Math.PI * cbet1 * cbet1) {
+            // Zeroth order spherical approximation is good enough
+        } else {
+            // Nearly antipodal: scale to a coordinate system where the antipodal point is at the origin
+            double lam12x = Math.atan2(-slam12, -clam12);
+            double k2 = sbet1 * sbet1 * EP2;
+            double eps = k2 / (2 * (1 + Math.sqrt(1 + k2)) + k2);
+            double lamscale = F * cbet1 * a3f(eps) * Math.PI;
+            double betscale = lamscale * cbet1;
+            double x = lam12x / lamscale;
+            double y = sbet12a / betscale;
+            if (y > -TOL1 && x > -1 - XTHRESH) {
+                w.salp1 = Math.min(1.0, -x);
+                w.calp1 = -Math.sqrt(1 - w.salp1 * w.salp1);
+            } else {
+                double k = astroid(x, y);
+                double omg12a = lamscale * (-x * k / (1 + k));
+                somg12 = Math.sin(omg12a);
+                comg12 = -Math.cos(omg12a);
+                w.salp1 = cbet2 * somg12;
+                w.calp1 = sbet12a - cbet2 * sbet1 * somg12 * somg12 / (1 - comg12);
+            }
+        }
+        if (!(w.salp1 <= 0)) {
+            double r = Math.hypot(w.salp1, w.calp1);
+            w.salp1 /= r;
+            w.calp1 /= r;
+        } else {
+            w.salp1 = 1;
+            w.calp1 = 0;
+        }
+    }
+
+    /** Computes the longitude error lam12 of the geodesic with azimuth alp1 and, if requested, its derivative. */
+    private static void lambda12(Work w, double sbet1, double cbet1, double dn1, double sbet2, double cbet2,
+            double dn2, double salp1, double calp1, double slam120, double clam120, boolean diffp) {
+        if (sbet1 == 0 && calp1 == 0) {
+            // Break degeneracy of equatorial line
+            calp1 = -TINY;
+        }
+        double salp0 = salp1 * cbet1;
+        double calp0 = Math.hypot(calp1, salp1 * sbet1);
+
+        w.ssig1 = sbet1;
+        double somg1 = salp0 * sbet1;
+        double comg1 = calp1 * cbet1;
+        w.csig1 = comg1;
+        double r = Math.hypot(w.ssig1, w.csig1);
+        w.ssig1 /= r;
+        w.csig1 /= r;
+
+        double salp2 = cbet2 != cbet1 ? salp0 / cbet2 : salp1;
+        double calp2 = cbet2 != cbet1 || Math.abs(sbet2) != -sbet1 ? Math.sqrt(calp1 * cbet1 * calp1 * cbet1
+                + (cbet1 < -sbet1 ? (cbet2 - cbet1) * (cbet1 + cbet2) : (sbet1 - sbet2) * (sbet1 + sbet2)))
+                / cbet2 : Math.abs(calp1);
+        w.ssig2 = sbet2;
+        double somg2 = salp0 * sbet2;
+        double comg2 = calp2 * cbet2;
+        w.csig2 = comg2;
+        r = Math.hypot(w.ssig2, w.csig2);
+        w.ssig2 /= r;
+        w.csig2 /= r;
+
+        w.sig12 = Math.atan2(Math.max(0.0, w.csig1 * w.ssig2 - w.ssig1 * w.csig2), w.csig1 * w.csig2 + w.ssig1
+                * w.ssig2);
+
+        double somg12 = Math.max(0.0, comg1 * somg2 - somg1 * comg2);
+        double comg12 = comg1 * comg2 + somg1 * somg2;
+        double eta = Math.atan2(somg12 * clam120 - comg12 * slam120, comg12 * clam120 + somg12 * slam120);
+        double k2 = calp0 * calp0 * EP2;
+        w.eps = k2 / (2 * (1 + Math.sqrt(1 + k2)) + k2);
+        c3f(w.eps, w.c3a);
+        double b312 = sinCosSeries(true, w.ssig2, w.csig2, w.c3a) - sinCosSeries(true, w.ssig1, w.csig1, w.c3a);
+        w.lam12 = eta - F * a3f(w.eps) * salp0 * (w.sig12 + b312);
+
+        if (diffp) {
+            if (calp2 == 0) {
+                w.dlam12 = -2 * F1 * dn1 / sbet1;
+            } else {
+                lengths(w, w.eps, w.sig12, w.ssig1, w.csig1, dn1, w.ssig2, w.csig2, dn2, true);
+                w.dlam12 = w.m12b * F1 / (calp2 * cbet2);
+            }
+        }
+    }
+
+    /** Solves k^4+2*k^3-(x^2+y^2-1)*k^2-2*y^2*k-y^2 = 0 for the positive root k. */
+    private static double astroid(double x, double y) {
+        double p = x * x, q = y * y, r = (p + q - 1) / 6;
+        if (q == 0 && r <= 0) {
+            return 0;
+        }
+        double s = p * q / 4;
+        double r2 = r * r, r3 = r * r2;
+        double disc = s * (s + 2 * r3);
+        double u = r;
+        if (disc >= 0) {
+            double t3 = s + r3;
+            t3 += t3 < 0 ? -Math.sqrt(disc) : Math.sqrt(disc);
+            double t = Math.cbrt(t3);
+            u += t + (t != 0 ? r2 / t : 0);
+        } else {
+            double ang = Math.atan2(Math.sqrt(-disc), -(s + r3));
+            u += 2 * r * Math.cos(ang / 3);
+        }
+        double v = Math.sqrt(u * u + q);
+        double uv = u < 0 ? q / (v - u) : u + v;
+        double w = (uv - q) / (2 * v);
+        return uv / (Math.sqrt(uv + w * w) + w);
+    }
+
+    private static double a3f(double eps) {
+        return polyval(ORDER - 1, A3X, 0, eps);
+    }
+
+    private static void c3f(double eps, double[] c) {
+        double mult = 1;
+        int o = 0;
+        for (int l = 1; l < ORDER; ++l) {
+            int m = ORDER - l - 1;
+            mult *= eps;
+            c[l] = mult * polyval(m, C3X, o, eps);
+            o += m + 1;
+        }
+    }
+
+    private static double a1m1f(double eps) {
+        double eps2 = eps * eps;
+        double t = eps2 * (eps2 * (eps2 + 4) + 64) / 256;
+        return (t + eps) / (1 - eps);
+    }
+
+    private static final double[] COEFF_C1 = { -1, 6, -16, 32, -9, 64, -128, 2048, 9, -16, 768, 3, -5, 512, -7, 1280,
+            -7, 2048 };
+
+    private static void c1f(double eps, double[] c) {
+        double eps2 = eps * eps, d = eps;
+        int o = 0;
+        for (int l = 1; l <= ORDER; ++l) {
+            int m = (ORDER - l) / 2;
+            c[l] = d * polyval(m, COEFF_C1, o, eps2) / COEFF_C1[o + m + 1];
+            o += m + 2;
+            d *= eps;
+        }
+    }
+
+    private static double a2m1f(double eps) {
+        double eps2 = eps * eps;
+        double t = eps2 * (eps2 * (-11 * eps2 - 28) - 192) / 256;
+        return (t - eps) / (1 + eps);
+    }
+
+    private static final double[] COEFF_C2 = { 1, 2, 16, 32, 35, 64, 384, 2048, 15, 80, 768, 7, 35, 512, 63, 1280, 77,
+            2048 };
+
+    private static void c2f(double eps, double[] c) {
+        double eps2 = eps * eps, d = eps;
+        int o = 0;
+        for (int l = 1; l <= ORDER; ++l) {
+            int m = (ORDER - l) / 2;
+            c[l] = d * polyval(m, COEFF_C2, o, eps2) / COEFF_C2[o + m + 1];
+            o += m + 2;
+            d *= eps;
+        }
+    }
+
+    /** Evaluates sum(c[i] * sin(2*i*x), i, 1, n) using Clenshaw summation. */
+    private static double sinCosSeries(boolean sinp, double sinx, double cosx, double[] c) {
+        int k = c.length, n = k - (sinp ? 1 : 0);
+        double ar = 2 * (cosx - sinx) * (cosx + sinx);
+        double y0 = (n & 1) != 0 ? c[--k] : 0, y1 = 0;
+        n /= 2;
+        while (n-- != 0) {
+            y1 = ar * y0 - y1 + c[--k];
+            y0 = ar * y1 - y0 + c[--k];
+        }
+        return sinp ? 2 * sinx * cosx * y0 : cosx * (y0 - y1);
+    }
+
+    /** Evaluates the polynomial of degree n with coefficients p[s..s+n], highest degree first. */
+    private static double polyval(int n, double[] p, int s, double x) {
+        double y = n < 0 ? 0 : p[s++];
+        while (--n >= 0) {
+            y = y * x + p[s++];
+        }
+        return y;
+    }
+
+    /** Rounds tiny angles so that they are exactly representable with 1/16 degree resolution near zero. */
+    private static double angRound(double x) {
+        final double z = 1 / 16.0;
+        if (x == 0) {
+            return 0;
+        }
+        double y = Math.abs(x);
+        y = y < z ? z - (z - y) : y;
+        return x < 0 ? -y : y;
+    }
+
+    /** Returns y - x reduced to [-180, 180] accurately, the rounding error is stored in w.angDiffError. */
+    private static double angDiff(Work w, double x, double y) {
+        double d = sum(w, angNormalize(-x), angNormalize(y));
+        double t = w.sumError;
+        d = angNormalize(d);
+        double result = sum(w, d == 180 && t > 0 ? -180 : d, t);
+        w.angDiffError = w.sumError;
+        return result;
+    }
+
+    /** Returns u + v, the rounding error is stored in w.sumError. */
+    private static double sum(Work w, double u, double v) {
+        double s = u + v;
+        double up = s - v;
+        double vpp = s - up;
+        up -= u;
+        vpp -= v;
+        w.sumError = -(up + vpp);
+        return s;
+    }
+
+    private static double angNormalize(double x) {
+        x = Math.IEEEremainder(x, 360.0);
+        return x != -180 ? x : 180;
+    }
+
+    /** Sine of an angle in degrees, exact for multiples of 90 degrees. */
+    private static double sind(double x) {
+        double r = x % 360.0;
+        int q = (int) Math.round(r / 90);
+        r = Math.toRadians(r - 90 * q);
+        double s = Math.sin(r), c = Math.cos(r);
+        double sinx;
+        switch (q & 3) {
+        case 0:
+            sinx = s;
+            break;
+        case 1:
+            sinx = c;
+            break;
+        case 2:
+            sinx = -s;
+            break;
+        default:
+            sinx = -c;
+        }
+        return x != 0 ? sinx + 0.0 : sinx;
+    }
+
+    /** Cosine of an angle in degrees, exact for multiples of 90 degrees. */
+    private static double cosd(double x) {
+        double r = x % 360.0;
+        int q = (int) Math.round(r / 90);
+        r = Math.toRadians(r - 90 * q);
+        double s = Math.sin(r), c = Math.cos(r);
+        double cosx;
+        switch (q & 3) {
+        case 0:
+            cosx = c;
+            break;
+        case 1:
+            cosx = -s;
+            break;
+        case 2:
+            cosx = -c;
+            break;
+        default:
+            cosx = s;
+        }
+        return cosx + 0.0;
+    }
+
+    /** Scratch state of a single inverse calculation. */
+    private static final class Work {
+        final double[] c1a = new double[ORDER + 1];
+        final double[] c2a = new double[ORDER + 1];
+        final double[] c3a = new double[ORDER];
+        double s12b, m12b;
+        double sig12, salp1, calp1, dnm;
+        double ssig1, csig1, ssig2, csig2, eps, lam12, dlam12;
+        double sumError, angDiffError;
+    }
+}
@@ -14,13 +14,588 @@
  */
 package dk.dma.enav.model.geometry;
 
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.asin;
+import static java.lang.Math.atan;
+import static java.lang.Math.cos;
+import static java.lang.Math.log;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sin;
+import static java.lang.Math.sinh;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.tan;
+import static java.lang.Math.toDegrees;
+import static java.lang.Math.toRadians;
+import static java.util.Objects.requireNonNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A polygon given by its vertices. An edge joins each vertex to the next, and the last vertex to the first. The edges
+ * are rhumb lines in the {@link CoordinateSystem#CARTESIAN cartesian} coordinate system, and great circles in the
+ * {@link CoordinateSystem#GEODETIC geodetic} coordinate system.
+ * <p>
+ * Each edge takes the shorter way around the earth, so a polygon may cross the antimeridian. Polygons enclosing a pole
+ * are not supported.
+ * <p>
+ * A {@link BoundingBox} is bounded by parallels and meridians in both coordinate systems, and is compared with
+ * polygons of either coordinate system as such.
+ * <p>
+ * Testing a position takes time linear in the number of vertices. Polygons tested against many positions should be
+ * {@link #prepare() prepared}.
+ */
 public class Polygon extends Area {
     /** serialVersionUID. */
     private static final long serialVersionUID = 1L;
 
-    public Polygon(CoordinateSystem cs) {
+    /** The latitudes of the vertices. */
+    final double[] latitudes;
+
+    /**
+     * The longitudes of the vertices. The longitudes are unwrapped so the longitudes of adjacent vertices differ by
+     * less than 180 degrees, the longitudes of a polygon crossing the antimeridian extend beyond [-180, 180].
+     */
+    final double[] longitudes;
+
+    /** The bounds of the polygon, including the parts of great circle edges bulging towards the poles. */
+    final double south, north, west, east;
+
+    /**
+     * Creates a new polygon.
+     * 
+     * @param vertices
+     *            the vertices of the polygon, the last vertex may repeat the first
+     * @param cs
+     *            the coordinate system of the edges
+     * @throws IllegalArgumentException
+     *             if there are less than 3 vertices, if two adjacent vertices are on opposite meridians, or if the
+     *             polygon encloses a pole
+     */
+    public Polygon(List<Position> vertices, CoordinateSystem cs) {
+        this(cs, vertices(latitudes(vertices), longitudes(vertices)));
+    }
+
+    /**
+     * Creates a new polygon.
+     * 
+     * @param latitudes
+     *            the latitudes of the vertices
+     * @param longitudes
+     *            the longitudes of the vertices
+     * @param cs
+     *            the coordinate system of the edges
+     * @throws IllegalArgumentException
+     *             if the arrays differ in length, if there are less than 3 vertices, if a coordinate is invalid, if two
+     *             adjacent vertices are on opposite meridians, or if the polygon encloses a pole
+     */
+    public Polygon(double[] latitudes, double[] longitudes, CoordinateSystem cs) {
+        this(cs, vertices(requireNonNull(latitudes, "latitudes is null").clone(),
+                requireNonNull(longitudes, "longitudes is null").clone()));
+    }
+
+    private Polygon(CoordinateSystem cs, double[][] vertices) {
+        this(cs, vertices[0], vertices[1]);
+    }
+
+    /** Creates a polygon of the specified bounds without vertices, {@link BoundingBox} overrides their uses. */
+    Polygon(CoordinateSystem cs, double south, double north, double west, double east) {
         super(cs);
-        // TODO Auto-generated constructor stub
+        this.latitudes = null;
+        this.longitudes = null;
+        this.south = south;
+        this.north = north;
+        this.west = west;
+        this.east = east;
+    }
+
+    /** Creates a polygon of validated vertices, the arrays are not copied. */
+    Polygon(CoordinateSystem cs, double[] latitudes, double[] longitudes) {
+        super(cs);
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        double s = Double.POSITIVE_INFINITY, n = Double.NEGATIVE_INFINITY;
+        double w = Double.POSITIVE_INFINITY, e = Double.NEGATIVE_INFINITY;
+        for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+            s = min(s, latitudes[i]);
+            n = max(n, latitudes[i]);
+            w = min(w, longitudes[i]);
+            e = max(e, longitudes[i]);
+            if (cs == CoordinateSystem.GEODETIC) {
+                double[] bulge = greatCircleBulge(latitudes[j], longitudes[j], latitudes[i], longitudes[i]);
+                s = min(s, bulge[0]);
+                n = max(n, bulge[1]);
+            }
+        }
+        south = s;
+        north = n;
+        west = w;
+        east = e;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the specified position is inside the polygon, otherwise <tt>false</tt>.
+     * 
+     * @param latitude
+     *            the latitude of the position
+     * @param longitude
+     *            the longitude of the position
+     * @return true if the specified position is inside the polygon, otherwise false
+     */
+    public boolean contains(double latitude, double longitude) {
+        double x = unwrap(longitude);
+        if (Double.isNaN(x) || latitude < south || latitude > north) {
+            return false;
+        }
+        // Count the edges crossed by the meridian going north from the position
+        boolean geodetic = cs == CoordinateSystem.GEODETIC;
+        double y = geodetic ? tan(toRadians(latitude)) : mercator(latitude);
+        boolean inside = false;
+        for (int i = 0, j = longitudes.length - 1; i < longitudes.length; j = i++) {
+            double x1 = longitudes[j];
+            double x2 = longitudes[i];
+            if (x1 <= x != x2 <= x) {
+                double edgeY;
+                if (geodetic) {
+                    edgeY = (tan(toRadians(latitudes[j])) * sin(toRadians(x2 - x)) + tan(toRadians(latitudes[i]))
+                            * sin(toRadians(x - x1)))
+                            / sin(toRadians(x2 - x1));
+                } else {
+                    double y1 = mercator(latitudes[j]);
+                    edgeY = y1 + (mercator(latitudes[i]) - y1) * (x - x1) / (x2 - x1);
+                }
+                if (y < edgeY) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the specified element is fully contained in the polygon, otherwise <tt>false</tt>. Only
+     * positions, bounding boxes and polygons in the same coordinate system are supported.
+     * 
+     * @param element
+     *            the element to test
+     * @return true if the specified element is fully contained in the polygon, otherwise false
+     */
+    @Override
+    public boolean contains(Element element) {
+        if (element instanceof Position) {
+            Position p = (Position) element;
+            return contains(p.latitude, p.longitude);
+        } else if (element instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) element;
+            return contains(box.getMinLat(), box.getMinLon()) && !edgesMeet(box);
+        } else if (element instanceof Polygon) {
+            Polygon other = checkCoordinateSystem((Polygon) element);
+            for (int i = 0; i < other.latitudes.length; i++) {
+                if (!contains(other.latitudes[i], other.longitudes[i])) {
+                    return false;
+                }
+            }
+            return !edgesCross(other);
+        }
+        return super.contains(element);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the specified element is fully or partially contained in the polygon, otherwise
+     * <tt>false</tt>. Only positions, bounding boxes and polygons in the same coordinate system are supported.
+     * 
+     * @param element
+     *            the element to test
+     * @return true if the specified element is fully or partially contained in the polygon, otherwise false
+     */
+    @Override
+    public boolean intersects(Element element) {
+        if (element instanceof Position) {
+            return contains(element);
+        } else if (element instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) element;
+            return contains(box.getMinLat(), box.getMinLon()) || edgesMeet(box);
+        } else if (element instanceof Polygon) {
+            Polygon other = checkCoordinateSystem((Polygon) element);
+            if (other.south > north || other.north < south || Double.isNaN(longitudeShift(other, -360))) {
+                return false;
+            }
+            return contains(other.latitudes[0], other.longitudes[0])
+                    || other.contains(latitudes[0], longitudes[0]) || edgesCross(other);
+        }
+        return super.intersects(element);
+    }
+
+    /**
+     * Returns a prepared form of this polygon, for testing many positions against the polygon.
+     * 
+     * @return a prepared form of this polygon
+     */
+    public PreparedPolygon prepare() {
+        return new PreparedPolygon(this);
+    }
+
+    /**
+     * Returns the southernmost latitude of the polygon. The edges of a polygon in the geodetic coordinate system may
+     * extend beyond the latitudes of its vertices.
+     * 
+     * @return the southernmost latitude of the polygon
+     */
+    public double getMinLat() {
+        return south;
+    }
+
+    /**
+     * Returns the northernmost latitude of the polygon.
+     * 
+     * @return the northernmost latitude of the polygon
+     * @see #getMinLat()
+     */
+    public double getMaxLat() {
+        return north;
+    }
+
+    /**
+     * Returns the westernmost longitude of the polygon. The longitudes of a polygon crossing the antimeridian extend
+     * beyond [-180, 180], so either the westernmost longitude is less than -180 or the easternmost longitude is greater
+     * than 180.
+     * 
+     * @return the westernmost longitude of the polygon
+     */
+    public double getMinLon() {
+        return west;
+    }
+
+    /**
+     * Returns the easternmost longitude of the polygon.
+     * 
+     * @return the easternmost longitude of the polygon
+     * @see #getMinLon()
+     */
+    public double getMaxLon() {
+        return east;
+    }
+
+    /**
+     * Returns the number of vertices.
+     * 
+     * @return the number of vertices
+     */
+    public int size() {
+        return latitudes.length;
+    }
+
+    /**
+     * Returns the vertex with the specified index.
+     * 
+     * @param index
+     *            the index of the vertex
+     * @return the vertex
+     */
+    public Position getVertex(int index) {
+        return Position.create(latitudes[index], normalize(longitudes[index]));
+    }
+
+    /**
+     * Returns the vertices of the polygon, not repeating the first vertex.
+     * 
+     * @return the vertices of the polygon
+     */
+    public List<Position> getVertices() {
+        return new AbstractList<Position>() {
+            public Position get(int index) {
+                return getVertex(index);
+            }
+
+            public int size() {
+                return Polygon.this.size();
+            }
+        };
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        Polygon that = (Polygon) obj;
+        return cs == that.cs && Arrays.equals(latitudes, that.latitudes) && Arrays.equals(longitudes, that.longitudes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(latitudes) + Arrays.hashCode(longitudes);
+    }
+
+    @Override
+    public String toString() {
+        return "Polygon " + getVertices();
+    }
+
+    /**
+     * Returns the specified longitude shifted by a multiple of 360 degrees into the longitudes of the polygon, or NaN
+     * if the longitude is outside the polygon.
+     */
+    final double unwrap(double longitude) {
+        double x = longitude < west ? longitude + 360 : longitude > east ? longitude - 360 : longitude;
+        return x >= west && x <= east ? x : Double.NaN;
+    }
+
+    private Polygon checkCoordinateSystem(Polygon other) {
+        if (other.cs != cs) {
+            throw new IllegalArgumentException("Cannot compare polygons in different coordinate systems");
+        }
+        return other;
+    }
+
+    /**
+     * Returns the multiple of 360 degrees, starting from the specified shift, that moves the longitudes of the other
+     * polygon to overlap the longitudes of this polygon, or NaN if there is no such shift.
+     */
+    private double longitudeShift(Polygon other, double from) {
+        for (double shift = from; shift <= 360; shift += 360) {
+            if (other.west + shift <= east && other.east + shift >= west) {
+                return shift;
+            }
+        }
+        return Double.NaN;
+    }
+
+    /** Returns whether an edge of this polygon crosses or touches an edge of the other polygon. */
+    private boolean edgesCross(Polygon other) {
+        if (cs == CoordinateSystem.GEODETIC) {
+            double[] a = unitVectors();
+            double[] b = other.unitVectors();
+            for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+                for (int k = 0, l = other.latitudes.length - 1; k < other.latitudes.length; l = k++) {
+                    if (arcsCross(a, j, i, b, l, k)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        // Rhumb lines are straight lines in the Mercator projection
+        for (double shift = longitudeShift(other, -360); !Double.isNaN(shift); shift = longitudeShift(other,
+                shift + 360)) {
+            for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+                double x1 = longitudes[j], y1 = mercator(latitudes[j]);
+                double x2 = longitudes[i], y2 = mercator(latitudes[i]);
+                for (int k = 0, l = other.latitudes.length - 1; k < other.latitudes.length; l = k++) {
+                    double x3 = other.longitudes[l] + shift, y3 = mercator(other.latitudes[l]);
+                    double x4 = other.longitudes[k] + shift, y4 = mercator(other.latitudes[k]);
+                    if (side(x1, y1, x2, y2, x3, y3) * side(x1, y1, x2, y2, x4, y4) <= 0
+                            && side(x3, y3, x4, y4, x1, y1) * side(x3, y3, x4, y4, x2, y2) <= 0
+                            && min(x1, x2) <= max(x3, x4) && min(x3, x4) <= max(x1, x2)
+                            && min(y1, y2) <= max(y3, y4) && min(y3, y4) <= max(y1, y2)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns whether an edge of this polygon meets the box, including its boundary. */
+    private boolean edgesMeet(BoundingBox box) {
+        double s = box.getMinLat(), n = box.getMaxLat();
+        if (s > north || n < south) {
+            return false;
+        }
+        for (double shift = longitudeShift(box, -360); !Double.isNaN(shift); shift = longitudeShift(box, shift + 360)) {
+            double w = box.getMinLon() + shift, e = box.getMaxLon() + shift;
+            for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+                double x1 = longitudes[j], x2 = longitudes[i];
+                // The part of the edge within the longitudes of the box
+                double from = max(min(x1, x2), w), to = min(max(x1, x2), e);
+                if (from > to) {
+                    continue;
+                }
+                double edgeSouth, edgeNorth;
+                if (x1 == x2) {
+                    edgeSouth = min(latitudes[j], latitudes[i]);
+                    edgeNorth = max(latitudes[j], latitudes[i]);
+                } else {
+                    double lat1 = edgeLatitude(j, i, from), lat2 = edgeLatitude(j, i, to);
+                    if (cs == CoordinateSystem.GEODETIC) {
+                        double[] bounds = greatCircleBulge(lat1, from, lat2, to);
+                        edgeSouth = bounds[0];
+                        edgeNorth = bounds[1];
+                    } else {
+                        // The latitude of a rhumb line is monotonic in the longitude
+                        edgeSouth = min(lat1, lat2);
+                        edgeNorth = max(lat1, lat2);
+                    }
+                }
+                if (edgeSouth <= n && edgeNorth >= s) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the latitude of the edge from vertex j to vertex i at the longitude, the edge must not be vertical. */
+    private double edgeLatitude(int j, int i, double longitude) {
+        double x1 = longitudes[j], x2 = longitudes[i];
+        if (cs == CoordinateSystem.GEODETIC) {
+            return toDegrees(atan((tan(toRadians(latitudes[j])) * sin(toRadians(x2 - longitude))
+                    + tan(toRadians(latitudes[i])) * sin(toRadians(longitude - x1)))
+                    / sin(toRadians(x2 - x1))));
+        }
+        double y1 = mercator(latitudes[j]);
+        return toDegrees(atan(sinh(y1 + (mercator(latitudes[i]) - y1) * (longitude - x1) / (x2 - x1))));
+    }
+
+    /** Returns the unit vectors of the vertices, three coordinates per vertex. */
+    private double[] unitVectors() {
+        double[] v = new double[latitudes.length * 3];
+        for (int i = 0; i < latitudes.length; i++) {
+            double lat = toRadians(latitudes[i]);
+            double lon = toRadians(longitudes[i]);
+            v[3 * i] = cos(lat) * cos(lon);
+            v[3 * i + 1] = cos(lat) * sin(lon);
+            v[3 * i + 2] = sin(lat);
+        }
+        return v;
+    }
+
+    /** Returns whether the great circle arc a[i]-a[j] crosses or touches the great circle arc b[k]-b[l]. */
+    private static boolean arcsCross(double[] a, int i, int j, double[] b, int k, int l) {
+        i *= 3;
+        j *= 3;
+        k *= 3;
+        l *= 3;
+        double n1x = a[i + 1] * a[j + 2] - a[i + 2] * a[j + 1];
+        double n1y = a[i + 2] * a[j] - a[i] * a[j + 2];
+        double n1z = a[i] * a[j + 1] - a[i + 1] * a[j];
+        double n2x = b[k + 1] * b[l + 2] - b[k + 2] * b[l + 1];
+        double n2y = b[k + 2] * b[l] - b[k] * b[l + 2];
+        double n2z = b[k] * b[l + 1] - b[k + 1] * b[l];
+        // The end points of each arc must be on opposite sides of the great circle of the other arc
+        double sideK = n1x * b[k] + n1y * b[k + 1] + n1z * b[k + 2];
+        double sideL = n1x * b[l] + n1y * b[l + 1] + n1z * b[l + 2];
+        double sideI = n2x * a[i] + n2y * a[i + 1] + n2z * a[i + 2];
+        double sideJ = n2x * a[j] + n2y * a[j + 1] + n2z * a[j + 2];
+        if (sideK * sideL > 0 || sideI * sideJ > 0) {
+            return false;
+        }
+        // The great circles intersect in two antipodal points, the arcs must meet at the same one
+        double px = n1y * n2z - n1z * n2y;
+        double py = n1z * n2x - n1x * n2z;
+        double pz = n1x * n2y - n1y * n2x;
+        double pa = px * (a[i] + a[j]) + py * (a[i + 1] + a[j + 1]) + pz * (a[i + 2] + a[j + 2]);
+        double pb = px * (b[k] + b[l]) + py * (b[k + 1] + b[l + 1]) + pz * (b[k + 2] + b[l + 2]);
+        return pa * pb >= 0;
+    }
+
+    /** Returns the cross product of (x2 - x1, y2 - y1) and (x - x1, y - y1), the sign tells the side of the line. */
+    private static double side(double x1, double y1, double x2, double y2, double x, double y) {
+        return (x2 - x1) * (y - y1) - (y2 - y1) * (x - x1);
+    }
+
+    /**
+     * Returns the southernmost and northernmost latitude of the great circle arc between two positions, the latitude
+     * of an arc may exceed the latitudes of its end points.
+     */
+    static double[] greatCircleBulge(double lat1, double lon1, double lat2, double lon2) {
+        double[] bounds = { min(lat1, lat2), max(lat1, lat2) };
+        double phi1 = toRadians(lat1), phi2 = toRadians(lat2);
+        double ax = cos(phi1) * cos(toRadians(lon1)), ay = cos(phi1) * sin(toRadians(lon1)), az = sin(phi1);
+        double bx = cos(phi2) * cos(toRadians(lon2)), by = cos(phi2) * sin(toRadians(lon2)), bz = sin(phi2);
+        double nx = ay * bz - az * by, ny = az * bx - ax * bz, nz = ax * by - ay * bx;
+        double length = sqrt(nx * nx + ny * ny + nz * nz);
+        if (length < 1e-15) {
+            return bounds;
+        }
+        nx /= length;
+        ny /= length;
+        nz /= length;
+        double horizontal = sqrt(nx * nx + ny * ny);
+        if (horizontal < 1e-15) {
+            // Along the equator
+            return bounds;
+        }
+        // The northernmost point of the great circle, the southernmost point is its antipode
+        double vx = -nz * nx / horizontal, vy = -nz * ny / horizontal, vz = horizontal;
+        double latitude = toDegrees(asin(min(1, horizontal)));
+        // The point is on the arc if it is between the end points, measured along the great circle
+        double va = dotCross(ax, ay, az, vx, vy, vz, nx, ny, nz);
+        double vb = dotCross(vx, vy, vz, bx, by, bz, nx, ny, nz);
+        if (va >= 0 && vb >= 0) {
+            bounds[1] = latitude;
+        } else if (va <= 0 && vb <= 0) {
+            bounds[0] = -latitude;
+        }
+        return bounds;
+    }
+
+    /** Returns (a x b) . n. */
+    private static double dotCross(double ax, double ay, double az, double bx, double by, double bz, double nx,
+            double ny, double nz) {
+        return (ay * bz - az * by) * nx + (az * bx - ax * bz) * ny + (ax * by - ay * bx) * nz;
+    }
+
+    /** Returns the y coordinate of the Mercator projection of the latitude, rhumb lines are straight lines in it. */
+    static double mercator(double latitude) {
+        return log(tan(PI / 4 + toRadians(latitude) / 2));
+    }
+
+    /** Returns the longitude shifted by a multiple of 360 degrees into [-180, 180]. */
+    private static double normalize(double longitude) {
+        return longitude > 180 ? longitude - 360 : longitude < -180 ? longitude + 360 : longitude;
+    }
+
+    private static double[] latitudes(List<Position> vertices) {
+        double[] latitudes = new double[requireNonNull(vertices, "vertices is null").size()];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = requireNonNull(vertices.get(i), "vertex is null").latitude;
+        }
+        return latitudes;
+    }
+
+    private static double[] longitudes(List<Position> vertices) {
+        double[] longitudes = new double[vertices.size()];
+        for (int i = 0; i < longitudes.length; i++) {
+            longitudes[i] = vertices.get(i).longitude;
+        }
+        return longitudes;
+    }
+
+    /** Validates the vertices and unwraps the longitudes, the arrays may be modified. */
+    private static double[][] vertices(double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("Got " + latitudes.length + " latitudes but " + longitudes.length
+                    + " longitudes");
+        }
+        int n = latitudes.length;
+        if (n > 1 && latitudes[0] == latitudes[n - 1] && longitudes[0] == longitudes[n - 1]) {
+            n--;
+        }
+        if (n < 3) {
+            throw new IllegalArgumentException("A polygon must have at least 3 vertices, was " + n);
+        }
+        double winding = 0;
+        for (int i = 0; i < n; i++) {
+            Position.verifyLatitude(latitudes[i]);
+            Position.verifyLongitude(longitudes[i]);
+            double delta = normalize(longitudes[(i + 1) % n] - longitudes[i]);
+            if (abs(delta) == 180) {
+                throw new IllegalArgumentException("Vertex " + i + " and the next vertex are on opposite meridians");
+            }
+            winding += delta;
+            if (i > 0) {
+                longitudes[i] = longitudes[i - 1] + normalize(longitudes[i] - longitudes[i - 1]);
+            }
+        }
+        if (abs(winding) > 180) {
+            throw new IllegalArgumentException("Polygons enclosing a pole are not supported");
+        }
+        return new double[][] { Arrays.copyOf(latitudes, n), Arrays.copyOf(longitudes, n) };
+    }
 }
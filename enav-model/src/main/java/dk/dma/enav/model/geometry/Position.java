@@ -250,11 +250,20 @@ public class Position implements Element {
      * @return the rhumb line bearing in degrees
      */
     public double rhumbLineBearingTo(Position position) {
-        double lat1 = toRadians(latitude);
-        double lat2 = toRadians(position.latitude);
+        return rhumbLineBearing(latitude, longitude, position.latitude, position.longitude);
+    }
+
+    /**
+     * Calculates the rhumb line bearing from one point to another.
+     *
+     * @return the rhumb line bearing in degrees
+     */
+    static double rhumbLineBearing(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double lat1 = toRadians(latitude1);
+        double lat2 = toRadians(latitude2);
         double dPhi = log(tan(lat2/2 + PI/4)/tan(lat1/2 + PI/4));
 
-        double dLon = toRadians(position.longitude - longitude);
+        double dLon = toRadians(longitude2 - longitude1);
         if (abs(dLon) > PI) {
             dLon = dLon > 0 ? -(2 * PI - dLon) : 2 * PI + dLon;
         }
@@ -117,19 +117,15 @@ public class PositionTime extends Position {
         }
 
         final CoordinateConverter coordinateConverter = new CoordinateConverter(pt1.getLongitude(), pt1.getLatitude());
-        final double x0 = coordinateConverter.lon2x(pt1.getLongitude(), pt1.getLatitude());
-        final double y0 = coordinateConverter.lat2y(pt1.getLongitude(), pt1.getLatitude());
         final int dt = (int) ((time - pt1.getTime()) / 1000);  //dt the time sailed in seconds
         final double dist = dt * sog * 0.5144;                 // The distance sailed in dt seconds
         final double angle = compass2cartesian(cog);           // COG converted to cartesian angle
         final double dx = cos(angle / 180 * Math.PI) * dist;   // Distance sailed horisontal
         final double dy = sin(angle / 180 * Math.PI) * dist;   // Distance sailed vertical
-        final double x1 = x0 + dx;
-        final double y1 = y0 + dy;
-        final double lon1 = coordinateConverter.x2Lon(x1, y1); // The new longitude
-        final double lat1 = coordinateConverter.y2Lat(x1, y1); // The new latitude
+        final double[] lonLat = new double[2];
+        coordinateConverter.toLonLat(dx, dy, lonLat);          // pt1 projects to (0,0), so (dx,dy) is the new position
 
-        return PositionTime.create(lat1, lon1, time);
+        return PositionTime.create(lonLat[1], lonLat[0], time);
     }
 
     /**
@@ -0,0 +1,220 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry;
+
+import static java.lang.Math.cos;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.tan;
+import static java.lang.Math.toRadians;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * A {@link Polygon} prepared for testing many positions. The bounds of the polygon are cached, and the edges are
+ * indexed by longitude in bands of equal width. A position is only tested against the edges overlapping its band, so
+ * testing a position usually takes constant time, also for polygons with many thousands of vertices.
+ * <p>
+ * Positions are tested by counting the edges crossed by the meridian going north from the position. The equation of
+ * each edge is precomputed, in the Mercator projection for rhumb lines and as tan(latitude) = a cos(longitude) + b
+ * sin(longitude) for great circles.
+ * 
+ * @see Polygon#prepare()
+ */
+@Immutable
+public final class PreparedPolygon {
+
+    /** The maximum number of longitude bands. */
+    private static final int MAX_BANDS = 4096;
+
+    /** The number of values stored for each edge in {@link #edges}. */
+    private static final int STRIDE = 4;
+
+    /** The polygon. */
+    private final Polygon polygon;
+
+    private final boolean geodetic;
+
+    /**
+     * For each edge the western and eastern longitude and two coefficients of the equation of the edge. Vertical edges
+     * are never crossed and are left out.
+     */
+    private final double[] edges;
+
+    /** The number of bands divided by the width of the polygon. */
+    private final double bandScale;
+
+    /** The offsets into {@link #bandEdges} of the edges of each band, followed by the number of band edges. */
+    private final int[] bandOffsets;
+
+    /** The offsets into {@link #edges} of the edges of each band. */
+    private final int[] bandEdges;
+
+    PreparedPolygon(Polygon polygon) {
+        this(polygon, polygon.cs == CoordinateSystem.GEODETIC, polygon.latitudes, polygon.longitudes);
+    }
+
+    /**
+     * Prepares a polygon with the specified vertices and edges, which may differ from those stored by the polygon.
+     * Bounding boxes store no vertices, and their edges are rhumb lines in both coordinate systems.
+     */
+    PreparedPolygon(Polygon polygon, boolean geodetic, double[] lat, double[] lon) {
+        this.polygon = requireNonNull(polygon, "polygon is null");
+        this.geodetic = geodetic;
+
+        double[] e = new double[lat.length * STRIDE];
+        int count = 0;
+        for (int i = 0, j = lat.length - 1; i < lat.length; j = i++) {
+            if (lon[i] == lon[j]) {
+                continue;
+            }
+            int w = lon[j] < lon[i] ? j : i;
+            int east = w == j ? i : j;
+            e[count] = lon[w];
+            e[count + 1] = lon[east];
+            if (geodetic) {
+                // The normal of the plane of the great circle, n . p = 0 for all points p of the circle
+                double x1 = cos(toRadians(lat[w])) * cos(toRadians(lon[w]));
+                double y1 = cos(toRadians(lat[w])) * sin(toRadians(lon[w]));
+                double z1 = sin(toRadians(lat[w]));
+                double x2 = cos(toRadians(lat[east])) * cos(toRadians(lon[east]));
+                double y2 = cos(toRadians(lat[east])) * sin(toRadians(lon[east]));
+                double z2 = sin(toRadians(lat[east]));
+                double nx = y1 * z2 - z1 * y2;
+                double ny = z1 * x2 - x1 * z2;
+                double nz = x1 * y2 - y1 * x2;
+                e[count + 2] = -nx / nz;
+                e[count + 3] = -ny / nz;
+            } else {
+                double y1 = Polygon.mercator(lat[w]);
+                e[count + 2] = y1;
+                e[count + 3] = (Polygon.mercator(lat[east]) - y1) / (lon[east] - lon[w]);
+            }
+            count += STRIDE;
+        }
+        edges = count == e.length ? e : Arrays.copyOf(e, count);
+        int edgeCount = count / STRIDE;
+
+        // Use as many bands as edges, unless long edges would make the index much larger than the polygon
+        double width = max(polygon.east - polygon.west, Double.MIN_NORMAL);
+        int bands = max(1, min(edgeCount, MAX_BANDS));
+        long entries;
+        while ((entries = countEntries(bands, width)) > 8L * edgeCount && bands > 1) {
+            bands = max(1, (int) (bands / sqrt((double) entries / (8L * edgeCount))) - 1);
+        }
+        bandScale = bands / width;
+
+        // Fill the bands, counting the edges of each band first
+        bandOffsets = new int[bands + 1];
+        for (int k = 0; k < edges.length; k += STRIDE) {
+            for (int b = band(edges[k]), last = band(edges[k + 1]); b <= last; b++) {
+                bandOffsets[b + 1]++;
+            }
+        }
+        for (int b = 0; b < bands; b++) {
+            bandOffsets[b + 1] += bandOffsets[b];
+        }
+        bandEdges = new int[(int) entries];
+        int[] next = Arrays.copyOf(bandOffsets, bands);
+        for (int k = 0; k < edges.length; k += STRIDE) {
+            for (int b = band(edges[k]), last = band(edges[k + 1]); b <= last; b++) {
+                bandEdges[next[b]++] = k;
+            }
+        }
+    }
+
+    /** Returns the number of band entries when using the specified number of bands. */
+    private long countEntries(int bands, double width) {
+        double scale = bands / width;
+        long entries = 0;
+        for (int k = 0; k < edges.length; k += STRIDE) {
+            entries += band(edges[k + 1], scale, bands) - band(edges[k], scale, bands) + 1;
+        }
+        return entries;
+    }
+
+    private int band(double longitude) {
+        return band(longitude, bandScale, bandOffsets.length - 1);
+    }
+
+    private int band(double longitude, double scale, int bands) {
+        return min((int) ((longitude - polygon.west) * scale), bands - 1);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the specified position is inside the polygon, otherwise <tt>false</tt>.
+     * 
+     * @param position
+     *            the position to test
+     * @return true if the specified position is inside the polygon, otherwise false
+     */
+    public boolean contains(Position position) {
+        return contains(position.latitude, position.longitude);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the specified position is inside the polygon, otherwise <tt>false</tt>.
+     * 
+     * @param latitude
+     *            the latitude of the position
+     * @param longitude
+     *            the longitude of the position
+     * @return true if the specified position is inside the polygon, otherwise false
+     * @see Polygon#contains(double, double)
+     */
+    public boolean contains(double latitude, double longitude) {
+        double x = polygon.unwrap(longitude);
+        if (Double.isNaN(x) || latitude < polygon.south || latitude > polygon.north) {
+            return false;
+        }
+        double[] e = edges;
+        boolean inside = false;
+        int b = band(x);
+        if (geodetic) {
+            double y = tan(toRadians(latitude));
+            double cos = cos(toRadians(x));
+            double sin = sin(toRadians(x));
+            for (int i = bandOffsets[b], end = bandOffsets[b + 1]; i < end; i++) {
+                int k = bandEdges[i];
+                if (e[k] <= x && x < e[k + 1] && y < e[k + 2] * cos + e[k + 3] * sin) {
+                    inside = !inside;
+                }
+            }
+        } else {
+            double y = Polygon.mercator(latitude);
+            for (int i = bandOffsets[b], end = bandOffsets[b + 1]; i < end; i++) {
+                int k = bandEdges[i];
+                if (e[k] <= x && x < e[k + 1] && y < e[k + 2] + e[k + 3] * (x - e[k])) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Returns the polygon.
+     * 
+     * @return the polygon
+     */
+    public Polygon getPolygon() {
+        return polygon;
+    }
+}
@@ -0,0 +1,421 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A growable track of timestamped positions stored column-wise in primitive arrays. A track of n positions takes 24 * n
+ * bytes, compared to more than 40 bytes per element for a <tt>List&lt;PositionTime&gt;</tt>, and bulk operations run
+ * over the arrays without creating any position objects.
+ * <p>
+ * Positions must be added in non-decreasing time order. Single elements can be read without allocation through the
+ * primitive getters or a reusable {@link Cursor}. This class is not thread-safe.
+ */
+public final class TrackBuffer {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private double[] latitudes;
+
+    private double[] longitudes;
+
+    private long[] times;
+
+    private int size;
+
+    /** Creates a new empty track. */
+    public TrackBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new empty track.
+     *
+     * @param initialCapacity
+     *            the number of positions the track can hold before growing
+     */
+    public TrackBuffer(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity must be non-negative, was " + initialCapacity);
+        }
+        latitudes = new double[initialCapacity];
+        longitudes = new double[initialCapacity];
+        times = new long[initialCapacity];
+    }
+
+    /**
+     * Adds a position to the end of the track.
+     *
+     * @param latitude
+     *            the latitude
+     * @param longitude
+     *            the longitude
+     * @param time
+     *            the time in milliseconds since the epoch
+     * @throws IllegalArgumentException
+     *             if the latitude or longitude is invalid, or if the time is before the time of the last position
+     */
+    public void add(double latitude, double longitude, long time) {
+        Position.verifyLatitude(latitude);
+        Position.verifyLongitude(longitude);
+        if (size > 0 && time < times[size - 1]) {
+            throw new IllegalArgumentException("time must not be before the time of the last position, was " + time
+                    + " < " + times[size - 1]);
+        }
+        if (size == latitudes.length) {
+            int newCapacity = Math.max(DEFAULT_CAPACITY, size + (size >> 1));
+            latitudes = Arrays.copyOf(latitudes, newCapacity);
+            longitudes = Arrays.copyOf(longitudes, newCapacity);
+            times = Arrays.copyOf(times, newCapacity);
+        }
+        latitudes[size] = latitude == -0.0 ? 0.0 : latitude;
+        longitudes[size] = longitude == -0.0 ? 0.0 : longitude;
+        times[size++] = time;
+    }
+
+    /**
+     * Adds a position to the end of the track.
+     *
+     * @param position
+     *            the position to add
+     * @see #add(double, double, long)
+     */
+    public void add(PositionTime position) {
+        add(position.latitude, position.longitude, position.getTime());
+    }
+
+    /**
+     * Adds a position packed by {@link Position#toPackedLong()} to the end of the track.
+     *
+     * @param packedPosition
+     *            the packed position
+     * @param time
+     *            the time in milliseconds since the epoch
+     * @see #add(double, double, long)
+     */
+    public void addPacked(long packedPosition, long time) {
+        add(Float.intBitsToFloat((int) (packedPosition >> 32)), Float.intBitsToFloat((int) packedPosition), time);
+    }
+
+    /** Removes all positions from the track. */
+    public void clear() {
+        size = 0;
+    }
+
+    /** Shrinks the arrays to the number of positions in the track. */
+    public void trimToSize() {
+        if (latitudes.length > size) {
+            latitudes = Arrays.copyOf(latitudes, size);
+            longitudes = Arrays.copyOf(longitudes, size);
+            times = Arrays.copyOf(times, size);
+        }
+    }
+
+    /**
+     * Returns the number of positions in the track.
+     *
+     * @return the number of positions in the track
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getLatitude(int index) {
+        return latitudes[checkIndex(index)];
+    }
+
+    public double getLongitude(int index) {
+        return longitudes[checkIndex(index)];
+    }
+
+    public long getTime(int index) {
+        return times[checkIndex(index)];
+    }
+
+    /**
+     * Returns the position at the specified index packed as by {@link Position#toPackedLong()}.
+     *
+     * @param index
+     *            the index
+     * @return the packed position
+     */
+    public long getPacked(int index) {
+        checkIndex(index);
+        return ((long) Float.floatToRawIntBits((float) latitudes[index]) << 32)
+                + Float.floatToRawIntBits((float) longitudes[index]);
+    }
+
+    /**
+     * Returns a new position object for the position at the specified index.
+     *
+     * @param index
+     *            the index
+     * @return the position at the specified index
+     */
+    public PositionTime get(int index) {
+        checkIndex(index);
+        return new PositionTime(latitudes[index], longitudes[index], times[index]);
+    }
+
+    /**
+     * Returns a new cursor positioned at the first position of the track.
+     *
+     * @return a new cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns an unmodifiable list view of the track. Each call to {@link List#get(int)} creates a new position object.
+     *
+     * @return a list view of the track
+     */
+    public List<PositionTime> asList() {
+        return new ListView();
+    }
+
+    /**
+     * Returns the index of the last position with a time less than or equal to the specified time.
+     *
+     * @param time
+     *            the time
+     * @return the index of the last position at or before the time, or -1 if the time is before the first position
+     */
+    public int indexOf(long time) {
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Returns the position at the specified time, linearly interpolated between the surrounding positions.
+     *
+     * @param time
+     *            the time
+     * @return the interpolated position
+     * @throws IllegalArgumentException
+     *             if the time is outside the time span of the track
+     * @see PositionTime#createInterpolated(PositionTime, PositionTime, long)
+     */
+    public PositionTime interpolate(long time) {
+        int i = indexOf(time);
+        if (i < 0 || time > times[size - 1]) {
+            throw new IllegalArgumentException("time must be within the time span of the track, was " + time);
+        } else if (times[i] == time) {
+            return get(i);
+        }
+        return PositionTime.create(
+                PositionTime.linearInterpolation(latitudes[i], times[i], latitudes[i + 1], times[i + 1], time),
+                PositionTime.linearInterpolation(longitudes[i], times[i], longitudes[i + 1], times[i + 1], time),
+                time);
+    }
+
+    /**
+     * Returns the smallest bounding box containing all positions of the track.
+     *
+     * @return the bounding box of the track
+     * @throws IllegalStateException
+     *             if the track is empty
+     */
+    public BoundingBox getBoundingBox() {
+        return getBoundingBox(0, size);
+    }
+
+    /**
+     * Returns the smallest bounding box containing the positions in the specified range.
+     *
+     * @param fromIndex
+     *            the index of the first position (inclusive)
+     * @param toIndex
+     *            the index of the last position (exclusive)
+     * @return the bounding box of the positions
+     */
+    public BoundingBox getBoundingBox(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex) {
+            throw new IllegalStateException("Cannot create a bounding box of an empty range");
+        }
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (int i = fromIndex; i < toIndex; i++) {
+            minLat = Math.min(minLat, latitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+            minLon = Math.min(minLon, longitudes[i]);
+            maxLon = Math.max(maxLon, longitudes[i]);
+        }
+        return BoundingBox.create(minLat, maxLat, minLon, maxLon, CoordinateSystem.CARTESIAN);
+    }
+
+    /**
+     * Calculates the distance of each leg of the track, the distance at index i being between position i and i+1.
+     *
+     * @param algorithm
+     *            the distance algorithm
+     * @param distances
+     *            the array to store the distances in, at least size() - 1 long
+     */
+    public void getLegDistances(DistanceAlgorithm algorithm, double[] distances) {
+        for (int i = 0; i < size - 1; i++) {
+            distances[i] = algorithm.distance(latitudes[i], longitudes[i], latitudes[i + 1], longitudes[i + 1]);
+        }
+    }
+
+    /**
+     * Returns the total length of the track in meters.
+     *
+     * @param algorithm
+     *            the distance algorithm
+     * @return the total length of the track in meters
+     */
+    public double getLength(DistanceAlgorithm algorithm) {
+        double length = 0;
+        for (int i = 0; i < size - 1; i++) {
+            length += algorithm.distance(latitudes[i], longitudes[i], latitudes[i + 1], longitudes[i + 1]);
+        }
+        return length;
+    }
+
+    /**
+     * Calculates the rhumb line bearing of each leg of the track, the bearing at index i being from position i to i+1.
+     *
+     * @param bearings
+     *            the array to store the bearings in degrees in, at least size() - 1 long
+     * @see Position#rhumbLineBearingTo(Position)
+     */
+    public void getLegBearings(double[] bearings) {
+        for (int i = 0; i < size - 1; i++) {
+            bearings[i] = Position.rhumbLineBearing(latitudes[i], longitudes[i], latitudes[i + 1], longitudes[i + 1]);
+        }
+    }
+
+    /**
+     * Calculates the distance from the specified point to each position of the track.
+     *
+     * @param latitude
+     *            the latitude of the point
+     * @param longitude
+     *            the longitude of the point
+     * @param algorithm
+     *            the distance algorithm
+     * @param distances
+     *            the array to store the distances in, at least size() long
+     */
+    public void getDistancesTo(double latitude, double longitude, DistanceAlgorithm algorithm, double[] distances) {
+        for (int i = 0; i < size; i++) {
+            distances[i] = algorithm.distance(latitude, longitude, latitudes[i], longitudes[i]);
+        }
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return index;
+    }
+
+    private void checkRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", Size: " + size);
+        }
+    }
+
+    /**
+     * A reusable view of a single position of the track. Moving the cursor does not create any objects.
+     */
+    public final class Cursor {
+        private int index;
+
+        Cursor() {}
+
+        /**
+         * Moves the cursor to the specified index.
+         *
+         * @param index
+         *            the index
+         * @return this cursor
+         */
+        public Cursor moveTo(int index) {
+            this.index = checkIndex(index);
+            return this;
+        }
+
+        /**
+         * Moves the cursor to the next position.
+         *
+         * @return true if the cursor was moved, false if it is at the last position
+         */
+        public boolean next() {
+            if (index + 1 < size) {
+                index++;
+                return true;
+            }
+            return false;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public double getLatitude() {
+            return latitudes[index];
+        }
+
+        public double getLongitude() {
+            return longitudes[index];
+        }
+
+        public long getTime() {
+            return times[index];
+        }
+
+        /**
+         * Returns a new position object for the current position of the cursor.
+         *
+         * @return a new position object
+         */
+        public PositionTime toPositionTime() {
+            return get(index);
+        }
+    }
+
+    /** An unmodifiable list view of the track. */
+    private final class ListView extends AbstractList<PositionTime> implements RandomAccess {
+        @Override
+        public PositionTime get(int index) {
+            return TrackBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
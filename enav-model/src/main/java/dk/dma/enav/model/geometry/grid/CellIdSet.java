@@ -0,0 +1,265 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry.grid;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+/**
+ * An immutable set of cell ids backed by a sorted array of primitive longs. Membership tests are binary searches and
+ * set operations are linear merges, so no boxed {@link Long} or {@link Cell} objects are created.
+ */
+public final class CellIdSet implements Serializable {
+
+    /** An empty set. */
+    public static final CellIdSet EMPTY = new CellIdSet(new long[0]);
+
+    /** serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The cell ids in strictly ascending order. */
+    private final long[] ids;
+
+    /**
+     * @param ids
+     *            cell ids in strictly ascending order, the array is not copied
+     */
+    CellIdSet(long[] ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains the specified cell id, otherwise <tt>false</tt>.
+     *
+     * @param cellId
+     *            the cell id
+     * @return true if this set contains the specified cell id
+     */
+    public boolean contains(long cellId) {
+        return Arrays.binarySearch(ids, cellId) >= 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains the id of the specified cell, otherwise <tt>false</tt>.
+     *
+     * @param cell
+     *            the cell
+     * @return true if this set contains the id of the specified cell
+     */
+    public boolean contains(Cell cell) {
+        return contains(cell.id);
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains all the cell ids of the specified set, otherwise <tt>false</tt>.
+     *
+     * @param other
+     *            the other set
+     * @return true if this set contains all the cell ids of the specified set
+     */
+    public boolean containsAll(CellIdSet other) {
+        long[] a = ids, b = other.ids;
+        if (b.length > a.length) {
+            return false;
+        }
+        int i = 0;
+        for (long id : b) {
+            while (i < a.length && a[i] < id) {
+                i++;
+            }
+            if (i == a.length || a[i] != id) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set and the specified set have at least one cell id in common, otherwise
+     * <tt>false</tt>.
+     *
+     * @param other
+     *            the other set
+     * @return true if the two sets have at least one cell id in common
+     */
+    public boolean intersects(CellIdSet other) {
+        long[] a = ids, b = other.ids;
+        if (a.length == 0 || b.length == 0 || a[0] > b[b.length - 1] || b[0] > a[a.length - 1]) {
+            return false;
+        }
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a set containing the cell ids that are in both this set and the specified set.
+     *
+     * @param other
+     *            the other set
+     * @return the intersection of the two sets
+     */
+    public CellIdSet intersection(CellIdSet other) {
+        long[] a = ids, b = other.ids;
+        long[] result = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == a.length ? this : n == b.length ? other : create(result, n);
+    }
+
+    /**
+     * Returns a set containing the cell ids that are in either this set or the specified set.
+     *
+     * @param other
+     *            the other set
+     * @return the union of the two sets
+     */
+    public CellIdSet union(CellIdSet other) {
+        long[] a = ids, b = other.ids;
+        long[] result = new long[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                result[n++] = a[i++];
+            } else if (a[i] > b[j]) {
+                result[n++] = b[j++];
+            } else {
+                result[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) {
+            result[n++] = a[i++];
+        }
+        while (j < b.length) {
+            result[n++] = b[j++];
+        }
+        return n == a.length ? this : n == b.length ? other : create(result, n);
+    }
+
+    /**
+     * Returns the cell id at the specified index in ascending order.
+     *
+     * @param index
+     *            the index
+     * @return the cell id at the specified index
+     * @throws IndexOutOfBoundsException
+     *             if the index is out of range
+     */
+    public long get(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Returns the number of cell ids in this set.
+     *
+     * @return the number of cell ids in this set
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    /**
+     * Invokes the specified consumer with each cell id in ascending order.
+     *
+     * @param consumer
+     *            the consumer
+     */
+    public void forEach(LongConsumer consumer) {
+        for (long id : ids) {
+            consumer.accept(id);
+        }
+    }
+
+    /**
+     * Returns a stream of the cell ids in ascending order.
+     *
+     * @return a stream of the cell ids
+     */
+    public LongStream stream() {
+        return Arrays.stream(ids);
+    }
+
+    /**
+     * Returns a new array containing the cell ids in ascending order.
+     *
+     * @return a new array containing the cell ids
+     */
+    public long[] toArray() {
+        return ids.clone();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this || obj instanceof CellIdSet && Arrays.equals(ids, ((CellIdSet) obj).ids);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ids);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(ids);
+    }
+
+    /**
+     * Creates a new set from the specified cell ids. The ids may be in any order and may contain duplicates.
+     *
+     * @param cellIds
+     *            the cell ids
+     * @return a new set
+     */
+    public static CellIdSet of(long... cellIds) {
+        long[] sorted = cellIds.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || sorted[n - 1] != sorted[i]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return create(sorted, n);
+    }
+
+    private static CellIdSet create(long[] ids, int length) {
+        return length == 0 ? EMPTY : new CellIdSet(length == ids.length ? ids : Arrays.copyOf(ids, length));
+    }
+}
@@ -17,6 +17,8 @@ package dk.dma.enav.model.geometry.grid;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
 
 import dk.dma.enav.model.geometry.Area;
 import dk.dma.enav.model.geometry.BoundingBox;
@@ -39,6 +41,9 @@ public final class Grid {
     // Angiv f.eks. minSize, eller maxSize i x - DistanceUnit, bare meters syntes jeg
     // ahh det skal vel vaere kvadrat kilometere taenker jeg??
 
+    /** Fraction of a cell within which a box edge is considered to lie on the cell boundary. */
+    private static final double EDGE_TOLERANCE = 1e-9;
+
     private final double resolution;
 
     final double multiplier;
@@ -128,42 +133,50 @@ public final class Grid {
         return BoundingBox.create(southWestCorner, northEastCorner, CoordinateSystem.GEODETIC);
     }
 
+    /**
+     * Returns the cells that intersect the box extending the specified number of degrees north, south, east and west of
+     * the specified position.
+     *
+     * @param position
+     *            the center position
+     * @param radius
+     *            the distance in degrees
+     * @return the nearby cells
+     * @see #getNearbyCellIds(Position, double)
+     */
     public Set<Cell> getNearbyCells(Position position, double radius) {
-        Set<Cell> cells = new HashSet<>();
+        CellIdSet ids = getNearbyCellIds(position, radius);
+        Set<Cell> cells = new HashSet<>(ids.size() * 2);
+        ids.forEach(id -> cells.add(new Cell(id)));
+        return cells;
+    }
 
-        double latN = position.getLatitude() + radius;
-        double latS = position.getLatitude() - radius;
+    /**
+     * Returns the ids of the cells that intersect the box extending the specified number of degrees north, south, east
+     * and west of the specified position. Boxes crossing the 180th meridian wrap around, boxes crossing the poles are
+     * cut off.
+     *
+     * @param position
+     *            the center position
+     * @param radius
+     *            the distance in degrees
+     * @return the ids of the nearby cells
+     */
+    public CellIdSet getNearbyCellIds(Position position, double radius) {
+        double latS = Math.max(-90, position.getLatitude() - radius);
+        double latN = Math.min(90, position.getLatitude() + radius);
         double lonW = position.getLongitude() - radius;
         double lonE = position.getLongitude() + radius;
-
-        Long cellIdNW = getCell(latN, lonW).id;
-        Long cellIdNE = getCell(latN, lonE).id;
-        Long cellIdSE = getCell(latS, lonE).id;
-
-        Long firstCellId = cellIdNW;
-        Long iteratorCellId = cellIdNW;
-        Long lastCellId = cellIdNE;
-
-        while (iteratorCellId <= lastCellId) {
-            iteratorCellId = firstCellId;
-
-            cells.add(new Cell(firstCellId));
-
-            while (iteratorCellId <= lastCellId) {
-                iteratorCellId = getCellEastOf(new Cell(iteratorCellId)).id;
-
-                cells.add(new Cell(iteratorCellId));
-            }
-
-            firstCellId = getCellSouthOf(new Cell(firstCellId)).id;
-            lastCellId = getCellSouthOf(new Cell(lastCellId)).id;
-        }
-
-        if (cellIdNW == cellIdSE) {
-            cells.add(new Cell(cellIdNW));
+        if (lonE - lonW >= 360) {
+            return new CellIdSet(getCellIds(latS, latN, -180, 180));
+        } else if (lonW < -180) {
+            return new CellIdSet(getCellIds(latS, latN, -180, lonE)).union(
+                    new CellIdSet(getCellIds(latS, latN, lonW + 360, 180)));
+        } else if (lonE > 180) {
+            return new CellIdSet(getCellIds(latS, latN, -180, lonE - 360)).union(
+                    new CellIdSet(getCellIds(latS, latN, lonW, 180)));
         }
-
-        return cells;
+        return new CellIdSet(getCellIds(latS, latN, lonW, lonE));
     }
 
     /**
@@ -179,28 +192,134 @@ public final class Grid {
         throw new UnsupportedOperationException("Only bounding boxes are supported");
     }
 
-    Set<Cell> getCells(BoundingBox box) {
-        Set<Long> cells = new TreeSet<>();
-        int steps = 64;
-        int prev = 0;
-        // TODO fix it to be fast
-        for (;;) {
-            for (int i = 0; i < steps; i++) {
-                cells.add(box.getRandom().getCell(resolution));
-            }
-            if (cells.size() == prev) {
-                break;
-            }
-            prev = cells.size();
-            steps *= 2;
+    /**
+     * Returns the ids of the cells that the specified area is contained in.
+     *
+     * @param area
+     *            the area
+     * @return the ids of the cells
+     */
+    public CellIdSet getCellIds(Area area) {
+        if (area instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) area;
+            return new CellIdSet(getCellIds(box.getMinLat(), box.getMaxLat(), box.getMinLon(), box.getMaxLon()));
         }
-        Set<Cell> result = new TreeSet<>();
-        for (Long l : cells) {
-            result.add(new Cell(l));
+        throw new UnsupportedOperationException("Only bounding boxes are supported");
+    }
+
+    /** Returns the ids of the cells covering the specified latitude/longitude range in ascending order. */
+    private long[] getCellIds(double minLat, double maxLat, double minLon, double maxLon) {
+        long count = countCells(minLat, maxLat, minLon, maxLon);
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many cells in area, was " + count);
         }
+        long[] ids = new long[(int) count];
+        int[] i = new int[1];
+        forEachCellId(minLat, maxLat, minLon, maxLon, id -> ids[i[0]++] = id);
+        return ids;
+    }
+
+    Set<Cell> getCells(BoundingBox box) {
+        Set<Cell> result = new TreeSet<>();
+        forEachCellId(box, id -> result.add(new Cell(id)));
         return result;
     }
 
+    /**
+     * Returns the ids of all cells that the specified area is contained in. The ids are returned in ascending order.
+     * Unlike {@link #getCells(Area)} no cell objects are created.
+     *
+     * @param area
+     *            the area
+     * @return a stream of cell ids
+     */
+    public LongStream streamCellIds(Area area) {
+        if (!(area instanceof BoundingBox)) {
+            throw new UnsupportedOperationException("Only bounding boxes are supported");
+        }
+        BoundingBox box = (BoundingBox) area;
+        final long rowMin = getRow(box.getMinLat());
+        final long rowMax = getLastRow(rowMin, box.getMaxLat());
+        final long colMin = getColumn(box.getMinLon());
+        final long colMax = getLastColumn(colMin, box.getMaxLon());
+        return LongStream.rangeClosed(rowMin, rowMax).flatMap(row -> {
+            long rowBase = (long) (row * multiplier);
+            return LongStream.rangeClosed(rowBase + colMin, rowBase + colMax);
+        });
+    }
+
+    /**
+     * Invokes the specified consumer with the id of each cell that the specified bounding box is contained in. The ids
+     * are visited in ascending order.
+     *
+     * @param box
+     *            the bounding box
+     * @param consumer
+     *            the consumer of cell ids
+     */
+    public void forEachCellId(BoundingBox box, LongConsumer consumer) {
+        forEachCellId(box.getMinLat(), box.getMaxLat(), box.getMinLon(), box.getMaxLon(), consumer);
+    }
+
+    /** Visits the ids of the cells covering the specified latitude/longitude range in ascending order. */
+    private void forEachCellId(double minLat, double maxLat, double minLon, double maxLon, LongConsumer consumer) {
+        final long rowMin = getRow(minLat);
+        final long rowMax = getLastRow(rowMin, maxLat);
+        final long colMin = getColumn(minLon);
+        final long colMax = getLastColumn(colMin, maxLon);
+        for (long row = rowMin; row <= rowMax; row++) {
+            long rowBase = (long) (row * multiplier);
+            for (long col = colMin; col <= colMax; col++) {
+                consumer.accept(rowBase + col);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cells that the specified bounding box is contained in.
+     *
+     * @param box
+     *            the bounding box
+     * @return the number of cells
+     */
+    public long countCells(BoundingBox box) {
+        return countCells(box.getMinLat(), box.getMaxLat(), box.getMinLon(), box.getMaxLon());
+    }
+
+    private long countCells(double minLat, double maxLat, double minLon, double maxLon) {
+        final long rowMin = getRow(minLat);
+        final long colMin = getColumn(minLon);
+        return (getLastRow(rowMin, maxLat) - rowMin + 1) * (getLastColumn(colMin, maxLon) - colMin + 1);
+    }
+
+    /** Returns the latitude part of the id of the cell containing the latitude, see {@link #getCell(double, double)}. */
+    long getRow(double lat) {
+        return (long) Math.floor(lat / resolution);
+    }
+
+    /** Returns the longitude part of the id of the cell containing the longitude, see {@link #getCell(double, double)}. */
+    long getColumn(double lon) {
+        return (long) ((360.0 + lon) / resolution) - (long) (360.0 / resolution);
+    }
+
+    /**
+     * Returns the last row touched by a box with the specified northern edge. A northern edge lying on a cell boundary
+     * (as computed by {@link #getBoundingBoxOfCell(Cell)}) does not include the cell north of it.
+     */
+    private long getLastRow(long firstRow, double maxLat) {
+        long row = getRow(maxLat);
+        return row > firstRow && maxLat - row * resolution <= resolution * EDGE_TOLERANCE ? row - 1 : row;
+    }
+
+    /**
+     * Returns the last column touched by a box with the specified eastern edge. An eastern edge lying on a cell
+     * boundary (as computed by {@link #getBoundingBoxOfCell(Cell)}) does not include the cell east of it.
+     */
+    private long getLastColumn(long firstColumn, double maxLon) {
+        long col = getColumn(maxLon);
+        return col > firstColumn && maxLon - col * resolution <= resolution * EDGE_TOLERANCE ? col - 1 : col;
+    }
+
     /**
      * Create Grid with degrees size E.g. using 0.0045: 40.075.000 m / (360 / 0.0045) = 500 m cell size E.g. using
      * 0.0008983: 100 m cell size
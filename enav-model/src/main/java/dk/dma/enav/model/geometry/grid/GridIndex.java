@@ -0,0 +1,368 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry.grid;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.enav.model.PositionalObject;
+import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.Circle;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * A spatial index of positional objects keyed by the id of the {@link Grid} cell they are located in.
+ * <p>
+ * The index remembers the position of each object at the time it was inserted or last moved, so objects whose
+ * {@link PositionalObject#getPosition()} changes must be {@link #move(PositionalObject) moved} to be found at their new
+ * position. All methods may be invoked concurrently from multiple threads. Updates of the same object are atomic,
+ * queries are weakly consistent and never block updates.
+ *
+ * @param <T>
+ *            the type of objects in the index
+ */
+@ThreadSafe
+public final class GridIndex<T extends PositionalObject> {
+
+    /** Safety factor applied to spherical distances to cover the flattening of the earth. */
+    private static final double SPHERE_MARGIN = 1.01;
+
+    /** The grid used for bucketing objects. */
+    private final Grid grid;
+
+    /** The objects in each non-empty cell. */
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<T, Entry<T>>> cells = new ConcurrentHashMap<>();
+
+    /** The entry of each object in the index. */
+    private final ConcurrentHashMap<T, Entry<T>> objects = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new index.
+     *
+     * @param grid
+     *            the grid used for bucketing objects. Its cells should be of the same magnitude as typical queries
+     */
+    public GridIndex(Grid grid) {
+        this.grid = requireNonNull(grid, "grid is null");
+    }
+
+    /**
+     * Returns the grid used for bucketing objects.
+     *
+     * @return the grid used for bucketing objects
+     */
+    public Grid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the specified object is in the index, otherwise <tt>false</tt>.
+     *
+     * @param object
+     *            the object
+     * @return true if the specified object is in the index
+     */
+    public boolean contains(T object) {
+        return objects.containsKey(object);
+    }
+
+    /**
+     * Returns the number of objects in the index.
+     *
+     * @return the number of objects in the index
+     */
+    public int size() {
+        return objects.size();
+    }
+
+    /**
+     * Adds the specified object at its current position. If the object is already in the index, it is moved to its
+     * current position.
+     *
+     * @param object
+     *            the object to add
+     * @throws NullPointerException
+     *             if the object or its position is null
+     */
+    public void insert(T object) {
+        move(object);
+    }
+
+    /**
+     * Moves the specified object to its current position. If the object is not in the index, it is added.
+     *
+     * @param object
+     *            the object to move
+     * @throws NullPointerException
+     *             if the object or its position is null
+     */
+    public void move(T object) {
+        final Position position = requireNonNull(requireNonNull(object, "object is null").getPosition(),
+                "position is null");
+        final long cellId = grid.getCell(position).getCellId();
+        objects.compute(object, (o, old) -> {
+            Entry<T> entry = new Entry<>(o, position, cellId);
+            if (old != null && old.cellId != cellId) {
+                removeFromCell(old);
+            }
+            cells.compute(cellId, (id, cell) -> {
+                if (cell == null) {
+                    cell = new ConcurrentHashMap<>();
+                }
+                cell.put(o, entry);
+                return cell;
+            });
+            return entry;
+        });
+    }
+
+    /**
+     * Removes the specified object from the index.
+     *
+     * @param object
+     *            the object to remove
+     * @return true if the object was in the index, otherwise false
+     */
+    public boolean remove(T object) {
+        boolean[] removed = new boolean[1];
+        objects.computeIfPresent(requireNonNull(object, "object is null"), (o, old) -> {
+            removeFromCell(old);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    private void removeFromCell(Entry<T> entry) {
+        cells.computeIfPresent(entry.cellId, (id, cell) -> {
+            cell.remove(entry.object);
+            return cell.isEmpty() ? null : cell;
+        });
+    }
+
+    /**
+     * Returns all objects whose indexed position is inside the specified bounding box.
+     *
+     * @param box
+     *            the bounding box
+     * @return the objects inside the bounding box
+     */
+    public List<T> query(BoundingBox box) {
+        List<T> result = new ArrayList<>();
+        forEachCell(box.getMinLat(), box.getMaxLat(), box.getMinLon(), box.getMaxLon(), e -> {
+            if (box.contains(e.position)) {
+                result.add(e.object);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns all objects whose indexed position is inside the specified circle.
+     *
+     * @param circle
+     *            the circle
+     * @return the objects inside the circle
+     */
+    public List<T> query(Circle circle) {
+        final Position center = circle.getCenter();
+        final double dLat = circle.getRadius() * SPHERE_MARGIN / CoordinateSystem.METERS_PER_DEGREE;
+        final double maxAbsLat = Math.abs(center.getLatitude()) + dLat;
+        final double dLon = maxAbsLat >= 90 ? 180 : Math.min(180, dLat / Math.cos(Math.toRadians(maxAbsLat)));
+        List<T> result = new ArrayList<>();
+        forEachCell(center.getLatitude() - dLat, center.getLatitude() + dLat, center.getLongitude() - dLon,
+                center.getLongitude() + dLon, e -> {
+                    if (circle.contains(e.position)) {
+                        result.add(e.object);
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * Returns the (at most) k objects whose indexed positions are geodesically nearest to the specified position,
+     * ordered by increasing distance. Cells are visited in growing rings around the position until no unvisited cell
+     * can contain a nearer object. If that would visit more cells than there are objects in the index, all objects are
+     * scanned instead.
+     *
+     * @param position
+     *            the position
+     * @param k
+     *            the maximum number of objects to return
+     * @return the nearest objects
+     */
+    public List<T> nearest(Position position, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive, was " + k);
+        }
+        final double resolution = grid.getResolution();
+        final long centerRow = grid.getRow(position.getLatitude());
+        final long centerCol = grid.getColumn(position.getLongitude());
+        final long columns = (long) Math.ceil(360 / resolution);
+        // Max-heap on distance holding the best candidates found so far
+        final PriorityQueue<Candidate<T>> best = new PriorityQueue<>(k + 1,
+                (a, b) -> Double.compare(b.distance, a.distance));
+        final Consumer<Entry<T>> visitor = e -> {
+            double distance = position.geodesicDistanceTo(e.position);
+            if (best.size() < k || distance < best.peek().distance) {
+                best.add(new Candidate<>(e.object, distance));
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+        };
+        Set<Long> visited = null;
+        long cellsVisited = 0;
+        for (long ring = 0;; ring++) {
+            if (cellsVisited > objects.size()) {
+                best.clear();
+                objects.values().forEach(visitor);
+                break;
+            }
+            if (visited == null && 2 * ring + 1 > columns) {
+                // The ring wraps around the globe and may visit cells twice
+                visited = new HashSet<>();
+            }
+            for (long row = centerRow - ring; row <= centerRow + ring; row++) {
+                if (row * resolution >= 90 || (row + 1) * resolution <= -90) {
+                    continue;
+                }
+                boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                long step = edgeRow || ring == 0 ? 1 : 2 * ring;
+                for (long col = centerCol - ring; col <= centerCol + ring; col += step) {
+                    long cellId = getCellId(row, col);
+                    if (visited == null || visited.add(cellId)) {
+                        visit(cellId, visitor);
+                    }
+                    cellsVisited++;
+                }
+            }
+            double bound = distanceToRingBoundary(position, centerRow, centerCol, ring);
+            if (bound == Double.MAX_VALUE || best.size() == k && best.peek().distance <= bound) {
+                break;
+            }
+        }
+        List<T> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll().object);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Returns a lower bound on the distance from the position to any point outside the square of cells within the
+     * specified ring.
+     */
+    private double distanceToRingBoundary(Position position, long centerRow, long centerCol, long ring) {
+        final double resolution = grid.getResolution();
+        double south = (centerRow - ring) * resolution;
+        double north = (centerRow + ring + 1) * resolution;
+        double west = (centerCol - ring) * resolution;
+        double east = (centerCol + ring + 1) * resolution;
+        double latMeters = Double.MAX_VALUE;
+        if (south > -90 || north < 90) {
+            double dLat = Math.min(south <= -90 ? 180 : position.getLatitude() - south,
+                    north >= 90 ? 180 : north - position.getLatitude());
+            latMeters = dLat * CoordinateSystem.METERS_PER_DEGREE / SPHERE_MARGIN;
+        }
+        double lonMeters = Double.MAX_VALUE;
+        if (east - west < 360 && (south <= -90 || north >= 90)) {
+            // Meridians converge at the pole
+            lonMeters = 0;
+        } else if (east - west < 360) {
+            double dLon = Math.min(position.getLongitude() - west, east - position.getLongitude());
+            double maxAbsLat = Math.max(Math.abs(south), Math.abs(north));
+            lonMeters = dLon * CoordinateSystem.METERS_PER_DEGREE * Math.cos(Math.toRadians(maxAbsLat)) / SPHERE_MARGIN;
+        }
+        return Math.min(latMeters, lonMeters);
+    }
+
+    /** Returns the id of the cell at the specified row and column, wrapping the column around the globe. */
+    private long getCellId(long row, long col) {
+        double lon = (col + 0.5) * grid.getResolution();
+        if (lon < -180 || lon >= 180) {
+            col = grid.getColumn(lon - 360 * Math.floor((lon + 180) / 360));
+        }
+        return (long) (row * grid.multiplier) + col;
+    }
+
+    /** Visits the objects of the cells covering the specified range, splitting ranges crossing the 180th meridian. */
+    private void forEachCell(double minLat, double maxLat, double minLon, double maxLon, Consumer<Entry<T>> visitor) {
+        minLat = Math.max(-90, minLat);
+        maxLat = Math.min(90, maxLat);
+        LongConsumer cellVisitor = id -> visit(id, visitor);
+        if (maxLon - minLon >= 360) {
+            forEachCellId(minLat, maxLat, -180, 180, cellVisitor);
+        } else if (minLon < -180) {
+            forEachCellId(minLat, maxLat, minLon + 360, 180, cellVisitor);
+            forEachCellId(minLat, maxLat, -180, maxLon, cellVisitor);
+        } else if (maxLon > 180) {
+            forEachCellId(minLat, maxLat, minLon, 180, cellVisitor);
+            forEachCellId(minLat, maxLat, -180, maxLon - 360, cellVisitor);
+        } else {
+            forEachCellId(minLat, maxLat, minLon, maxLon, cellVisitor);
+        }
+    }
+
+    private void forEachCellId(double minLat, double maxLat, double minLon, double maxLon, LongConsumer consumer) {
+        grid.forEachCellId(BoundingBox.create(Position.create(minLat, minLon), Position.create(maxLat, maxLon),
+                CoordinateSystem.CARTESIAN), consumer);
+    }
+
+    private void visit(long cellId, Consumer<Entry<T>> visitor) {
+        ConcurrentHashMap<T, Entry<T>> cell = cells.get(cellId);
+        if (cell != null) {
+            for (Entry<T> e : cell.values()) {
+                visitor.accept(e);
+            }
+        }
+    }
+
+    /** An object together with the position and cell it is indexed at. */
+    static final class Entry<T> {
+        final long cellId;
+        final T object;
+        final Position position;
+
+        Entry(T object, Position position, long cellId) {
+            this.object = object;
+            this.position = position;
+            this.cellId = cellId;
+        }
+    }
+
+    /** An object and its distance to the query position. */
+    static final class Candidate<T> {
+        final double distance;
+        final T object;
+
+        Candidate(T object, double distance) {
+            this.object = object;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry.grid;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+
+import dk.dma.enav.model.geometry.Area;
+import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.Circle;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Polygon;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * A hierarchical grid of square cells, where each cell is divided into four cells of the next level. Level 0 is a
+ * single cell of 360 by 360 degrees, of which the middle half holds the earth, and cells of level <tt>n</tt> are
+ * <tt>360 / 2^n</tt> degrees. Level 9 cells are about 0.7 degrees and level {@value #MAX_LEVEL} cells about 4 cm.
+ * <p>
+ * A cell id holds the Z-order (Morton) code of the cell, with latitude and longitude bits interleaved, followed by a
+ * single set bit marking the level. Parent, children and level are computed with bit arithmetic, and the ids of the
+ * descendants of a cell are the range {@link #getRangeMin(long)} to {@link #getRangeMax(long)} around its id. Sorted
+ * ids of cells from different levels are therefore ordered spatially, so a {@link CellIdSet} of a mixed-resolution
+ * {@link #cover(Area, int, int) covering} answers whether it {@link #covers(CellIdSet, double, double) covers} a
+ * position with a binary search.
+ * <p>
+ * Cell ids are not related to the cell ids of {@link Grid}.
+ */
+public final class HierarchicalGrid {
+
+    /** The finest level. */
+    public static final int MAX_LEVEL = 30;
+
+    /** The number of cells across the grid at the finest level. */
+    private static final double LEAF_CELLS = 1L << MAX_LEVEL;
+
+    /** Cannot instantiate. */
+    private HierarchicalGrid() {}
+
+    /**
+     * Returns the id of the cell of the specified level containing the position.
+     *
+     * @param latitude
+     *            the latitude of the position
+     * @param longitude
+     *            the longitude of the position
+     * @param level
+     *            the level of the cell
+     * @return the id of the cell
+     * @throws IllegalArgumentException
+     *             if the position or level is invalid
+     */
+    public static long getCellId(double latitude, double longitude, int level) {
+        Position.verifyLatitude(latitude);
+        Position.verifyLongitude(longitude);
+        long lsb = lowestBit(checkLevel(level));
+        long x = (long) ((longitude + 180) / 360 * LEAF_CELLS);
+        long y = (long) ((latitude + 180) / 360 * LEAF_CELLS);
+        if (x == 1L << MAX_LEVEL) {
+            // 180 east is 180 west
+            x = 0;
+        }
+        long leaf = interleave(x) | interleave(y) << 1;
+        return (leaf << 1 & -lsb) | lsb;
+    }
+
+    /**
+     * Returns the level of the specified cell.
+     *
+     * @param cellId
+     *            the id of the cell
+     * @return the level of the cell
+     */
+    public static int getLevel(long cellId) {
+        return MAX_LEVEL - Long.numberOfTrailingZeros(checkId(cellId)) / 2;
+    }
+
+    /**
+     * Returns the parent of the specified cell.
+     *
+     * @param cellId
+     *            the id of the cell
+     * @return the id of the parent cell
+     * @throws IllegalArgumentException
+     *             if the cell is at level 0
+     */
+    public static long getParent(long cellId) {
+        return getParent(cellId, getLevel(cellId) - 1);
+    }
+
+    /**
+     * Returns the ancestor of the specified cell at the specified level.
+     *
+     * @param cellId
+     *            the id of the cell
+     * @param level
+     *            the level of the ancestor, at most the level of the cell
+     * @return the id of the ancestor, or the cell itself if the levels are the same
+     * @throws IllegalArgumentException
+     *             if the level is invalid or finer than the level of the cell
+     */
+    public static long getParent(long cellId, int level) {
+        if (level < 0 || level > getLevel(cellId)) {
+            throw new IllegalArgumentException("Level must be between 0 and " + getLevel(cellId) + ", was " + level);
+        }
+        long lsb = lowestBit(level);
+        return (cellId & -lsb) | lsb;
+    }
+
+    /**
+     * Returns the specified child of a cell. The children are ordered west to east in the southern half, then the
+     * northern half.
+     *
+     * @param cellId
+     *            the id of the cell
+     * @param index
+     *            the index of the child, 0 to 3
+     * @return the id of the child
+     * @throws IllegalArgumentException
+     *             if the cell is at the finest level or the index is invalid
+     */
+    public static long getChild(long cellId, int index) {
+        if (getLevel(cellId) == MAX_LEVEL) {
+            throw new IllegalArgumentException("Cells at level " + MAX_LEVEL + " have no children");
+        } else if (index < 0 || index > 3) {
+            throw new IllegalArgumentException("Index must be between 0 and 3, was " + index);
+        }
+        long lsb = cellId & -cellId;
+        return cellId - lsb + (2 * index + 1) * (lsb >>> 2);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the first cell contains the second cell, otherwise <tt>false</tt>. A cell contains
+     * itself.
+     *
+     * @param cellId
+     *            the id of the cell
+     * @param otherId
+     *            the id of the other cell
+     * @return true if the first cell contains the second cell
+     */
+    public static boolean contains(long cellId, long otherId) {
+        return getRangeMin(cellId) <= otherId && otherId <= getRangeMax(cellId);
+    }
+
+    /**
+     * Returns the smallest id of the cell and its descendants.
+     *
+     * @param cellId
+     *            the id of the cell
+     * @return the smallest id of the cell and its descendants
+     */
+    public static long getRangeMin(long cellId) {
+        return cellId - ((cellId & -cellId) - 1);
+    }
+
+    /**
+     * Returns the largest id of the cell and its descendants.
+     *
+     * @param cellId
+     *            the id of the cell
+     * @return the largest id of the cell and its descendants
+     */
+    public static long getRangeMax(long cellId) {
+        return cellId + ((cellId & -cellId) - 1);
+    }
+
+    /**
+     * Returns the size in degrees of the cells at the specified level.
+     *
+     * @param level
+     *            the level
+     * @return the size in degrees of the cells at the level
+     */
+    public static double getCellSize(int level) {
+        return 360.0 / (1L << checkLevel(level));
+    }
+
+    /**
+     * Returns the coarsest level with cells no larger than the specified size.
+     *
+     * @param degrees
+     *            the size in degrees
+     * @return the coarsest level with cells no larger than the size, at most {@value #MAX_LEVEL}
+     */
+    public static int getLevel(double degrees) {
+        if (!(degrees > 0)) {
+            throw new IllegalArgumentException("Size must be positive, was " + degrees);
+        }
+        int level = 0;
+        while (level < MAX_LEVEL && getCellSize(level) > degrees) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Returns the bounding box of the specified cell, limited to valid latitudes.
+     *
+     * @param cellId
+     *            the id of the cell
+     * @return the bounding box of the cell
+     * @throws IllegalArgumentException
+     *             if the cell is entirely outside valid latitudes
+     */
+    public static BoundingBox getBoundingBox(long cellId) {
+        double[] b = bounds(cellId);
+        if (b[0] > 90 || b[1] < -90) {
+            throw new IllegalArgumentException("Cell is outside valid latitudes, was " + cellId);
+        }
+        return BoundingBox.create(Position.create(Math.max(-90, b[0]), b[2]),
+                Position.create(Math.min(90, b[1]), b[3]), CoordinateSystem.CARTESIAN);
+    }
+
+    /**
+     * Covers an area with cells of mixed levels. Cells inside the area are kept at the coarsest level possible, and
+     * only cells crossing the boundary of the area are divided down to the finest level. The cells do not overlap.
+     * <p>
+     * Bounding boxes, polygons and circles are supported.
+     *
+     * @param area
+     *            the area to cover
+     * @param minLevel
+     *            the coarsest level of the cells
+     * @param maxLevel
+     *            the finest level of the cells
+     * @return the ids of the cells covering the area
+     * @throws UnsupportedOperationException
+     *             if the area is not supported
+     */
+    public static CellIdSet cover(Area area, int minLevel, int maxLevel) {
+        checkLevel(minLevel);
+        checkLevel(maxLevel);
+        if (minLevel > maxLevel) {
+            throw new IllegalArgumentException("minLevel must not exceed maxLevel, was " + minLevel + " > "
+                    + maxLevel);
+        }
+        Covering covering = new Covering(classifier(requireNonNull(area, "area is null")), minLevel, maxLevel);
+        covering.cover(lowestBit(0));
+        return covering.size == 0 ? CellIdSet.EMPTY : new CellIdSet(Arrays.copyOf(covering.ids, covering.size));
+    }
+
+    /**
+     * Returns <tt>true</tt> if a cell of the specified set contains the position, otherwise <tt>false</tt>. The set
+     * must not contain overlapping cells, as returned by {@link #cover(Area, int, int)}.
+     *
+     * @param cells
+     *            the ids of the cells
+     * @param latitude
+     *            the latitude of the position
+     * @param longitude
+     *            the longitude of the position
+     * @return true if a cell of the set contains the position
+     */
+    public static boolean covers(CellIdSet cells, double latitude, double longitude) {
+        long leaf = getCellId(latitude, longitude, MAX_LEVEL);
+        // The cell containing the leaf is the last cell before it, or the first cell after it
+        int low = 0;
+        int high = cells.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long id = cells.get(mid);
+            if (id < leaf) {
+                low = mid + 1;
+            } else if (id > leaf) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return high >= 0 && contains(cells.get(high), leaf) || low < cells.size() && contains(cells.get(low), leaf);
+    }
+
+    /** Returns the southern, northern, western and eastern edges of the cell, latitudes are not limited. */
+    static double[] bounds(long cellId) {
+        int level = getLevel(cellId);
+        long lsb = cellId & -cellId;
+        long code = (cellId - lsb) >>> 1;
+        double size = 360.0 / (1L << level);
+        double x = deinterleave(code) / LEAF_CELLS * 360 - 180;
+        double y = deinterleave(code >>> 1) / LEAF_CELLS * 360 - 180;
+        return new double[] { y, y + size, x, x + size };
+    }
+
+    /** Spreads the lower 30 bits of the value to the even bits of the result. */
+    private static long interleave(long v) {
+        v = (v | v << 16) & 0x0000FFFF0000FFFFL;
+        v = (v | v << 8) & 0x00FF00FF00FF00FFL;
+        v = (v | v << 4) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | v << 2) & 0x3333333333333333L;
+        return (v | v << 1) & 0x5555555555555555L;
+    }
+
+    /** Gathers the even bits of the value, the inverse of {@link #interleave(long)}. */
+    private static long deinterleave(long v) {
+        v &= 0x5555555555555555L;
+        v = (v | v >>> 1) & 0x3333333333333333L;
+        v = (v | v >>> 2) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | v >>> 4) & 0x00FF00FF00FF00FFL;
+        v = (v | v >>> 8) & 0x0000FFFF0000FFFFL;
+        return (v | v >>> 16) & 0x00000000FFFFFFFFL;
+    }
+
+    /** Returns the level bit of cells at the specified level. */
+    private static long lowestBit(int level) {
+        return 1L << 2 * (MAX_LEVEL - level);
+    }
+
+    private static int checkLevel(int level) {
+        if (level < 0 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("Level must be between 0 and " + MAX_LEVEL + ", was " + level);
+        }
+        return level;
+    }
+
+    private static long checkId(long cellId) {
+        if (cellId <= 0 || cellId >= 1L << 2 * MAX_LEVEL + 1 || Long.numberOfTrailingZeros(cellId) % 2 != 0) {
+            throw new IllegalArgumentException("Not a valid cell id, was " + cellId);
+        }
+        return cellId;
+    }
+
+    /** Returns a classifier of cells against the area. */
+    private static Classifier classifier(Area area) {
+        if (area instanceof BoundingBox) {
+            BoundingBox box = (BoundingBox) area;
+            return (s, n, w, e) -> {
+                if (s > box.getMaxLat() || n <= box.getMinLat() || w > box.getMaxLon() || e <= box.getMinLon()) {
+                    return Classifier.OUTSIDE;
+                }
+                return s >= box.getMinLat() && n <= box.getMaxLat() && w >= box.getMinLon() && e <= box.getMaxLon()
+                        ? Classifier.INSIDE : Classifier.PARTIAL;
+            };
+        } else if (area instanceof Polygon) {
+            Polygon polygon = (Polygon) area;
+            return (s, n, w, e) -> {
+                // Bounding boxes are latitude/longitude rectangles, also when compared with great circle polygons
+                BoundingBox cell = BoundingBox.create(Position.create(s, w), Position.create(n, e),
+                        CoordinateSystem.CARTESIAN);
+                return polygon.contains(cell) ? Classifier.INSIDE : polygon.intersects(cell) ? Classifier.PARTIAL
+                        : Classifier.OUTSIDE;
+            };
+        } else if (area instanceof Circle) {
+            Circle circle = (Circle) area;
+            Position center = circle.getCenter();
+            CoordinateSystem cs = circle.getCoordinateSystem();
+            return (s, n, w, e) -> {
+                // The nearest point of the cell to the center
+                double lat = Math.max(s, Math.min(n, center.getLatitude()));
+                double lon = center.getLongitude();
+                double dLon = lon - (w + e) / 2;
+                dLon = dLon > 180 ? dLon - 360 : dLon < -180 ? dLon + 360 : dLon;
+                if (Math.abs(dLon) > (e - w) / 2) {
+                    lon = dLon > 0 ? e : w;
+                }
+                if (center.distanceTo(Position.create(lat, lon), cs) > circle.getRadius()) {
+                    return Classifier.OUTSIDE;
+                }
+                for (double cornerLat : new double[] { s, n }) {
+                    for (double cornerLon : new double[] { w, e }) {
+                        if (center.distanceTo(Position.create(cornerLat, cornerLon), cs) > circle.getRadius()) {
+                            return Classifier.PARTIAL;
+                        }
+                    }
+                }
+                return Classifier.INSIDE;
+            };
+        }
+        throw new UnsupportedOperationException("Only bounding boxes, polygons and circles are supported");
+    }
+
+    /** Classifies a cell, given by its edges, against an area. */
+    interface Classifier {
+        int OUTSIDE = 0, PARTIAL = 1, INSIDE = 2;
+
+        int classify(double south, double north, double west, double east);
+    }
+
+    /** Collects the cells of a covering, in ascending order. */
+    private static final class Covering {
+        final Classifier classifier;
+        final int minLevel;
+        final int maxLevel;
+        long[] ids = new long[64];
+        int size;
+
+        Covering(Classifier classifier, int minLevel, int maxLevel) {
+            this.classifier = classifier;
+            this.minLevel = minLevel;
+            this.maxLevel = maxLevel;
+        }
+
+        void cover(long cellId) {
+            double[] b = bounds(cellId);
+            if (b[0] >= 90 || b[1] <= -90) {
+                return;
+            }
+            int c = classifier.classify(Math.max(-90, b[0]), Math.min(90, b[1]), b[2], b[3]);
+            int level = getLevel(cellId);
+            if (c == Classifier.OUTSIDE) {
+                return;
+            } else if (level >= minLevel && (c == Classifier.INSIDE || level == maxLevel)) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size++] = cellId;
+            } else {
+                for (int i = 0; i < 4; i++) {
+                    cover(getChild(cellId, i));
+                }
+            }
+        }
+    }
+}
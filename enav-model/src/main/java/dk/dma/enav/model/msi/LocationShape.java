@@ -0,0 +1,237 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.msi;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.cos;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toRadians;
+
+import java.util.List;
+
+import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.Circle;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Element;
+import dk.dma.enav.model.geometry.Ellipse;
+import dk.dma.enav.model.geometry.Line;
+import dk.dma.enav.model.geometry.Polygon;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.geometry.PreparedPolygon;
+
+/**
+ * The shape of a message location or a query, a point, a polyline or a polygon widened by a radius. Points and lines
+ * of messages and queries are all tested the same way: two shapes intersect if one polygon contains a vertex of the
+ * other shape, or if their edges come closer than the sum of their radii.
+ * <p>
+ * Containment in polygons is exact. Distances are measured in an equirectangular projection centered between the
+ * shapes, which is accurate to about a percent for shapes within a few hundred kilometres.
+ */
+final class LocationShape {
+
+    /** The number of vertices of the polygon approximating an ellipse. */
+    private static final int ELLIPSE_VERTICES = 32;
+
+    /** The latitudes of the vertices. */
+    final double[] latitudes;
+
+    /** The longitudes of the vertices, unwrapped so adjacent longitudes differ by at most 180 degrees. */
+    final double[] longitudes;
+
+    /** The polygon if the shape is closed, otherwise null. */
+    final PreparedPolygon polygon;
+
+    /** The distance in meters the shape is widened by. */
+    final double radius;
+
+    /** The bounds of the shape including the radius, the longitudes are unwrapped as the vertices. */
+    final double south, north, west, east;
+
+    private LocationShape(double[] latitudes, double[] longitudes, PreparedPolygon polygon, double radius) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.polygon = polygon;
+        this.radius = radius;
+        double s = Double.POSITIVE_INFINITY, n = Double.NEGATIVE_INFINITY;
+        double w = Double.POSITIVE_INFINITY, e = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < latitudes.length; i++) {
+            if (i > 0) {
+                longitudes[i] = longitudes[i - 1] + wrap(longitudes[i] - longitudes[i - 1]);
+            }
+            s = min(s, latitudes[i]);
+            n = max(n, latitudes[i]);
+            w = min(w, longitudes[i]);
+            e = max(e, longitudes[i]);
+        }
+        if (polygon != null) {
+            s = min(s, polygon.getPolygon().getMinLat());
+            n = max(n, polygon.getPolygon().getMaxLat());
+        }
+        double dLat = radius / CoordinateSystem.METERS_PER_DEGREE;
+        double maxAbsLat = max(abs(s), abs(n)) + dLat;
+        double dLon = maxAbsLat >= 90 ? 180 : min(180, dLat / cos(toRadians(maxAbsLat)));
+        south = max(-90, s - dLat);
+        north = min(90, n + dLat);
+        west = w - dLon;
+        east = e + dLon;
+    }
+
+    /**
+     * Returns the shape of the specified element.
+     * 
+     * @throws IllegalArgumentException
+     *             if the element is not a position, circle, line, polygon or ellipse
+     */
+    static LocationShape of(Element element) {
+        if (element instanceof Position) {
+            Position p = (Position) element;
+            return point(p.getLatitude(), p.getLongitude(), 0);
+        } else if (element instanceof Circle) {
+            Circle c = (Circle) element;
+            return point(c.getCenter().getLatitude(), c.getCenter().getLongitude(), c.getRadius());
+        } else if (element instanceof Line) {
+            Line l = (Line) element;
+            return segment(l.getStart(), l.getEnd(), 0);
+        } else if (element instanceof Polygon) {
+            return polygon((Polygon) element);
+        } else if (element instanceof Ellipse) {
+            Ellipse e = (Ellipse) element;
+            return polygon(new Polygon(e.samplePerimeter(ELLIPSE_VERTICES), e.getCoordinateSystem()));
+        }
+        throw new IllegalArgumentException("Unsupported location element " + element);
+    }
+
+    static LocationShape point(double latitude, double longitude, double radius) {
+        return new LocationShape(new double[] { latitude }, new double[] { longitude }, null, radius);
+    }
+
+    static LocationShape segment(Position start, Position end, double radius) {
+        return new LocationShape(new double[] { start.getLatitude(), end.getLatitude() }, new double[] {
+                start.getLongitude(), end.getLongitude() }, null, radius);
+    }
+
+    static LocationShape polygon(Polygon polygon) {
+        List<Position> vertices = polygon.getVertices();
+        double[] latitudes = new double[vertices.size()];
+        double[] longitudes = new double[vertices.size()];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = vertices.get(i).getLatitude();
+            longitudes[i] = vertices.get(i).getLongitude();
+        }
+        return new LocationShape(latitudes, longitudes, polygon.prepare(), 0);
+    }
+
+    static LocationShape box(BoundingBox box) {
+        return polygon(box);
+    }
+
+    /**
+     * Returns whether the bounds of the shapes overlap.
+     */
+    boolean overlaps(LocationShape other) {
+        if (other.south > north || other.north < south) {
+            return false;
+        }
+        for (int shift = -360; shift <= 360; shift += 360) {
+            if (other.west + shift <= east && other.east + shift >= west) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the shapes intersect.
+     */
+    boolean intersects(LocationShape other) {
+        if (!overlaps(other)) {
+            return false;
+        } else if (polygon != null && polygon.contains(other.latitudes[0], other.longitudes[0])
+                || other.polygon != null && other.polygon.contains(latitudes[0], longitudes[0])) {
+            return true;
+        }
+        // Project both shapes around the center of the overlap of their bounds
+        double lat0 = (max(south, other.south) + min(north, other.north)) / 2;
+        double lon0 = longitudes[0];
+        double otherShift = 360 * Math.rint((lon0 - other.longitudes[0]) / 360);
+        double kx = cos(toRadians(lat0)) * CoordinateSystem.METERS_PER_DEGREE;
+        double ky = CoordinateSystem.METERS_PER_DEGREE;
+        double limit = radius + other.radius;
+        if (limit == 0 && (latitudes.length == 1 || other.latitudes.length == 1)) {
+            // A point only touches lines, ignore that
+            return false;
+        }
+
+        int n = segments(), m = other.segments();
+        for (int i = 0; i < n; i++) {
+            int i2 = next(i);
+            double ax = (longitudes[i] - lon0) * kx, ay = (latitudes[i] - lat0) * ky;
+            double bx = (longitudes[i2] - lon0) * kx, by = (latitudes[i2] - lat0) * ky;
+            for (int j = 0; j < m; j++) {
+                int j2 = other.next(j);
+                double cx = (other.longitudes[j] + otherShift - lon0) * kx, cy = (other.latitudes[j] - lat0) * ky;
+                double dx = (other.longitudes[j2] + otherShift - lon0) * kx, dy = (other.latitudes[j2] - lat0) * ky;
+                if (segmentDistance(ax, ay, bx, by, cx, cy, dx, dy) <= limit) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the number of segments, a single point is a segment of zero length. */
+    private int segments() {
+        int n = latitudes.length;
+        return n == 1 ? 1 : polygon != null ? n : n - 1;
+    }
+
+    private int next(int i) {
+        return i + 1 == latitudes.length ? polygon != null ? 0 : i : i + 1;
+    }
+
+    /** Returns the distance between the segments a-b and c-d in the plane. */
+    static double segmentDistance(double ax, double ay, double bx, double by, double cx, double cy, double dx,
+            double dy) {
+        double d1 = side(ax, ay, bx, by, cx, cy);
+        double d2 = side(ax, ay, bx, by, dx, dy);
+        double d3 = side(cx, cy, dx, dy, ax, ay);
+        double d4 = side(cx, cy, dx, dy, bx, by);
+        if ((d1 > 0 && d2 < 0 || d1 < 0 && d2 > 0) && (d3 > 0 && d4 < 0 || d3 < 0 && d4 > 0)) {
+            return 0;
+        }
+        return min(min(pointDistance(cx, cy, ax, ay, bx, by), pointDistance(dx, dy, ax, ay, bx, by)),
+                min(pointDistance(ax, ay, cx, cy, dx, dy), pointDistance(bx, by, cx, cy, dx, dy)));
+    }
+
+    /** Returns the distance from the point p to the segment a-b in the plane. */
+    static double pointDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double vx = bx - ax, vy = by - ay;
+        double length2 = vx * vx + vy * vy;
+        double t = length2 == 0 ? 0 : max(0, min(1, ((px - ax) * vx + (py - ay) * vy) / length2));
+        double x = px - ax - t * vx, y = py - ay - t * vy;
+        return sqrt(x * x + y * y);
+    }
+
+    private static double side(double x1, double y1, double x2, double y2, double x, double y) {
+        return (x2 - x1) * (y - y1) - (y2 - y1) * (x - x1);
+    }
+
+    /** Returns the longitude difference shifted by a multiple of 360 degrees into [-180, 180]. */
+    private static double wrap(double delta) {
+        return delta > 180 ? delta - 360 : delta < -180 ? delta + 360 : delta;
+    }
+}
@@ -15,6 +15,7 @@
 package dk.dma.enav.model.msi;
 
 import java.io.Serializable;
+import java.util.Objects;
 
 /**
  * ComplexType
@@ -52,4 +53,25 @@ public class MessageSeriesIdentifier implements Serializable {
         return messageAuthority;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (!(obj instanceof MessageSeriesIdentifier)) {
+            return false;
+        }
+        MessageSeriesIdentifier that = (MessageSeriesIdentifier) obj;
+        return messageType == that.messageType && messageNumber == that.messageNumber
+                && messageYear == that.messageYear && Objects.equals(messageAuthority, that.messageAuthority);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(messageType, messageNumber, messageYear, messageAuthority);
+    }
+
+    @Override
+    public String toString() {
+        return messageAuthority + "-" + messageNumber + "-" + messageYear + " " + messageType;
+    }
 }
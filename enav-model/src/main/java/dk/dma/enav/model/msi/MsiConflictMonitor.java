@@ -0,0 +1,405 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.msi;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dk.dma.enav.model.geometry.grid.Grid;
+import dk.dma.enav.model.voyage.Route;
+
+/**
+ * Matches the corridors of routes, typically the {@link dk.dma.enav.model.voyage.Voyage#getPlannedRoute() planned
+ * routes} of vessels, against the locations of navigational warnings, and notifies a listener when a conflict between
+ * a route and a warning starts or ends.
+ * <p>
+ * Conflicts are maintained incrementally. Setting a route only matches that route against the warnings, found in an
+ * {@link MsiIndex}. Adding a warning only matches it against the routes with corridors in the grid cells covered by
+ * its locations. Removing a route or a warning, directly, by a {@link NavwarnMessage#getCancelMessage() cancelling}
+ * warning or by {@link #expire(Date) expiry}, ends its conflicts without matching anything. The corridor of a route is
+ * measured as described in {@link MsiIndex#query(Route, double)}.
+ * <p>
+ * The corridor is a snapshot of the route when it was set, so {@link #setRoute(Object, Route)} must be invoked again
+ * after changing the route. This class is not thread-safe. Updates must be made from a single thread or be externally
+ * synchronized.
+ *
+ * @param <K>
+ *            the type of key identifying a route, for example the vessel sailing it
+ */
+public final class MsiConflictMonitor<K> {
+
+    /** The warnings. */
+    private final MsiIndex index;
+
+    /** The distance in meters to widen corridors by. */
+    private final double margin;
+
+    private final ConflictListener<K> listener;
+
+    /** The state of each route. */
+    private final Map<K, RouteState> routes = new HashMap<>();
+
+    /** The keys of the routes in conflict with each warning. */
+    private final Map<MessageSeriesIdentifier, Set<K>> conflicts = new HashMap<>();
+
+    /** The keys of the routes with a corridor in each non-empty cell. */
+    private final Map<Long, Set<K>> cells = new HashMap<>();
+
+    /**
+     * Creates a new monitor using a grid of 1 degree, that does not widen corridors.
+     *
+     * @param listener
+     *            the listener notified when conflicts start or end
+     */
+    public MsiConflictMonitor(ConflictListener<K> listener) {
+        this(Grid.GRID_1_DEGREE, 0, listener);
+    }
+
+    /**
+     * Creates a new monitor.
+     *
+     * @param grid
+     *            the grid used for bucketing warnings and corridors
+     * @param margin
+     *            the distance in meters to widen the corridors of routes by
+     * @param listener
+     *            the listener notified when conflicts start or end
+     */
+    public MsiConflictMonitor(Grid grid, double margin, ConflictListener<K> listener) {
+        if (!(margin >= 0)) {
+            throw new IllegalArgumentException("Margin must be non-negative, was " + margin);
+        }
+        this.index = new MsiIndex(grid);
+        this.margin = margin;
+        this.listener = requireNonNull(listener, "listener is null");
+    }
+
+    /**
+     * Sets the route with the specified key, notifying the listener about the conflicts ended and started by the
+     * change.
+     *
+     * @param key
+     *            the key of the route
+     * @param route
+     *            the route
+     */
+    public void setRoute(K key, Route route) {
+        requireNonNull(key, "key is null");
+        LocationShape[] corridor = MsiIndex.corridor(requireNonNull(route, "route is null"), margin);
+        RouteState old = routes.get(key);
+        if (old != null) {
+            unregister(key, old.corridor);
+        }
+        RouteState state = new RouteState(corridor);
+        routes.put(key, state);
+        register(key, corridor);
+
+        Set<MessageSeriesIdentifier> previous = old == null ? Collections.emptySet() : old.conflicts;
+        List<NavwarnMessage> started = new ArrayList<>();
+        for (NavwarnMessage message : index.query(corridor)) {
+            MessageSeriesIdentifier id = message.getMessageSeriesIdentifier();
+            state.conflicts.add(id);
+            if (!previous.contains(id)) {
+                conflicts.computeIfAbsent(id, k -> new HashSet<>()).add(key);
+                started.add(message);
+            }
+        }
+        for (MessageSeriesIdentifier id : previous) {
+            if (!state.conflicts.contains(id)) {
+                removeConflict(id, key);
+                listener.conflictEnded(key, index.get(id));
+            }
+        }
+        for (NavwarnMessage message : started) {
+            listener.conflictStarted(key, message);
+        }
+    }
+
+    /**
+     * Removes the route with the specified key, notifying the listener about the conflicts ended.
+     *
+     * @param key
+     *            the key of the route
+     * @return true if there was a route with the key, otherwise false
+     */
+    public boolean removeRoute(K key) {
+        RouteState state = routes.remove(requireNonNull(key, "key is null"));
+        if (state == null) {
+            return false;
+        }
+        unregister(key, state.corridor);
+        for (MessageSeriesIdentifier id : state.conflicts) {
+            removeConflict(id, key);
+            listener.conflictEnded(key, index.get(id));
+        }
+        return true;
+    }
+
+    /**
+     * Adds a warning, replacing the warning with the same identifier and removing the warnings it cancels. The listener
+     * is notified about the conflicts ended and started.
+     *
+     * @param message
+     *            the warning to add
+     * @throws IllegalArgumentException
+     *             if a location element is not supported
+     * @see MsiIndex#add(NavwarnMessage)
+     */
+    public void addMessage(NavwarnMessage message) {
+        MessageSeriesIdentifier id = requireNonNull(message, "message is null").getMessageSeriesIdentifier();
+        List<NavwarnMessage> cancelled = new ArrayList<>();
+        for (MessageSeriesIdentifier c : message.getCancelMessage()) {
+            NavwarnMessage m = c.equals(id) ? null : index.get(c);
+            if (m != null) {
+                cancelled.add(m);
+            }
+        }
+        NavwarnMessage replaced = index.add(message);
+        for (NavwarnMessage m : cancelled) {
+            ended(m);
+        }
+
+        // Find the routes with corridors near the locations of the warning
+        List<LocationShape> shapes = index.getShapes(id);
+        Set<K> candidates = new HashSet<>();
+        for (LocationShape shape : shapes) {
+            if (index.countCells(shape) > MsiIndex.MAX_CELLS) {
+                candidates.addAll(routes.keySet());
+                break;
+            }
+            index.forEachCellId(shape, cellId -> {
+                Set<K> keys = cells.get(cellId);
+                if (keys != null) {
+                    candidates.addAll(keys);
+                }
+            });
+        }
+        Set<K> matched = new LinkedHashSet<>();
+        for (K key : candidates) {
+            if (intersects(shapes, routes.get(key).corridor)) {
+                matched.add(key);
+            }
+        }
+
+        Set<K> previous = conflicts.getOrDefault(id, Collections.emptySet());
+        List<K> ended = new ArrayList<>();
+        for (K key : previous) {
+            if (!matched.contains(key)) {
+                routes.get(key).conflicts.remove(id);
+                ended.add(key);
+            }
+        }
+        List<K> started = new ArrayList<>();
+        for (K key : matched) {
+            if (!previous.contains(key)) {
+                routes.get(key).conflicts.add(id);
+                started.add(key);
+            }
+        }
+        if (matched.isEmpty()) {
+            conflicts.remove(id);
+        } else {
+            conflicts.put(id, matched);
+        }
+        for (K key : ended) {
+            listener.conflictEnded(key, replaced == null ? message : replaced);
+        }
+        for (K key : started) {
+            listener.conflictStarted(key, message);
+        }
+    }
+
+    /**
+     * Removes the warning with the specified identifier, notifying the listener about the conflicts ended.
+     *
+     * @param id
+     *            the identifier of the warning
+     * @return true if there was a warning with the identifier, otherwise false
+     */
+    public boolean removeMessage(MessageSeriesIdentifier id) {
+        NavwarnMessage message = index.remove(id);
+        if (message == null) {
+            return false;
+        }
+        ended(message);
+        return true;
+    }
+
+    /**
+     * Removes the warnings whose cancellation date is not after the specified date, notifying the listener about the
+     * conflicts ended.
+     *
+     * @param now
+     *            the current date
+     * @return the warnings removed
+     */
+    public List<NavwarnMessage> expire(Date now) {
+        List<NavwarnMessage> expired = index.expire(now);
+        for (NavwarnMessage message : expired) {
+            ended(message);
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the warnings in conflict with the route with the specified key.
+     *
+     * @param key
+     *            the key of the route
+     * @return the warnings in conflict with the route
+     */
+    public List<NavwarnMessage> getConflicts(K key) {
+        RouteState state = routes.get(key);
+        List<NavwarnMessage> result = new ArrayList<>();
+        if (state != null) {
+            for (MessageSeriesIdentifier id : state.conflicts) {
+                result.add(index.get(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the keys of the routes in conflict with the warning with the specified identifier.
+     *
+     * @param id
+     *            the identifier of the warning
+     * @return the keys of the routes in conflict with the warning
+     */
+    public Set<K> getConflicts(MessageSeriesIdentifier id) {
+        Set<K> keys = conflicts.get(id);
+        return keys == null ? Collections.emptySet() : Collections.unmodifiableSet(new LinkedHashSet<>(keys));
+    }
+
+    /**
+     * Returns the warning with the specified identifier.
+     *
+     * @param id
+     *            the identifier of the warning
+     * @return the warning, or null if there is no warning with the identifier
+     */
+    public NavwarnMessage getMessage(MessageSeriesIdentifier id) {
+        return index.get(id);
+    }
+
+    /**
+     * Returns the number of routes.
+     *
+     * @return the number of routes
+     */
+    public int size() {
+        return routes.size();
+    }
+
+    /** Ends the conflicts of a removed warning. */
+    private void ended(NavwarnMessage message) {
+        MessageSeriesIdentifier id = message.getMessageSeriesIdentifier();
+        Set<K> keys = conflicts.remove(id);
+        if (keys != null) {
+            for (K key : keys) {
+                routes.get(key).conflicts.remove(id);
+            }
+            for (K key : keys) {
+                listener.conflictEnded(key, message);
+            }
+        }
+    }
+
+    private void removeConflict(MessageSeriesIdentifier id, K key) {
+        Set<K> keys = conflicts.get(id);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            conflicts.remove(id);
+        }
+    }
+
+    private static boolean intersects(List<LocationShape> shapes, LocationShape[] corridor) {
+        for (LocationShape shape : shapes) {
+            for (LocationShape piece : corridor) {
+                if (shape.intersects(piece)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void register(K key, LocationShape[] corridor) {
+        for (LocationShape piece : corridor) {
+            index.forEachCellId(piece, id -> cells.computeIfAbsent(id, k -> new HashSet<>()).add(key));
+        }
+    }
+
+    private void unregister(K key, LocationShape[] corridor) {
+        for (LocationShape piece : corridor) {
+            index.forEachCellId(piece, id -> {
+                Set<K> keys = cells.get(id);
+                if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                    cells.remove(id);
+                }
+            });
+        }
+    }
+
+    /** The corridor of a route and the warnings in conflict with it. */
+    private static final class RouteState {
+        final LocationShape[] corridor;
+        final Set<MessageSeriesIdentifier> conflicts = new LinkedHashSet<>();
+
+        RouteState(LocationShape[] corridor) {
+            this.corridor = corridor;
+        }
+    }
+
+    /**
+     * Receives notifications about conflicts between routes and warnings.
+     *
+     * @param <K>
+     *            the type of key identifying a route
+     */
+    public interface ConflictListener<K> {
+
+        /**
+         * Invoked when the corridor of a route starts intersecting a location of a warning, because the route or the
+         * warning was added or changed.
+         *
+         * @param key
+         *            the key of the route
+         * @param message
+         *            the warning
+         */
+        void conflictStarted(K key, NavwarnMessage message);
+
+        /**
+         * Invoked when the corridor of a route stops intersecting the locations of a warning, because the route or the
+         * warning was changed or removed, or the warning was cancelled or expired. The default implementation does
+         * nothing.
+         *
+         * @param key
+         *            the key of the route
+         * @param message
+         *            the warning, or the replaced warning if it was changed
+         */
+        default void conflictEnded(K key, NavwarnMessage message) {}
+    }
+}
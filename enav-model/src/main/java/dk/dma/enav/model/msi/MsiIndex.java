@@ -0,0 +1,413 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.msi;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.Circle;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.geometry.grid.Grid;
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.RouteGeometry;
+import dk.dma.enav.model.voyage.RouteLeg;
+import dk.dma.enav.model.voyage.Waypoint;
+
+/**
+ * A spatial index of active navigational warnings, answering which warnings affect a position, an area or the corridor
+ * of a route.
+ * <p>
+ * Each {@link MessageLocation} of a warning is indexed in the {@link Grid} cells covered by its bounds, locations
+ * covering very many cells are kept in a list tested by every query. The candidates found in the grid are tested
+ * exactly, see {@link #query(Route, double)} for how distances are measured. Supported location elements are
+ * positions, circles, lines, polygons (including bounding boxes) and ellipses.
+ * <p>
+ * Warnings are keyed by their {@link MessageSeriesIdentifier}. Adding a warning replaces the warning with the same
+ * identifier, and removes the warnings it {@link NavwarnMessage#getCancelMessage() cancels}. Warnings past their
+ * {@link NavwarnMessage#getCancellationDate() cancellation date} stay in the index until {@link #expire(Date)} is
+ * invoked.
+ * <p>
+ * All methods may be invoked concurrently from multiple threads. Updates of the same warning are atomic, queries are
+ * weakly consistent and never block updates.
+ */
+@ThreadSafe
+public final class MsiIndex {
+
+    /** Locations covering more cells are not put in the grid, but tested by every query. */
+    static final int MAX_CELLS = 256;
+
+    /** Route legs are split into pieces no longer than this, in meters, before being measured. */
+    static final double MAX_PIECE_LENGTH = 50_000;
+
+    /** The grid used for bucketing locations. */
+    private final Grid grid;
+
+    /** The locations in each non-empty cell. */
+    private final ConcurrentHashMap<Long, Set<Entry>> cells = new ConcurrentHashMap<>();
+
+    /** The locations covering too many cells to be put in the grid. */
+    private final Set<Entry> large = ConcurrentHashMap.newKeySet();
+
+    /** The indexed locations of each warning. */
+    private final ConcurrentHashMap<MessageSeriesIdentifier, Entry[]> messages = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new index using a grid of 1 degree.
+     */
+    public MsiIndex() {
+        this(Grid.GRID_1_DEGREE);
+    }
+
+    /**
+     * Creates a new index.
+     *
+     * @param grid
+     *            the grid used for bucketing locations. Its cells should be of the same magnitude as typical locations
+     */
+    public MsiIndex(Grid grid) {
+        this.grid = requireNonNull(grid, "grid is null");
+    }
+
+    /**
+     * Adds the specified warning, replacing the warning with the same identifier and removing the warnings it cancels.
+     *
+     * @param message
+     *            the warning to add
+     * @return the warning replaced, or null if there was no warning with the same identifier
+     * @throws NullPointerException
+     *             if the warning or its identifier is null
+     * @throws IllegalArgumentException
+     *             if a location element is not supported
+     */
+    public NavwarnMessage add(NavwarnMessage message) {
+        MessageSeriesIdentifier id = requireNonNull(
+                requireNonNull(message, "message is null").getMessageSeriesIdentifier(),
+                "messageSeriesIdentifier is null");
+        List<Entry> entries = new ArrayList<>();
+        for (MessageItem item : message.getMessageItem()) {
+            for (MessageLocation location : item.getLocation()) {
+                if (location != null && location.getElement() != null) {
+                    entries.add(new Entry(message, LocationShape.of(location.getElement())));
+                }
+            }
+        }
+        for (MessageSeriesIdentifier cancelled : message.getCancelMessage()) {
+            if (!id.equals(cancelled)) {
+                remove(cancelled);
+            }
+        }
+        NavwarnMessage[] previous = new NavwarnMessage[1];
+        messages.compute(id, (k, old) -> {
+            if (old != null) {
+                previous[0] = old.length > 0 ? old[0].message : null;
+                for (Entry e : old) {
+                    unregister(e);
+                }
+            }
+            for (Entry e : entries) {
+                register(e);
+            }
+            return entries.isEmpty() ? new Entry[] { new Entry(message, null) } : entries.toArray(new Entry[0]);
+        });
+        return previous[0];
+    }
+
+    /**
+     * Removes the warning with the specified identifier.
+     *
+     * @param id
+     *            the identifier of the warning
+     * @return the warning removed, or null if there was no warning with the identifier
+     */
+    public NavwarnMessage remove(MessageSeriesIdentifier id) {
+        NavwarnMessage[] removed = new NavwarnMessage[1];
+        messages.computeIfPresent(requireNonNull(id, "id is null"), (k, old) -> {
+            removed[0] = old[0].message;
+            for (Entry e : old) {
+                unregister(e);
+            }
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Removes the warnings whose cancellation date is not after the specified date.
+     *
+     * @param now
+     *            the current date
+     * @return the warnings removed
+     */
+    public List<NavwarnMessage> expire(Date now) {
+        requireNonNull(now, "now is null");
+        List<NavwarnMessage> expired = new ArrayList<>();
+        for (Entry[] entries : messages.values()) {
+            NavwarnMessage message = entries[0].message;
+            Date cancellation = message.getCancellationDate();
+            if (cancellation != null && !cancellation.after(now)
+                    && messages.remove(message.getMessageSeriesIdentifier(), entries)) {
+                for (Entry e : entries) {
+                    unregister(e);
+                }
+                expired.add(message);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the warning with the specified identifier.
+     *
+     * @param id
+     *            the identifier of the warning
+     * @return the warning, or null if there is no warning with the identifier
+     */
+    public NavwarnMessage get(MessageSeriesIdentifier id) {
+        Entry[] entries = messages.get(requireNonNull(id, "id is null"));
+        return entries == null ? null : entries[0].message;
+    }
+
+    /** Returns the shapes of the locations of the warning with the specified identifier. */
+    List<LocationShape> getShapes(MessageSeriesIdentifier id) {
+        List<LocationShape> shapes = new ArrayList<>();
+        Entry[] entries = messages.get(id);
+        if (entries != null) {
+            for (Entry e : entries) {
+                if (e.shape != null) {
+                    shapes.add(e.shape);
+                }
+            }
+        }
+        return shapes;
+    }
+
+    /**
+     * Returns the number of warnings in the index.
+     *
+     * @return the number of warnings in the index
+     */
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * Returns the warnings with a location containing the specified position.
+     *
+     * @param position
+     *            the position
+     * @return the warnings with a location containing the position
+     */
+    public List<NavwarnMessage> query(Position position) {
+        return query(LocationShape.point(position.getLatitude(), position.getLongitude(), 0));
+    }
+
+    /**
+     * Returns the warnings with a location intersecting the specified bounding box.
+     *
+     * @param box
+     *            the bounding box
+     * @return the warnings with a location intersecting the bounding box
+     */
+    public List<NavwarnMessage> query(BoundingBox box) {
+        return query(LocationShape.box(box));
+    }
+
+    /**
+     * Returns the warnings with a location intersecting the specified circle.
+     *
+     * @param circle
+     *            the circle
+     * @return the warnings with a location intersecting the circle
+     */
+    public List<NavwarnMessage> query(Circle circle) {
+        return query(LocationShape.of(circle));
+    }
+
+    /**
+     * Returns the warnings with a location intersecting the corridor of the specified route.
+     *
+     * @param route
+     *            the route
+     * @return the warnings with a location intersecting the corridor of the route
+     * @see #query(Route, double)
+     */
+    public List<NavwarnMessage> query(Route route) {
+        return query(route, 0);
+    }
+
+    /**
+     * Returns the warnings with a location intersecting the corridor of the specified route. The corridor of a leg
+     * extends the larger of the port and starboard XTDs of the leg to each side, widened by the margin. Legs without
+     * XTDs are only widened by the margin.
+     * <p>
+     * Containment in polygons and ellipses is exact. Other distances are measured in an equirectangular projection of
+     * pieces of at most {@value #MAX_PIECE_LENGTH} meters of each leg, which is accurate to about a percent.
+     *
+     * @param route
+     *            the route
+     * @param margin
+     *            the distance in meters to widen the corridor by
+     * @return the warnings with a location intersecting the corridor of the route
+     */
+    public List<NavwarnMessage> query(Route route, double margin) {
+        return query(corridor(route, margin));
+    }
+
+    /** Returns the shapes of the corridor of the specified route. */
+    static LocationShape[] corridor(Route route, double margin) {
+        if (margin < 0) {
+            throw new IllegalArgumentException("Margin must be non-negative, was " + margin);
+        }
+        List<Waypoint> waypoints = route.getWaypoints();
+        if (waypoints.size() < 2) {
+            return waypoints.isEmpty() ? new LocationShape[0] : new LocationShape[] { LocationShape.point(
+                    waypoints.get(0).getLatitude(), waypoints.get(0).getLongitude(), margin) };
+        }
+        RouteGeometry geometry = route.getGeometry();
+        List<LocationShape> pieces = new ArrayList<>();
+        for (int i = 0; i < waypoints.size() - 1; i++) {
+            RouteLeg leg = waypoints.get(i).getRouteLeg();
+            double width = margin;
+            if (leg != null) {
+                double xtd = Math.max(leg.getXtdPort() == null ? 0 : leg.getXtdPort(),
+                        leg.getXtdStarboard() == null ? 0 : leg.getXtdStarboard());
+                width += xtd * CoordinateSystem.NAUTICAL_MILE;
+            }
+            double start = geometry.getDistance(i);
+            double length = geometry.getLegLength(i);
+            int count = Math.max(1, (int) Math.ceil(length / MAX_PIECE_LENGTH));
+            Position from = position(waypoints.get(i));
+            for (int k = 1; k <= count; k++) {
+                Position to = k == count ? position(waypoints.get(i + 1)) : geometry.getPositionAtDistance(start
+                        + length * k / count);
+                pieces.add(LocationShape.segment(from, to, width));
+                from = to;
+            }
+        }
+        return pieces.toArray(new LocationShape[pieces.size()]);
+    }
+
+    private static Position position(Waypoint waypoint) {
+        return Position.create(waypoint.getLatitude(), waypoint.getLongitude());
+    }
+
+    /** Returns the warnings with a location intersecting any of the shapes. */
+    List<NavwarnMessage> query(LocationShape... shapes) {
+        Set<NavwarnMessage> result = new LinkedHashSet<>();
+        Set<Entry> tested = new HashSet<>();
+        for (LocationShape shape : shapes) {
+            tested.clear();
+            forEachCellId(shape, id -> {
+                Set<Entry> cell = cells.get(id);
+                if (cell != null) {
+                    for (Entry e : cell) {
+                        test(e, shape, tested, result);
+                    }
+                }
+            });
+            for (Entry e : large) {
+                test(e, shape, tested, result);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static void test(Entry e, LocationShape shape, Set<Entry> tested, Set<NavwarnMessage> result) {
+        if (!result.contains(e.message) && tested.add(e) && e.shape.intersects(shape)) {
+            result.add(e.message);
+        }
+    }
+
+    private void register(Entry e) {
+        if (e.shape == null) {
+            return;
+        } else if (countCells(e.shape) > MAX_CELLS) {
+            large.add(e);
+        } else {
+            forEachCellId(e.shape, id -> cells.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(e));
+        }
+    }
+
+    private void unregister(Entry e) {
+        if (e.shape == null) {
+            return;
+        } else if (!large.remove(e)) {
+            forEachCellId(e.shape, id -> cells.computeIfPresent(id, (k, cell) -> {
+                cell.remove(e);
+                return cell.isEmpty() ? null : cell;
+            }));
+        }
+    }
+
+    /** Returns the number of cells covered by the bounds of the shape. */
+    long countCells(LocationShape shape) {
+        long[] count = new long[1];
+        forEachRange(shape, box -> count[0] += grid.countCells(box));
+        return count[0];
+    }
+
+    /** Visits the ids of the cells covered by the bounds of the shape. */
+    void forEachCellId(LocationShape shape, LongConsumer consumer) {
+        forEachRange(shape, box -> grid.forEachCellId(box, consumer));
+    }
+
+    /** Visits the bounds of the shape, split in two boxes if crossing the 180th meridian. */
+    private static void forEachRange(LocationShape shape, Consumer<BoundingBox> visitor) {
+        double west = shape.west;
+        double east = shape.east;
+        if (east - west >= 360) {
+            west = -180;
+            east = 180;
+        } else {
+            double shift = 360 * Math.floor((west + 180) / 360);
+            west -= shift;
+            east -= shift;
+        }
+        if (east > 180) {
+            visitor.accept(box(shape.south, shape.north, west, 180));
+            visitor.accept(box(shape.south, shape.north, -180, east - 360));
+        } else {
+            visitor.accept(box(shape.south, shape.north, west, east));
+        }
+    }
+
+    private static BoundingBox box(double south, double north, double west, double east) {
+        return BoundingBox.create(Position.create(south, west), Position.create(north, east),
+                CoordinateSystem.CARTESIAN);
+    }
+
+    /** A location of a warning, or a warning without locations if the shape is null. */
+    static final class Entry {
+        final NavwarnMessage message;
+        final LocationShape shape;
+
+        Entry(NavwarnMessage message, LocationShape shape) {
+            this.message = message;
+            this.shape = shape;
+        }
+    }
+}
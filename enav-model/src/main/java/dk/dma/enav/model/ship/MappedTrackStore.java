@@ -0,0 +1,499 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.ship;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.geometry.PositionTime;
+
+/**
+ * An append-only store of vessel tracks kept in memory-mapped segment files, so that the history of many vessels can be
+ * queried without being loaded onto the heap.
+ * <p>
+ * Each segment file starts with a 16 byte header (magic, version, capacity, record count) followed by fixed size
+ * records of the form (mmsi, latitude, longitude, time, next). Latitude and longitude are stored as fixed-point
+ * integers in units of 1e-7 degrees (about 1 cm). The next field links the records of a vessel into a chain in time
+ * order. On the heap the store only keeps, for each vessel, the first and last record and the time of every
+ * {@value #INDEX_INTERVAL}th record, which is used to find the start of a time range without walking the entire
+ * chain. This index is rebuilt by a sequential scan when an existing store is opened.
+ * <p>
+ * Positions for a single vessel must be appended in non-decreasing time order. Appends are serialized while queries
+ * may run concurrently with appends; a cursor sees the positions that had been appended when the query was made.
+ */
+@ThreadSafe
+public final class MappedTrackStore implements Closeable {
+
+    /** The default number of records per segment file. */
+    public static final int DEFAULT_SEGMENT_CAPACITY = 1 << 22;
+
+    /** The number of records of a single vessel between each entry of the time index. */
+    static final int INDEX_INTERVAL = 64;
+
+    static final int HEADER_SIZE = 16;
+
+    static final int RECORD_SIZE = 28;
+
+    private static final int MAGIC = 0x454E544B; // ENTK
+
+    private static final int VERSION = 1;
+
+    private static final int COUNT_OFFSET = 12;
+
+    private static final double SCALE = 1e7;
+
+    private static final String SUFFIX = ".track";
+
+    private final Path directory;
+
+    private final int segmentCapacity;
+
+    /** The mapped segments, replaced by a larger copy whenever a segment is added. */
+    private volatile MappedByteBuffer[] segments;
+
+    /** The total number of records in the store. Guarded by this. */
+    private long size;
+
+    /** The per-vessel index. Guarded by this. */
+    private final Map<Integer, Vessel> vessels = new HashMap<>();
+
+    private volatile boolean closed;
+
+    private MappedTrackStore(Path directory, int segmentCapacity) {
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+    }
+
+    /**
+     * Opens the store in the specified directory, creating the directory if it does not exist.
+     *
+     * @param directory
+     *            the directory holding the segment files
+     * @return the store
+     * @throws IOException
+     *             if the store could not be opened
+     */
+    public static MappedTrackStore open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    /**
+     * Opens the store in the specified directory, creating the directory if it does not exist.
+     *
+     * @param directory
+     *            the directory holding the segment files
+     * @param segmentCapacity
+     *            the number of records per segment file, ignored if the store already exists
+     * @return the store
+     * @throws IOException
+     *             if the store could not be opened or a segment file is corrupt
+     */
+    public static MappedTrackStore open(Path directory, int segmentCapacity) throws IOException {
+        requireNonNull(directory, "directory is null");
+        if (segmentCapacity < 1 || segmentCapacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+            throw new IllegalArgumentException("Illegal segment capacity: " + segmentCapacity);
+        }
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path p : stream) {
+                files.add(p);
+            }
+        }
+        Collections.sort(files);
+        MappedByteBuffer[] segments = new MappedByteBuffer[files.size()];
+        for (int i = 0; i < segments.length; i++) {
+            Path p = files.get(i);
+            if (!p.getFileName().toString().equals(fileName(i))) {
+                throw new IOException("Missing segment file " + directory.resolve(fileName(i)));
+            }
+            segments[i] = map(p, -1);
+            if (segments[i].capacity() < HEADER_SIZE || segments[i].getInt(0) != MAGIC
+                    || segments[i].getInt(4) != VERSION) {
+                throw new IOException("Not a track segment file: " + p);
+            } else if (i == 0) {
+                segmentCapacity = segments[i].getInt(8);
+            }
+            int count = segments[i].getInt(COUNT_OFFSET);
+            if (segments[i].getInt(8) != segmentCapacity
+                    || segments[i].capacity() != HEADER_SIZE + (long) segmentCapacity * RECORD_SIZE) {
+                throw new IOException("Segment capacity mismatch: " + p);
+            } else if (count < 0 || count > segmentCapacity || count < segmentCapacity && i < segments.length - 1) {
+                throw new IOException("Illegal record count " + count + " in " + p);
+            }
+        }
+        MappedTrackStore store = new MappedTrackStore(directory, segmentCapacity);
+        store.load(segments);
+        return store;
+    }
+
+    /**
+     * Appends a position of the specified vessel.
+     *
+     * @param id
+     *            the id of the vessel
+     * @param position
+     *            the position
+     * @throws IOException
+     *             if a new segment file could not be created
+     * @throws IllegalArgumentException
+     *             if the time of the position is before the time of the last position of the vessel
+     */
+    public void append(MmsiId id, PositionTime position) throws IOException {
+        append(id, position.getLatitude(), position.getLongitude(), position.getTime());
+    }
+
+    /**
+     * Appends a position of the specified vessel.
+     *
+     * @param id
+     *            the id of the vessel
+     * @param latitude
+     *            the latitude
+     * @param longitude
+     *            the longitude
+     * @param time
+     *            the time in milliseconds since the epoch
+     * @throws IOException
+     *             if a new segment file could not be created
+     * @throws IllegalArgumentException
+     *             if the latitude or longitude is invalid, or if the time is before the time of the last position of
+     *             the vessel
+     */
+    public synchronized void append(MmsiId id, double latitude, double longitude, long time) throws IOException {
+        ensureOpen();
+        Position.verifyLatitude(latitude);
+        Position.verifyLongitude(longitude);
+        int mmsi = id.getMmsi();
+        Vessel v = vessels.get(mmsi);
+        if (v != null && time < v.lastTime) {
+            throw new IllegalArgumentException("time must not be before the time of the last position of " + id
+                    + ", was " + time + " < " + v.lastTime);
+        }
+        int segment = (int) (size / segmentCapacity);
+        if (segment == segments.length) {
+            addSegment(segment);
+        }
+        MappedByteBuffer b = segments[segment];
+        int offset = offset(size);
+        b.putInt(offset, mmsi);
+        b.putInt(offset + 4, (int) Math.round(latitude * SCALE));
+        b.putInt(offset + 8, (int) Math.round(longitude * SCALE));
+        b.putLong(offset + 12, time);
+        b.putLong(offset + 20, -1L);
+        if (v == null) {
+            vessels.put(mmsi, new Vessel(size, time));
+        } else {
+            buffer(v.last).putLong(offset(v.last) + 20, size);
+            v.add(size, time);
+        }
+        size++;
+        b.putInt(COUNT_OFFSET, (int) (size - (long) segment * segmentCapacity));
+    }
+
+    /**
+     * Returns a cursor over the positions of the specified vessel with a time in the specified range. The cursor reads
+     * directly from the mapped segments.
+     *
+     * @param id
+     *            the id of the vessel
+     * @param fromTime
+     *            the start of the range (inclusive)
+     * @param toTime
+     *            the end of the range (inclusive)
+     * @return a cursor over the positions in the range
+     */
+    public Cursor query(MmsiId id, long fromTime, long toTime) {
+        ensureOpen();
+        long first, last;
+        synchronized (this) {
+            Vessel v = vessels.get(id.getMmsi());
+            if (v == null || fromTime > toTime || fromTime > v.lastTime) {
+                return new Cursor(-1, -1, toTime);
+            }
+            first = v.floor(fromTime);
+            last = v.last;
+        }
+        while (time(first) < fromTime) {
+            first = next(first);
+        }
+        return new Cursor(first, last, toTime);
+    }
+
+    /**
+     * Returns a cursor over all positions of the specified vessel.
+     *
+     * @param id
+     *            the id of the vessel
+     * @return a cursor over all positions of the vessel
+     */
+    public Cursor query(MmsiId id) {
+        return query(id, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the number of positions stored for the specified vessel.
+     *
+     * @param id
+     *            the id of the vessel
+     * @return the number of positions stored for the vessel
+     */
+    public synchronized long count(MmsiId id) {
+        Vessel v = vessels.get(id.getMmsi());
+        return v == null ? 0 : v.count;
+    }
+
+    /**
+     * Returns the ids of all vessels in the store.
+     *
+     * @return the ids of all vessels in the store
+     */
+    public synchronized Set<MmsiId> getVessels() {
+        Set<MmsiId> result = new HashSet<>();
+        for (Integer mmsi : vessels.keySet()) {
+            result.add(new MmsiId(mmsi));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the total number of positions in the store.
+     *
+     * @return the total number of positions in the store
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /** Forces any changes to the segment files to be written to disk. */
+    public void flush() {
+        for (MappedByteBuffer b : segments) {
+            b.force();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            flush();
+            closed = true;
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The store has been closed");
+        }
+    }
+
+    private void load(MappedByteBuffer[] s) {
+        segments = s;
+        for (int i = 0; i < s.length; i++) {
+            int count = s[i].getInt(COUNT_OFFSET);
+            for (int j = 0; j < count; j++) {
+                int offset = HEADER_SIZE + j * RECORD_SIZE;
+                int mmsi = s[i].getInt(offset);
+                long time = s[i].getLong(offset + 12);
+                Vessel v = vessels.get(mmsi);
+                if (v == null) {
+                    vessels.put(mmsi, new Vessel(size, time));
+                } else {
+                    // repair the chain if the record was written but the previous record was not linked to it
+                    if (next(v.last) != size) {
+                        buffer(v.last).putLong(offset(v.last) + 20, size);
+                    }
+                    v.add(size, time);
+                }
+                size++;
+            }
+        }
+    }
+
+    private void addSegment(int segment) throws IOException {
+        MappedByteBuffer b = map(directory.resolve(fileName(segment)), HEADER_SIZE + (long) segmentCapacity
+                * RECORD_SIZE);
+        b.putInt(0, MAGIC);
+        b.putInt(4, VERSION);
+        b.putInt(8, segmentCapacity);
+        b.putInt(COUNT_OFFSET, 0);
+        MappedByteBuffer[] s = Arrays.copyOf(segments, segment + 1);
+        s[segment] = b;
+        segments = s;
+    }
+
+    /** Maps the specified file, using the current size of the file if length is negative. */
+    private static MappedByteBuffer map(Path file, long length) throws IOException {
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return fc.map(MapMode.READ_WRITE, 0, length < 0 ? fc.size() : length);
+        }
+    }
+
+    private static String fileName(int segment) {
+        return String.format("%08d%s", segment, SUFFIX);
+    }
+
+    private MappedByteBuffer buffer(long record) {
+        return segments[(int) (record / segmentCapacity)];
+    }
+
+    private int offset(long record) {
+        return HEADER_SIZE + (int) (record % segmentCapacity) * RECORD_SIZE;
+    }
+
+    private long time(long record) {
+        return buffer(record).getLong(offset(record) + 12);
+    }
+
+    private long next(long record) {
+        return buffer(record).getLong(offset(record) + 20);
+    }
+
+    /** The heap index of a single vessel. */
+    static final class Vessel {
+        long first;
+
+        long last;
+
+        long lastTime;
+
+        long count;
+
+        /** The time of every INDEX_INTERVAL'th record, starting with the first. */
+        long[] indexTimes = new long[4];
+
+        long[] indexRecords = new long[4];
+
+        int indexSize;
+
+        Vessel(long record, long time) {
+            this.first = record;
+            add(record, time);
+        }
+
+        void add(long record, long time) {
+            if (count % INDEX_INTERVAL == 0) {
+                if (indexSize == indexTimes.length) {
+                    indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+                    indexRecords = Arrays.copyOf(indexRecords, indexSize * 2);
+                }
+                indexTimes[indexSize] = time;
+                indexRecords[indexSize++] = record;
+            }
+            last = record;
+            lastTime = time;
+            count++;
+        }
+
+        /** Returns the last indexed record with a time before the specified time, or the first record. */
+        long floor(long time) {
+            int low = 0, high = indexSize - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (indexTimes[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high < 0 ? first : indexRecords[high];
+        }
+    }
+
+    /**
+     * A forward-only cursor over the positions of a vessel. The cursor is a flyweight: it reads each field directly from
+     * the mapped segments and only creates a position object when {@link #toPositionTime()} is called. Cursors are not
+     * thread-safe.
+     */
+    public final class Cursor {
+
+        private long current = -1;
+
+        private long pending;
+
+        private final long last;
+
+        private final long toTime;
+
+        Cursor(long first, long last, long toTime) {
+            this.pending = first;
+            this.last = last;
+            this.toTime = toTime;
+        }
+
+        /**
+         * Advances the cursor to the next position.
+         *
+         * @return true if the cursor was advanced, false if there are no more positions in the range
+         */
+        public boolean next() {
+            if (pending < 0 || time(pending) > toTime) {
+                pending = -1;
+                return false;
+            }
+            current = pending;
+            pending = current == last ? -1 : MappedTrackStore.this.next(current);
+            return true;
+        }
+
+        public double getLatitude() {
+            return buffer(current()).getInt(offset(current) + 4) / SCALE;
+        }
+
+        public double getLongitude() {
+            return buffer(current()).getInt(offset(current) + 8) / SCALE;
+        }
+
+        public long getTime() {
+            return time(current());
+        }
+
+        /**
+         * Returns a new position object for the current position of the cursor.
+         *
+         * @return a new position object
+         */
+        public PositionTime toPositionTime() {
+            return PositionTime.create(getLatitude(), getLongitude(), getTime());
+        }
+
+        private long current() {
+            if (current < 0) {
+                throw new IllegalStateException("next() has not returned true");
+            }
+            return current;
+        }
+    }
+}
@@ -35,6 +35,15 @@ public class MmsiId extends MaritimeId {
         this.mmsi = mmsi;
     }
 
+    /**
+     * Returns the MMSI number.
+     *
+     * @return the MMSI number
+     */
+    public int getMmsi() {
+        return mmsi;
+    }
+
     /** {@inheritDoc} */
     @Override
     public int hashCode() {
@@ -0,0 +1,506 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.voyage;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+import net.jcip.annotations.Immutable;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+
+/**
+ * An immutable route with its waypoints stored column by column in primitive arrays. A {@link Route} spends about
+ * eight objects on each waypoint, with boxed optional numbers and a mutable ETA. A compact route stores each field of
+ * all waypoints in a single array, and whether an optional field is present in a bitmap, using a fraction of the
+ * memory. Fields that are absent from all waypoints take no space.
+ * <p>
+ * The accessors of {@link Waypoint} and {@link RouteLeg} are available by waypoint index. {@link #getWaypoints()} and
+ * {@link #getWaypoint(int)} create mutable copies on access, for code written against {@link Route}.
+ */
+@Immutable
+public final class CompactRoute implements Iterable<Waypoint>, Serializable {
+
+    /** serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The columns of the optional numbers. */
+    private static final int ROT = 0, TURN_RAD = 1, SPEED = 2, XTD_PORT = 3, XTD_STARBOARD = 4, SF_WIDTH = 5,
+            SF_LEN = 6, NUMBERS = 7;
+
+    private static final Heading[] HEADINGS = Heading.values();
+
+    private final String id;
+
+    private final String name;
+
+    private final String departure;
+
+    private final String destination;
+
+    /** The number of waypoints. */
+    private final int size;
+
+    private final double[] latitudes;
+
+    private final double[] longitudes;
+
+    /** The names of the waypoints concatenated, and the end index of each name. */
+    private final String names;
+
+    private final int[] nameEnds;
+
+    /** Bitmap of the waypoints with a name, or null if none has. */
+    private final long[] hasName;
+
+    /** The ETAs in milliseconds since the epoch, or null if no waypoint has one. */
+    private final long[] etas;
+
+    private final long[] hasEta;
+
+    /** The optional numbers by column, a column is null if no waypoint has the number. */
+    private final double[][] numbers;
+
+    private final long[][] hasNumber;
+
+    /** Bitmap of the waypoints with a leg, or null if none has. */
+    private final long[] hasLeg;
+
+    /** The heading ordinal plus one of each leg, or 0 if the leg has no heading. Null if no leg has a heading. */
+    private final byte[] headings;
+
+    /** The geometry, computed on first use. */
+    private transient RouteGeometry geometry;
+
+    CompactRoute(Builder b) {
+        id = b.id;
+        name = b.name;
+        departure = b.departure;
+        destination = b.destination;
+        size = b.size;
+        latitudes = Arrays.copyOf(b.latitudes, size);
+        longitudes = Arrays.copyOf(b.longitudes, size);
+        names = b.names.toString();
+        nameEnds = Arrays.copyOf(b.nameEnds, size);
+        hasName = trim(b.hasName, size);
+        etas = b.etas == null ? null : Arrays.copyOf(b.etas, size);
+        hasEta = trim(b.hasEta, size);
+        numbers = new double[NUMBERS][];
+        hasNumber = new long[NUMBERS][];
+        for (int i = 0; i < NUMBERS; i++) {
+            numbers[i] = b.numbers[i] == null ? null : Arrays.copyOf(b.numbers[i], size);
+            hasNumber[i] = trim(b.hasNumber[i], size);
+        }
+        hasLeg = trim(b.hasLeg, size);
+        headings = b.headings == null ? null : Arrays.copyOf(b.headings, size);
+    }
+
+    /**
+     * Creates a compact copy of the specified route.
+     * 
+     * @param route
+     *            the route to copy
+     * @return the compact route
+     */
+    public static CompactRoute from(Route route) {
+        Builder b = builder().header(route);
+        for (Waypoint wp : route.getWaypoints()) {
+            b.add(wp);
+        }
+        return b.build();
+    }
+
+    /**
+     * Returns a new builder of a compact route.
+     * 
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDeparture() {
+        return departure;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * Returns the number of waypoints.
+     * 
+     * @return the number of waypoints
+     */
+    public int size() {
+        return size;
+    }
+
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return latitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return longitudes[index];
+    }
+
+    /**
+     * Returns the name of the waypoint. The name is a new string on each invocation.
+     * 
+     * @param index
+     *            the index of the waypoint
+     * @return the name of the waypoint, or null if it has none
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        if (!isSet(hasName, index)) {
+            return null;
+        }
+        return names.substring(index == 0 ? 0 : nameEnds[index - 1], nameEnds[index]);
+    }
+
+    /**
+     * Returns the ETA of the waypoint. The date is a new instance on each invocation.
+     * 
+     * @param index
+     *            the index of the waypoint
+     * @return the ETA at the waypoint, or null if it has none
+     */
+    public Date getEta(int index) {
+        checkIndex(index);
+        return isSet(hasEta, index) ? new Date(etas[index]) : null;
+    }
+
+    public Double getRot(int index) {
+        return number(ROT, index);
+    }
+
+    public Double getTurnRad(int index) {
+        return number(TURN_RAD, index);
+    }
+
+    /**
+     * Returns whether the waypoint has an out leg. The leg accessors return null for a waypoint without a leg.
+     * 
+     * @param index
+     *            the index of the waypoint
+     * @return whether the waypoint has an out leg
+     */
+    public boolean hasRouteLeg(int index) {
+        checkIndex(index);
+        return isSet(hasLeg, index);
+    }
+
+    public Double getSpeed(int index) {
+        return number(SPEED, index);
+    }
+
+    public Heading getHeading(int index) {
+        checkIndex(index);
+        return headings == null || headings[index] == 0 ? null : HEADINGS[headings[index] - 1];
+    }
+
+    public Double getXtdPort(int index) {
+        return number(XTD_PORT, index);
+    }
+
+    public Double getXtdStarboard(int index) {
+        return number(XTD_STARBOARD, index);
+    }
+
+    public Double getSFWidth(int index) {
+        return number(SF_WIDTH, index);
+    }
+
+    public Double getSFLen(int index) {
+        return number(SF_LEN, index);
+    }
+
+    /**
+     * Returns a mutable copy of the waypoint, with a copy of its leg.
+     * 
+     * @param index
+     *            the index of the waypoint
+     * @return a copy of the waypoint
+     */
+    public Waypoint getWaypoint(int index) {
+        Waypoint wp = new Waypoint(getName(index), latitudes[index], longitudes[index], getRot(index),
+                getTurnRad(index));
+        wp.setEta(getEta(index));
+        if (hasRouteLeg(index)) {
+            RouteLeg leg = new RouteLeg(getSpeed(index), getHeading(index), getXtdPort(index), getXtdStarboard(index));
+            leg.setSFWidth(getSFWidth(index));
+            leg.setSFLen(getSFLen(index));
+            wp.setRouteLeg(leg);
+        }
+        return wp;
+    }
+
+    /**
+     * Returns an unmodifiable list of the waypoints, creating copies of them as they are accessed.
+     * 
+     * @return a list of the waypoints
+     */
+    public List<Waypoint> getWaypoints() {
+        return new Waypoints();
+    }
+
+    @Override
+    public Iterator<Waypoint> iterator() {
+        return getWaypoints().iterator();
+    }
+
+    /**
+     * Returns the geometry of the route, computed on first use.
+     * 
+     * @return the geometry of the route
+     */
+    public RouteGeometry getGeometry() {
+        RouteGeometry g = geometry;
+        if (g == null) {
+            geometry = g = RouteGeometry.of(this);
+        }
+        return g;
+    }
+
+    /**
+     * Returns a mutable route with copies of the waypoints.
+     * 
+     * @return the route
+     */
+    public Route toRoute() {
+        Route route = new Route(id, name, departure, destination);
+        route.getWaypoints().ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            route.getWaypoints().add(getWaypoint(i));
+        }
+        return route;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactRoute [waypoints=" + size + ", id=" + id + ", name=" + name + ", destination=" + destination
+                + ", departure=" + departure + "]";
+    }
+
+    private Double number(int column, int index) {
+        checkIndex(index);
+        return isSet(hasNumber[column], index) ? numbers[column][index] : null;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return bits != null && (bits[index >>> 6] & 1L << index) != 0;
+    }
+
+    private static long[] trim(long[] bits, int size) {
+        return bits == null ? null : Arrays.copyOf(bits, (size + 63) >>> 6);
+    }
+
+    /** The list returned by {@link #getWaypoints()}. */
+    private final class Waypoints extends AbstractList<Waypoint> implements RandomAccess {
+
+        @Override
+        public Waypoint get(int index) {
+            return getWaypoint(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Builds a compact route one waypoint at a time, so a route can be read into compact form without first creating
+     * a {@link Route}. This class is not thread safe.
+     */
+    public static final class Builder {
+
+        String id;
+
+        String name;
+
+        String departure;
+
+        String destination;
+
+        int size;
+
+        double[] latitudes = new double[16];
+
+        double[] longitudes = new double[16];
+
+        final StringBuilder names = new StringBuilder();
+
+        int[] nameEnds = new int[16];
+
+        long[] hasName;
+
+        long[] etas;
+
+        long[] hasEta;
+
+        final double[][] numbers = new double[NUMBERS][];
+
+        final long[][] hasNumber = new long[NUMBERS][];
+
+        long[] hasLeg;
+
+        byte[] headings;
+
+        Builder() {}
+
+        public Builder id(String id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder departure(String departure) {
+            this.departure = departure;
+            return this;
+        }
+
+        public Builder destination(String destination) {
+            this.destination = destination;
+            return this;
+        }
+
+        /**
+         * Copies the id, name, departure and destination of the route, but not its waypoints.
+         * 
+         * @param route
+         *            the route
+         * @return this builder
+         */
+        public Builder header(Route route) {
+            return id(route.getId()).name(route.getName()).departure(route.getDeparture())
+                    .destination(route.getDestination());
+        }
+
+        /**
+         * Adds a copy of the waypoint and its leg.
+         * 
+         * @param wp
+         *            the waypoint
+         * @return this builder
+         */
+        public Builder add(Waypoint wp) {
+            requireNonNull(wp, "waypoint is null");
+            int i = size;
+            if (i == latitudes.length) {
+                int capacity = i + (i >> 1);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                nameEnds = Arrays.copyOf(nameEnds, capacity);
+                etas = etas == null ? null : Arrays.copyOf(etas, capacity);
+                for (int c = 0; c < NUMBERS; c++) {
+                    numbers[c] = numbers[c] == null ? null : Arrays.copyOf(numbers[c], capacity);
+                }
+                headings = headings == null ? null : Arrays.copyOf(headings, capacity);
+            }
+            latitudes[i] = wp.getLatitude();
+            longitudes[i] = wp.getLongitude();
+            if (wp.getName() != null) {
+                names.append(wp.getName());
+                hasName = set(hasName, i);
+            }
+            nameEnds[i] = names.length();
+            if (wp.getEta() != null) {
+                if (etas == null) {
+                    etas = new long[latitudes.length];
+                }
+                etas[i] = wp.getEta().getTime();
+                hasEta = set(hasEta, i);
+            }
+            setNumber(ROT, i, wp.getRot());
+            setNumber(TURN_RAD, i, wp.getTurnRad());
+            RouteLeg leg = wp.getRouteLeg();
+            if (leg != null) {
+                hasLeg = set(hasLeg, i);
+                setNumber(SPEED, i, leg.getSpeed());
+                setNumber(XTD_PORT, i, leg.getXtdPort());
+                setNumber(XTD_STARBOARD, i, leg.getXtdStarboard());
+                setNumber(SF_WIDTH, i, leg.getSFWidth());
+                setNumber(SF_LEN, i, leg.getSFLen());
+                if (leg.getHeading() != null) {
+                    if (headings == null) {
+                        headings = new byte[latitudes.length];
+                    }
+                    headings[i] = (byte) (leg.getHeading().ordinal() + 1);
+                }
+            }
+            size++;
+            return this;
+        }
+
+        private void setNumber(int column, int index, Double value) {
+            if (value != null) {
+                if (numbers[column] == null) {
+                    numbers[column] = new double[latitudes.length];
+                }
+                numbers[column][index] = value;
+                hasNumber[column] = set(hasNumber[column], index);
+            }
+        }
+
+        /** Sets the bit of the index, growing or creating the bitmap if needed. */
+        private static long[] set(long[] bits, int index) {
+            int word = index >>> 6;
+            if (bits == null) {
+                bits = new long[Math.max(word + 1, 4)];
+            } else if (word >= bits.length) {
+                bits = Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+            }
+            bits[word] |= 1L << index;
+            return bits;
+        }
+
+        /**
+         * Creates the compact route. The builder may continue to be used afterwards.
+         * 
+         * @return the compact route
+         */
+        public CompactRoute build() {
+            return new CompactRoute(this);
+        }
+    }
+}
@@ -18,6 +18,8 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import dk.dma.enav.model.MaritimeId;
 
 public class Route implements Iterable<Waypoint>, Serializable {
@@ -34,6 +36,9 @@ public class Route implements Iterable<Waypoint>, Serializable {
     
     /** Should this be implemented as a {@link MaritimeId} ? */
     private String id;
+
+    /** The geometry computed last, see {@link #getGeometry()}. */
+    private transient RouteGeometry geometry;
 
     public Route(){
     }
@@ -85,6 +90,22 @@ public class Route implements Iterable<Waypoint>, Serializable {
         return waypoints;
     }
 
+    /**
+     * Returns the geometry of the route. The geometry is cached, and computed again if the waypoints have been
+     * changed since. Checking for changes takes a single pass over the waypoints without any distance calculations, so
+     * code making many lookups should keep the returned geometry while the route is not changed.
+     * 
+     * @return the geometry of the route
+     */
+    @JsonIgnore
+    public RouteGeometry getGeometry() {
+        RouteGeometry g = geometry;
+        if (g == null || !g.isValidFor(this)) {
+            geometry = g = RouteGeometry.of(this);
+        }
+        return g;
+    }
+
     @Override
     public Iterator<Waypoint> iterator() {
         return waypoints.iterator();
@@ -0,0 +1,341 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.voyage;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
+import static java.lang.Math.log;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.tan;
+import static java.lang.Math.toDegrees;
+import static java.lang.Math.toRadians;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import net.jcip.annotations.Immutable;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+
+/**
+ * The geometry of a route: the length and bearing of each leg, the distance along the route to each waypoint, and
+ * the ETA at each waypoint. Legs sailed on a great circle ({@link Heading#GC}) are measured on the WGS-84 ellipsoid,
+ * other legs as rhumb lines. ETAs are derived from the ETA of the first waypoint and the speed of each leg.
+ * <p>
+ * A geometry is an immutable snapshot of the route it was computed for. Obtain it with {@link Route#getGeometry()},
+ * which caches it and computes it again if the route has changed since, or {@link CompactRoute#getGeometry()}.
+ * Positions along the route are looked up by distance or time in logarithmic time.
+ */
+@Immutable
+public final class RouteGeometry {
+
+    /** Meters per second of one knot. */
+    private static final double KNOT = CoordinateSystem.NAUTICAL_MILE / 3600;
+
+    /** The heading ordinal plus one, or 0 for no heading, of the inputs. */
+    private static final byte RL = (byte) (Heading.RL.ordinal() + 1), GC = (byte) (Heading.GC.ordinal() + 1);
+
+    /** The inputs, kept to interpolate positions and to tell whether a route has changed. */
+    private final double[] latitudes;
+
+    private final double[] longitudes;
+
+    private final byte[] headings;
+
+    /** The speed of each leg in knots, or NaN if the leg has none. */
+    private final double[] speeds;
+
+    /** The ETA of the first waypoint, or null. */
+    private final Long start;
+
+    /** The distance in meters along the route to each waypoint. */
+    private final double[] distances;
+
+    /** The initial bearing of each leg in degrees. */
+    private final double[] bearings;
+
+    /** The ETA in milliseconds of each waypoint with an ETA, those before the first leg without a speed. */
+    private final double[] etas;
+
+    private RouteGeometry(double[] latitudes, double[] longitudes, byte[] headings, double[] speeds, Long start) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.headings = headings;
+        this.speeds = speeds;
+        this.start = start;
+        int n = latitudes.length;
+        distances = new double[n];
+        bearings = new double[Math.max(n - 1, 0)];
+        for (int i = 0; i < n - 1; i++) {
+            Position from = Position.create(latitudes[i], longitudes[i]);
+            Position to = Position.create(latitudes[i + 1], longitudes[i + 1]);
+            double length;
+            if (headings[i] == GC) {
+                length = CoordinateSystem.GEODETIC.distanceBetween(from, to);
+                bearings[i] = length == 0 ? 0 : from.geodesicInitialBearingTo(to);
+            } else {
+                length = CoordinateSystem.CARTESIAN.distanceBetween(from, to);
+                bearings[i] = from.rhumbLineBearingTo(to);
+            }
+            distances[i + 1] = distances[i] + length;
+        }
+        int timed = 0;
+        if (start != null && n > 0) {
+            timed = 1;
+            while (timed < n && speeds[timed - 1] > 0) {
+                timed++;
+            }
+        }
+        etas = new double[timed];
+        for (int i = 0; i < timed; i++) {
+            etas[i] = i == 0 ? start : etas[i - 1] + (distances[i] - distances[i - 1]) / (speeds[i - 1] * KNOT) * 1000;
+        }
+    }
+
+    /**
+     * Computes the geometry of the route. Prefer {@link Route#getGeometry()}, which caches the geometry.
+     * 
+     * @param route
+     *            the route
+     * @return the geometry of the route
+     */
+    static RouteGeometry of(Route route) {
+        int n = route.getWaypoints().size();
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        byte[] headings = new byte[n];
+        double[] speeds = new double[n];
+        for (int i = 0; i < n; i++) {
+            Waypoint wp = route.getWaypoints().get(i);
+            latitudes[i] = wp.getLatitude();
+            longitudes[i] = wp.getLongitude();
+            headings[i] = heading(wp.getRouteLeg());
+            speeds[i] = speed(wp.getRouteLeg());
+        }
+        return new RouteGeometry(latitudes, longitudes, headings, speeds, start(route));
+    }
+
+    static RouteGeometry of(CompactRoute route) {
+        int n = route.size();
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        byte[] headings = new byte[n];
+        double[] speeds = new double[n];
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = route.getLatitude(i);
+            longitudes[i] = route.getLongitude(i);
+            Heading heading = route.getHeading(i);
+            headings[i] = heading == null ? 0 : (byte) (heading.ordinal() + 1);
+            Double speed = route.getSpeed(i);
+            speeds[i] = speed == null ? Double.NaN : speed;
+        }
+        Date eta = n == 0 ? null : route.getEta(0);
+        return new RouteGeometry(latitudes, longitudes, headings, speeds, eta == null ? null : eta.getTime());
+    }
+
+    /**
+     * Returns whether this geometry was computed from the current waypoints of the route. Compares the inputs of the
+     * computation without recomputing anything.
+     */
+    boolean isValidFor(Route route) {
+        int n = route.getWaypoints().size();
+        if (n != latitudes.length) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            Waypoint wp = route.getWaypoints().get(i);
+            RouteLeg leg = wp.getRouteLeg();
+            if (wp.getLatitude() != latitudes[i] || wp.getLongitude() != longitudes[i] || heading(leg) != headings[i]
+                    || Double.compare(speed(leg), speeds[i]) != 0) {
+                return false;
+            }
+        }
+        Long s = start(route);
+        return s == null ? start == null : s.equals(start);
+    }
+
+    private static byte heading(RouteLeg leg) {
+        return leg == null || leg.getHeading() == null ? 0 : leg.getHeading() == Heading.GC ? GC : RL;
+    }
+
+    private static double speed(RouteLeg leg) {
+        return leg == null || leg.getSpeed() == null ? Double.NaN : leg.getSpeed();
+    }
+
+    private static Long start(Route route) {
+        if (route.getWaypoints().isEmpty() || route.getWaypoints().get(0).getEta() == null) {
+            return null;
+        }
+        return route.getWaypoints().get(0).getEta().getTime();
+    }
+
+    /**
+     * Returns the number of waypoints.
+     * 
+     * @return the number of waypoints
+     */
+    public int size() {
+        return latitudes.length;
+    }
+
+    /**
+     * Returns the length of the route.
+     * 
+     * @return the length of the route in meters
+     */
+    public double getTotalDistance() {
+        return latitudes.length == 0 ? 0 : distances[distances.length - 1];
+    }
+
+    /**
+     * Returns the distance along the route from the first waypoint to the specified waypoint.
+     * 
+     * @param index
+     *            the index of the waypoint
+     * @return the distance in meters
+     */
+    public double getDistance(int index) {
+        return distances[index];
+    }
+
+    /**
+     * Returns the length of the leg from the specified waypoint to the next.
+     * 
+     * @param leg
+     *            the index of the waypoint the leg starts at
+     * @return the length of the leg in meters
+     */
+    public double getLegLength(int leg) {
+        return distances[leg + 1] - distances[leg];
+    }
+
+    /**
+     * Returns the initial bearing of the leg from the specified waypoint to the next. This is the constant bearing of
+     * a rhumb line leg.
+     * 
+     * @param leg
+     *            the index of the waypoint the leg starts at
+     * @return the initial bearing in degrees
+     */
+    public double getBearing(int leg) {
+        return bearings[leg];
+    }
+
+    /**
+     * Returns the ETA at the specified waypoint, derived from the ETA of the first waypoint and the speeds of the legs
+     * before it.
+     * 
+     * @param index
+     *            the index of the waypoint
+     * @return the ETA, or null if the first waypoint has no ETA or a leg before the waypoint has no speed
+     */
+    public Date getEta(int index) {
+        if (index < 0 || index >= latitudes.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + latitudes.length);
+        }
+        return index < etas.length ? new Date(Math.round(etas[index])) : null;
+    }
+
+    /**
+     * Returns the position at the specified distance along the route.
+     * 
+     * @param distance
+     *            the distance in meters from the first waypoint
+     * @return the position
+     * @throws IllegalArgumentException
+     *             if the distance is negative or longer than the route
+     */
+    public Position getPositionAtDistance(double distance) {
+        if (latitudes.length == 0 || !(distance >= 0 && distance <= getTotalDistance())) {
+            throw new IllegalArgumentException("Distance must be between 0 and " + getTotalDistance() + ", was "
+                    + distance);
+        }
+        int i = Arrays.binarySearch(distances, distance);
+        if (i >= 0) {
+            return Position.create(latitudes[i], longitudes[i]);
+        }
+        int leg = -i - 2;
+        return interpolate(leg, (distance - distances[leg]) / getLegLength(leg));
+    }
+
+    /**
+     * Returns the position at the specified time, assuming each leg is sailed at its speed.
+     * 
+     * @param time
+     *            the time
+     * @return the position, or null if the time is outside the ETAs known
+     */
+    public Position getPositionAt(Date time) {
+        double t = time.getTime();
+        if (etas.length == 0 || t < etas[0] || t > etas[etas.length - 1]) {
+            return null;
+        }
+        int i = Arrays.binarySearch(etas, t);
+        if (i >= 0) {
+            return Position.create(latitudes[i], longitudes[i]);
+        }
+        int leg = -i - 2;
+        return interpolate(leg, (t - etas[leg]) / (etas[leg + 1] - etas[leg]));
+    }
+
+    /** Returns the position at the fraction of the leg, following a great circle or a rhumb line. */
+    private Position interpolate(int leg, double fraction) {
+        double lat1 = toRadians(latitudes[leg]);
+        double lon1 = toRadians(longitudes[leg]);
+        double lat2 = toRadians(latitudes[leg + 1]);
+        double lon2 = toRadians(longitudes[leg + 1]);
+        double lat;
+        double lon;
+        if (headings[leg] == GC) {
+            // Spherical linear interpolation between the unit vectors of the waypoints
+            double x1 = cos(lat1) * cos(lon1), y1 = cos(lat1) * sin(lon1), z1 = sin(lat1);
+            double x2 = cos(lat2) * cos(lon2), y2 = cos(lat2) * sin(lon2), z2 = sin(lat2);
+            double cx = y1 * z2 - z1 * y2, cy = z1 * x2 - x1 * z2, cz = x1 * y2 - y1 * x2;
+            double angle = atan2(sqrt(cx * cx + cy * cy + cz * cz), x1 * x2 + y1 * y2 + z1 * z2);
+            if (angle == 0) {
+                return Position.create(latitudes[leg], longitudes[leg]);
+            }
+            double a = sin((1 - fraction) * angle) / sin(angle);
+            double b = sin(fraction * angle) / sin(angle);
+            double x = a * x1 + b * x2, y = a * y1 + b * y2, z = a * z1 + b * z2;
+            lat = atan2(z, sqrt(x * x + y * y));
+            lon = atan2(y, x);
+        } else {
+            // Latitude changes linearly with distance on a rhumb line, longitude with the Mercator ordinate
+            double dLon = lon2 - lon1;
+            if (abs(dLon) > PI) {
+                dLon = dLon > 0 ? dLon - 2 * PI : dLon + 2 * PI;
+            }
+            lat = lat1 + fraction * (lat2 - lat1);
+            double dPsi = mercator(lat2) - mercator(lat1);
+            lon = lon1 + dLon * (abs(dPsi) > 1e-12 ? (mercator(lat) - mercator(lat1)) / dPsi : fraction);
+        }
+        lon = toDegrees(lon);
+        return Position.create(toDegrees(lat), lon > 180 ? lon - 360 : lon < -180 ? lon + 360 : lon);
+    }
+
+    private static double mercator(double latitude) {
+        return log(tan(PI / 4 + latitude / 2));
+    }
+
+    @Override
+    public String toString() {
+        return "RouteGeometry [waypoints=" + latitudes.length + ", distance=" + getTotalDistance() + "]";
+    }
+}
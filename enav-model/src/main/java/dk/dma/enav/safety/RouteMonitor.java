@@ -0,0 +1,651 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.safety;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.asin;
+import static java.lang.Math.atan;
+import static java.lang.Math.atan2;
+import static java.lang.Math.ceil;
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.log;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sin;
+import static java.lang.Math.sinh;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.tan;
+import static java.lang.Math.toRadians;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.PositionTime;
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.RouteGeometry;
+import dk.dma.enav.model.voyage.RouteLeg;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+import dk.dma.enav.model.voyage.Waypoint;
+
+/**
+ * Monitors vessels sailing a route, typically the {@link dk.dma.enav.model.voyage.Voyage#getActiveRoute() active
+ * route} of their voyage. For each position reported it finds the active leg, the cross-track and along-track
+ * distances, and whether the vessel is outside the corridor given by the XTDs of the leg.
+ * <p>
+ * The geometry of the corridor is computed once for each route and shared by the vessels sailing it. Legs sailed on a
+ * great circle are measured on the sphere and other legs as rhumb lines. An update normally only measures the
+ * previous active leg and the next one. If the vessel is on neither, the candidate legs are found in a grid of cells
+ * covering the route, and only if the vessel is far from the route are all legs measured.
+ * <p>
+ * The corridor is a snapshot of the route when it was set, so {@link #setRoute(Object, Route)} must be invoked again
+ * after changing the route. This class is not thread-safe. Updates must be made from a single thread or be externally
+ * synchronized.
+ *
+ * @param <K>
+ *            the type of key identifying a vessel
+ */
+public final class RouteMonitor<K> {
+
+    /** The default size of the grid cells in degrees. */
+    public static final double DEFAULT_CELL_SIZE = 0.2;
+
+    /** The mean radius of the earth in meters. */
+    static final double RADIUS = CoordinateSystem.EARTH_MEAN_RADIUS_KM * 1000;
+
+    private final double cellSize;
+
+    private final CorridorListener<K> listener;
+
+    /** The corridor of each route, shared by vessels sailing the same route. */
+    private final Map<Route, Corridor> corridors = new WeakHashMap<>();
+
+    /** The state of each vessel. */
+    private final Map<K, Vessel> vessels = new HashMap<>();
+
+    /** Creates a new monitor with the default cell size, that does not notify a listener. */
+    public RouteMonitor() {
+        this(DEFAULT_CELL_SIZE, (key, status) -> {});
+    }
+
+    /**
+     * Creates a new monitor with the default cell size.
+     *
+     * @param listener
+     *            the listener notified when vessels leave or return to their corridor
+     */
+    public RouteMonitor(CorridorListener<K> listener) {
+        this(DEFAULT_CELL_SIZE, listener);
+    }
+
+    /**
+     * Creates a new monitor.
+     *
+     * @param cellSize
+     *            the size of the grid cells in degrees, ideally a few times the width of a typical corridor
+     * @param listener
+     *            the listener notified when vessels leave or return to their corridor
+     */
+    public RouteMonitor(double cellSize, CorridorListener<K> listener) {
+        if (!(cellSize > 0 && cellSize <= 10)) {
+            throw new IllegalArgumentException("cellSize must be positive and at most 10 degrees, was " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.listener = requireNonNull(listener, "listener is null");
+    }
+
+    /**
+     * Sets the route sailed by a vessel, and forgets its active leg.
+     *
+     * @param key
+     *            the key of the vessel
+     * @param route
+     *            the route, with at least two waypoints
+     * @throws IllegalArgumentException
+     *             if the route has less than two waypoints
+     */
+    public void setRoute(K key, Route route) {
+        requireNonNull(key, "key is null");
+        RouteGeometry geometry = route.getGeometry();
+        if (geometry.size() < 2) {
+            throw new IllegalArgumentException("The route must have at least two waypoints, had " + geometry.size());
+        }
+        Corridor corridor = corridors.get(route);
+        if (corridor == null || corridor.geometry != geometry) {
+            corridor = new Corridor(route, geometry, cellSize);
+            corridors.put(route, corridor);
+        }
+        Vessel v = vessels.get(key);
+        if (v != null && v.violation != Violation.NONE && v.status != null) {
+            listener.violationEnded(key, v.status);
+        }
+        vessels.put(key, new Vessel(corridor));
+    }
+
+    /**
+     * Stops monitoring a vessel.
+     *
+     * @param key
+     *            the key of the vessel
+     * @return true if the vessel was monitored, otherwise false
+     */
+    public boolean remove(K key) {
+        return vessels.remove(key) != null;
+    }
+
+    /**
+     * Returns the number of monitored vessels.
+     *
+     * @return the number of monitored vessels
+     */
+    public int size() {
+        return vessels.size();
+    }
+
+    /**
+     * Returns the status of a vessel at its latest position.
+     *
+     * @param key
+     *            the key of the vessel
+     * @return the status, or null if the vessel is not monitored or has not been updated since its route was set
+     */
+    public Status getStatus(K key) {
+        Vessel v = vessels.get(key);
+        return v == null ? null : v.status;
+    }
+
+    /**
+     * Updates the position of a vessel, notifying the listener if it leaves or returns to its corridor.
+     *
+     * @param key
+     *            the key of the vessel
+     * @param position
+     *            the reported position of the vessel
+     * @return the status of the vessel, or null if the vessel has no route
+     */
+    public Status update(K key, PositionTime position) {
+        requireNonNull(position, "position is null");
+        Vessel v = vessels.get(key);
+        if (v == null) {
+            return null;
+        }
+        Corridor c = v.corridor;
+        Measure m = v.measure;
+        m.set(position.getLatitude(), position.getLongitude());
+
+        int leg = v.leg < 0 ? -1 : c.follow(m, v.leg);
+        if (leg < 0) {
+            leg = c.search(m, v.leg);
+        }
+        c.measure(m, leg);
+        Violation violation = c.violation(leg, m.xtd);
+        Status status = new Status(position, leg, m.xtd, c.geometry.getDistance(leg) + m.along, violation);
+        Violation previous = v.violation;
+        v.leg = leg;
+        v.violation = violation;
+        v.status = status;
+        if (previous != violation) {
+            if (previous != Violation.NONE) {
+                listener.violationEnded(key, status);
+            }
+            if (violation != Violation.NONE) {
+                listener.violationStarted(key, status);
+            }
+        }
+        return status;
+    }
+
+    /** The side of the corridor a vessel is outside of. */
+    public enum Violation {
+
+        /** Inside the corridor. */
+        NONE,
+
+        /** Further to port of the track than the port XTD of the leg. */
+        PORT,
+
+        /** Further to starboard of the track than the starboard XTD of the leg. */
+        STARBOARD;
+    }
+
+    /** The status of a vessel relative to its route at a reported position. */
+    public static final class Status {
+
+        private final PositionTime position;
+
+        private final int leg;
+
+        private final double crossTrackDistance;
+
+        private final double alongTrackDistance;
+
+        private final Violation violation;
+
+        Status(PositionTime position, int leg, double crossTrackDistance, double alongTrackDistance,
+                Violation violation) {
+            this.position = position;
+            this.leg = leg;
+            this.crossTrackDistance = crossTrackDistance;
+            this.alongTrackDistance = alongTrackDistance;
+            this.violation = violation;
+        }
+
+        public PositionTime getPosition() {
+            return position;
+        }
+
+        /**
+         * Returns the active leg.
+         *
+         * @return the index of the waypoint the active leg starts at
+         */
+        public int getLeg() {
+            return leg;
+        }
+
+        /**
+         * Returns the distance from the track of the active leg.
+         *
+         * @return the distance in meters, positive to starboard and negative to port
+         */
+        public double getCrossTrackDistance() {
+            return crossTrackDistance;
+        }
+
+        /**
+         * Returns the distance along the route to the point on the track abeam of the vessel. The distance is negative
+         * before the first waypoint, and longer than the route after the last.
+         *
+         * @return the distance in meters from the first waypoint
+         */
+        public double getAlongTrackDistance() {
+            return alongTrackDistance;
+        }
+
+        public Violation getViolation() {
+            return violation;
+        }
+
+        public boolean isInCorridor() {
+            return violation == Violation.NONE;
+        }
+
+        @Override
+        public String toString() {
+            return "Status [leg=" + leg + ", crossTrackDistance=" + crossTrackDistance + ", alongTrackDistance="
+                    + alongTrackDistance + ", violation=" + violation + ", position=" + position + "]";
+        }
+    }
+
+    /**
+     * Receives notifications about vessels leaving or returning to the corridor of their route.
+     *
+     * @param <K>
+     *            the type of key identifying a vessel
+     */
+    public interface CorridorListener<K> {
+
+        /**
+         * Invoked when a vessel leaves its corridor, or crosses from one side of the corridor to the other.
+         *
+         * @param key
+         *            the key of the vessel
+         * @param status
+         *            the status of the vessel
+         */
+        void violationStarted(K key, Status status);
+
+        /**
+         * Invoked when a vessel returns to its corridor, crosses from one side of it to the other, or is given a new
+         * route. The default implementation does nothing.
+         *
+         * @param key
+         *            the key of the vessel
+         * @param status
+         *            the status of the vessel, or its latest status if it was given a new route
+         */
+        default void violationEnded(K key, Status status) {}
+    }
+
+    /** The state of a single monitored vessel. */
+    static final class Vessel {
+        final Corridor corridor;
+
+        /** Reused for measuring the vessel against legs. */
+        final Measure measure = new Measure();
+
+        /** The active leg, or -1 before the first update. */
+        int leg = -1;
+
+        Violation violation = Violation.NONE;
+
+        Status status;
+
+        Vessel(Corridor corridor) {
+            this.corridor = corridor;
+        }
+    }
+
+    /** A position and its distances to the leg last measured. */
+    static final class Measure {
+
+        double latitude, longitude;
+
+        /** The unit vector of the position. */
+        double x, y, z;
+
+        /** The distance from the track, positive to starboard, and along the leg from its start. */
+        double xtd, along;
+
+        void set(double latitude, double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            double lat = toRadians(latitude);
+            double lon = toRadians(longitude);
+            x = cos(lat) * cos(lon);
+            y = cos(lat) * sin(lon);
+            z = sin(lat);
+        }
+
+        /** The distance to the nearest point of the leg of the specified length. */
+        double distanceToLeg(double length) {
+            double outside = along < 0 ? -along : along > length ? along - length : 0;
+            return sqrt(xtd * xtd + outside * outside);
+        }
+    }
+
+    /** The corridor of a route, precomputed for measuring positions against each leg. */
+    static final class Corridor {
+
+        final RouteGeometry geometry;
+
+        final int legs;
+
+        final boolean[] greatCircle;
+
+        final double[] length;
+
+        /** The port and starboard XTD of each leg in meters, or NaN if the leg has none. */
+        final double[] port, starboard;
+
+        /** Great circle legs: the unit vectors of the start, the normal of the plane and the initial direction. */
+        final double[] ax, ay, az, nx, ny, nz, tx, ty, tz;
+
+        /** The ratio of the leg length to the angle of the great circle arc on the sphere. */
+        final double[] scale;
+
+        /** Rhumb line legs: the start and the difference in longitude and Mercator ordinate, in radians. */
+        final double[] lon1, psi1, dLon, dPsi, lat1, dLat;
+
+        final double cellSize;
+
+        final int columns;
+
+        /** The legs passing near each grid cell, in increasing order. */
+        final Map<Long, int[]> cells = new HashMap<>();
+
+        /** All legs in increasing order, searched when no leg passes near the position. */
+        final int[] allLegs;
+
+        Corridor(Route route, RouteGeometry geometry, double cellSize) {
+            this.geometry = geometry;
+            this.cellSize = cellSize;
+            this.columns = (int) ceil(360 / cellSize);
+            legs = geometry.size() - 1;
+            greatCircle = new boolean[legs];
+            length = new double[legs];
+            port = new double[legs];
+            starboard = new double[legs];
+            ax = new double[legs];
+            ay = new double[legs];
+            az = new double[legs];
+            nx = new double[legs];
+            ny = new double[legs];
+            nz = new double[legs];
+            tx = new double[legs];
+            ty = new double[legs];
+            tz = new double[legs];
+            scale = new double[legs];
+            lon1 = new double[legs];
+            psi1 = new double[legs];
+            dLon = new double[legs];
+            dPsi = new double[legs];
+            lat1 = new double[legs];
+            dLat = new double[legs];
+            allLegs = new int[legs];
+
+            for (int i = 0; i < legs; i++) {
+                allLegs[i] = i;
+                Waypoint from = route.getWaypoints().get(i);
+                Waypoint to = route.getWaypoints().get(i + 1);
+                RouteLeg leg = from.getRouteLeg();
+                length[i] = geometry.getLegLength(i);
+                port[i] = leg == null || leg.getXtdPort() == null ? Double.NaN : leg.getXtdPort()
+                        * CoordinateSystem.NAUTICAL_MILE;
+                starboard[i] = leg == null || leg.getXtdStarboard() == null ? Double.NaN : leg.getXtdStarboard()
+                        * CoordinateSystem.NAUTICAL_MILE;
+                greatCircle[i] = leg != null && leg.getHeading() == Heading.GC;
+
+                double la1 = toRadians(from.getLatitude()), lo1 = toRadians(from.getLongitude());
+                double la2 = toRadians(to.getLatitude()), lo2 = toRadians(to.getLongitude());
+                if (greatCircle[i]) {
+                    double x1 = cos(la1) * cos(lo1), y1 = cos(la1) * sin(lo1), z1 = sin(la1);
+                    double x2 = cos(la2) * cos(lo2), y2 = cos(la2) * sin(lo2), z2 = sin(la2);
+                    double cx = y1 * z2 - z1 * y2, cy = z1 * x2 - x1 * z2, cz = x1 * y2 - y1 * x2;
+                    double sinAngle = sqrt(cx * cx + cy * cy + cz * cz);
+                    double angle = atan2(sinAngle, x1 * x2 + y1 * y2 + z1 * z2);
+                    if (sinAngle < 1e-15) {
+                        // Coincident waypoints, measured as a rhumb line of zero length
+                        greatCircle[i] = false;
+                    } else {
+                        ax[i] = x1;
+                        ay[i] = y1;
+                        az[i] = z1;
+                        nx[i] = cx / sinAngle;
+                        ny[i] = cy / sinAngle;
+                        nz[i] = cz / sinAngle;
+                        tx[i] = ny[i] * z1 - nz[i] * y1;
+                        ty[i] = nz[i] * x1 - nx[i] * z1;
+                        tz[i] = nx[i] * y1 - ny[i] * x1;
+                        scale[i] = length[i] / (RADIUS * angle);
+                    }
+                }
+                lat1[i] = la1;
+                dLat[i] = la2 - la1;
+                lon1[i] = lo1;
+                dLon[i] = wrap(lo2 - lo1);
+                psi1[i] = mercator(la1);
+                dPsi[i] = mercator(la2) - psi1[i];
+
+                index(i, from.getLatitude(), from.getLongitude());
+            }
+        }
+
+        /** Adds the leg to the cells within the corridor of its track. */
+        private void index(int leg, double latitude, double longitude) {
+            double width = max(nanToZero(port[leg]), nanToZero(starboard[leg]));
+            double dLatDeg = Math.toDegrees(dLat[leg]);
+            double dLonDeg = Math.toDegrees(dLon[leg]);
+            int samples = (int) ceil(max(abs(dLatDeg), abs(dLonDeg)) / (cellSize / 2)) + 1;
+            for (int s = 0; s <= samples; s++) {
+                double f = (double) s / samples;
+                double lat;
+                double lon;
+                if (greatCircle[leg]) {
+                    // Rotate the start towards the end in the plane of the great circle
+                    double a = f * length[leg] / scale[leg] / RADIUS;
+                    double px = ax[leg] * cos(a) + tx[leg] * sin(a);
+                    double py = ay[leg] * cos(a) + ty[leg] * sin(a);
+                    double pz = az[leg] * cos(a) + tz[leg] * sin(a);
+                    lat = Math.toDegrees(atan2(pz, sqrt(px * px + py * py)));
+                    lon = Math.toDegrees(atan2(py, px));
+                } else {
+                    // Latitude changes linearly along a rhumb line, longitude with the Mercator ordinate
+                    lat = latitude + f * dLatDeg;
+                    double g = abs(dPsi[leg]) < 1e-12 ? f : (mercator(toRadians(lat)) - psi1[leg]) / dPsi[leg];
+                    lon = longitude + g * dLonDeg;
+                }
+                double metersPerCell = cellSize * PI / 180 * RADIUS * max(cos(toRadians(lat)), 0.05);
+                int margin = 1 + (int) ceil(width / metersPerCell);
+                long row = row(lat);
+                long column = column(lon);
+                for (long r = row - margin; r <= row + margin; r++) {
+                    for (long c = column - margin; c <= column + margin; c++) {
+                        Long key = cellKey(r, c);
+                        int[] list = cells.get(key);
+                        if (list == null) {
+                            cells.put(key, new int[] { leg });
+                        } else if (list[list.length - 1] != leg) {
+                            list = Arrays.copyOf(list, list.length + 1);
+                            list[list.length - 1] = leg;
+                            cells.put(key, list);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Checks whether the vessel is still on the previous active leg or has moved on to the next.
+         *
+         * @return the active leg, or -1 if the vessel is on neither
+         */
+        int follow(Measure m, int previous) {
+            measure(m, previous);
+            double xtd = m.xtd;
+            double along = m.along;
+            boolean onPrevious = (along >= 0 || previous == 0) && violation(previous, xtd) == Violation.NONE;
+            if (previous + 1 < legs) {
+                measure(m, previous + 1);
+                // Past the end of the leg, or closer to the next leg when cutting the corner of a turn
+                if (m.along >= 0 && violation(previous + 1, m.xtd) == Violation.NONE && (along > length[previous]
+                        || along > length[previous] / 2 && abs(m.xtd) < abs(xtd))) {
+                    return previous + 1;
+                }
+            } else if (onPrevious) {
+                return previous;
+            }
+            return onPrevious && along <= length[previous] ? previous : -1;
+        }
+
+        /**
+         * Finds the active leg among the legs near the position, or all legs if none are near. Legs the vessel is
+         * inside the corridor of are preferred, the first of those at or after the previous leg if any.
+         */
+        int search(Measure m, int previous) {
+            int[] candidates = cells.get(cellKey(row(m.latitude), column(m.longitude)));
+            int best = candidates == null ? -1 : best(m, candidates, previous);
+            return best < 0 ? best(m, allLegs, previous) : best;
+        }
+
+        private int best(Measure m, int[] candidates, int previous) {
+            int inside = -1;
+            int nearest = -1;
+            double nearestDistance = Double.POSITIVE_INFINITY;
+            for (int leg : candidates) {
+                measure(m, leg);
+                double distance = m.distanceToLeg(length[leg]);
+                boolean onLeg = (m.along >= 0 || leg == 0) && (m.along <= length[leg] || leg == legs - 1);
+                if (onLeg && violation(leg, m.xtd) == Violation.NONE
+                        && (inside < 0 || inside < previous && leg >= previous)) {
+                    inside = leg;
+                }
+                if (distance < nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = leg;
+                }
+            }
+            return inside >= 0 ? inside : nearest;
+        }
+
+        /** Measures the cross-track and along-track distances of the position relative to the leg. */
+        void measure(Measure m, int leg) {
+            if (greatCircle[leg]) {
+                double pn = m.x * nx[leg] + m.y * ny[leg] + m.z * nz[leg];
+                m.xtd = -RADIUS * asin(max(-1, min(1, pn)));
+                double pa = m.x * ax[leg] + m.y * ay[leg] + m.z * az[leg];
+                double pt = m.x * tx[leg] + m.y * ty[leg] + m.z * tz[leg];
+                m.along = RADIUS * atan2(pt, pa) * scale[leg];
+            } else {
+                double lat = toRadians(m.latitude);
+                double px = wrap(toRadians(m.longitude) - lon1[leg]);
+                double py = mercator(lat) - psi1[leg];
+                double dx = dLon[leg];
+                double dy = dPsi[leg];
+                double d2 = dx * dx + dy * dy;
+                if (d2 == 0) {
+                    m.xtd = 0;
+                    m.along = 0;
+                    return;
+                }
+                m.xtd = (px * dy - py * dx) / sqrt(d2) * RADIUS * cos(lat);
+                double u = (px * dx + py * dy) / d2;
+                if (abs(dLat[leg]) < 1e-9) {
+                    m.along = u * length[leg];
+                } else {
+                    // Latitude changes linearly with distance along a rhumb line
+                    double footLat = atan(sinh(psi1[leg] + u * dy));
+                    m.along = (footLat - lat1[leg]) / dLat[leg] * length[leg];
+                }
+            }
+        }
+
+        Violation violation(int leg, double xtd) {
+            if (xtd > starboard[leg]) {
+                return Violation.STARBOARD;
+            } else if (-xtd > port[leg]) {
+                return Violation.PORT;
+            }
+            return Violation.NONE;
+        }
+
+        long row(double latitude) {
+            return (long) floor((min(latitude, 89.999) + 90) / cellSize);
+        }
+
+        long column(double longitude) {
+            return (long) floor((wrapDegrees(longitude) + 180) / cellSize);
+        }
+
+        /** Returns the key of a cell, wrapping columns around the antimeridian. */
+        Long cellKey(long row, long column) {
+            return row * columns + Math.floorMod(column, columns);
+        }
+    }
+
+    private static double nanToZero(double d) {
+        return Double.isNaN(d) ? 0 : d;
+    }
+
+    /** Wraps an angle in radians to [-PI, PI]. */
+    static double wrap(double radians) {
+        return radians > PI ? radians - 2 * PI : radians < -PI ? radians + 2 * PI : radians;
+    }
+
+    static double wrapDegrees(double degrees) {
+        return degrees >= 180 ? degrees - 360 : degrees < -180 ? degrees + 360 : degrees;
+    }
+
+    /** The Mercator ordinate of the latitude in radians, limited near the poles. */
+    static double mercator(double latitude) {
+        double lat = max(-1.5707, min(1.5707, latitude));
+        return log(tan(PI / 4 + lat / 2));
+    }
+}
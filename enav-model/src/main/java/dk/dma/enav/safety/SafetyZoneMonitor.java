@@ -0,0 +1,335 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.safety;
+
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toRadians;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dk.dma.enav.model.geometry.Ellipse;
+import dk.dma.enav.model.geometry.Position;
+
+/**
+ * Keeps track of the safety zones of a fleet of vessels and reports when two zones start or stop intersecting.
+ * <p>
+ * All zones must share the geodetic reference of the monitor, so that they can be compared in the same cartesian
+ * plane. The axis-aligned bounding box of each zone is registered in a uniform grid of square cells, and when a zone is
+ * updated the exact {@link Ellipse#intersects(dk.dma.enav.model.geometry.Element)} test is only run against the zones
+ * sharing a cell with it and whose bounding box overlaps. An update therefore costs time proportional to the number of
+ * nearby vessels rather than the size of the fleet.
+ * <p>
+ * This class is not thread-safe. Updates must be made from a single thread or be externally synchronized.
+ *
+ * @param <K>
+ *            the type of key identifying a vessel
+ */
+public final class SafetyZoneMonitor<K> {
+
+    /** The default size of the grid cells in meters. */
+    public static final double DEFAULT_CELL_SIZE = 1000;
+
+    private final Position geodeticReference;
+
+    private final double cellSize;
+
+    private final EncounterListener<K> listener;
+
+    /** The zone of each vessel. */
+    private final Map<K, Zone<K>> zones = new HashMap<>();
+
+    /** The zones with a bounding box overlapping each grid cell. */
+    private final Map<Long, Set<Zone<K>>> cells = new HashMap<>();
+
+    /**
+     * Creates a new monitor with the default cell size.
+     *
+     * @param geodeticReference
+     *            the geodetic reference shared by all zones
+     * @param listener
+     *            the listener notified of encounters
+     */
+    public SafetyZoneMonitor(Position geodeticReference, EncounterListener<K> listener) {
+        this(geodeticReference, DEFAULT_CELL_SIZE, listener);
+    }
+
+    /**
+     * Creates a new monitor.
+     *
+     * @param geodeticReference
+     *            the geodetic reference shared by all zones
+     * @param cellSize
+     *            the size of the grid cells in meters, ideally a few times the size of a typical zone
+     * @param listener
+     *            the listener notified of encounters
+     */
+    public SafetyZoneMonitor(Position geodeticReference, double cellSize, EncounterListener<K> listener) {
+        this.geodeticReference = requireNonNull(geodeticReference, "geodeticReference is null");
+        this.listener = requireNonNull(listener, "listener is null");
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("cellSize must be positive, was " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    public Position getGeodeticReference() {
+        return geodeticReference;
+    }
+
+    /**
+     * Updates the safety zone of a vessel from its reported state.
+     *
+     * @param key
+     *            the key of the vessel
+     * @param position
+     *            the reported position of the vessel
+     * @param cog
+     *            course over ground in compass degrees
+     * @param sog
+     *            speed over ground in knots
+     * @param loa
+     *            the vessel's length-overall (in meters)
+     * @param beam
+     *            the vessel's beam (in meters)
+     * @param dimStern
+     *            distance from GPS antenna to vessel's stern (in meters)
+     * @param dimStarboard
+     *            distance from GPS antenna to vessel's starboard beam (in meters)
+     * @see SafetyZones#safetyZone(Position, Position, float, float, float, float, float, float)
+     */
+    public void update(K key, Position position, float cog, float sog, float loa, float beam, float dimStern,
+            float dimStarboard) {
+        update(key, SafetyZones.safetyZone(geodeticReference, position, cog, sog, loa, beam, dimStern, dimStarboard));
+    }
+
+    /**
+     * Updates the safety zone of a vessel, notifying the listener of any encounters that start or end as a result.
+     *
+     * @param key
+     *            the key of the vessel
+     * @param zone
+     *            the new safety zone of the vessel
+     * @throws IllegalArgumentException
+     *             if the zone does not have the geodetic reference of this monitor
+     */
+    public void update(K key, Ellipse zone) {
+        requireNonNull(key, "key is null");
+        if (!geodeticReference.equals(zone.getGeodeticReference())) {
+            throw new IllegalArgumentException("The zone must have the geodetic reference " + geodeticReference
+                    + ", was " + zone.getGeodeticReference());
+        }
+        Zone<K> z = zones.get(key);
+        if (z == null) {
+            z = new Zone<>(key);
+            zones.put(key, z);
+        } else {
+            unregister(z);
+        }
+        z.setEllipse(zone, cellSize);
+        register(z);
+
+        // find the zones currently intersecting
+        Set<Zone<K>> found = new HashSet<>();
+        for (long cx = z.minCellX; cx <= z.maxCellX; cx++) {
+            for (long cy = z.minCellY; cy <= z.maxCellY; cy++) {
+                for (Zone<K> other : cells.get(cellKey(cx, cy))) {
+                    if (other != z && !found.contains(other) && z.overlaps(other)
+                            && z.ellipse.intersects(other.ellipse)) {
+                        found.add(other);
+                    }
+                }
+            }
+        }
+
+        // report changes
+        List<Zone<K>> ended = new ArrayList<>();
+        for (Zone<K> other : z.encounters) {
+            if (!found.contains(other)) {
+                ended.add(other);
+            }
+        }
+        for (Zone<K> other : ended) {
+            z.encounters.remove(other);
+            other.encounters.remove(z);
+            listener.encounterEnded(key, other.key);
+        }
+        for (Zone<K> other : found) {
+            if (z.encounters.add(other)) {
+                other.encounters.add(z);
+                listener.encounterStarted(key, other.key);
+            }
+        }
+    }
+
+    /**
+     * Removes the safety zone of a vessel, ending any encounters it is part of.
+     *
+     * @param key
+     *            the key of the vessel
+     * @return true if the vessel was monitored, otherwise false
+     */
+    public boolean remove(K key) {
+        Zone<K> z = zones.remove(key);
+        if (z == null) {
+            return false;
+        }
+        unregister(z);
+        for (Zone<K> other : z.encounters) {
+            other.encounters.remove(z);
+            listener.encounterEnded(key, other.key);
+        }
+        z.encounters.clear();
+        return true;
+    }
+
+    /**
+     * Returns the keys of the vessels whose safety zone currently intersects the zone of the specified vessel.
+     *
+     * @param key
+     *            the key of the vessel
+     * @return the keys of the vessels in encounter with the vessel
+     */
+    public Set<K> getEncounters(K key) {
+        Zone<K> z = zones.get(key);
+        if (z == null) {
+            return Collections.emptySet();
+        }
+        Set<K> result = new HashSet<>();
+        for (Zone<K> other : z.encounters) {
+            result.add(other.key);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of monitored vessels.
+     *
+     * @return the number of monitored vessels
+     */
+    public int size() {
+        return zones.size();
+    }
+
+    private void register(Zone<K> z) {
+        for (long cx = z.minCellX; cx <= z.maxCellX; cx++) {
+            for (long cy = z.minCellY; cy <= z.maxCellY; cy++) {
+                Long k = cellKey(cx, cy);
+                Set<Zone<K>> set = cells.get(k);
+                if (set == null) {
+                    set = new HashSet<>();
+                    cells.put(k, set);
+                }
+                set.add(z);
+            }
+        }
+    }
+
+    private void unregister(Zone<K> z) {
+        for (long cx = z.minCellX; cx <= z.maxCellX; cx++) {
+            for (long cy = z.minCellY; cy <= z.maxCellY; cy++) {
+                Long k = cellKey(cx, cy);
+                Set<Zone<K>> set = cells.get(k);
+                set.remove(z);
+                if (set.isEmpty()) {
+                    cells.remove(k);
+                }
+            }
+        }
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return cx << 32 ^ cy & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Receives notifications about vessels whose safety zones start or stop intersecting. The vessel being updated or
+     * removed is always passed as the first argument.
+     *
+     * @param <K>
+     *            the type of key identifying a vessel
+     */
+    public interface EncounterListener<K> {
+
+        /**
+         * Invoked when the safety zones of two vessels start intersecting.
+         *
+         * @param key
+         *            the key of the vessel that was updated
+         * @param other
+         *            the key of the other vessel
+         */
+        void encounterStarted(K key, K other);
+
+        /**
+         * Invoked when the safety zones of two vessels stop intersecting, or one of them is removed.
+         *
+         * @param key
+         *            the key of the vessel that was updated or removed
+         * @param other
+         *            the key of the other vessel
+         */
+        void encounterEnded(K key, K other);
+    }
+
+    /** The state of a single monitored vessel. */
+    static final class Zone<K> {
+        final K key;
+
+        Ellipse ellipse;
+
+        /** The bounding box of the ellipse in the cartesian plane. */
+        double minX, maxX, minY, maxY;
+
+        /** The range of grid cells overlapped by the bounding box. */
+        long minCellX, maxCellX, minCellY, maxCellY;
+
+        final Set<Zone<K>> encounters = new HashSet<>();
+
+        Zone(K key) {
+            this.key = key;
+        }
+
+        void setEllipse(Ellipse ellipse, double cellSize) {
+            this.ellipse = ellipse;
+            double theta = toRadians(ellipse.getThetaDeg());
+            double ac = ellipse.getAlpha() * cos(theta), as = ellipse.getAlpha() * sin(theta);
+            double bc = ellipse.getBeta() * cos(theta), bs = ellipse.getBeta() * sin(theta);
+            double hx = sqrt(ac * ac + bs * bs);
+            double hy = sqrt(as * as + bc * bc);
+            minX = ellipse.getX() - hx;
+            maxX = ellipse.getX() + hx;
+            minY = ellipse.getY() - hy;
+            maxY = ellipse.getY() + hy;
+            minCellX = (long) floor(minX / cellSize);
+            maxCellX = (long) floor(maxX / cellSize);
+            minCellY = (long) floor(minY / cellSize);
+            maxCellY = (long) floor(maxY / cellSize);
+        }
+
+        boolean overlaps(Zone<K> other) {
+            return minX <= other.maxX && other.minX <= maxX && minY <= other.maxY && other.minY <= maxY;
+        }
+    }
+}
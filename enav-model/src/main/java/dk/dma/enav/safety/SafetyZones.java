@@ -120,12 +120,12 @@ public final class SafetyZones {
         // Transform latitude/longitude to cartesian coordinates
         final double centerLatitude = geodeticReference.getLatitude();
         final double centerLongitude = geodeticReference.getLongitude();
-        final CoordinateConverter CoordinateConverter = new CoordinateConverter(centerLongitude, centerLatitude);
+        final CoordinateConverter coordinateConverter = CoordinateConverter.create(centerLongitude, centerLatitude);
 
-        final double trackLatitude = position.getLatitude();
-        final double trackLongitude = position.getLongitude();
-        final double x = CoordinateConverter.lon2x(trackLongitude, trackLatitude);
-        final double y = CoordinateConverter.lat2y(trackLongitude, trackLatitude);
+        final double[] xy = new double[2];
+        coordinateConverter.toXY(position.getLongitude(), position.getLatitude(), xy);
+        final double x = xy[0];
+        final double y = xy[1];
 
         // Compute center of ellipse
         final Point pt0 = new Point(x, y);
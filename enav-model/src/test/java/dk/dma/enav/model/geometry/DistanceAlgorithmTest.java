@@ -0,0 +1,83 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DistanceAlgorithmTest {
+
+    @Test
+    public void testKarney() {
+        // Examples from C. F. F. Karney, Algorithms for geodesics (2013)
+        assertEquals(19989832.827610, DistanceAlgorithm.KARNEY.distance(-30, 0, 29.9, 179.8), 1e-6);
+        assertEquals(20003931.458625, DistanceAlgorithm.KARNEY.distance(0, 0, 0, 180), 1e-6);
+        assertEquals(20003931.458625, DistanceAlgorithm.KARNEY.distance(90, 0, -90, 0), 1e-6);
+        assertEquals(0, DistanceAlgorithm.KARNEY.distance(56, 12, 56, 12), 0);
+    }
+
+    @Test
+    public void testVincentyNearlyAntipodal() {
+        double distance = DistanceAlgorithm.VINCENTY.distance(0, 0, 0.5, 179.5);
+        assertEquals(DistanceAlgorithm.KARNEY.distance(0, 0, 0.5, 179.5), distance, 1e-6);
+        assertEquals(distance, Position.create(0, 0).geodesicDistanceTo(Position.create(0.5, 179.5)), 1e-6);
+    }
+
+    @Test
+    public void testErrorBounds() {
+        Random r = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            double lat1 = r.nextDouble() * 180 - 90;
+            double lon1 = r.nextDouble() * 360 - 180;
+            double lat2 = i % 2 == 0 ? r.nextDouble() * 180 - 90 : Math.max(-90, Math.min(90, lat1 + r.nextGaussian()));
+            double lon2 = i % 2 == 0 ? r.nextDouble() * 360 - 180 : Math.max(-180, Math.min(180, lon1 + r.nextGaussian()));
+            double exact = DistanceAlgorithm.KARNEY.distance(lat1, lon1, lat2, lon2);
+            for (DistanceAlgorithm a : DistanceAlgorithm.values()) {
+                double d = a.distance(lat1, lon1, lat2, lon2);
+                assertTrue(a + " " + d + " " + exact, Math.abs(d - exact) <= a.getErrorBound(d));
+            }
+        }
+    }
+
+    @Test
+    public void testBatch() {
+        Random r = new Random(2);
+        double[] lats = new double[1000];
+        double[] lons = new double[1000];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = 55 + r.nextDouble() * 2;
+            lons[i] = 10 + r.nextDouble() * 4;
+        }
+        double[] distances = new double[lats.length];
+        DistanceAlgorithm.HAVERSINE.distances(56, 12, lats, lons, distances);
+        for (int i = 0; i < lats.length; i++) {
+            assertEquals(DistanceAlgorithm.HAVERSINE.distance(56, 12, lats[i], lons[i]), distances[i], 0);
+        }
+
+        int[] indices = new int[lats.length];
+        int count = DistanceAlgorithm.VINCENTY.indicesWithin(56, 12, lats, lons, 50000, indices);
+        int expected = 0;
+        for (int i = 0; i < lats.length; i++) {
+            if (DistanceAlgorithm.VINCENTY.distance(56, 12, lats[i], lons[i]) <= 50000) {
+                assertEquals(i, indices[expected++]);
+            }
+        }
+        assertEquals(expected, count);
+    }
+}
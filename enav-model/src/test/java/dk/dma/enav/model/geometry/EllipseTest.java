@@ -113,6 +113,41 @@ public class EllipseTest {
         }
     }
 
+    @Test
+    public void testContainsOffsetPosition() {
+        Position reference = Position.create(57.700633, 11.673650);
+        Ellipse ellipse = new Ellipse(reference, 500.0, 0.0, 100.0, 40.0, 0.0, CoordinateSystem.CARTESIAN);
+        Position center = reference.positionAt(90, 500);
+        assertFalse(ellipse.contains(reference));
+        assertTrue(ellipse.contains(center));
+        assertTrue(ellipse.contains(center.positionAt(90, 95)));
+        assertFalse(ellipse.contains(center.positionAt(90, 105)));
+        assertTrue(ellipse.contains(center.positionAt(0, 37)));
+        assertFalse(ellipse.contains(center.positionAt(0, 43)));
+    }
+
+    @Test
+    public void testContainsAll() {
+        Position position = Position.create(57.700633, 11.673650);
+        Ellipse ellipse = new Ellipse(position, 10.0, -20.0, 100.0, 40.0, 30.0, CoordinateSystem.CARTESIAN);
+        double[] lats = new double[100];
+        double[] lons = new double[100];
+        for (int i = 0; i < lats.length; i++) {
+            Position p = position.positionAt(i * 7.3, i * 1.5);
+            lats[i] = p.getLatitude();
+            lons[i] = p.getLongitude();
+        }
+        boolean[] result = new boolean[lats.length];
+        int count = ellipse.containsAll(lats, lons, result);
+        int expected = 0;
+        for (int i = 0; i < lats.length; i++) {
+            assertEquals(ellipse.contains(Position.create(lats[i], lons[i])), result[i]);
+            expected += result[i] ? 1 : 0;
+        }
+        assertEquals(expected, count);
+        assertTrue(count > 0 && count < lats.length);
+    }
+
     @Test
     public void testSamplePerimeter() {
         Ellipse ellipse = new Ellipse(Position.create(57.700633, 11.673650), -70.52481315529923, -54.37141463499117, 184.0, 40.0, 215.6999969482422, CoordinateSystem.CARTESIAN);
@@ -0,0 +1,202 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PolygonTest {
+
+    static Polygon polygon(CoordinateSystem cs, double... latLon) {
+        double[] lat = new double[latLon.length / 2];
+        double[] lon = new double[latLon.length / 2];
+        for (int i = 0; i < lat.length; i++) {
+            lat[i] = latLon[2 * i];
+            lon[i] = latLon[2 * i + 1];
+        }
+        return new Polygon(lat, lon, cs);
+    }
+
+    /** A star shaped polygon with the specified number of vertices, centered at the position. */
+    static Polygon star(Random r, int n, double lat, double lon, CoordinateSystem cs) {
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            double angle = 2 * Math.PI * i / n;
+            double radius = 1 + 4 * r.nextDouble();
+            lats[i] = lat + radius * Math.sin(angle);
+            lons[i] = lon + radius * Math.cos(angle);
+            if (lons[i] > 180) {
+                lons[i] -= 360;
+            } else if (lons[i] < -180) {
+                lons[i] += 360;
+            }
+        }
+        return new Polygon(lats, lons, cs);
+    }
+
+    @Test
+    public void testContains() {
+        for (CoordinateSystem cs : CoordinateSystem.values()) {
+            // A concave polygon shaped like a U
+            Polygon p = polygon(cs, 55, 10, 55, 13, 58, 13, 58, 12, 56, 12, 56, 11, 58, 11, 58, 10);
+            assertTrue(p.contains(Position.create(55.5, 11.5)));
+            assertTrue(p.contains(Position.create(57, 10.5)));
+            assertTrue(p.contains(Position.create(57, 12.5)));
+            assertFalse(p.contains(Position.create(57, 11.5)));
+            assertFalse(p.contains(Position.create(54, 11.5)));
+            assertFalse(p.contains(Position.create(57, 14)));
+            assertTrue(p.intersects(Position.create(55.5, 11.5)));
+            assertTrue(p.prepare().contains(Position.create(55.5, 11.5)));
+            assertFalse(p.prepare().contains(Position.create(57, 11.5)));
+        }
+    }
+
+    @Test
+    public void testAntimeridian() {
+        for (CoordinateSystem cs : CoordinateSystem.values()) {
+            Polygon p = polygon(cs, -10, 170, -10, -170, 10, -170, 10, 170);
+            for (PreparedPolygon pp : new PreparedPolygon[] { p.prepare() }) {
+                assertTrue(pp.contains(0, 180));
+                assertTrue(pp.contains(0, -180));
+                assertTrue(pp.contains(0, 175));
+                assertTrue(pp.contains(0, -175));
+                assertFalse(pp.contains(0, 0));
+                assertFalse(pp.contains(0, 165));
+                assertFalse(pp.contains(0, -165));
+            }
+            assertTrue(p.contains(0, 179));
+            assertTrue(p.contains(0, -179));
+            assertFalse(p.contains(0, 0));
+            assertEquals(Position.create(-10, -170), p.getVertex(1));
+        }
+    }
+
+    @Test
+    public void testGreatCircleEdges() {
+        // The northern edge follows the parallel as a rhumb line, and bulges north as a great circle
+        Polygon rhumb = polygon(CoordinateSystem.CARTESIAN, 50, -40, 50, 40, 60, 40, 60, -40);
+        Polygon gc = polygon(CoordinateSystem.GEODETIC, 50, -40, 50, 40, 60, 40, 60, -40);
+        assertFalse(rhumb.contains(61, 0));
+        assertTrue(gc.contains(61, 0));
+        assertTrue(gc.prepare().contains(61, 0));
+        assertTrue(rhumb.contains(51, 0));
+        assertFalse(gc.contains(51, 0));
+        assertFalse(gc.prepare().contains(51, 0));
+    }
+
+    @Test
+    public void testPreparedSameAsPolygon() {
+        Random r = new Random(123);
+        for (CoordinateSystem cs : CoordinateSystem.values()) {
+            for (double lon : new double[] { 10, 178 }) {
+                Polygon p = star(r, 2000, 55, lon, cs);
+                PreparedPolygon pp = p.prepare();
+                for (int i = 0; i < 10000; i++) {
+                    double lat = 55 + 12 * (r.nextDouble() - 0.5);
+                    double l = lon + 12 * (r.nextDouble() - 0.5);
+                    l = l > 180 ? l - 360 : l;
+                    assertEquals(p.contains(lat, l), pp.contains(lat, l));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPolygons() {
+        for (CoordinateSystem cs : CoordinateSystem.values()) {
+            Polygon p = polygon(cs, 55, 10, 55, 13, 58, 13, 58, 10);
+            Polygon inner = polygon(cs, 56, 11, 56, 12, 57, 12);
+            Polygon crossing = polygon(cs, 54, 11, 54, 12, 59, 12, 59, 11);
+            Polygon outside = polygon(cs, 60, 11, 60, 12, 61, 12);
+            assertTrue(p.contains(inner));
+            assertTrue(p.intersects(inner));
+            assertTrue(inner.intersects(p));
+            assertFalse(p.contains(crossing));
+            assertTrue(p.intersects(crossing));
+            assertTrue(crossing.intersects(p));
+            assertFalse(p.intersects(outside));
+            assertFalse(p.contains(outside));
+
+            Polygon east = polygon(cs, -10, 170, -10, -170, 10, -170, 10, 170);
+            Polygon west = polygon(cs, -5, -175, -5, -160, 5, -160);
+            assertTrue(east.intersects(west));
+            assertTrue(west.intersects(east));
+        }
+    }
+
+    @Test
+    public void testVertices() {
+        Polygon p = polygon(CoordinateSystem.CARTESIAN, 55, 10, 55, 11, 56, 11, 55, 10);
+        assertEquals(3, p.size());
+        assertEquals(Arrays.asList(Position.create(55, 10), Position.create(55, 11), Position.create(56, 11)),
+                p.getVertices());
+        assertEquals(p, new Polygon(p.getVertices(), CoordinateSystem.CARTESIAN));
+        assertFalse(p.equals(new Polygon(p.getVertices(), CoordinateSystem.GEODETIC)));
+        assertEquals(p.hashCode(), new Polygon(p.getVertices(), CoordinateSystem.CARTESIAN).hashCode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooFewVertices() {
+        polygon(CoordinateSystem.CARTESIAN, 55, 10, 55, 11, 55, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEnclosingPole() {
+        polygon(CoordinateSystem.CARTESIAN, 80, 0, 80, 90, 80, 179, 80, -90);
+    }
+
+    @Test
+    public void testBoundingBox() {
+        BoundingBox box = BoundingBox.create(Position.create(55, 10), Position.create(56, 11),
+                CoordinateSystem.CARTESIAN);
+        assertEquals(4, box.size());
+        assertTrue(box.contains(55.5, 10.5));
+        assertTrue(box.contains(55, 10));
+        assertTrue(polygon(CoordinateSystem.CARTESIAN, 54, 9, 54, 12, 57, 12, 57, 9).contains(box));
+        assertTrue(box.intersects(polygon(CoordinateSystem.CARTESIAN, 55.5, 10.5, 55.5, 20, 57, 20)));
+    }
+
+    @Test
+    public void testGeodeticBoundingBox() {
+        // The edges of a box are parallels, not great circles bulging north
+        BoundingBox box = BoundingBox.create(Position.create(50, 0), Position.create(60, 90),
+                CoordinateSystem.GEODETIC);
+        assertFalse(box.contains(65, 45));
+        assertFalse(box.prepare().contains(65, 45));
+        assertTrue(box.prepare().contains(59, 45));
+        assertFalse(box.intersects(polygon(CoordinateSystem.GEODETIC, 64, 44, 64, 46, 66, 46, 66, 44)));
+        assertEquals(box.getVertices(), box.prepare().getPolygon().getVertices());
+
+        // A great circle edge between two corners of the box bulges north of it
+        Polygon gc = polygon(CoordinateSystem.GEODETIC, 60, 0, 60, 90, 80, 45);
+        assertTrue(gc.intersects(box));
+        assertTrue(box.intersects(gc));
+        assertFalse(box.contains(gc));
+
+        // The southern edge passes south of the corners of the box, but bulges north of its southern edge
+        Polygon bulging = polygon(CoordinateSystem.GEODETIC, 35, -15, 35, 105, 75, 105, 75, -15);
+        assertTrue(bulging.contains(box.getVertex(0)) && bulging.contains(box.getVertex(1)));
+        assertFalse(bulging.contains(box));
+        assertTrue(bulging.intersects(box));
+        assertTrue(polygon(CoordinateSystem.GEODETIC, 20, -15, 20, 105, 75, 105, 75, -15).contains(box));
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrackBufferTest {
+
+    private static TrackBuffer createTrack() {
+        TrackBuffer track = new TrackBuffer(2);
+        track.add(56.0, 12.0, 1000L);
+        track.add(PositionTime.create(56.5, 12.5, 2000L));
+        track.add(57.0, 12.0, 4000L);
+        return track;
+    }
+
+    @Test
+    public void testAddAndGet() {
+        TrackBuffer track = createTrack();
+        assertEquals(3, track.size());
+        assertEquals(PositionTime.create(56.5, 12.5, 2000L), track.get(1));
+        assertEquals(57.0, track.getLatitude(2), 0);
+        assertEquals(4000L, track.getTime(2));
+
+        List<PositionTime> list = track.asList();
+        assertEquals(3, list.size());
+        assertEquals(PositionTime.create(56.0, 12.0, 1000L), list.get(0));
+
+        TrackBuffer.Cursor cursor = track.cursor();
+        int count = 1;
+        while (cursor.next()) {
+            count++;
+        }
+        assertEquals(3, count);
+        assertEquals(12.0, cursor.getLongitude(), 0);
+        assertEquals(12.5, cursor.moveTo(1).getLongitude(), 0);
+
+        Position p = Position.create(55.123456, 11.654321);
+        track.addPacked(p.toPackedLong(), 5000L);
+        assertEquals(p.toPackedLong(), track.getPacked(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddOutOfOrder() {
+        createTrack().add(57.0, 12.0, 3000L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddInvalidLatitude() {
+        createTrack().add(91.0, 12.0, 5000L);
+    }
+
+    @Test
+    public void testInterpolate() {
+        TrackBuffer track = createTrack();
+        assertEquals(-1, track.indexOf(999L));
+        assertEquals(1, track.indexOf(3999L));
+        assertEquals(2, track.indexOf(4000L));
+        assertEquals(PositionTime.create(56.75, 12.25, 3000L), track.interpolate(3000L));
+        assertEquals(PositionTime.create(56.5, 12.5, 2000L), track.interpolate(2000L));
+    }
+
+    @Test
+    public void testBulkOperations() {
+        TrackBuffer track = createTrack();
+        BoundingBox box = track.getBoundingBox();
+        assertEquals(56.0, box.getMinLat(), 0);
+        assertEquals(57.0, box.getMaxLat(), 0);
+        assertEquals(12.5, box.getMaxLon(), 0);
+
+        double[] distances = new double[2];
+        track.getLegDistances(DistanceAlgorithm.VINCENTY, distances);
+        assertEquals(Position.create(56.0, 12.0).geodesicDistanceTo(Position.create(56.5, 12.5)), distances[0], 1e-9);
+        assertEquals(distances[0] + distances[1], track.getLength(DistanceAlgorithm.VINCENTY), 1e-9);
+
+        double[] bearings = new double[2];
+        track.getLegBearings(bearings);
+        assertEquals(Position.create(56.5, 12.5).rhumbLineBearingTo(Position.create(57.0, 12.0)), bearings[1], 1e-12);
+    }
+}
@@ -0,0 +1,64 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry.grid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CellIdSetTest {
+
+    @Test
+    public void testOf() {
+        CellIdSet set = CellIdSet.of(5, 1, 3, 5, -2);
+        assertEquals(4, set.size());
+        assertArrayEquals(new long[] { -2, 1, 3, 5 }, set.toArray());
+        assertTrue(set.contains(3));
+        assertFalse(set.contains(4));
+        assertSame(CellIdSet.EMPTY, CellIdSet.of());
+    }
+
+    @Test
+    public void testUnion() {
+        CellIdSet a = CellIdSet.of(1, 3, 5);
+        CellIdSet b = CellIdSet.of(2, 3, 6);
+        assertArrayEquals(new long[] { 1, 2, 3, 5, 6 }, a.union(b).toArray());
+        assertSame(a, a.union(CellIdSet.of(3)));
+        assertSame(a, CellIdSet.EMPTY.union(a));
+    }
+
+    @Test
+    public void testIntersection() {
+        CellIdSet a = CellIdSet.of(1, 3, 5, 7);
+        CellIdSet b = CellIdSet.of(0, 3, 4, 7, 8);
+        assertArrayEquals(new long[] { 3, 7 }, a.intersection(b).toArray());
+        assertTrue(a.intersects(b));
+        assertFalse(a.intersects(CellIdSet.of(2, 4, 6)));
+        assertSame(CellIdSet.EMPTY, a.intersection(CellIdSet.of(2, 4)));
+    }
+
+    @Test
+    public void testContainsAll() {
+        CellIdSet a = CellIdSet.of(1, 3, 5, 7);
+        assertTrue(a.containsAll(CellIdSet.of(3, 7)));
+        assertTrue(a.containsAll(CellIdSet.EMPTY));
+        assertFalse(a.containsAll(CellIdSet.of(3, 4)));
+        assertFalse(a.containsAll(CellIdSet.of(1, 3, 5, 7, 9)));
+    }
+}
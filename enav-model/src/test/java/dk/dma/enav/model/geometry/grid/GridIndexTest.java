@@ -0,0 +1,113 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry.grid;
+
+import dk.dma.enav.model.PositionalObject;
+import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.Circle;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GridIndexTest {
+
+    static class Vessel implements PositionalObject {
+        volatile Position position;
+
+        Vessel(double latitude, double longitude) {
+            this.position = Position.create(latitude, longitude);
+        }
+
+        @Override
+        public Position getPosition() {
+            return position;
+        }
+    }
+
+    @Test
+    public void testInsertMoveRemove() {
+        GridIndex<Vessel> index = new GridIndex<>(Grid.createSize(1000));
+        Vessel v = new Vessel(56.0, 12.0);
+        index.insert(v);
+        assertTrue(index.contains(v));
+        BoundingBox box = BoundingBox.create(Position.create(55.9, 11.9), Position.create(56.1, 12.1), CoordinateSystem.CARTESIAN);
+        assertEquals(1, index.query(box).size());
+
+        v.position = Position.create(57.0, 12.0);
+        assertEquals(1, index.query(box).size()); // not moved yet
+        index.move(v);
+        assertEquals(0, index.query(box).size());
+        assertEquals(1, index.size());
+
+        assertTrue(index.remove(v));
+        assertFalse(index.remove(v));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testQueriesAgainstLinearScan() {
+        Random r = new Random(1);
+        GridIndex<Vessel> index = new GridIndex<>(Grid.createSize(5000));
+        List<Vessel> vessels = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Vessel v = new Vessel(54 + r.nextDouble() * 4, 8 + r.nextDouble() * 8);
+            vessels.add(v);
+            index.insert(v);
+        }
+
+        BoundingBox box = BoundingBox.create(Position.create(55.2, 10.1), Position.create(56.3, 11.7), CoordinateSystem.CARTESIAN);
+        assertEquals(vessels.stream().filter(v -> box.contains(v.position)).collect(Collectors.toSet()),
+                new HashSet<>(index.query(box)));
+
+        Circle circle = new Circle(Position.create(56, 12), 30000, CoordinateSystem.GEODETIC);
+        List<Vessel> inCircle = index.query(circle);
+        assertFalse(inCircle.isEmpty());
+        assertEquals(vessels.stream().filter(v -> circle.contains(v.position)).collect(Collectors.toSet()),
+                new HashSet<>(inCircle));
+
+        Position p = Position.create(55.5, 9.5);
+        List<Vessel> expected = vessels.stream()
+                .sorted(Comparator.comparingDouble(v -> p.geodesicDistanceTo(v.position))).limit(10)
+                .collect(Collectors.toList());
+        assertEquals(expected, index.nearest(p, 10));
+    }
+
+    @Test
+    public void testNearestAcrossAntimeridian() {
+        GridIndex<Vessel> index = new GridIndex<>(Grid.GRID_1_DEGREE);
+        Vessel east = new Vessel(0, 179.8);
+        Vessel west = new Vessel(0, -179.9);
+        Vessel far = new Vessel(10, 170);
+        index.insert(east);
+        index.insert(west);
+        index.insert(far);
+        List<Vessel> nearest = index.nearest(Position.create(0, -179.5), 2);
+        assertEquals(2, nearest.size());
+        assertEquals(west, nearest.get(0));
+        assertEquals(east, nearest.get(1));
+        assertEquals(3, index.nearest(Position.create(0, 0), 5).size());
+    }
+}
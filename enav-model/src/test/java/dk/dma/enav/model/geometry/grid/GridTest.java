@@ -15,13 +15,16 @@
 package dk.dma.enav.model.geometry.grid;
 
 import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.CoordinateSystem;
 import dk.dma.enav.model.geometry.Position;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Set;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNotNull;
@@ -229,4 +232,65 @@ public class GridTest {
             System.out.println("Cell id " + cell.getCellId() + " " + geoPosOfCell +" is inside bounding box " + largerArea);
         }
     }
+
+    @Test
+    public void testStreamCellIdsMatchesGetCell() {
+        BoundingBox area = BoundingBox.create(Position.create(55.5, 11.5), Position.create(55.6, 11.62), CoordinateSystem.CARTESIAN);
+        long[] ids = grid.streamCellIds(area).toArray();
+        assertEquals(grid.countCells(area), ids.length);
+        for (int i = 1; i < ids.length; i++) {
+            assertTrue(ids[i - 1] < ids[i]);
+        }
+        for (int i = 0; i < 10000; i++) {
+            long cellId = grid.getCell(area.getRandom()).getCellId();
+            assertTrue(Arrays.binarySearch(ids, cellId) >= 0);
+        }
+    }
+
+    @Test
+    public void testStreamCellIdsIsLazy() {
+        // About 2^35 cells, too many to hold in an array
+        BoundingBox area = BoundingBox.create(Position.create(-80, -170), Position.create(80, 170), CoordinateSystem.CARTESIAN);
+        assertTrue(grid.countCells(area) > Integer.MAX_VALUE);
+        long[] ids = grid.streamCellIds(area).limit(3).toArray();
+        long first = grid.getCell(Position.create(-80, -170)).getCellId();
+        assertArrayEquals(new long[] { first, first + 1, first + 2 }, ids);
+    }
+
+    @Test
+    public void testGetCellsInLargeBoundingBox() {
+        BoundingBox area = BoundingBox.create(Position.create(-40, 15), Position.create(12, 77), CoordinateSystem.CARTESIAN);
+        Set<Cell> cells = Grid.GRID_1_DEGREE.getCells(area);
+        assertEquals(52 * 62, cells.size());
+        assertEquals(52 * 62, Grid.GRID_1_DEGREE.countCells(area));
+        assertTrue(cells.contains(Grid.GRID_1_DEGREE.getCell(-40, 15)));
+        assertTrue(cells.contains(Grid.GRID_1_DEGREE.getCell(11.9, 76.9)));
+    }
+
+    @Test
+    public void testGetNearbyCellIds() {
+        Grid grid1 = Grid.GRID_1_DEGREE;
+        CellIdSet ids = grid1.getNearbyCellIds(Position.create(55.5, 11.5), 1);
+        assertEquals(9, ids.size());
+        assertTrue(ids.contains(grid1.getCell(55.5, 11.5)));
+        assertTrue(ids.contains(grid1.getCell(56.4, 12.4)));
+        assertTrue(ids.contains(grid1.getCell(54.6, 10.6)));
+        assertEquals(9, grid1.getNearbyCells(Position.create(55.5, 11.5), 1).size());
+
+        // Wraps around the 180th meridian
+        ids = grid1.getNearbyCellIds(Position.create(0.5, 179.5), 1);
+        assertEquals(9, ids.size());
+        assertTrue(ids.contains(grid1.getCell(0.5, -179.5)));
+        assertTrue(ids.contains(grid1.getCell(-0.5, 178.5)));
+    }
+
+    @Test
+    public void testGetCellIds() {
+        BoundingBox area = BoundingBox.create(Position.create(55.5, 11.5), Position.create(55.6, 11.62), CoordinateSystem.CARTESIAN);
+        CellIdSet ids = grid.getCellIds(area);
+        assertArrayEquals(grid.streamCellIds(area).toArray(), ids.toArray());
+        for (Cell cell : grid.getCells(area)) {
+            assertTrue(ids.contains(cell));
+        }
+    }
 }
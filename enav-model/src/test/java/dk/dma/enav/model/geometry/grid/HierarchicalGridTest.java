@@ -0,0 +1,214 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.geometry.grid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.Circle;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Polygon;
+import dk.dma.enav.model.geometry.Position;
+
+public class HierarchicalGridTest {
+
+    @Test
+    public void testHierarchy() {
+        Random r = new Random(12);
+        for (int i = 0; i < 1000; i++) {
+            double lat = r.nextDouble() * 180 - 90;
+            double lon = r.nextDouble() * 360 - 180;
+            long leaf = HierarchicalGrid.getCellId(lat, lon, HierarchicalGrid.MAX_LEVEL);
+            assertEquals(HierarchicalGrid.MAX_LEVEL, HierarchicalGrid.getLevel(leaf));
+            for (int level = HierarchicalGrid.MAX_LEVEL; level >= 0; level--) {
+                long id = HierarchicalGrid.getCellId(lat, lon, level);
+                assertEquals(level, HierarchicalGrid.getLevel(id));
+                assertEquals(id, HierarchicalGrid.getParent(leaf, level));
+                assertTrue(HierarchicalGrid.contains(id, leaf));
+                if (level > 0) {
+                    long parent = HierarchicalGrid.getParent(id);
+                    assertEquals(HierarchicalGrid.getCellId(lat, lon, level - 1), parent);
+                    assertTrue(HierarchicalGrid.contains(parent, id));
+                    assertFalse(HierarchicalGrid.contains(id, parent));
+                }
+                BoundingBox box = HierarchicalGrid.getBoundingBox(id);
+                assertTrue(lat >= box.getMinLat() && lat <= box.getMaxLat());
+                assertTrue(lon >= box.getMinLon() && lon <= box.getMaxLon());
+            }
+        }
+    }
+
+    @Test
+    public void testChildren() {
+        long id = HierarchicalGrid.getCellId(55.7, 12.6, 10);
+        double[] bounds = HierarchicalGrid.bounds(id);
+        long previous = HierarchicalGrid.getRangeMin(id) - 1;
+        for (int i = 0; i < 4; i++) {
+            long child = HierarchicalGrid.getChild(id, i);
+            assertEquals(11, HierarchicalGrid.getLevel(child));
+            assertEquals(id, HierarchicalGrid.getParent(child));
+            assertTrue(child > previous);
+            assertTrue(HierarchicalGrid.getRangeMin(child) > previous);
+            previous = HierarchicalGrid.getRangeMax(child);
+
+            double[] b = HierarchicalGrid.bounds(child);
+            double half = HierarchicalGrid.getCellSize(11);
+            assertEquals(bounds[2] + (i & 1) * half, b[2], 0);
+            assertEquals(bounds[0] + (i >> 1) * half, b[0], 0);
+        }
+        assertEquals(HierarchicalGrid.getRangeMax(id), previous);
+    }
+
+    @Test
+    public void testCellSize() {
+        assertEquals(360, HierarchicalGrid.getCellSize(0), 0);
+        assertEquals(0.703125, HierarchicalGrid.getCellSize(9), 0);
+        assertEquals(9, HierarchicalGrid.getLevel(1.0));
+        assertEquals(9, HierarchicalGrid.getLevel(0.703125));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidId() {
+        HierarchicalGrid.getLevel(HierarchicalGrid.getCellId(10, 10, 5) << 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoParentOfRoot() {
+        HierarchicalGrid.getParent(HierarchicalGrid.getCellId(10, 10, 0));
+    }
+
+    @Test
+    public void testCoverBoundingBox() {
+        BoundingBox box = BoundingBox.create(Position.create(54, 10), Position.create(56, 13),
+                CoordinateSystem.CARTESIAN);
+        CellIdSet cells = HierarchicalGrid.cover(box, 4, 12);
+        assertCovering(cells, 4, 12);
+        // Mixed resolution, with coarse cells inside and fine cells on the border
+        int[] levels = levels(cells);
+        assertTrue(levels[12] > 0);
+        assertTrue(levels[9] > 0);
+        double perimeter = 2 * (box.getMaxLat() - box.getMinLat() + box.getMaxLon() - box.getMinLon());
+        assertTrue(cells.size() < 4 * perimeter / HierarchicalGrid.getCellSize(12));
+
+        Random r = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            double lat = 53 + r.nextDouble() * 4;
+            double lon = 9 + r.nextDouble() * 5;
+            if (box.contains(Position.create(lat, lon))) {
+                assertTrue(HierarchicalGrid.covers(cells, lat, lon));
+            } else if (HierarchicalGrid.covers(cells, lat, lon)) {
+                // Only cells of the finest level cross the border
+                double size = HierarchicalGrid.getCellSize(12);
+                assertTrue(lat > box.getMinLat() - size && lat < box.getMaxLat() + size);
+                assertTrue(lon > box.getMinLon() - size && lon < box.getMaxLon() + size);
+            }
+        }
+    }
+
+    @Test
+    public void testCoverPolygon() {
+        Polygon polygon = new Polygon(Arrays.asList(Position.create(55, 10), Position.create(57, 11),
+                Position.create(55.5, 12), Position.create(54, 11)), CoordinateSystem.CARTESIAN);
+        CellIdSet cells = HierarchicalGrid.cover(polygon, 0, 10);
+        assertCovering(cells, 0, 10);
+        Random r = new Random(4);
+        for (int i = 0; i < 10000; i++) {
+            double lat = 53 + r.nextDouble() * 5;
+            double lon = 9 + r.nextDouble() * 4;
+            if (polygon.contains(Position.create(lat, lon))) {
+                assertTrue(HierarchicalGrid.covers(cells, lat, lon));
+            }
+        }
+        assertFalse(HierarchicalGrid.covers(cells, 57, 10));
+    }
+
+    @Test
+    public void testCoverGeodeticPolygon() {
+        // The southern edge is a great circle peaking at 45.3N, 11.25E. It passes south of the corners of the level 4
+        // cell 45N-67.5N, 0E-22.5E, and north of the middle of the southern edge of the cell.
+        Polygon polygon = new Polygon(Arrays.asList(Position.create(26.8, -48.75), Position.create(26.8, 71.25),
+                Position.create(80, 71.25), Position.create(80, -48.75)), CoordinateSystem.GEODETIC);
+        assertTrue(polygon.contains(Position.create(45.01, 0.01)));
+        assertFalse(polygon.contains(Position.create(45.1, 11.25)));
+
+        CellIdSet cells = HierarchicalGrid.cover(polygon, 0, 10);
+        assertCovering(cells, 0, 10);
+        Random r = new Random(6);
+        for (int i = 0; i < 10000; i++) {
+            double lat = i == 0 ? 45.1 : 20 + r.nextDouble() * 70;
+            double lon = i == 0 ? 11.25 : -60 + r.nextDouble() * 150;
+            if (polygon.contains(Position.create(lat, lon))) {
+                assertTrue(HierarchicalGrid.covers(cells, lat, lon));
+            } else if (HierarchicalGrid.covers(cells, lat, lon)) {
+                // Only cells of the finest level cross the border
+                assertTrue(cells.contains(HierarchicalGrid.getCellId(lat, lon, 10)));
+            }
+        }
+    }
+
+    @Test
+    public void testCoverCircle() {
+        Circle circle = new Circle(55.7, 12.6, 20000, CoordinateSystem.CARTESIAN);
+        CellIdSet cells = HierarchicalGrid.cover(circle, 0, 14);
+        assertCovering(cells, 0, 14);
+        Random r = new Random(5);
+        for (int i = 0; i < 10000; i++) {
+            double lat = 55.3 + r.nextDouble() * 0.8;
+            double lon = 12 + r.nextDouble() * 1.2;
+            if (circle.contains(Position.create(lat, lon))) {
+                assertTrue(HierarchicalGrid.covers(cells, lat, lon));
+            }
+        }
+        assertFalse(HierarchicalGrid.covers(cells, 55.7, 13.2));
+    }
+
+    @Test
+    public void testCoverMinLevel() {
+        BoundingBox box = BoundingBox.create(Position.create(-90, -180), Position.create(90, 180),
+                CoordinateSystem.CARTESIAN);
+        CellIdSet cells = HierarchicalGrid.cover(box, 3, 3);
+        // The middle half of the level 3 cells holds the earth
+        assertEquals(32, cells.size());
+        assertCovering(cells, 3, 3);
+    }
+
+    /** Checks the levels of the cells, and that no cell contains another. */
+    private static void assertCovering(CellIdSet cells, int minLevel, int maxLevel) {
+        assertTrue(cells.size() > 0);
+        for (int i = 0; i < cells.size(); i++) {
+            int level = HierarchicalGrid.getLevel(cells.get(i));
+            assertTrue(level >= minLevel && level <= maxLevel);
+            if (i > 0) {
+                assertTrue(HierarchicalGrid.getRangeMax(cells.get(i - 1)) < HierarchicalGrid.getRangeMin(cells
+                        .get(i)));
+            }
+        }
+    }
+
+    private static int[] levels(CellIdSet cells) {
+        int[] levels = new int[HierarchicalGrid.MAX_LEVEL + 1];
+        for (int i = 0; i < cells.size(); i++) {
+            levels[HierarchicalGrid.getLevel(cells.get(i))]++;
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,158 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.msi;
+
+import static dk.dma.enav.model.msi.MsiIndexTest.message;
+import static dk.dma.enav.model.msi.MsiIndexTest.route;
+import static dk.dma.enav.model.msi.MsiIndexTest.square;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.Circle;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.geometry.grid.Grid;
+import dk.dma.enav.model.voyage.Route;
+
+public class MsiConflictMonitorTest {
+
+    /** Records the events as strings like "+ship1 1" and "-ship1 1". */
+    static class RecordingListener implements MsiConflictMonitor.ConflictListener<String> {
+        final List<String> events = new ArrayList<>();
+
+        public void conflictStarted(String key, NavwarnMessage message) {
+            events.add("+" + key + " " + message.getMessageSeriesIdentifier().getMessageNumber());
+        }
+
+        public void conflictEnded(String key, NavwarnMessage message) {
+            events.add("-" + key + " " + message.getMessageSeriesIdentifier().getMessageNumber());
+        }
+
+        List<String> take() {
+            List<String> result = new ArrayList<>(events);
+            events.clear();
+            return result;
+        }
+    }
+
+    @Test
+    public void testEvents() {
+        RecordingListener l = new RecordingListener();
+        MsiConflictMonitor<String> m = new MsiConflictMonitor<>(l);
+
+        // A route along the 56th parallel, and a warning on it
+        m.setRoute("ship1", route(0.5, 56, 10, 56, 12));
+        NavwarnMessage wreck = message(1, Position.create(56.001, 11));
+        m.addMessage(wreck);
+        assertEquals(Arrays.asList("+ship1 1"), l.take());
+        assertEquals(Arrays.asList(wreck), m.getConflicts("ship1"));
+        assertEquals(Collections.singleton("ship1"), m.getConflicts(wreck.getMessageSeriesIdentifier()));
+
+        // A second route far away is not affected by the wreck
+        m.setRoute("ship2", route(0.5, 50, 0, 50, 1));
+        assertEquals(Collections.emptyList(), l.take());
+
+        // Setting the same route again emits nothing, moving it away resolves the conflict
+        m.setRoute("ship1", route(0.5, 56, 10, 56, 12));
+        assertEquals(Collections.emptyList(), l.take());
+        m.setRoute("ship1", route(0.5, 57, 10, 57, 12));
+        assertEquals(Arrays.asList("-ship1 1"), l.take());
+        m.setRoute("ship1", route(0.5, 56, 10, 56, 12));
+        assertEquals(Arrays.asList("+ship1 1"), l.take());
+
+        // Moving the warning moves the conflict
+        m.addMessage(message(1, Position.create(50, 0.5)));
+        assertEquals(Arrays.asList("-ship1 1", "+ship2 1"), l.take());
+
+        // An area warning affecting both routes, cancelling the wreck
+        NavwarnMessage area = message(2, square(49, -1, 8), square(55.5, 10.5, 1));
+        area.getCancelMessage().add(wreck.getMessageSeriesIdentifier());
+        m.addMessage(area);
+        assertEquals(new HashSet<>(Arrays.asList("-ship2 1", "+ship1 2", "+ship2 2")), new HashSet<>(l.take()));
+        assertEquals(null, m.getMessage(wreck.getMessageSeriesIdentifier()));
+
+        assertTrue(m.removeRoute("ship2"));
+        assertEquals(Arrays.asList("-ship2 2"), l.take());
+        assertFalse(m.removeRoute("ship2"));
+
+        area.setCancellationDate(new Date(1000));
+        assertEquals(Arrays.asList(area), m.expire(new Date(2000)));
+        assertEquals(Arrays.asList("-ship1 2"), l.take());
+        assertEquals(Collections.emptyList(), m.getConflicts("ship1"));
+        assertEquals(1, m.size());
+    }
+
+    @Test
+    public void testSameAsRecomputing() {
+        Random r = new Random(7);
+        RecordingListener l = new RecordingListener();
+        MsiConflictMonitor<String> m = new MsiConflictMonitor<>(Grid.GRID_1_DEGREE, 1000, l);
+        Route[] routes = new Route[50];
+        Set<String> replayed = new HashSet<>();
+        for (int step = 0; step < 2000; step++) {
+            if (r.nextInt(3) == 0) {
+                int i = r.nextInt(routes.length);
+                routes[i] = route(r.nextDouble(), 54 + 4 * r.nextDouble(), 8 + 6 * r.nextDouble(),
+                        54 + 4 * r.nextDouble(), 8 + 6 * r.nextDouble());
+                m.setRoute("ship" + i, routes[i]);
+            } else if (r.nextInt(5) == 0) {
+                m.removeMessage(message(r.nextInt(100)).getMessageSeriesIdentifier());
+            } else {
+                m.addMessage(message(r.nextInt(100), new Circle(Position.create(54 + 4 * r.nextDouble(),
+                        8 + 6 * r.nextDouble()), 20_000 * r.nextDouble(), CoordinateSystem.GEODETIC)));
+            }
+            // Each event must change the set of conflicts
+            for (String event : l.take()) {
+                assertTrue(event, event.startsWith("+") ? replayed.add(event.substring(1)) : replayed.remove(event
+                        .substring(1)));
+            }
+        }
+        // The conflicts maintained incrementally are the same as found by querying the index
+        MsiIndex index = new MsiIndex();
+        for (int i = 0; i < 100; i++) {
+            NavwarnMessage message = m.getMessage(message(i).getMessageSeriesIdentifier());
+            if (message != null) {
+                index.add(message);
+            }
+        }
+        int conflicts = 0;
+        for (int i = 0; i < routes.length; i++) {
+            if (routes[i] != null) {
+                Set<NavwarnMessage> expected = new LinkedHashSet<>(index.query(routes[i], 1000));
+                assertEquals(expected, new LinkedHashSet<>(m.getConflicts("ship" + i)));
+                for (NavwarnMessage message : expected) {
+                    int number = message.getMessageSeriesIdentifier().getMessageNumber();
+                    assertTrue(replayed.remove("ship" + i + " " + number));
+                }
+                conflicts += expected.size();
+            }
+        }
+        assertTrue(conflicts > 0);
+        assertEquals(Collections.emptySet(), replayed);
+    }
+}
@@ -0,0 +1,187 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.msi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.BoundingBox;
+import dk.dma.enav.model.geometry.Circle;
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Element;
+import dk.dma.enav.model.geometry.Polygon;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.RouteLeg;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+import dk.dma.enav.model.voyage.Waypoint;
+
+public class MsiIndexTest {
+
+    static NavwarnMessage message(int number, Element... elements) {
+        NavwarnMessage message = new NavwarnMessage();
+        message.setMessageSeriesIdentifier(new MessageSeriesIdentifier(MessageType.COSTAL_WARNING, number, 2014,
+                "DK"));
+        MessageItem item = new MessageItem();
+        for (Element e : elements) {
+            item.getLocation().add(new MessageLocation(e));
+        }
+        message.getMessageItem().add(item);
+        return message;
+    }
+
+    static Polygon square(double lat, double lon, double size) {
+        return new Polygon(new double[] { lat, lat, lat + size, lat + size }, new double[] { lon, lon + size,
+                lon + size, lon }, CoordinateSystem.CARTESIAN);
+    }
+
+    static Route route(double xtd, double... latLon) {
+        Route route = new Route("r");
+        for (int i = 0; i < latLon.length; i += 2) {
+            Waypoint wp = new Waypoint("wp" + i, latLon[i], latLon[i + 1], null, null);
+            wp.setRouteLeg(new RouteLeg(10.0, Heading.RL, xtd, xtd));
+            route.getWaypoints().add(wp);
+        }
+        return route;
+    }
+
+    @Test
+    public void testQueries() {
+        MsiIndex index = new MsiIndex();
+        NavwarnMessage area = message(1, square(55, 10, 1));
+        NavwarnMessage wreck = message(2, Position.create(56.5, 12));
+        NavwarnMessage exercise = message(3, new Circle(Position.create(57, 11), 10_000, CoordinateSystem.GEODETIC));
+        NavwarnMessage cable = message(4, new Polygon(new double[] { 54, 54, 54.01, 54.01 }, new double[] { 10, 12,
+                12, 10 }, CoordinateSystem.CARTESIAN));
+        for (NavwarnMessage m : Arrays.asList(area, wreck, exercise, cable)) {
+            assertNull(index.add(m));
+        }
+        assertEquals(4, index.size());
+
+        assertEquals(Arrays.asList(area), index.query(Position.create(55.5, 10.5)));
+        assertEquals(Collections.emptyList(), index.query(Position.create(55.5, 11.5)));
+        assertEquals(Arrays.asList(exercise), index.query(Position.create(57.05, 11)));
+        assertEquals(Arrays.asList(wreck),
+                index.query(new Circle(Position.create(56.5, 12.01), 1000, CoordinateSystem.GEODETIC)));
+        assertEquals(new LinkedHashSet<>(Arrays.asList(area, wreck)), new LinkedHashSet<>(index.query(BoundingBox
+                .create(Position.create(55.9, 10.9), Position.create(56.6, 12.1), CoordinateSystem.CARTESIAN))));
+
+        // A route passing 0.6 nm north of the wreck and crossing the cable
+        Route route = route(0.5, 56.51, 11.5, 56.51, 12.5);
+        assertEquals(Collections.emptyList(), index.query(route));
+        assertEquals(Arrays.asList(wreck), index.query(route, 500));
+        assertEquals(Arrays.asList(cable), index.query(route(0, 53.5, 11, 54.5, 11.2)));
+    }
+
+    @Test
+    public void testUpdates() {
+        MsiIndex index = new MsiIndex();
+        NavwarnMessage first = message(1, Position.create(55, 10));
+        index.add(first);
+        NavwarnMessage moved = message(1, Position.create(56, 10));
+        assertSame(first, index.add(moved));
+        assertEquals(1, index.size());
+        assertEquals(Collections.emptyList(), index.query(new Circle(Position.create(55, 10), 100,
+                CoordinateSystem.GEODETIC)));
+        assertEquals(Arrays.asList(moved), index.query(new Circle(Position.create(56, 10), 100,
+                CoordinateSystem.GEODETIC)));
+
+        // Cancelled by another warning
+        NavwarnMessage cancelling = message(2, square(56, 10, 1));
+        cancelling.getCancelMessage().add(moved.getMessageSeriesIdentifier());
+        index.add(cancelling);
+        assertNull(index.get(moved.getMessageSeriesIdentifier()));
+        assertEquals(Arrays.asList(cancelling), index.query(Position.create(56.5, 10.5)));
+
+        // Expired
+        cancelling.setCancellationDate(new Date(1000));
+        assertEquals(Collections.emptyList(), index.expire(new Date(999)));
+        assertEquals(Arrays.asList(cancelling), index.expire(new Date(1000)));
+        assertEquals(0, index.size());
+        assertEquals(Collections.emptyList(), index.query(Position.create(56.5, 10.5)));
+        assertSame(null, index.remove(cancelling.getMessageSeriesIdentifier()));
+    }
+
+    @Test
+    public void testLargeAndAntimeridian() {
+        MsiIndex index = new MsiIndex();
+        NavwarnMessage navarea = message(1, square(40, -30, 30));
+        NavwarnMessage pacific = message(2, new Polygon(new double[] { -10, -10, 10, 10 }, new double[] { 175, -175,
+                -175, 175 }, CoordinateSystem.CARTESIAN));
+        index.add(navarea);
+        index.add(pacific);
+        assertEquals(Arrays.asList(navarea), index.query(Position.create(55, -10)));
+        assertEquals(Arrays.asList(pacific), index.query(Position.create(0, -179)));
+        assertEquals(Arrays.asList(pacific), index.query(Position.create(0, 179)));
+        assertEquals(Arrays.asList(pacific), index.query(route(0, 0, 170, 0, -170)));
+        index.remove(navarea.getMessageSeriesIdentifier());
+        assertEquals(Collections.emptyList(), index.query(Position.create(55, -10)));
+    }
+
+    @Test
+    public void testSameAsBruteForce() {
+        Random r = new Random(42);
+        MsiIndex index = new MsiIndex(dk.dma.enav.model.geometry.grid.Grid.GRID_1_DEGREE);
+        List<NavwarnMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            double lat = 50 + 10 * r.nextDouble();
+            double lon = 5 + 20 * r.nextDouble();
+            Element e;
+            switch (i % 3) {
+            case 0:
+                e = Position.create(lat, lon);
+                break;
+            case 1:
+                e = new Circle(Position.create(lat, lon), 500 + 20_000 * r.nextDouble(), CoordinateSystem.GEODETIC);
+                break;
+            default:
+                e = square(lat, lon, 0.05 + 2 * r.nextDouble());
+            }
+            NavwarnMessage m = message(i, e);
+            messages.add(m);
+            index.add(m);
+        }
+        for (int i = 0; i < 200; i++) {
+            Route route = route(r.nextDouble(), 50 + 10 * r.nextDouble(), 5 + 20 * r.nextDouble(),
+                    50 + 10 * r.nextDouble(), 5 + 20 * r.nextDouble(), 50 + 10 * r.nextDouble(),
+                    5 + 20 * r.nextDouble());
+            LocationShape[] corridor = MsiIndex.corridor(route, 0);
+            Set<NavwarnMessage> expected = new LinkedHashSet<>();
+            for (NavwarnMessage m : messages) {
+                LocationShape shape = LocationShape.of(m.getMessageItem().get(0).getLocation().get(0).getElement());
+                for (LocationShape piece : corridor) {
+                    if (shape.intersects(piece)) {
+                        expected.add(m);
+                    }
+                }
+            }
+            assertEquals(expected, new LinkedHashSet<>(index.query(route)));
+            assertTrue(expected.size() < messages.size());
+        }
+    }
+}
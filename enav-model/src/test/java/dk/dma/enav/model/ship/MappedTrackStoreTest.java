@@ -0,0 +1,125 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.ship;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.PositionTime;
+
+public class MappedTrackStoreTest {
+
+    private Path dir;
+
+    private static final MmsiId A = new MmsiId(219000001);
+
+    private static final MmsiId B = new MmsiId(219000002);
+
+    @Before
+    public void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("tracks");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path p : stream) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static List<PositionTime> read(MappedTrackStore.Cursor c) {
+        List<PositionTime> result = new ArrayList<>();
+        while (c.next()) {
+            result.add(c.toPositionTime());
+        }
+        return result;
+    }
+
+    private static void fill(MappedTrackStore store) throws IOException {
+        for (int i = 0; i < 500; i++) {
+            store.append(A, 55 + i * 0.001, 12 - i * 0.001, i * 1000L);
+            if (i % 2 == 0) {
+                store.append(B, PositionTime.create(-30, 150.1234567, i * 1000L));
+            }
+        }
+    }
+
+    @Test
+    public void testAppendAndQuery() throws IOException {
+        try (MappedTrackStore store = MappedTrackStore.open(dir, 100)) {
+            fill(store);
+            assertEquals(750, store.size());
+            assertEquals(500, store.count(A));
+            assertEquals(250, store.count(B));
+            assertEquals(2, store.getVessels().size());
+            assertTrue(Files.exists(dir.resolve("00000007.track")));
+
+            List<PositionTime> l = read(store.query(A, 100500, 200000));
+            assertEquals(100, l.size());
+            assertEquals(101000, l.get(0).getTime());
+            assertEquals(55.101, l.get(0).getLatitude(), 1e-7);
+            assertEquals(11.899, l.get(0).getLongitude(), 1e-7);
+            assertEquals(200000, l.get(99).getTime());
+
+            MappedTrackStore.Cursor c = store.query(B);
+            assertTrue(c.next());
+            assertEquals(150.1234567, c.getLongitude(), 1e-9);
+            assertEquals(250, read(store.query(B)).size());
+
+            assertEquals(Collections.emptyList(), read(store.query(A, 600000, 700000)));
+            assertEquals(Collections.emptyList(), read(store.query(new MmsiId(1), 0, 700000)));
+            assertFalse(store.query(A, 200, 300).next());
+        }
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        List<PositionTime> expected;
+        try (MappedTrackStore store = MappedTrackStore.open(dir, 100)) {
+            fill(store);
+            expected = read(store.query(A, 250000, Long.MAX_VALUE));
+        }
+        try (MappedTrackStore store = MappedTrackStore.open(dir)) {
+            assertEquals(750, store.size());
+            assertEquals(expected, read(store.query(A, 250000, Long.MAX_VALUE)));
+            store.append(A, 56, 12, 500000);
+            assertEquals(501, store.count(A));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppendOutOfOrder() throws IOException {
+        try (MappedTrackStore store = MappedTrackStore.open(dir, 100)) {
+            store.append(A, 55, 12, 2000);
+            store.append(A, 55, 12, 1000);
+        }
+    }
+}
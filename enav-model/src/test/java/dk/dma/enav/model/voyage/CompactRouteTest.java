@@ -0,0 +1,134 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.voyage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompactRouteTest {
+
+    /** A route of 150 waypoints, with optional fields present on some of them. */
+    static Route createRoute() {
+        Route route = new Route("id", "Copenhagen - Oslo", "Copenhagen", "Oslo");
+        for (int i = 0; i < 150; i++) {
+            Waypoint wp = new Waypoint(i % 5 == 0 ? null : "WP_" + i, 55.5 + i * 0.01, 12.25 + i * 0.02,
+                    i % 7 == 0 ? 1.5 : null, 0.5 + i % 3 * 0.1);
+            if (i % 10 == 0) {
+                wp.setEta(new Date(1371200000000L + i * 60000L));
+            }
+            if (i % 4 != 3) {
+                RouteLeg leg = new RouteLeg(9.5 + i % 4, i % 2 == 0 ? Heading.RL : i % 3 == 0 ? null : Heading.GC,
+                        0.1, i % 6 == 0 ? null : 0.2);
+                leg.setSFWidth(i == 100 ? 50.0 : null);
+                wp.setRouteLeg(leg);
+            }
+            route.getWaypoints().add(wp);
+        }
+        return route;
+    }
+
+    static void assertSame(Route expected, CompactRoute actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getDeparture(), actual.getDeparture());
+        assertEquals(expected.getDestination(), actual.getDestination());
+        assertEquals(expected.getWaypoints().size(), actual.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals(expected.getWaypoints().get(i).toString(), actual.getWaypoint(i).toString());
+        }
+    }
+
+    @Test
+    public void testFromRoute() {
+        Route route = createRoute();
+        CompactRoute compact = CompactRoute.from(route);
+        assertSame(route, compact);
+        assertSame(compact.toRoute(), compact);
+
+        assertNull(compact.getName(0));
+        assertEquals("WP_1", compact.getName(1));
+        assertEquals(new Date(1371200000000L), compact.getEta(0));
+        assertNull(compact.getEta(1));
+        assertEquals(1.5, compact.getRot(0), 0);
+        assertNull(compact.getRot(1));
+        assertTrue(compact.hasRouteLeg(0));
+        assertFalse(compact.hasRouteLeg(3));
+        assertNull(compact.getSpeed(3));
+        assertEquals(Heading.RL, compact.getHeading(0));
+        assertEquals(Heading.GC, compact.getHeading(1));
+        assertNull(compact.getHeading(9));
+        assertEquals(50.0, compact.getSFWidth(100), 0);
+        assertNull(compact.getSFLen(100));
+    }
+
+    @Test
+    public void testWaypointsAreCopies() {
+        CompactRoute compact = CompactRoute.from(createRoute());
+        Waypoint wp = compact.getWaypoints().get(10);
+        wp.setLatitude(0);
+        wp.getEta().setTime(0);
+        assertEquals(55.6, compact.getLatitude(10), 1e-9);
+        assertEquals(new Date(1371200600000L), compact.getEta(10));
+
+        int count = 0;
+        for (Waypoint w : compact) {
+            assertEquals(compact.getLongitude(count++), w.getLongitude(), 0);
+        }
+        assertEquals(150, count);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testWaypointsUnmodifiable() {
+        CompactRoute.from(createRoute()).getWaypoints().add(new Waypoint());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndexOutOfBounds() {
+        CompactRoute.from(createRoute()).getLatitude(150);
+    }
+
+    @Test
+    public void testEmpty() {
+        CompactRoute compact = CompactRoute.builder().name("Empty").build();
+        assertEquals(0, compact.size());
+        assertEquals("Empty", compact.getName());
+        assertTrue(compact.toRoute().getWaypoints().isEmpty());
+    }
+
+    @Test
+    public void testSerializable() throws IOException, ClassNotFoundException {
+        Route route = createRoute();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(CompactRoute.from(route));
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertSame(route, (CompactRoute) in.readObject());
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.model.voyage;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RouteGeometryTest {
+
+    static final long START = 1371200000000L;
+
+    /** Copenhagen to Skagen on a rhumb line at 10 knots, then to Oslo on a great circle at 15 knots. */
+    static Route createRoute() {
+        Route route = new Route("Copenhagen - Oslo", "Copenhagen", "Oslo");
+        route.getWaypoints().add(waypoint(55.7, 12.6, 10.0, Heading.RL));
+        route.getWaypoints().add(waypoint(57.8, 10.6, 15.0, Heading.GC));
+        route.getWaypoints().add(waypoint(59.9, 10.7, null, null));
+        route.getWaypoints().get(0).setEta(new Date(START));
+        return route;
+    }
+
+    static Waypoint waypoint(double latitude, double longitude, Double speed, Heading heading) {
+        Waypoint wp = new Waypoint(null, latitude, longitude, null, null);
+        wp.setRouteLeg(new RouteLeg(speed, heading, null, null));
+        return wp;
+    }
+
+    @Test
+    public void testDistances() {
+        RouteGeometry g = createRoute().getGeometry();
+        Position p0 = Position.create(55.7, 12.6);
+        Position p1 = Position.create(57.8, 10.6);
+        Position p2 = Position.create(59.9, 10.7);
+        double rl = CoordinateSystem.CARTESIAN.distanceBetween(p0, p1);
+        double gc = CoordinateSystem.GEODETIC.distanceBetween(p1, p2);
+
+        assertEquals(3, g.size());
+        assertEquals(0, g.getDistance(0), 0);
+        assertEquals(rl, g.getDistance(1), 1e-6);
+        assertEquals(rl, g.getLegLength(0), 1e-6);
+        assertEquals(gc, g.getLegLength(1), 1e-6);
+        assertEquals(rl + gc, g.getTotalDistance(), 1e-6);
+        assertEquals(p0.rhumbLineBearingTo(p1), g.getBearing(0), 1e-9);
+        assertEquals(p1.geodesicInitialBearingTo(p2), g.getBearing(1), 1e-9);
+    }
+
+    @Test
+    public void testEtas() {
+        RouteGeometry g = createRoute().getGeometry();
+        long leg1 = Math.round(g.getLegLength(0) / (10 * 1852.0 / 3600) * 1000);
+        long leg2 = Math.round(g.getLegLength(1) / (15 * 1852.0 / 3600) * 1000);
+        assertEquals(new Date(START), g.getEta(0));
+        assertEquals(START + leg1, g.getEta(1).getTime(), 1);
+        assertEquals(START + leg1 + leg2, g.getEta(2).getTime(), 1);
+
+        Route route = createRoute();
+        route.getWaypoints().get(1).getRouteLeg().setSpeed(null);
+        g = route.getGeometry();
+        assertEquals(START + leg1, g.getEta(1).getTime(), 1);
+        assertNull(g.getEta(2));
+
+        route.getWaypoints().get(0).setEta(null);
+        assertNull(route.getGeometry().getEta(0));
+    }
+
+    @Test
+    public void testPositionAtDistance() {
+        RouteGeometry g = createRoute().getGeometry();
+        assertEquals(Position.create(55.7, 12.6), g.getPositionAtDistance(0));
+        assertEquals(Position.create(57.8, 10.6), g.getPositionAtDistance(g.getDistance(1)));
+        assertEquals(Position.create(59.9, 10.7), g.getPositionAtDistance(g.getTotalDistance()));
+
+        // On a rhumb line the bearing to any point on the leg is the bearing of the leg
+        Position p = g.getPositionAtDistance(g.getLegLength(0) / 3);
+        Position start = Position.create(55.7, 12.6);
+        assertEquals(g.getBearing(0), start.rhumbLineBearingTo(p), 1e-6);
+        assertEquals(g.getLegLength(0) / 3, CoordinateSystem.CARTESIAN.distanceBetween(start, p), 1);
+
+        // On a great circle the point is on the geodesic, within the difference between the sphere and ellipsoid
+        p = g.getPositionAtDistance(g.getDistance(1) + g.getLegLength(1) / 2);
+        Position middle = Position.create(57.8, 10.6);
+        assertEquals(g.getLegLength(1) / 2, CoordinateSystem.GEODETIC.distanceBetween(middle, p), 500);
+        assertEquals(g.getBearing(1), middle.geodesicInitialBearingTo(p), 0.05);
+    }
+
+    @Test
+    public void testPositionAtTime() {
+        RouteGeometry g = createRoute().getGeometry();
+        assertEquals(Position.create(55.7, 12.6), g.getPositionAt(new Date(START)));
+        assertNull(g.getPositionAt(new Date(START - 1)));
+        assertNull(g.getPositionAt(new Date(g.getEta(2).getTime() + 1)));
+
+        // Half way along the first leg in time is half way in distance at constant speed
+        long half = (START + g.getEta(1).getTime()) / 2;
+        Position expected = g.getPositionAtDistance(g.getLegLength(0) / 2);
+        Position actual = g.getPositionAt(new Date(half));
+        assertEquals(expected.getLatitude(), actual.getLatitude(), 1e-6);
+        assertEquals(expected.getLongitude(), actual.getLongitude(), 1e-6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPositionBeyondRoute() {
+        RouteGeometry g = createRoute().getGeometry();
+        g.getPositionAtDistance(g.getTotalDistance() + 1);
+    }
+
+    @Test
+    public void testAntimeridian() {
+        Route route = new Route();
+        route.getWaypoints().add(waypoint(10, 179.5, 10.0, Heading.RL));
+        route.getWaypoints().add(waypoint(10, -179.5, 10.0, Heading.GC));
+        route.getWaypoints().add(waypoint(11, 179.5, null, null));
+        RouteGeometry g = route.getGeometry();
+        assertEquals(179.75, g.getPositionAtDistance(g.getLegLength(0) / 4).getLongitude(), 1e-9);
+        assertEquals(-179.75, g.getPositionAtDistance(g.getLegLength(0) * 3 / 4).getLongitude(), 1e-9);
+        double longitude = g.getPositionAtDistance(g.getDistance(1) + g.getLegLength(1) / 2).getLongitude();
+        assertEquals(180, Math.abs(longitude), 0.01);
+    }
+
+    @Test
+    public void testCachedUntilChanged() {
+        Route route = createRoute();
+        RouteGeometry g = route.getGeometry();
+        assertSame(g, route.getGeometry());
+
+        route.getWaypoints().get(2).setLatitude(60);
+        RouteGeometry changed = route.getGeometry();
+        assertNotSame(g, changed);
+        assertSame(changed, route.getGeometry());
+
+        route.getWaypoints().get(0).getRouteLeg().setHeading(Heading.GC);
+        assertNotSame(changed, route.getGeometry());
+
+        g = route.getGeometry();
+        route.getWaypoints().get(0).getEta().setTime(START + 1000);
+        assertEquals(START + 1000, route.getGeometry().getEta(0).getTime());
+
+        g = route.getGeometry();
+        route.getWaypoints().add(waypoint(60, 11, null, null));
+        assertEquals(4, route.getGeometry().size());
+    }
+
+    @Test
+    public void testCompactRoute() {
+        Route route = createRoute();
+        CompactRoute compact = CompactRoute.from(route);
+        RouteGeometry g = compact.getGeometry();
+        assertSame(g, compact.getGeometry());
+        assertEquals(route.getGeometry().getTotalDistance(), g.getTotalDistance(), 0);
+        assertEquals(route.getGeometry().getEta(2), g.getEta(2));
+    }
+
+    @Test
+    public void testEmptyAndSingle() {
+        Route route = new Route();
+        assertEquals(0, route.getGeometry().getTotalDistance(), 0);
+        route.getWaypoints().add(waypoint(55, 12, null, null));
+        assertEquals(Position.create(55, 12), route.getGeometry().getPositionAtDistance(0));
+    }
+}
@@ -0,0 +1,180 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.safety;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Position;
+import dk.dma.enav.model.geometry.PositionTime;
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.RouteGeometry;
+import dk.dma.enav.model.voyage.RouteLeg;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+import dk.dma.enav.model.voyage.Waypoint;
+import dk.dma.enav.safety.RouteMonitor.Status;
+import dk.dma.enav.safety.RouteMonitor.Violation;
+
+public class RouteMonitorTest {
+
+    static class Recorder implements RouteMonitor.CorridorListener<Integer> {
+        final List<String> events = new ArrayList<>();
+
+        public void violationStarted(Integer key, Status status) {
+            events.add("start " + key + " " + status.getViolation());
+        }
+
+        public void violationEnded(Integer key, Status status) {
+            events.add("end " + key + " " + status.getViolation());
+        }
+    }
+
+    static Waypoint waypoint(double latitude, double longitude, Heading heading, double xtd) {
+        Waypoint wp = new Waypoint(null, latitude, longitude, null, null);
+        wp.setRouteLeg(new RouteLeg(10.0, heading, xtd, xtd));
+        return wp;
+    }
+
+    /** North along 12E, east along 56N, then north again, with a corridor of 0.5 nm to each side. */
+    static Route createRoute(Heading heading) {
+        Route route = new Route();
+        route.getWaypoints().add(waypoint(55, 12, heading, 0.5));
+        route.getWaypoints().add(waypoint(56, 12, heading, 0.5));
+        route.getWaypoints().add(waypoint(56, 13, heading, 0.5));
+        route.getWaypoints().add(waypoint(57, 13, heading, 0.5));
+        return route;
+    }
+
+    static PositionTime at(double latitude, double longitude) {
+        return PositionTime.create(latitude, longitude, 0);
+    }
+
+    @Test
+    public void testRhumbLine() {
+        RouteMonitor<Integer> m = new RouteMonitor<>();
+        m.setRoute(1, createRoute(Heading.RL));
+        Status s = m.update(1, at(55.5, 12.01));
+        double xtd = CoordinateSystem.CARTESIAN.distanceBetween(Position.create(55.5, 12), Position.create(55.5, 12.01));
+        double along = CoordinateSystem.CARTESIAN.distanceBetween(Position.create(55, 12), Position.create(55.5, 12));
+        assertEquals(0, s.getLeg());
+        assertEquals(xtd, s.getCrossTrackDistance(), 1);
+        assertEquals(along, s.getAlongTrackDistance(), 1);
+        assertEquals(Violation.NONE, s.getViolation());
+
+        s = m.update(1, at(55.6, 11.98));
+        assertEquals(0, s.getLeg());
+        assertTrue(s.getCrossTrackDistance() < -926);
+        assertEquals(Violation.PORT, s.getViolation());
+    }
+
+    @Test
+    public void testGreatCircle() {
+        Route route = createRoute(Heading.GC);
+        RouteGeometry g = route.getGeometry();
+        RouteMonitor<Integer> m = new RouteMonitor<>();
+        m.setRoute(1, route);
+        for (double d = 0; d < g.getTotalDistance(); d += 7919) {
+            Status s = m.update(1, PositionTime.create(g.getPositionAtDistance(d), 0));
+            assertEquals(0, s.getCrossTrackDistance(), 0.5);
+            assertEquals(d, s.getAlongTrackDistance(), 0.5);
+            assertTrue(s.isInCorridor());
+        }
+        assertEquals(2, m.getStatus(1).getLeg());
+    }
+
+    @Test
+    public void testFollowsLegs() {
+        RouteMonitor<Integer> m = new RouteMonitor<>();
+        m.setRoute(1, createRoute(Heading.RL));
+        int[] legs = new int[6];
+        double previous = Double.NEGATIVE_INFINITY;
+        PositionTime[] track = { at(55.2, 12.002), at(55.999, 11.999), at(56.001, 12.5), at(56.0, 12.999),
+                at(56.3, 13.001), at(57.1, 13.0) };
+        for (int i = 0; i < track.length; i++) {
+            Status s = m.update(1, track[i]);
+            legs[i] = s.getLeg();
+            assertTrue(s.getAlongTrackDistance() > previous);
+            previous = s.getAlongTrackDistance();
+        }
+        assertEquals(Arrays.toString(new int[] { 0, 0, 1, 1, 2, 2 }), Arrays.toString(legs));
+        // Past the last waypoint
+        assertTrue(previous > createRoute(Heading.RL).getGeometry().getTotalDistance());
+    }
+
+    @Test
+    public void testSearch() {
+        RouteMonitor<Integer> m = new RouteMonitor<>();
+        m.setRoute(1, createRoute(Heading.RL));
+        assertEquals(2, m.update(1, at(56.5, 13.001)).getLeg());
+        assertEquals(0, m.update(1, at(55.5, 12.001)).getLeg());
+
+        // Far from the route every leg is measured
+        Status s = m.update(1, at(56.5, 16));
+        assertEquals(2, s.getLeg());
+        assertEquals(Violation.STARBOARD, s.getViolation());
+        assertEquals(1, m.update(1, at(56.001, 12.5)).getLeg());
+    }
+
+    @Test
+    public void testEvents() {
+        Recorder r = new Recorder();
+        RouteMonitor<Integer> m = new RouteMonitor<>(r);
+        m.setRoute(1, createRoute(Heading.RL));
+        m.update(1, at(55.5, 12));
+        assertTrue(r.events.isEmpty());
+        m.update(1, at(55.6, 12.02));
+        m.update(1, at(55.7, 12.021));
+        assertEquals(Arrays.asList("start 1 STARBOARD"), r.events);
+        m.update(1, at(55.8, 11.98));
+        m.update(1, at(55.9, 12));
+        assertEquals(Arrays.asList("start 1 STARBOARD", "end 1 PORT", "start 1 PORT", "end 1 NONE"), r.events);
+    }
+
+    @Test
+    public void testNoLimits() {
+        Route route = new Route();
+        route.getWaypoints().add(new Waypoint(null, 55, 12, null, null));
+        route.getWaypoints().add(new Waypoint(null, 56, 12, null, null));
+        RouteMonitor<Integer> m = new RouteMonitor<>();
+        m.setRoute(1, route);
+        assertTrue(m.update(1, at(55.5, 13)).isInCorridor());
+    }
+
+    @Test
+    public void testWithoutRoute() {
+        RouteMonitor<Integer> m = new RouteMonitor<>();
+        assertNull(m.update(1, at(55, 12)));
+        m.setRoute(1, createRoute(Heading.RL));
+        assertEquals(1, m.size());
+        assertNull(m.getStatus(1));
+        assertTrue(m.remove(1));
+        assertEquals(0, m.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSingleWaypoint() {
+        Route route = new Route();
+        route.getWaypoints().add(new Waypoint(null, 55, 12, null, null));
+        new RouteMonitor<Integer>().setRoute(1, route);
+    }
+}
@@ -0,0 +1,109 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.safety;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import dk.dma.enav.model.geometry.CoordinateSystem;
+import dk.dma.enav.model.geometry.Ellipse;
+import dk.dma.enav.model.geometry.Position;
+
+public class SafetyZoneMonitorTest {
+
+    private static final Position REFERENCE = Position.create(55.5, 11.5);
+
+    static class Recorder implements SafetyZoneMonitor.EncounterListener<Integer> {
+        final List<String> events = new ArrayList<>();
+
+        public void encounterStarted(Integer key, Integer other) {
+            events.add("start " + key + " " + other);
+        }
+
+        public void encounterEnded(Integer key, Integer other) {
+            events.add("end " + key + " " + other);
+        }
+    }
+
+    private static Ellipse zone(double x, double y, double theta) {
+        return new Ellipse(REFERENCE, x, y, 200, 50, theta, CoordinateSystem.CARTESIAN);
+    }
+
+    @Test
+    public void testEvents() {
+        Recorder r = new Recorder();
+        SafetyZoneMonitor<Integer> m = new SafetyZoneMonitor<>(REFERENCE, 500, r);
+        m.update(1, zone(0, 0, 0));
+        m.update(2, zone(1000, 0, 0));
+        assertTrue(r.events.isEmpty());
+
+        m.update(2, zone(350, 0, 0));
+        assertEquals(Collections.singletonList("start 2 1"), r.events);
+        assertEquals(Collections.singleton(1), m.getEncounters(2));
+        assertEquals(Collections.singleton(2), m.getEncounters(1));
+
+        m.update(1, zone(50, 0, 0));
+        assertEquals(1, r.events.size());
+
+        m.update(1, zone(50, 0, 90));
+        assertEquals("end 1 2", r.events.get(1));
+        assertTrue(m.getEncounters(1).isEmpty());
+
+        m.update(1, zone(300, 0, 90));
+        m.remove(2);
+        assertEquals("start 1 2", r.events.get(2));
+        assertEquals("end 2 1", r.events.get(3));
+        assertEquals(1, m.size());
+        assertFalse(m.remove(2));
+    }
+
+    @Test
+    public void testMatchesPairwise() {
+        Random rnd = new Random(123);
+        SafetyZoneMonitor<Integer> m = new SafetyZoneMonitor<>(REFERENCE, 300, new Recorder());
+        Ellipse[] zones = new Ellipse[300];
+        for (int tick = 0; tick < 5; tick++) {
+            for (int i = 0; i < zones.length; i++) {
+                zones[i] = zone(rnd.nextDouble() * 10000, rnd.nextDouble() * 10000, rnd.nextDouble() * 360);
+                m.update(i, zones[i]);
+            }
+        }
+        for (int i = 0; i < zones.length; i++) {
+            Set<Integer> expected = new HashSet<>();
+            for (int j = 0; j < zones.length; j++) {
+                if (i != j && zones[i].intersects(zones[j])) {
+                    expected.add(j);
+                }
+            }
+            assertEquals(expected, m.getEncounters(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOtherReference() {
+        new SafetyZoneMonitor<>(REFERENCE, new Recorder()).update(1,
+                new Ellipse(Position.create(56, 11), 0, 0, 200, 50, 0, CoordinateSystem.CARTESIAN));
+    }
+}
@@ -0,0 +1,82 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+/**
+ * Constants of the compact binary route format written by {@link BinaryRouteWriter} and read by
+ * {@link BinaryRouteParser}.
+ * <p>
+ * A stream starts with the magic bytes <tt>ERT</tt> and a version byte, followed by any number of route records.
+ * Every record is prefixed by its length in bytes, so a reader can skip routes. Integers are written as unsigned
+ * LEB128 varints, signed integers zigzag encoded first. Strings are a varint byte count followed by UTF-8.
+ * <p>
+ * A record holds a varint of route flags, the route strings that are present, a varint waypoint count and the
+ * waypoints. A waypoint is a varint of its flags XOR those of the previous waypoint, the latitude and longitude and
+ * then the optional fields that are present, in the order of the flags. Most values repeat or change little along a
+ * route, so they are stored as differences to the previous value of the same field:
+ * <ul>
+ * <li>Latitudes and longitudes in units of 1e-7 degrees, about 1 cm.</li>
+ * <li>ETAs in milliseconds.</li>
+ * <li>Waypoint names as a varint of the number of leading characters shared with the previous name, followed by the
+ * rest of the name as a string.</li>
+ * <li>Other numbers in thousandths, if that is exact. The zigzag varint of the difference is shifted left by one.
+ * Other values are stored as the marker 1 followed by a varint of the bits of the double XOR the bits of the previous
+ * such value of the field, so repeated values take two bytes.</li>
+ * </ul>
+ */
+final class BinaryRouteFormat {
+
+    static final byte[] MAGIC = { 'E', 'R', 'T' };
+
+    static final int VERSION = 1;
+
+    /** The maximum length of a record accepted by the reader. */
+    static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    /** Coordinates are stored in units of 1e-7 degrees. */
+    static final double COORDINATE_SCALE = 1e7;
+
+    /** Other numbers are stored in thousandths, when exact. */
+    static final double DECIMAL_SCALE = 1000;
+
+    // Route flags
+    static final int ROUTE_ID = 1;
+    static final int ROUTE_NAME = 1 << 1;
+    static final int ROUTE_DEPARTURE = 1 << 2;
+    static final int ROUTE_DESTINATION = 1 << 3;
+
+    // Waypoint flags
+    static final int NAME = 1;
+    static final int ETA = 1 << 1;
+    static final int ROT = 1 << 2;
+    static final int TURN_RAD = 1 << 3;
+    static final int LEG = 1 << 4;
+    static final int SPEED = 1 << 5;
+    static final int XTD_PORT = 1 << 6;
+    static final int XTD_STARBOARD = 1 << 7;
+    static final int SF_WIDTH = 1 << 8;
+    static final int SF_LEN = 1 << 9;
+
+    /** The number of optional number fields, from {@link #ROT} to {@link #SF_LEN}. */
+    static final int NUMBER_FIELDS = 7;
+
+    /** The heading is stored in two bits: 0 for none, 1 for great circle and 2 for rhumb line. */
+    static final int HEADING_SHIFT = 10;
+    static final int HEADING_MASK = 3 << HEADING_SHIFT;
+    static final int HEADING_GC = 1 << HEADING_SHIFT;
+    static final int HEADING_RL = 2 << HEADING_SHIFT;
+
+    private BinaryRouteFormat() {}
+}
@@ -0,0 +1,312 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import static dk.dma.enav.serialization.BinaryRouteFormat.COORDINATE_SCALE;
+import static dk.dma.enav.serialization.BinaryRouteFormat.DECIMAL_SCALE;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ETA;
+import static dk.dma.enav.serialization.BinaryRouteFormat.HEADING_GC;
+import static dk.dma.enav.serialization.BinaryRouteFormat.HEADING_MASK;
+import static dk.dma.enav.serialization.BinaryRouteFormat.HEADING_RL;
+import static dk.dma.enav.serialization.BinaryRouteFormat.LEG;
+import static dk.dma.enav.serialization.BinaryRouteFormat.NAME;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ROT;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ROUTE_DEPARTURE;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ROUTE_DESTINATION;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ROUTE_ID;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ROUTE_NAME;
+import static dk.dma.enav.serialization.BinaryRouteFormat.SF_LEN;
+import static dk.dma.enav.serialization.BinaryRouteFormat.SF_WIDTH;
+import static dk.dma.enav.serialization.BinaryRouteFormat.SPEED;
+import static dk.dma.enav.serialization.BinaryRouteFormat.TURN_RAD;
+import static dk.dma.enav.serialization.BinaryRouteFormat.XTD_PORT;
+import static dk.dma.enav.serialization.BinaryRouteFormat.XTD_STARBOARD;
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.RouteLeg;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+import dk.dma.enav.model.voyage.Waypoint;
+
+/**
+ * Reads routes in the compact binary format written by {@link BinaryRouteWriter}. {@link #parse()} reads the first
+ * route of the stream, {@link #next()} reads the routes of the stream one at a time. A route is read into memory as
+ * a single encoded record, and decoded one waypoint at a time when read with a {@link RouteHandler}.
+ * 
+ * This class is not thread safe.
+ */
+public class BinaryRouteParser extends RouteParser {
+
+    private final InputStream in;
+
+    private boolean closeInput;
+
+    private boolean headerRead;
+
+    /** The record being decoded, reused between routes. */
+    private byte[] buffer = new byte[256];
+
+    private int position;
+
+    private int limit;
+
+    /** The previous value in thousandths of each number field, see {@link #readNumber(int, int, int)}. */
+    private final long[] previous = new long[BinaryRouteFormat.NUMBER_FIELDS];
+
+    /** The bits of the previous value of each number field not stored in thousandths. */
+    private final long[] previousBits = new long[BinaryRouteFormat.NUMBER_FIELDS];
+
+    public BinaryRouteParser(InputStream in) {
+        this.in = requireNonNull(in);
+    }
+
+    public BinaryRouteParser(File file) throws FileNotFoundException {
+        this(new FileInputStream(file));
+        closeInput = true;
+    }
+
+    public BinaryRouteParser(InputStream in, Map<String, String> config) {
+        this(in);
+    }
+
+    /**
+     * Decodes a route encoded by {@link BinaryRouteWriter#toBytes(Route)}.
+     * 
+     * @param bytes
+     *            the encoded route
+     * @return the route
+     * @throws IOException
+     *             if the bytes are not a binary route
+     */
+    public static Route fromBytes(byte[] bytes) throws IOException {
+        return new BinaryRouteParser(new ByteArrayInputStream(bytes), Collections.<String, String> emptyMap())
+                .parse();
+    }
+
+    /**
+     * Reads the next route of the stream.
+     * 
+     * @param handler
+     *            the handler receiving the route
+     * @throws IOException
+     *             if there are no more routes, or the route could not be read
+     */
+    public void parse(RouteHandler handler) throws IOException {
+        try {
+            if (!next(handler)) {
+                throw new EOFException("No more routes in stream");
+            }
+        } finally {
+            if (closeInput) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the next route of the stream.
+     * 
+     * @return the route, or null if the end of the stream has been reached
+     * @throws IOException
+     *             if the route could not be read
+     */
+    public Route next() throws IOException {
+        RouteBuilder builder = new RouteBuilder();
+        return next(builder) ? builder.route : null;
+    }
+
+    /**
+     * Reads the next route of the stream, delivering it to the handler.
+     * 
+     * @param handler
+     *            the handler receiving the route
+     * @return false if the end of the stream has been reached, otherwise true
+     * @throws IOException
+     *             if the route could not be read, or the handler failed
+     */
+    public boolean next(RouteHandler handler) throws IOException {
+        if (!headerRead) {
+            int first = in.read();
+            if (first < 0) {
+                return false;
+            }
+            byte[] magic = BinaryRouteFormat.MAGIC;
+            if (first != magic[0] || in.read() != magic[1] || in.read() != magic[2]) {
+                throw new IOException("Not a binary route stream");
+            }
+            int version = in.read();
+            if (version != BinaryRouteFormat.VERSION) {
+                throw new IOException("Unsupported binary route version " + version);
+            }
+            headerRead = true;
+        }
+
+        // Read the length prefix
+        long recordLength = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated binary route");
+            }
+            recordLength |= (long) (b & 0x7F) << shift;
+            if (b < 0x80) {
+                break;
+            } else if (shift > 28) {
+                throw new IOException("Corrupt binary route record length");
+            }
+        }
+        if (recordLength > BinaryRouteFormat.MAX_RECORD_LENGTH) {
+            throw new IOException("Binary route record too long, " + recordLength + " bytes");
+        }
+
+        limit = (int) recordLength;
+        if (buffer.length < limit) {
+            buffer = new byte[Math.max(limit, buffer.length * 2)];
+        }
+        for (int read = 0; read < limit;) {
+            int n = in.read(buffer, read, limit - read);
+            if (n < 0) {
+                throw new EOFException("Truncated binary route");
+            }
+            read += n;
+        }
+        position = 0;
+        try {
+            decode(handler);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt binary route", e);
+        }
+        return true;
+    }
+
+    private void decode(RouteHandler handler) throws IOException {
+        int flags = (int) readVarLong();
+        String id = (flags & ROUTE_ID) == 0 ? null : readString();
+        String routeName = (flags & ROUTE_NAME) == 0 ? null : readString();
+        String departure = (flags & ROUTE_DEPARTURE) == 0 ? null : readString();
+        String destination = (flags & ROUTE_DESTINATION) == 0 ? null : readString();
+        handler.onHeader(new Route(id, routeName, departure, destination));
+
+        int count = readLength();
+        long lat = 0;
+        long lon = 0;
+        long eta = 0;
+        flags = 0;
+        String name = "";
+        Arrays.fill(previous, 0);
+        Arrays.fill(previousBits, 0);
+        for (int i = 0; i < count; i++) {
+            flags ^= (int) readVarLong();
+            lat += readSigned();
+            lon += readSigned();
+            Waypoint wp = new Waypoint();
+            wp.setLatitude(lat / COORDINATE_SCALE);
+            wp.setLongitude(lon / COORDINATE_SCALE);
+            if ((flags & NAME) != 0) {
+                int shared = readLength();
+                if (shared > name.length()) {
+                    throw new IOException("Corrupt binary route, waypoint name shares " + shared + " characters");
+                }
+                name = name.substring(0, shared).concat(readString());
+                wp.setName(name);
+            }
+            if ((flags & ETA) != 0) {
+                eta += readSigned();
+                wp.setEta(new Date(eta));
+            }
+            wp.setRot(readNumber(flags, ROT, 0));
+            wp.setTurnRad(readNumber(flags, TURN_RAD, 1));
+            if ((flags & LEG) != 0) {
+                RouteLeg leg = new RouteLeg();
+                leg.setSpeed(readNumber(flags, SPEED, 2));
+                leg.setXtdPort(readNumber(flags, XTD_PORT, 3));
+                leg.setXtdStarboard(readNumber(flags, XTD_STARBOARD, 4));
+                leg.setSFWidth(readNumber(flags, SF_WIDTH, 5));
+                leg.setSFLen(readNumber(flags, SF_LEN, 6));
+                int heading = flags & HEADING_MASK;
+                leg.setHeading(heading == HEADING_GC ? Heading.GC : heading == HEADING_RL ? Heading.RL : null);
+                wp.setRouteLeg(leg);
+            }
+            handler.onWaypoint(wp);
+        }
+        if (position != limit) {
+            throw new IOException("Corrupt binary route, " + (limit - position) + " unread bytes");
+        }
+        handler.onEnd();
+    }
+
+    /** Reads a number of the specified field if the flag is set, otherwise returns null. */
+    private Double readNumber(int flags, int flag, int field) {
+        if ((flags & flag) == 0) {
+            return null;
+        }
+        long v = readVarLong();
+        if ((v & 1) == 0) {
+            v >>>= 1;
+            previous[field] += v >>> 1 ^ -(v & 1);
+            return previous[field] / DECIMAL_SCALE;
+        }
+        previousBits[field] ^= readVarLong();
+        return Double.longBitsToDouble(previousBits[field]);
+    }
+
+    private String readString() throws IOException {
+        int length = readLength();
+        String s = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return s;
+    }
+
+    private int readLength() throws IOException {
+        long length = readVarLong();
+        if (length < 0 || length > limit - position) {
+            throw new IOException("Corrupt binary route, length " + length + " exceeds record");
+        }
+        return (int) length;
+    }
+
+    private long readSigned() {
+        long v = readVarLong();
+        return v >>> 1 ^ -(v & 1);
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new ArrayIndexOutOfBoundsException("Varint too long");
+    }
+}
@@ -0,0 +1,256 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import static dk.dma.enav.serialization.BinaryRouteFormat.COORDINATE_SCALE;
+import static dk.dma.enav.serialization.BinaryRouteFormat.DECIMAL_SCALE;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ETA;
+import static dk.dma.enav.serialization.BinaryRouteFormat.HEADING_GC;
+import static dk.dma.enav.serialization.BinaryRouteFormat.HEADING_RL;
+import static dk.dma.enav.serialization.BinaryRouteFormat.LEG;
+import static dk.dma.enav.serialization.BinaryRouteFormat.NAME;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ROT;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ROUTE_DEPARTURE;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ROUTE_DESTINATION;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ROUTE_ID;
+import static dk.dma.enav.serialization.BinaryRouteFormat.ROUTE_NAME;
+import static dk.dma.enav.serialization.BinaryRouteFormat.SF_LEN;
+import static dk.dma.enav.serialization.BinaryRouteFormat.SF_WIDTH;
+import static dk.dma.enav.serialization.BinaryRouteFormat.SPEED;
+import static dk.dma.enav.serialization.BinaryRouteFormat.TURN_RAD;
+import static dk.dma.enav.serialization.BinaryRouteFormat.XTD_PORT;
+import static dk.dma.enav.serialization.BinaryRouteFormat.XTD_STARBOARD;
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.RouteLeg;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+import dk.dma.enav.model.voyage.Waypoint;
+
+/**
+ * Writes routes in the compact binary format described in {@link BinaryRouteFormat}. Any number of routes can be
+ * written to the same stream and read back one at a time by {@link BinaryRouteParser}.
+ * <p>
+ * Positions are stored with a resolution of 1e-7 degrees, all other values are stored exactly.
+ * 
+ * This class is not thread safe.
+ */
+public class BinaryRouteWriter extends RouteWriter {
+
+    private final OutputStream out;
+
+    private boolean headerWritten;
+
+    /** The record being encoded, reused between routes. */
+    private byte[] buffer = new byte[256];
+
+    private int length;
+
+    /** The previous value in thousandths of each number field, see {@link #writeNumber(Double, int)}. */
+    private final long[] previous = new long[BinaryRouteFormat.NUMBER_FIELDS];
+
+    /** The bits of the previous value of each number field not stored in thousandths. */
+    private final long[] previousBits = new long[BinaryRouteFormat.NUMBER_FIELDS];
+
+    public BinaryRouteWriter(OutputStream out) {
+        this.out = requireNonNull(out);
+    }
+
+    public BinaryRouteWriter(File file) throws IOException {
+        this(new FileOutputStream(file));
+        closeOutput = true;
+    }
+
+    public BinaryRouteWriter(OutputStream out, Map<String, String> config) {
+        this(out);
+    }
+
+    /**
+     * Encodes the route.
+     * 
+     * @param route
+     *            the route to encode
+     * @return the encoded route, including the stream header
+     */
+    public static byte[] toBytes(Route route) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            new BinaryRouteWriter(bytes, Collections.<String, String> emptyMap()).write(route);
+        } catch (IOException e) {
+            throw new AssertionError(e); // ByteArrayOutputStream does not throw
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Appends the route to the stream. The output is flushed, or closed for writers created from a file, after every
+     * route.
+     */
+    public void write(Route route) throws IOException {
+        try {
+            if (!headerWritten) {
+                out.write(BinaryRouteFormat.MAGIC);
+                out.write(BinaryRouteFormat.VERSION);
+                headerWritten = true;
+            }
+            length = 0;
+            encode(route);
+            int recordLength = length;
+            // The length prefix is encoded after the record, to avoid another buffer
+            writeVarLong(recordLength);
+            out.write(buffer, recordLength, length - recordLength);
+            out.write(buffer, 0, recordLength);
+        } finally {
+            if (closeOutput) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        }
+    }
+
+    private void encode(Route route) {
+        int flags = (route.getId() == null ? 0 : ROUTE_ID) | (route.getName() == null ? 0 : ROUTE_NAME)
+                | (route.getDeparture() == null ? 0 : ROUTE_DEPARTURE)
+                | (route.getDestination() == null ? 0 : ROUTE_DESTINATION);
+        writeVarLong(flags);
+        writeString(route.getId());
+        writeString(route.getName());
+        writeString(route.getDeparture());
+        writeString(route.getDestination());
+
+        writeVarLong(route.getWaypoints().size());
+        long lat = 0;
+        long lon = 0;
+        long eta = 0;
+        int previousFlags = 0;
+        String previousName = "";
+        Arrays.fill(previous, 0);
+        Arrays.fill(previousBits, 0);
+        for (Waypoint wp : route.getWaypoints()) {
+            RouteLeg leg = wp.getRouteLeg();
+            flags = (wp.getName() == null ? 0 : NAME) | (wp.getEta() == null ? 0 : ETA)
+                    | (wp.getRot() == null ? 0 : ROT) | (wp.getTurnRad() == null ? 0 : TURN_RAD);
+            if (leg != null) {
+                flags |= LEG | (leg.getSpeed() == null ? 0 : SPEED) | (leg.getXtdPort() == null ? 0 : XTD_PORT)
+                        | (leg.getXtdStarboard() == null ? 0 : XTD_STARBOARD)
+                        | (leg.getSFWidth() == null ? 0 : SF_WIDTH) | (leg.getSFLen() == null ? 0 : SF_LEN);
+                flags |= leg.getHeading() == Heading.GC ? HEADING_GC : leg.getHeading() == Heading.RL ? HEADING_RL : 0;
+            }
+            writeVarLong(flags ^ previousFlags);
+            previousFlags = flags;
+
+            long newLat = Math.round(wp.getLatitude() * COORDINATE_SCALE);
+            long newLon = Math.round(wp.getLongitude() * COORDINATE_SCALE);
+            writeSigned(newLat - lat);
+            writeSigned(newLon - lon);
+            lat = newLat;
+            lon = newLon;
+
+            if (wp.getName() != null) {
+                String name = wp.getName();
+                int shared = sharedPrefix(previousName, name);
+                writeVarLong(shared);
+                writeString(name.substring(shared));
+                previousName = name;
+            }
+            if (wp.getEta() != null) {
+                writeSigned(wp.getEta().getTime() - eta);
+                eta = wp.getEta().getTime();
+            }
+            writeNumber(wp.getRot(), 0);
+            writeNumber(wp.getTurnRad(), 1);
+            if (leg != null) {
+                writeNumber(leg.getSpeed(), 2);
+                writeNumber(leg.getXtdPort(), 3);
+                writeNumber(leg.getXtdStarboard(), 4);
+                writeNumber(leg.getSFWidth(), 5);
+                writeNumber(leg.getSFLen(), 6);
+            }
+        }
+    }
+
+    /**
+     * Writes a number exactly, as the difference in thousandths to the previous value of the field if possible, and
+     * otherwise as the difference in bits to the previous such value. Nothing is written for null.
+     */
+    private void writeNumber(Double value, int field) {
+        if (value != null) {
+            double v = value;
+            long scaled = Math.round(v * DECIMAL_SCALE);
+            if (Math.abs(scaled) < 1L << 51
+                    && Double.doubleToLongBits(scaled / DECIMAL_SCALE) == Double.doubleToLongBits(v)) {
+                long delta = scaled - previous[field];
+                previous[field] = scaled;
+                writeVarLong((delta << 1 ^ delta >> 63) << 1);
+            } else {
+                long bits = Double.doubleToRawLongBits(v);
+                writeVarLong(1);
+                writeVarLong(bits ^ previousBits[field]);
+                previousBits[field] = bits;
+            }
+        }
+    }
+
+    /** Writes a string. Nothing is written for null. */
+    private void writeString(String s) {
+        if (s != null) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+    }
+
+    /** Returns the number of leading characters the strings have in common, not splitting surrogate pairs. */
+    static int sharedPrefix(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i > 0 && Character.isHighSurrogate(b.charAt(i - 1)) ? i - 1 : i;
+    }
+
+    private void writeSigned(long value) {
+        writeVarLong(value << 1 ^ value >> 63);
+    }
+
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (length + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import static java.time.temporal.ChronoField.DAY_OF_MONTH;
+import static java.time.temporal.ChronoField.HOUR_OF_DAY;
+import static java.time.temporal.ChronoField.MINUTE_OF_HOUR;
+import static java.time.temporal.ChronoField.MONTH_OF_YEAR;
+import static java.time.temporal.ChronoField.NANO_OF_SECOND;
+import static java.time.temporal.ChronoField.OFFSET_SECONDS;
+import static java.time.temporal.ChronoField.SECOND_OF_MINUTE;
+import static java.time.temporal.ChronoField.YEAR;
+import static java.time.temporal.ChronoField.YEAR_OF_ERA;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalField;
+import java.util.Date;
+
+/**
+ * Parses dates and times in one of a list of formats. Instances are immutable and thread-safe, so they can be shared
+ * by all parsers.
+ * <p>
+ * The formats are tried in order, starting with the one that matched last, and the first format matching the entire
+ * text (ignoring surrounding whitespace) is used. Failed matches do not throw exceptions, so trying several formats
+ * is cheap. Texts without a time zone are interpreted in the zone of the parser, or the default time zone of the JVM
+ * if the parser has none. Texts without a year are placed in 1970, like {@link java.text.SimpleDateFormat} does.
+ */
+public final class DateTimeParser {
+
+    /** ISO 8601 date and time, with optional fraction of second and offset. Defaults to UTC. */
+    public static final DateTimeParser ISO_8601 = new DateTimeParser(ZoneOffset.UTC,
+            DateTimeFormatter.ISO_OFFSET_DATE_TIME, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+
+    /**
+     * The month/day formats found in ECDIS route files, in the default time zone. Months, days and hours may have one
+     * or two digits.
+     */
+    public static final DateTimeParser VARIOUS = DateTimeParser.ofPatterns(null, "M/d/yyyy H:mm:ss",
+            "M/d/yyyy H:mm", "M/d H:mm:ss", "M/d H:mm", "d-M-yyyy H:mm:ss", "d-M-yyyy H:mm");
+
+    private static final int DEFAULT_YEAR = 1970;
+
+    private final DateTimeFormatter[] formatters;
+
+    private final ZoneId zone;
+
+    /** The index of the format that matched last. Only a hint, so races are harmless. */
+    private volatile int lastMatch;
+
+    /**
+     * Creates a new parser.
+     *
+     * @param zone
+     *            the time zone of texts without one, or null to use the default time zone
+     * @param formatters
+     *            the formats to try, most specific first
+     */
+    public DateTimeParser(ZoneId zone, DateTimeFormatter... formatters) {
+        if (formatters.length == 0) {
+            throw new IllegalArgumentException("At least one format must be specified");
+        }
+        this.zone = zone;
+        this.formatters = formatters.clone();
+    }
+
+    /**
+     * Creates a new parser from patterns as accepted by {@link DateTimeFormatter#ofPattern(String)}.
+     *
+     * @param zone
+     *            the time zone of texts without one, or null to use the default time zone
+     * @param patterns
+     *            the patterns to try, most specific first
+     * @return the new parser
+     */
+    public static DateTimeParser ofPatterns(ZoneId zone, String... patterns) {
+        DateTimeFormatter[] formatters = new DateTimeFormatter[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            formatters[i] = DateTimeFormatter.ofPattern(patterns[i]);
+        }
+        return new DateTimeParser(zone, formatters);
+    }
+
+    /**
+     * Parses the text.
+     *
+     * @param text
+     *            the text to parse
+     * @return the instant, or null if the text is null or does not match any of the formats
+     */
+    public Instant parseInstant(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        int start = 0, end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        CharSequence trimmed = start == 0 && end == text.length() ? text : text.subSequence(start, end);
+
+        int first = lastMatch;
+        Instant result = parse(formatters[first], trimmed);
+        if (result != null) {
+            return result;
+        }
+        for (int i = 0; i < formatters.length; i++) {
+            if (i != first && (result = parse(formatters[i], trimmed)) != null) {
+                lastMatch = i;
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the text.
+     *
+     * @param text
+     *            the text to parse
+     * @return the date, or null if the text is null or does not match any of the formats
+     */
+    public Date parseDate(CharSequence text) {
+        Instant instant = parseInstant(text);
+        return instant == null ? null : Date.from(instant);
+    }
+
+    private Instant parse(DateTimeFormatter formatter, CharSequence text) {
+        ParsePosition position = new ParsePosition(0);
+        TemporalAccessor t = formatter.parseUnresolved(text, position);
+        if (t == null || position.getIndex() != text.length()) {
+            return null;
+        }
+        try {
+            int year = (int) get(t, YEAR, get(t, YEAR_OF_ERA, DEFAULT_YEAR));
+            LocalDateTime dateTime = LocalDateTime.of(year, (int) get(t, MONTH_OF_YEAR, 1),
+                    (int) get(t, DAY_OF_MONTH, 1), (int) get(t, HOUR_OF_DAY, 0), (int) get(t, MINUTE_OF_HOUR, 0),
+                    (int) get(t, SECOND_OF_MINUTE, 0), (int) get(t, NANO_OF_SECOND, 0));
+            if (t.isSupported(OFFSET_SECONDS)) {
+                return dateTime.toInstant(ZoneOffset.ofTotalSeconds((int) t.getLong(OFFSET_SECONDS)));
+            }
+            return dateTime.atZone(zone == null ? ZoneId.systemDefault() : zone).toInstant();
+        } catch (DateTimeException e) {
+            // the text has the right shape but an invalid value, such as month 13
+            return null;
+        }
+    }
+
+    private static long get(TemporalAccessor t, TemporalField field, long defaultValue) {
+        return t.isSupported(field) ? t.getLong(field) : defaultValue;
+    }
+}
@@ -0,0 +1,147 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads lines of text into a reusable buffer. The reader is itself the character sequence of the current line, so
+ * lines can be tokenized and parsed without creating a string per line. Lines are terminated like in
+ * {@link java.io.BufferedReader#readLine()}.
+ * <p>
+ * The contents change on every call to {@link #readLine()}, so use {@link #toString()} to keep a line.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class LineReader implements CharSequence, Closeable {
+
+    private final Reader reader;
+
+    private final char[] buffer = new char[8192];
+
+    private int position;
+
+    private int limit;
+
+    private boolean skipLineFeed;
+
+    private char[] line = new char[128];
+
+    private int length;
+
+    public LineReader(Reader reader) {
+        this.reader = requireNonNull(reader);
+    }
+
+    /**
+     * Reads the next line into this sequence.
+     * 
+     * @return true if a line was read, false if the end of the stream has been reached
+     * @throws IOException
+     *             if the underlying reader fails
+     */
+    public boolean readLine() throws IOException {
+        length = 0;
+        boolean read = false;
+        for (;;) {
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return read;
+                }
+            }
+            char c = buffer[position++];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            read = true;
+            if (c == '\n') {
+                return true;
+            } else if (c == '\r') {
+                skipLineFeed = true;
+                return true;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = c;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index=" + index + ", length=" + length);
+        }
+        return line[index];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start=" + start + ", end=" + end + ", length=" + length);
+        }
+        return new String(line, start, end - start);
+    }
+
+    /**
+     * Returns whether the current line starts with the specified prefix.
+     * 
+     * @param prefix
+     *            the prefix
+     * @return whether the current line starts with the prefix
+     */
+    public boolean startsWith(String prefix) {
+        if (prefix.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the current line as a string. */
+    @Override
+    public String toString() {
+        return new String(line, 0, length);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
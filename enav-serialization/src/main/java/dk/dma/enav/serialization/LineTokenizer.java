@@ -0,0 +1,165 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Splits a character sequence into tokens without creating substrings. A token is exposed as the range
+ * {@link #start()} to {@link #end()} of the sequence, which can be handed to the range based parse methods of
+ * {@link ParseUtils}. A tokenizer can be reused for any number of sequences by calling one of the reset methods.
+ * <p>
+ * This class is not thread safe.
+ */
+public final class LineTokenizer {
+
+    /** The separator, or 0 if tokens are separated by whitespace. */
+    private final char separator;
+
+    private CharSequence text;
+
+    private int position;
+
+    private int limit;
+
+    private boolean done = true;
+
+    private int tokenStart;
+
+    private int tokenEnd;
+
+    private LineTokenizer(char separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * Creates a tokenizer that splits on every occurrence of the separator. Like {@link String#split(String)}, empty
+     * tokens are returned between adjacent separators. Unlike it, trailing empty tokens are returned too.
+     * 
+     * @param separator
+     *            the separator
+     * @return the new tokenizer
+     */
+    public static LineTokenizer on(char separator) {
+        if (separator == 0) {
+            throw new IllegalArgumentException("The separator cannot be the null character");
+        }
+        return new LineTokenizer(separator);
+    }
+
+    /**
+     * Creates a tokenizer that splits on runs of whitespace. Leading and trailing whitespace is ignored, so empty
+     * tokens are never returned.
+     * 
+     * @return the new tokenizer
+     */
+    public static LineTokenizer onWhitespace() {
+        return new LineTokenizer((char) 0);
+    }
+
+    /**
+     * Starts tokenizing the specified sequence.
+     * 
+     * @param text
+     *            the sequence to tokenize
+     * @return this tokenizer
+     */
+    public LineTokenizer reset(CharSequence text) {
+        return reset(text, 0, text.length());
+    }
+
+    /**
+     * Starts tokenizing a range of the specified sequence.
+     * 
+     * @param text
+     *            the sequence to tokenize
+     * @param start
+     *            the index of the first character to tokenize
+     * @param end
+     *            the index after the last character to tokenize
+     * @return this tokenizer
+     */
+    public LineTokenizer reset(CharSequence text, int start, int end) {
+        if (start < 0 || end > text.length() || start > end) {
+            throw new IndexOutOfBoundsException("start=" + start + ", end=" + end + ", length=" + text.length());
+        }
+        this.text = requireNonNull(text);
+        this.position = start;
+        this.limit = end;
+        this.done = false;
+        tokenStart = tokenEnd = start;
+        return this;
+    }
+
+    /**
+     * Advances to the next token.
+     * 
+     * @return true if there was another token, otherwise false
+     */
+    public boolean next() {
+        if (done) {
+            return false;
+        }
+        int i = position;
+        if (separator == 0) {
+            while (i < limit && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i == limit) {
+                done = true;
+                return false;
+            }
+            tokenStart = i;
+            while (i < limit && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            tokenEnd = position = i;
+        } else {
+            tokenStart = i;
+            while (i < limit && text.charAt(i) != separator) {
+                i++;
+            }
+            tokenEnd = i;
+            position = i + 1;
+            done = i == limit;
+        }
+        return true;
+    }
+
+    /** Returns the index of the first character of the current token. */
+    public int start() {
+        return tokenStart;
+    }
+
+    /** Returns the index after the last character of the current token. */
+    public int end() {
+        return tokenEnd;
+    }
+
+    /** Returns the sequence being tokenized. */
+    public CharSequence text() {
+        return text;
+    }
+
+    /** Returns whether the current token is empty or only contains whitespace. */
+    public boolean isBlank() {
+        return ParseUtils.trimStart(text, tokenStart, tokenEnd) == tokenEnd;
+    }
+
+    /** Returns the current token as a string. */
+    public String token() {
+        return text.subSequence(tokenStart, tokenEnd).toString();
+    }
+}
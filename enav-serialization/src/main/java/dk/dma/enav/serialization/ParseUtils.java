@@ -14,11 +14,7 @@
  */
 package dk.dma.enav.serialization;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import java.util.TimeZone;
 
 import dk.dma.enav.model.voyage.RouteLeg.Heading;
@@ -32,17 +28,120 @@ import dk.dma.enav.model.voyage.RouteLeg.Heading;
 public class ParseUtils {
     
     
+    /** Powers of ten that are exactly representable as doubles. */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    /** The number of significant digits that always fit exactly in the mantissa of a double. */
+    private static final int MAX_EXACT_DIGITS = 15;
+
     public static Double parseDouble(String str) throws FormatException {
         if (str == null || str.length() == 0) {
             return null;
         }
+        return parseDouble(str, 0, str.length());
+    }
+
+    /**
+     * Parses a decimal number in the specified range of a character sequence, ignoring surrounding whitespace. Plain
+     * decimal numbers with an optional exponent, such as <tt>12.5</tt> or <tt>5.44254088e+001</tt>, are parsed without
+     * creating any objects. Other numbers accepted by {@link Double#parseDouble(String)} fall back to that method.
+     * 
+     * @param str
+     *            the characters to parse
+     * @param start
+     *            the index of the first character of the number
+     * @param end
+     *            the index after the last character of the number
+     * @return the number
+     * @throws FormatException
+     *             if the range is empty or is not a decimal number
+     */
+    public static double parseDouble(CharSequence str, int start, int end) throws FormatException {
+        start = trimStart(str, start, end);
+        end = trimEnd(str, start, end);
+        int i = start;
+        boolean negative = false;
+        if (i < end && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+            negative = str.charAt(i++) == '-';
+        }
+
+        // Read at most MAX_EXACT_DIGITS significant digits into the mantissa. The decimal exponent is counted in
+        // scale. Everything the fast path cannot represent exactly is left to Double.parseDouble.
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean anyDigits = false;
+        char c;
+        for (; i < end && (c = str.charAt(i)) >= '0' && c <= '9'; i++) {
+            anyDigits = true;
+            if (mantissa != 0 || c != '0') {
+                if (++digits > MAX_EXACT_DIGITS) {
+                    return parseDoubleSlow(str, start, end);
+                }
+                mantissa = mantissa * 10 + c - '0';
+            }
+        }
+        if (i < end && str.charAt(i) == '.') {
+            for (i++; i < end && (c = str.charAt(i)) >= '0' && c <= '9'; i++) {
+                anyDigits = true;
+                if (mantissa != 0 || c != '0') {
+                    if (++digits > MAX_EXACT_DIGITS) {
+                        return parseDoubleSlow(str, start, end);
+                    }
+                    mantissa = mantissa * 10 + c - '0';
+                }
+                scale--;
+            }
+        }
+        if (!anyDigits) {
+            return parseDoubleSlow(str, start, end);
+        }
+        if (i < end && (str.charAt(i) == 'e' || str.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+                negativeExponent = str.charAt(i++) == '-';
+            }
+            int exponent = 0;
+            int exponentStart = i;
+            for (; i < end && (c = str.charAt(i)) >= '0' && c <= '9' && exponent < 1000; i++) {
+                exponent = exponent * 10 + c - '0';
+            }
+            if (i == exponentStart) {
+                return parseDoubleSlow(str, start, end);
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        if (i != end) {
+            return parseDoubleSlow(str, start, end);
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (scale >= 0 && scale < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[scale];
+        } else if (scale < 0 && -scale < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-scale];
+        } else {
+            return parseDoubleSlow(str, start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double parseDoubleSlow(CharSequence str, int start, int end) throws FormatException {
+        String s = str.subSequence(start, end).toString();
+        if (s.length() == 0) {
+            throw new FormatException("Missing decimal number");
+        }
         try {
-            return Double.parseDouble(str);
+            return Double.parseDouble(s);
         } catch (NumberFormatException e) {
-            throw new FormatException("Could not parse " + str + " as a decimal number", e);
+            throw new FormatException("Could not parse " + s + " as a decimal number", e);
         }
     }
-    
+
     public static Integer parseInt(String str) throws FormatException {
         if (str == null || str.length() == 0) {
             return null;
@@ -54,6 +153,59 @@ public class ParseUtils {
         }
     }
     
+    /**
+     * Parses an integer in the specified range of a character sequence, ignoring surrounding whitespace.
+     * 
+     * @param str
+     *            the characters to parse
+     * @param start
+     *            the index of the first character of the number
+     * @param end
+     *            the index after the last character of the number
+     * @return the number
+     * @throws FormatException
+     *             if the range is empty or is not an integer
+     */
+    public static int parseInt(CharSequence str, int start, int end) throws FormatException {
+        start = trimStart(str, start, end);
+        end = trimEnd(str, start, end);
+        int i = start;
+        boolean negative = false;
+        if (i < end && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+            negative = str.charAt(i++) == '-';
+        }
+        if (i == end) {
+            throw new FormatException("Could not parse " + str.subSequence(start, end) + " as an integer");
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9' || (value = value * 10 + c - '0') > Integer.MAX_VALUE + 1L) {
+                throw new FormatException("Could not parse " + str.subSequence(start, end) + " as an integer");
+            }
+        }
+        if (!negative && value > Integer.MAX_VALUE) {
+            throw new FormatException("Could not parse " + str.subSequence(start, end) + " as an integer");
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /** Returns the index of the first non-whitespace character in the range, or end if there is none. */
+    static int trimStart(CharSequence str, int start, int end) {
+        while (start < end && Character.isWhitespace(str.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    /** Returns the index after the last non-whitespace character in the range, or start if there is none. */
+    static int trimEnd(CharSequence str, int start, int end) {
+        while (end > start && Character.isWhitespace(str.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+    
     public static String parseString(String str) {
         str = str.trim();
         if (str == null || str.length() == 0) {
@@ -63,30 +215,71 @@ public class ParseUtils {
     }
     
     public static double parseLatitude(String formattedString) throws FormatException {
-        String[] parts = splitFormattedPos(formattedString);
-        return parseLatitude(parts[0], parts[1], parts[2]);
+        return parseLatitude(formattedString, 0, formattedString.length());
     }
     
     public static double parseLongitude(String formattedString) throws FormatException {
-        String[] parts = splitFormattedPos(formattedString);
-        return parseLongitude(parts[0], parts[1], parts[2]);
+        return parseLongitude(formattedString, 0, formattedString.length());
     }
-    
-    private static String[] splitFormattedPos(String posStr) throws FormatException {
-        if (posStr.length() < 4) {
-            throw new FormatException();
+
+    /**
+     * Parses a latitude formatted as degrees, decimal minutes and hemisphere, for example <tt>55 42.510N</tt>, in the
+     * specified range of a character sequence.
+     * 
+     * @param str
+     *            the characters to parse
+     * @param start
+     *            the index of the first character of the latitude
+     * @param end
+     *            the index after the last character of the latitude
+     * @return the latitude in decimal degrees
+     * @throws FormatException
+     *             if the range is not a formatted latitude
+     */
+    public static double parseLatitude(CharSequence str, int start, int end) throws FormatException {
+        return parseDegreesMinutes(str, start, end, 'N', 'S');
+    }
+
+    /**
+     * Parses a longitude formatted as degrees, decimal minutes and hemisphere, for example <tt>012 36.724E</tt>, in
+     * the specified range of a character sequence.
+     * 
+     * @param str
+     *            the characters to parse
+     * @param start
+     *            the index of the first character of the longitude
+     * @param end
+     *            the index after the last character of the longitude
+     * @return the longitude in decimal degrees
+     * @throws FormatException
+     *             if the range is not a formatted longitude
+     */
+    public static double parseLongitude(CharSequence str, int start, int end) throws FormatException {
+        return parseDegreesMinutes(str, start, end, 'E', 'W');
+    }
+
+    private static double parseDegreesMinutes(CharSequence str, int start, int end, char positive, char negative)
+            throws FormatException {
+        start = trimStart(str, start, end);
+        end = trimEnd(str, start, end);
+        if (end - start < 4) {
+            throw new FormatException("Could not parse " + str.subSequence(start, end) + " as a position");
         }
-        String[] parts = new String[3];
-        parts[2] = posStr.substring(posStr.length() - 1);
-        posStr = posStr.substring(0, posStr.length() - 1);
-        String[] posParts = posStr.split(" ");
-        if (posParts.length != 2) {
-            throw new FormatException();
+        char hemisphere = str.charAt(end - 1);
+        if (hemisphere != positive && hemisphere != negative) {
+            throw new FormatException("Could not parse " + str.subSequence(start, end) + " as a position");
+        }
+        int separator = start;
+        while (separator < end && str.charAt(separator) != ' ') {
+            separator++;
+        }
+        if (separator >= end - 1) {
+            throw new FormatException("Could not parse " + str.subSequence(start, end) + " as a position");
         }
-        parts[0] = posParts[0];
-        parts[1] = posParts[1];
-        
-        return parts;
+        int degrees = parseInt(str, start, separator);
+        double minutes = parseDouble(str, separator, end - 1);
+        double value = degrees + minutes / 60.0;
+        return hemisphere == negative ? -value : value;
     }
     
     public static double parseLatitude(String hours, String minutes, String northSouth) throws FormatException {
@@ -164,41 +357,30 @@ public class ParseUtils {
         return TimeZone.getTimeZone(customTzId);
     }
     
+    /**
+     * Parses an ISO 8601 date and time, such as <tt>2014-05-26T10:00:00</tt>, ignoring surrounding whitespace. Texts
+     * without an offset are in UTC. An offset, such as <tt>+02:00</tt>, and a fraction of a second are honored, so
+     * <tt>2014-05-26T10:00:00+02:00</tt> is 08:00 UTC. Earlier versions ignored them.
+     * 
+     * @param str
+     *            the text to parse
+     * @return the date
+     * @throws FormatException
+     *             if the text is not an ISO 8601 date and time
+     * @see DateTimeParser#ISO_8601
+     */
     public static Date parseIso8602(String str) throws FormatException {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT+0000"));
-        try {
-            return dateFormat.parse(str);
-        } catch (ParseException e) {
-            throw new FormatException(e.getMessage());
+        Date date = DateTimeParser.ISO_8601.parseDate(str);
+        if (date == null) {
+            throw new FormatException("Could not parse " + str + " as an ISO 8601 date");
         }
+        return date;
     }
     
     public static Date parseVariuosDateTime(String dateStr) {
         // Preparation
         int i = dateStr.indexOf('(');
-        if (i >=0) {
-            dateStr = dateStr.substring(0, i);
-        }
-        
-        SimpleDateFormat dateFormat;
-        List<String> patterns = new ArrayList<>();
-        patterns.add("MM/dd HH:mm:ss");
-        patterns.add("MM/dd HH:mm");
-        patterns.add("MM/dd/yyyy HH:mm:ss");
-        patterns.add("MM/dd/yyyy HH:mm");
-        patterns.add("dd-MM-yyyy HH:mm");
-        patterns.add("dd-MM-yyyy HH:mm:ss");        
-        Date res = null;
-        for (String pattern : patterns) {
-            dateFormat = new SimpleDateFormat(pattern);
-            try {
-                res = dateFormat.parse(dateStr);                
-            } catch (ParseException e) {
-                
-            }
-        }
-        return res;
+        return DateTimeParser.VARIOUS.parseDate(i >= 0 ? dateStr.subSequence(0, i) : dateStr);
     }
     
     
@@ -14,7 +14,6 @@
  */
 package dk.dma.enav.serialization;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -24,8 +23,6 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.Map;
 
-import org.apache.commons.lang.StringUtils;
-
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.enav.model.voyage.Route;
 import dk.dma.enav.model.voyage.RouteLeg;
@@ -46,16 +43,22 @@ public class RouRouteParser extends RouteParser {
     private Double sogDefault;
     private int wpCount = 1;
 
-    private BufferedReader reader;
+    private final LineReader reader;
+
+    private final LineTokenizer tokenizer = LineTokenizer.onWhitespace();
 
+    /** The start and end indexes of the key and value of the current line, see {@link #parsePair()}. */
+    private int keyStart, keyEnd, valueStart, valueEnd;
+
+    /** The route header, delivered to the handler before the first waypoint. */
     private Route route;
 
+    private RouteHandler handler;
+
+    private boolean headerDelivered;
+
     public RouRouteParser(Reader reader) {
-        if (reader instanceof BufferedReader) {
-            this.reader = (BufferedReader) reader;
-        } else {
-            this.reader = new BufferedReader(reader);
-        }
+        this.reader = new LineReader(reader);
     }
 
     public RouRouteParser(File file) throws FileNotFoundException {
@@ -66,34 +69,45 @@ public class RouRouteParser extends RouteParser {
         this(new InputStreamReader(io));
     }
 
-    public Route parse() throws IOException {
+    public void parse(RouteHandler handler) throws IOException {
+        this.handler = handler;
         route = new Route();
-        String line = null;
-        
-        while ((line = reader.readLine()) != null) {
+        headerDelivered = false;
+
+        while (reader.readLine()) {
             try {
                 // Check for header
-                if (line.startsWith("ROUTE HEADER INFORMATION")) {
+                if (reader.startsWith("ROUTE HEADER INFORMATION")) {
                     parseHeader();
                 }
-                else if (line.startsWith("WAYPOINT")) {
+                else if (reader.startsWith("WAYPOINT")) {
                     parseWp();
                 }
             } catch (FormatException e) {
                 throw new IOException("ROU Parse error: " + e.getMessage());
             }
         }
-        return route;
+        deliverHeader();
+        handler.onEnd();
+    }
+
+    /** Delivers the header if not already done. A header section after the first waypoint updates the same route. */
+    private void deliverHeader() throws IOException {
+        if (!headerDelivered) {
+            headerDelivered = true;
+            handler.onHeader(route);
+        }
     }
 
     private void parseWp() throws IOException, FormatException {
-        String line = null;
         Waypoint wp = new Waypoint();
         RouteLeg leg = new RouteLeg();
         wp.setRouteLeg(leg);
 
-        Double lat = null;
-        Double lon = null;
+        boolean hasLat = false;
+        boolean hasLon = false;
+        double lat = 0;
+        double lon = 0;
     
         // Set defaults
         wp.setName(String.format("%03d", wpCount));
@@ -104,46 +118,54 @@ public class RouRouteParser extends RouteParser {
         leg.setXtdPort(getDefaults().getDefaultXtd());
         leg.setXtdStarboard(getDefaults().getDefaultXtd());
         
-        while ((line = reader.readLine()) != null) {
-            String str = line.trim();
-            if (str.length() == 0) {
+        while (reader.readLine()) {
+            if (!parsePair()) {
                 break;
             }
-            String[] parts = parsePair(str);
-            if (parts[0].equals("Name")) {
-                wp.setName(parts[1]);
+            if (keyEquals("Name")) {
+                wp.setName(value());
             }
-            else if (parts[0].startsWith("Latitude")) {
-                lat = ParseUtils.parseDouble(parts[1]);
+            else if (keyStartsWith("Latitude")) {
+                lat = ParseUtils.parseDouble(reader, valueStart, valueEnd);
+                hasLat = true;
             }
-            else if (parts[0].startsWith("Longitude")) {
-                lon = ParseUtils.parseDouble(parts[1]);
+            else if (keyStartsWith("Longitude")) {
+                lon = ParseUtils.parseDouble(reader, valueStart, valueEnd);
+                hasLon = true;
             }
-            else if (parts[0].startsWith("Turn radius")) {
-                wp.setTurnRad(ParseUtils.parseDouble(parts[1]));
+            else if (keyStartsWith("Turn radius")) {
+                wp.setTurnRad(ParseUtils.parseDouble(reader, valueStart, valueEnd));
             }
-            else if (parts[0].startsWith("SOG")) {
-                leg.setSpeed(ParseUtils.parseDouble(parts[1]));
+            else if (keyStartsWith("SOG")) {
+                leg.setSpeed(ParseUtils.parseDouble(reader, valueStart, valueEnd));
             }
-            else if (parts[0].startsWith("Leg type")) {
-                if (parts[1].startsWith("1")) {
+            else if (keyStartsWith("Leg type")) {
+                if (reader.charAt(valueStart) == '1') {
                     leg.setHeading(Heading.RL);
                 } else {
                     leg.setHeading(Heading.GC);
                 }                
             }
-            else if (parts[0].startsWith("Circles")) {
-                String[] circleItems = StringUtils.split(parts[1]);
-                if (circleItems.length != 5) {
-                    throw new IOException("Error parsing ROU circles: " + parts[1]);
+            else if (keyStartsWith("Circles")) {
+                // Five whitespace separated values, of which the third and fifth are the XTDs
+                tokenizer.reset(reader, valueStart, valueEnd);
+                int count = 0;
+                while (tokenizer.next()) {
+                    if (count == 2) {
+                        leg.setXtdPort(ParseUtils.parseDouble(reader, tokenizer.start(), tokenizer.end()));
+                    } else if (count == 4) {
+                        leg.setXtdStarboard(ParseUtils.parseDouble(reader, tokenizer.start(), tokenizer.end()));
+                    }
+                    count++;
+                }
+                if (count != 5) {
+                    throw new IOException("Error parsing ROU circles: " + value());
                 }
-                leg.setXtdPort(ParseUtils.parseDouble(circleItems[2]));
-                leg.setXtdStarboard(ParseUtils.parseDouble(circleItems[4]));
             }
         }        
         
         // Set position
-        if (lat == null || lon == null) {
+        if (!hasLat || !hasLon) {
             throw new IOException("Missing latitude/longitude for WP " + wp.getName());
         }
         Position.verifyLatitude(lat);
@@ -151,24 +173,22 @@ public class RouRouteParser extends RouteParser {
         wp.setLatitude(lat);
         wp.setLongitude(lon);
         
-        route.getWaypoints().add(wp);
+        deliverHeader();
+        handler.onWaypoint(wp);
         
         wpCount++;
     }
 
     private void parseHeader() throws IOException, FormatException {
-        String line = null;
-        while ((line = reader.readLine()) != null) {
-            String str = line.trim();
-            if (str.length() == 0) {
+        while (reader.readLine()) {
+            if (!parsePair()) {
                 break;
             }
-            String[] parts = parsePair(str);
             
-            if (parts[0].startsWith("Route name")) {
-                route.setName(parts[1]);
-            } else if (parts[0].startsWith("SOG default")) {
-                sogDefault = ParseUtils.parseDouble(parts[1]);
+            if (keyStartsWith("Route name")) {
+                route.setName(value());
+            } else if (keyStartsWith("SOG default")) {
+                sogDefault = ParseUtils.parseDouble(reader, valueStart, valueEnd);
             }
 
         }
@@ -182,12 +202,56 @@ public class RouRouteParser extends RouteParser {
         }
     }
 
-    
-    private static String[] parsePair(String str) throws IOException {
-        String[] parts = StringUtils.splitByWholeSeparator(str, ": ");
-        if (parts.length != 2) {
-            throw new IOException("Error in ROU key value pair: " + str);
+    /**
+     * Splits the current line into a key and a value separated by <tt>": "</tt>.
+     * 
+     * @return false if the line is blank, which ends the current section
+     * @throws IOException
+     *             if the line is not a single key value pair
+     */
+    private boolean parsePair() throws IOException {
+        int start = ParseUtils.trimStart(reader, 0, reader.length());
+        int end = ParseUtils.trimEnd(reader, start, reader.length());
+        if (start == end) {
+            return false;
+        }
+        int separator = indexOfSeparator(start, end);
+        if (separator <= start || separator + 2 >= end || indexOfSeparator(separator + 2, end) >= 0) {
+            throw new IOException("Error in ROU key value pair: " + reader.subSequence(start, end));
         }
-        return parts;
+        keyStart = start;
+        keyEnd = separator;
+        valueStart = separator + 2;
+        valueEnd = end;
+        return true;
+    }
+
+    private int indexOfSeparator(int start, int end) {
+        for (int i = start; i < end - 1; i++) {
+            if (reader.charAt(i) == ':' && reader.charAt(i + 1) == ' ') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean keyStartsWith(String prefix) {
+        if (keyEnd - keyStart < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (reader.charAt(keyStart + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean keyEquals(String key) {
+        return keyEnd - keyStart == key.length() && keyStartsWith(key);
+    }
+
+    private String value() {
+        return reader.subSequence(valueStart, valueEnd).toString();
     }
 }
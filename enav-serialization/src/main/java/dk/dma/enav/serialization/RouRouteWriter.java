@@ -0,0 +1,119 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.RouteLeg;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+import dk.dma.enav.model.voyage.Waypoint;
+
+/**
+ * Writes routes in the ROU format read by {@link RouRouteParser}. Numbers are written with full precision, so
+ * routes are read back unchanged. Missing values are left out, and read back as defaults.
+ * 
+ * This class is not thread safe.
+ */
+public class RouRouteWriter extends RouteWriter {
+
+    private final Writer writer;
+
+    public RouRouteWriter(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+    }
+
+    public RouRouteWriter(File file) throws IOException {
+        this(new FileWriter(file));
+        closeOutput = true;
+    }
+
+    public RouRouteWriter(OutputStream out, Map<String, String> config) {
+        this(new OutputStreamWriter(out));
+    }
+
+    public void write(Route route) throws IOException {
+        try {
+            writeLine("ROUTE HEADER INFORMATION:");
+            writeText("Route name", route.getName());
+            writePair("SOG default", Double.toString(getDefaults().getDefaultSpeed()));
+            writePair("Number of waypoints", Integer.toString(route.getWaypoints().size()));
+            writeLine("");
+
+            int count = 0;
+            for (Waypoint wp : route.getWaypoints()) {
+                RouteLeg leg = wp.getRouteLeg();
+                writePair("WAYPOINT", Integer.toString(count++));
+                writeText("Name", wp.getName());
+                writePair("Latitude", Double.toString(wp.getLatitude()));
+                writePair("Longitude", Double.toString(wp.getLongitude()));
+                writeNumber("Turn radius", wp.getTurnRad());
+                if (leg != null) {
+                    writeNumber("SOG", leg.getSpeed());
+                    if (leg.getHeading() != null) {
+                        writePair("Leg type", leg.getHeading() == Heading.RL ? "1" : "0");
+                    }
+                    if (leg.getXtdPort() != null && leg.getXtdStarboard() != null) {
+                        // The third and fifth of the circles are the port and starboard XTDs
+                        writePair("Circles", "0.0 " + leg.getXtdPort() + " " + leg.getXtdPort() + " 1.0 "
+                                + leg.getXtdStarboard());
+                    }
+                }
+                writeLine("");
+            }
+        } finally {
+            if (closeOutput) {
+                writer.close();
+            } else {
+                writer.flush();
+            }
+        }
+    }
+
+    private void writeNumber(String key, Double value) throws IOException {
+        if (value != null) {
+            writePair(key, value.toString());
+        }
+    }
+
+    /** Writes a text value, unless it is missing or blank. */
+    private void writeText(String key, String value) throws IOException {
+        if (value != null) {
+            // Line breaks and further separators in the value would break the format
+            value = value.replace('\r', ' ').replace('\n', ' ').replaceAll(": +", ":").trim();
+            if (value.length() > 0) {
+                writePair(key, value);
+            }
+        }
+    }
+
+    private void writePair(String key, String value) throws IOException {
+        writer.write(key);
+        writer.write(": ");
+        writeLine(value);
+    }
+
+    private void writeLine(String line) throws IOException {
+        writer.write(line);
+        writer.write("\r\n");
+    }
+}
@@ -0,0 +1,199 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The supported route file formats. The format of a file is given by its extension, or can be detected from its
+ * first bytes.
+ */
+public enum RouteFormat {
+
+    /** Tab separated text, read by {@link SimpleRouteParser}. */
+    TXT,
+
+    /** Key value pairs, read by {@link RouRouteParser}. */
+    ROU,
+
+    /** TSH RtServer XML, read by {@link Rt3RouteParser}. */
+    RT3,
+
+    /** VisionMaster FT XML data set, read by {@link RouteRouteParser}. */
+    ROUTE,
+
+    /** The compact binary format, read by {@link BinaryRouteParser}. */
+    BRT;
+
+    /** The number of bytes inspected by {@link #detect(InputStream)}. */
+    public static final int DETECT_LIMIT = 8192;
+
+    /** The minimum number of tabs of a TXT waypoint line. */
+    private static final int TXT_WAYPOINT_TABS = 6;
+
+    /**
+     * Returns the format given by the extension of the file name.
+     * 
+     * @param fileName
+     *            the file name
+     * @return the format, or null if the extension is not known
+     */
+    public static RouteFormat fromFileName(String fileName) {
+        int position = fileName.lastIndexOf('.');
+        if (position < 0) {
+            return null;
+        }
+        String ext = fileName.substring(position + 1).trim().toUpperCase();
+        for (RouteFormat f : values()) {
+            if (f.name().equals(ext)) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Detects the format from the first bytes of the stream, without consuming them. The stream must support
+     * {@link InputStream#mark(int) mark}, for example a {@link BufferedInputStream}.
+     * 
+     * @param in
+     *            the stream
+     * @return the format, or null if it could not be detected
+     * @throws IOException
+     *             if the stream could not be read
+     */
+    public static RouteFormat detect(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("The stream must support mark and reset");
+        }
+        byte[] bytes = new byte[DETECT_LIMIT];
+        in.mark(DETECT_LIMIT);
+        try {
+            return detect(bytes, read(in, bytes));
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Detects the format from the first bytes of the file.
+     * 
+     * @param file
+     *            the file
+     * @return the format, or null if it could not be detected
+     * @throws IOException
+     *             if the file could not be read
+     */
+    public static RouteFormat detect(File file) throws IOException {
+        byte[] bytes = new byte[DETECT_LIMIT];
+        try (InputStream in = new FileInputStream(file)) {
+            return detect(bytes, read(in, bytes));
+        }
+    }
+
+    private static int read(InputStream in, byte[] bytes) throws IOException {
+        int length = 0;
+        for (int n; length < bytes.length && (n = in.read(bytes, length, bytes.length - length)) >= 0;) {
+            length += n;
+        }
+        return length;
+    }
+
+    static RouteFormat detect(byte[] b, int length) {
+        byte[] magic = BinaryRouteFormat.MAGIC;
+        if (length > magic.length && b[0] == magic[0] && b[1] == magic[1] && b[2] == magic[2]) {
+            return BRT;
+        }
+        int i = 0;
+        // UTF-8 byte order mark
+        if (length >= 3 && (b[0] & 0xFF) == 0xEF && (b[1] & 0xFF) == 0xBB && (b[2] & 0xFF) == 0xBF) {
+            i = 3;
+        }
+        while (i < length && Character.isWhitespace(b[i])) {
+            i++;
+        }
+        if (i < length && b[i] == '<') {
+            return detectXml(b, i, length);
+        }
+        return detectText(b, i, length);
+    }
+
+    /** Detects the format from the name of the root element. */
+    private static RouteFormat detectXml(byte[] b, int i, int length) {
+        while (i < length) {
+            if (b[i] != '<') {
+                i++;
+            } else if (i + 1 < length && (b[i + 1] == '?' || b[i + 1] == '!')) {
+                // Skip the prolog, comments and document type
+                i += 2;
+            } else {
+                int start = ++i;
+                while (i < length && b[i] != '>' && b[i] != '/' && !Character.isWhitespace(b[i])) {
+                    i++;
+                }
+                String root = new String(b, start, i - start, StandardCharsets.ISO_8859_1);
+                if (root.equals("TSH_Route")) {
+                    return RT3;
+                } else if (root.equals("NewDataSet")) {
+                    return ROUTE;
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /** Detects ROU by its section headers, and TXT by a line with the tabs of a waypoint. */
+    private static RouteFormat detectText(byte[] b, int i, int length) {
+        boolean txt = false;
+        while (i < length) {
+            int end = i;
+            int tabs = 0;
+            while (end < length && b[end] != '\n' && b[end] != '\r') {
+                if (b[end] == 0) {
+                    return null; // Binary
+                } else if (b[end] == '\t') {
+                    tabs++;
+                }
+                end++;
+            }
+            if (startsWith(b, i, end, "ROUTE HEADER INFORMATION") || startsWith(b, i, end, "WAYPOINT:")) {
+                return ROU;
+            }
+            if (tabs >= TXT_WAYPOINT_TABS && !startsWith(b, i, end, "//") && !startsWith(b, i, end, "#")) {
+                txt = true;
+            }
+            i = end + 1;
+        }
+        return txt ? TXT : null;
+    }
+
+    private static boolean startsWith(byte[] b, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (b[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,61 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.IOException;
+
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.Waypoint;
+
+/**
+ * Receives a route from a {@link RouteParser} one waypoint at a time, see {@link RouteParser#parse(RouteHandler)}.
+ * This allows routes with a very large number of waypoints to be validated, simplified or stored without holding the
+ * complete route in memory.
+ * 
+ * The parser calls {@link #onHeader(Route)} once, then {@link #onWaypoint(Waypoint)} for each waypoint in order, and
+ * finally {@link #onEnd()}. If parsing fails the exception is thrown from the parser after some waypoints may have been
+ * delivered, and {@link #onEnd()} is not called.
+ */
+public interface RouteHandler {
+
+    /**
+     * Called before the first waypoint.
+     * 
+     * @param header
+     *            the route without waypoints, holding the name, departure, destination and id read so far
+     * @throws IOException
+     *             to stop parsing
+     */
+    void onHeader(Route header) throws IOException;
+
+    /**
+     * Called for each waypoint of the route, with its leg if the format has one. The parser does not keep a reference
+     * to the waypoint.
+     * 
+     * @param waypoint
+     *            the waypoint
+     * @throws IOException
+     *             to stop parsing
+     */
+    void onWaypoint(Waypoint waypoint) throws IOException;
+
+    /**
+     * Called after the last waypoint when the complete route has been parsed.
+     * 
+     * @throws IOException
+     *             to fail parsing
+     */
+    void onEnd() throws IOException;
+}
@@ -0,0 +1,423 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import net.jcip.annotations.ThreadSafe;
+import dk.dma.enav.model.voyage.Route;
+
+/**
+ * Imports many route files in parallel. Files are dispatched to a {@link RouteParser} by their contents, or their
+ * extension if the format cannot be detected, and parsed on an executor. The outcome of each file is delivered as a
+ * {@link Result} on a stream, in the order parsing completes.
+ * <p>
+ * The returned streams are lazy: no more than {@link #window(int) window} files are parsed ahead of the consumer, so
+ * importing a huge directory does not keep all routes in memory. Streams should be closed after use, for example
+ * with try-with-resources, to release open directories and archives.
+ * <p>
+ * Unless an executor is specified, the importer uses virtual threads when the runtime supports them and otherwise
+ * a thread per core. Such an executor is shut down by {@link #close()}.
+ */
+@ThreadSafe
+public class RouteImporter implements Closeable {
+
+    private final ExecutorService executor;
+
+    /** Whether the executor was created by this importer, and should be shut down by it. */
+    private final boolean ownsExecutor;
+
+    private volatile Map<String, String> config = Collections.emptyMap();
+
+    private volatile RouteDefaults defaults;
+
+    private volatile int window = 4 * Runtime.getRuntime().availableProcessors();
+
+    /** Creates a new importer with its own executor. */
+    public RouteImporter() {
+        this(createDefaultExecutor(), true);
+    }
+
+    /**
+     * Creates a new importer that parses on the specified executor. The executor is not shut down by the importer.
+     * 
+     * @param executor
+     *            the executor to parse on
+     */
+    public RouteImporter(ExecutorService executor) {
+        this(requireNonNull(executor), false);
+    }
+
+    private RouteImporter(ExecutorService executor, boolean ownsExecutor) {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Sets the configuration passed to every parser, for example the <tt>name</tt> of the schedule to read.
+     * 
+     * @param config
+     *            the parser configuration
+     * @return this importer
+     */
+    public RouteImporter config(Map<String, String> config) {
+        this.config = Collections.unmodifiableMap(new HashMap<>(config));
+        return this;
+    }
+
+    /**
+     * Sets the defaults used by every parser.
+     * 
+     * @param defaults
+     *            the route defaults
+     * @return this importer
+     */
+    public RouteImporter defaults(RouteDefaults defaults) {
+        this.defaults = requireNonNull(defaults);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of files that are parsed, or waiting to be consumed, at any time per stream.
+     * 
+     * @param window
+     *            the maximum number of files in flight
+     * @return this importer
+     */
+    public RouteImporter window(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive, was " + window);
+        }
+        this.window = window;
+        return this;
+    }
+
+    /**
+     * Imports all route files in a directory and its subdirectories. Files that are neither detected as routes nor
+     * have the extension of a route format are skipped.
+     * 
+     * @param directory
+     *            the directory
+     * @return a stream of the results
+     * @throws IOException
+     *             if the directory could not be opened
+     */
+    public Stream<Result> importDirectory(Path directory) throws IOException {
+        Stream<Path> files = Files.walk(directory);
+        return importPaths(files.filter(Files::isRegularFile), true);
+    }
+
+    /**
+     * Imports the specified route files. A file of unknown format results in an error.
+     * 
+     * @param files
+     *            the files to import
+     * @return a stream of the results
+     */
+    public Stream<Result> importFiles(Stream<Path> files) {
+        return importPaths(files, false);
+    }
+
+    private Stream<Result> importPaths(Stream<Path> files, boolean skipUnknown) {
+        Iterator<Path> paths = files.iterator();
+        return stream(new Iterator<Task>() {
+            public boolean hasNext() {
+                return paths.hasNext();
+            }
+
+            public Task next() {
+                Path path = paths.next();
+                return new Task(path.toString(), skipUnknown) {
+                    InputStream open() throws IOException {
+                        return Files.newInputStream(path);
+                    }
+                };
+            }
+        }).onClose(files::close);
+    }
+
+    /**
+     * Imports all route files in a zip archive. Entries that are neither detected as routes nor have the extension of
+     * a route format are skipped.
+     * 
+     * @param archive
+     *            the zip archive
+     * @return a stream of the results
+     * @throws IOException
+     *             if the archive could not be opened
+     */
+    public Stream<Result> importZip(Path archive) throws IOException {
+        ZipFile zip = new ZipFile(archive.toFile());
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        Stream<Result> stream = stream(new Iterator<Task>() {
+            ZipEntry next;
+
+            public boolean hasNext() {
+                while (next == null && entries.hasMoreElements()) {
+                    ZipEntry e = entries.nextElement();
+                    if (!e.isDirectory()) {
+                        next = e;
+                    }
+                }
+                return next != null;
+            }
+
+            public Task next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ZipEntry entry = next;
+                next = null;
+                return new Task(entry.getName(), true) {
+                    InputStream open() throws IOException {
+                        return zip.getInputStream(entry);
+                    }
+                };
+            }
+        });
+        return stream.onClose(() -> {
+            try {
+                zip.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Stream<Result> stream(Iterator<Task> tasks) {
+        ResultIterator results = new ResultIterator(tasks, window);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, Spliterator.NONNULL), false)
+                .onClose(results::close);
+    }
+
+    /** Shuts down the executor if it was created by this importer. */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /** Creates an executor with a virtual thread per task if available, otherwise a thread per core. */
+    private static ExecutorService createDefaultExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException ignore) {
+            // Not available before Java 21
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "RouteImporter-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), factory);
+    }
+
+    /** A single file to parse. */
+    private abstract class Task implements Runnable {
+
+        final String name;
+
+        /** Whether a file of unknown format is skipped rather than reported as an error. */
+        final boolean skipUnknown;
+
+        /** Where the result is delivered, set when the task is submitted. */
+        BlockingQueue<Result> results;
+
+        Task(String name, boolean skipUnknown) {
+            this.name = name;
+            this.skipUnknown = skipUnknown;
+        }
+
+        abstract InputStream open() throws IOException;
+
+        public void run() {
+            Result result = null;
+            try (InputStream in = new BufferedInputStream(open())) {
+                // Detect once, so the parser does not have to
+                RouteFormat format = RouteFormat.detect(in);
+                if (format == null) {
+                    format = RouteFormat.fromFileName(name);
+                }
+                if (format == null) {
+                    result = skipUnknown ? Result.SKIPPED : new Result(name, null, new FormatException(
+                            "Could not import " + name + ": unknown route format"));
+                    return;
+                }
+                RouteParser parser = RouteParser.getRouteParser(format, in, config);
+                RouteDefaults d = defaults;
+                if (d != null) {
+                    parser.defaults(d);
+                }
+                result = new Result(name, parser.parse(), null);
+            } catch (Exception e) {
+                result = new Result(name, null, new FormatException("Could not import " + name + ": "
+                        + e.getMessage(), e));
+            } finally {
+                // Always deliver a result, the consumer waits for one per task
+                if (result == null) {
+                    result = new Result(name, null, new FormatException("Could not import " + name));
+                }
+                results.add(result);
+            }
+        }
+    }
+
+    /** Submits tasks as results are consumed, keeping at most window tasks in flight. */
+    private final class ResultIterator implements Iterator<Result> {
+
+        private final Iterator<Task> tasks;
+
+        private final int window;
+
+        private final BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+
+        private int inFlight;
+
+        private boolean closed;
+
+        ResultIterator(Iterator<Task> tasks, int window) {
+            this.tasks = tasks;
+            this.window = window;
+        }
+
+        /** The next result to return, if already taken from the queue. */
+        private Result next;
+
+        public synchronized boolean hasNext() {
+            while (next == null) {
+                while (!closed && inFlight < window && tasks.hasNext()) {
+                    Task task = tasks.next();
+                    task.results = results;
+                    executor.execute(task);
+                    inFlight++;
+                }
+                if (inFlight == 0) {
+                    return false;
+                }
+                try {
+                    Result result = results.take();
+                    inFlight--;
+                    if (result != Result.SKIPPED) {
+                        next = result;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for routes", e);
+                }
+            }
+            return true;
+        }
+
+        public synchronized Result next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Result result = next;
+            next = null;
+            return result;
+        }
+
+        /** Stops submitting tasks and waits for those in flight, so their files can be closed safely. */
+        synchronized void close() {
+            closed = true;
+            boolean interrupted = false;
+            while (inFlight > 0) {
+                try {
+                    results.take();
+                    inFlight--;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** The outcome of importing a single file. */
+    public static final class Result {
+
+        /** Delivered by tasks for files that are not routes, and never returned. */
+        static final Result SKIPPED = new Result(null, null, null);
+
+        private final String name;
+
+        private final Route route;
+
+        private final FormatException error;
+
+        Result(String name, Route route, FormatException error) {
+            this.name = name;
+            this.route = route;
+            this.error = error;
+        }
+
+        /** Returns the path of the file, or the name of the entry in a zip archive. */
+        public String getName() {
+            return name;
+        }
+
+        /** Returns the route, or null if the file could not be imported. */
+        public Route getRoute() {
+            return route;
+        }
+
+        /** Returns the reason the file could not be imported, or null if it was imported. */
+        public FormatException getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return error == null ? name + ": " + route.getName() : name + ": " + error.getMessage();
+        }
+    }
+}
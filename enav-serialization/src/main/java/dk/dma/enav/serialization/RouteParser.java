@@ -14,13 +14,17 @@
  */
 package dk.dma.enav.serialization;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Map;
 
+import dk.dma.enav.model.voyage.CompactRoute;
 import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.Waypoint;
 
 /**
  * 
@@ -31,43 +35,111 @@ public abstract class RouteParser {
 
     RouteDefaults defaults = new RouteDefaults(); 
     
+    /**
+     * Returns a parser for the file. The format is detected from the contents of the file, or if that is not
+     * possible, given by its extension.
+     * 
+     * @param file
+     *            the file to parse
+     * @return the parser
+     * @throws FileNotFoundException
+     *             if the file does not exist
+     * @throws IllegalArgumentException
+     *             if the format of the file is not known
+     */
     public static RouteParser getRouteParser(File file) throws FileNotFoundException {
-        String ext = getExtension(file.getName());
-        switch (ext) {
-        case "TXT":
+        RouteFormat format;
+        try {
+            format = RouteFormat.detect(file);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            format = null; // The parser will fail reading the file
+        }
+        switch (requireFormat(format, file.getName())) {
+        case TXT:
             return new SimpleRouteParser(file);
-        case "ROU":
+        case ROU:
             return new RouRouteParser(file);
-        case "RT3":
+        case RT3:
             return new Rt3RouteParser(file);
-        case "ROUTE":
+        case ROUTE:
             return new RouteRouteParser(file);
         default:
-            throw new IllegalArgumentException("Unknown file extension. Known extensions are 'TXT' and 'ROU'.");
-//            return new PertinaciousRouteParser(file);
+            return new BinaryRouteParser(file);
         }
     }
 
+    /**
+     * Returns a parser for the stream. The format is detected from the first bytes of the stream, or if that is not
+     * possible, given by the extension of the file name.
+     * 
+     * @param fileName
+     *            the name of the file the stream was read from, or null if not known
+     * @param io
+     *            the stream to parse
+     * @param config
+     *            the parser configuration
+     * @return the parser
+     * @throws IllegalArgumentException
+     *             if the format of the stream is not known
+     */
     public static RouteParser getRouteParser(String fileName, InputStream io, Map<String, String> config) {
-        String ext = getExtension(fileName);
-        switch (ext) {
-        case "TXT":
+        InputStream in = io.markSupported() ? io : new BufferedInputStream(io);
+        RouteFormat format;
+        try {
+            format = RouteFormat.detect(in);
+        } catch (IOException e) {
+            format = null; // The parser will fail reading the stream
+        }
+        return getRouteParser(requireFormat(format, fileName), in, config);
+    }
+
+    /**
+     * Returns a parser of the specified format for the stream.
+     * 
+     * @param format
+     *            the format of the stream
+     * @param io
+     *            the stream to parse
+     * @param config
+     *            the parser configuration
+     * @return the parser
+     */
+    public static RouteParser getRouteParser(RouteFormat format, InputStream io, Map<String, String> config) {
+        switch (format) {
+        case TXT:
             return new SimpleRouteParser(io, config);
-        case "ROU":
+        case ROU:
             return new RouRouteParser(io, config);
-        case "RT3":
+        case RT3:
             return new Rt3RouteParser(io, config);
-        case "ROUTE":
+        case ROUTE:
             return new RouteRouteParser(io, config);
         default:
-            throw new IllegalArgumentException("Unknown file extension. Known extensions are 'TXT' and 'ROU'.");
-//            return new PertinaciousRouteParser(file);
+            return new BinaryRouteParser(io, config);
         }
     }
-    
-    private static String getExtension(String fileName){
-        int position = fileName.lastIndexOf('.');
-        return fileName.substring(position + 1).trim().toUpperCase();        
+
+    /** Returns the detected format, or the format given by the file name if none was detected. */
+    private static RouteFormat requireFormat(RouteFormat detected, String fileName) {
+        RouteFormat format = detected != null || fileName == null ? detected : RouteFormat.fromFileName(fileName);
+        if (format == null) {
+            throw new IllegalArgumentException("Unknown route format of " + fileName
+                    + ". Known formats are " + Arrays.toString(RouteFormat.values()) + ".");
+        }
+        return format;
+    }
+
+    /**
+     * Returns whether there is a parser for the extension of the specified file name.
+     * 
+     * @param fileName
+     *            the file name
+     * @return whether routes in the file can be parsed
+     */
+    public static boolean isSupported(String fileName) {
+        return RouteFormat.fromFileName(fileName) != null;
     }
     
     public RouteParser defaults(RouteDefaults defaults){
@@ -87,6 +159,72 @@ public abstract class RouteParser {
         return String.format("WP_%03d", waypointCount);
     }
 
-    public abstract Route parse() throws IOException;
+    /**
+     * Parses the route.
+     * 
+     * @return the route
+     * @throws IOException
+     *             if the route could not be read
+     */
+    public Route parse() throws IOException {
+        RouteBuilder builder = new RouteBuilder();
+        parse(builder);
+        return builder.route;
+    }
+
+    /**
+     * Parses the route into compact form, without creating a {@link Route} with all its waypoints.
+     * 
+     * @return the route, or null if the input has no route
+     * @throws IOException
+     *             if the route could not be read
+     */
+    public CompactRoute parseCompact() throws IOException {
+        CompactRoute.Builder builder = CompactRoute.builder();
+        Route[] header = new Route[1];
+        parse(new RouteHandler() {
+            public void onHeader(Route route) {
+                header[0] = route;
+            }
 
+            public void onWaypoint(Waypoint waypoint) {
+                builder.add(waypoint);
+            }
+
+            public void onEnd() {
+                // The header of some formats is completed after the first waypoint
+                if (header[0] != null) {
+                    builder.header(header[0]);
+                }
+            }
+        });
+        return header[0] == null ? null : builder.build();
+    }
+
+    /**
+     * Parses the route, delivering its waypoints to the handler as they are read instead of collecting them in a
+     * {@link Route}.
+     * 
+     * @param handler
+     *            the handler receiving the route
+     * @throws IOException
+     *             if the route could not be read, or the handler failed
+     */
+    public abstract void parse(RouteHandler handler) throws IOException;
+
+    /** Collects the route delivered by a parser, used by {@link RouteParser#parse()}. */
+    static class RouteBuilder implements RouteHandler {
+
+        Route route;
+
+        public void onHeader(Route header) {
+            route = header;
+        }
+
+        public void onWaypoint(Waypoint waypoint) {
+            route.getWaypoints().add(waypoint);
+        }
+
+        public void onEnd() {}
+    }
 }
@@ -22,19 +22,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import dk.dma.enav.model.voyage.Route;
 import dk.dma.enav.model.voyage.RouteLeg;
@@ -45,6 +45,11 @@ import dk.dma.enav.model.voyage.Waypoint;
  * Parser for reading routes in ROUTE format. ROUTE format is exported using a 'VisionMaster FT' ECDIS from 'Sperry
  * Marine'. This parser was developed for a VisionMaster FT ECDIS with Software Version 4.1.
  * 
+ * The file is read in a single pass with a streaming XML parser. Only the control points of the selected route are
+ * kept, so files exporting many routes can be read with memory proportional to the size of the selected route. The
+ * control points may be out of order in the file, so waypoints are delivered to the {@link RouteHandler} when the
+ * file has been read.
+ * 
  * @author Jesper Tejlgaard
  */
 /*
@@ -52,7 +57,21 @@ import dk.dma.enav.model.voyage.Waypoint;
  */
 public class RouteRouteParser extends RouteParser {
 
-    private final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /** The elements read from Summaries, and their indices in the array returned by readElement. */
+    private static final String[] SUMMARY_TAGS = { "Name", "DepartureTime" };
+    private static final int SUMMARY_NAME = 0, DEPARTURE_TIME = 1;
+
+    /** The elements read from ControlPoints, and their indices in the array returned by readElement. */
+    private static final String[] CONTROL_POINT_TAGS = { "RouteName", "Name", "SequenceNumber", "Latitude",
+            "Longitude", "TurnRadius", "DepartingControlLineType", "DepartingTrackSpeed" };
+    private static final int ROUTE_NAME = 0, NAME = 1, SEQUENCE_NUMBER = 2, LATITUDE = 3, LONGITUDE = 4,
+            TURN_RADIUS = 5, DEPARTING_CONTROL_LINE_TYPE = 6, DEPARTING_TRACK_SPEED = 7;
 
     // private static final Logger LOGGER = LoggerFactory.getLogger(RouteLoader.class);
 
@@ -81,93 +100,85 @@ public class RouteRouteParser extends RouteParser {
         summaryName = config.get("name");
     }
 
-    private Element getSummariesElement(Document doc) throws IOException {
-        NodeList summariesElements = doc.getElementsByTagName("Summaries");
-        if (summariesElements == null || summariesElements.getLength() < 1) {
-            throw new IOException("Failed to parse ROUTE file, no Summaries node");
-        }
-
-        for (int i = 0; i < summariesElements.getLength(); i++) {
-            Element summariesElem = (Element) summariesElements.item(i);
-            String name = getChildElementText(summariesElem, "Name");
-            if (summaryName == null || summaryName.equalsIgnoreCase(name)) {
-                return summariesElem;
+    public void parse(RouteHandler handler) throws IOException {
+        Route route = new Route();
+        XMLStreamReader xml = null;
+        try {
+            synchronized (XML_INPUT_FACTORY) {
+                xml = XML_INPUT_FACTORY.createXMLStreamReader(reader);
             }
-        }
 
-        return null;
-    }
-
-    private String getChildElementText(Element controlPointsElement, String name) {
-        NodeList routeNameElements = controlPointsElement.getElementsByTagName(name);
-        if (routeNameElements.getLength() == 0) {
-            return null;
-        }
-        Element routeNameElement = (Element) routeNameElements.item(0);
-        return routeNameElement.getTextContent();
-    }
-
-    private SortedMap<Integer, Element> getControlPointsElements(Document doc, String name) throws IOException {
-        SortedMap<Integer, Element> elements = new TreeMap<>();
-        NodeList controlPointsElements = doc.getElementsByTagName("ControlPoints");
-        if (controlPointsElements == null || controlPointsElements.getLength() < 1) {
-            throw new IOException("Failed to parse ROUTE file, no ControlPoints node");
-        }
+            boolean summariesFound = false;
+            boolean controlPointsFound = false;
+            String[] summary = null;
+
+            // The control points of the selected route, or all control points read before a route was selected
+            List<String[]> controlPoints = new ArrayList<>();
+
+            while (xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String tag = xml.getLocalName();
+                if (tag.equals("Summaries")) {
+                    summariesFound = true;
+                    String[] s = readElement(xml, SUMMARY_TAGS);
+                    if (summary == null && (summaryName == null || summaryName.equalsIgnoreCase(s[SUMMARY_NAME]))) {
+                        summary = s;
+                        // Drop control points of other routes
+                        for (Iterator<String[]> i = controlPoints.iterator(); i.hasNext();) {
+                            if (!summary[SUMMARY_NAME].equals(i.next()[ROUTE_NAME])) {
+                                i.remove();
+                            }
+                        }
+                    }
+                } else if (tag.equals("ControlPoints")) {
+                    controlPointsFound = true;
+                    String[] controlPoint = readElement(xml, CONTROL_POINT_TAGS);
+                    if (summary == null || summary[SUMMARY_NAME].equals(controlPoint[ROUTE_NAME])) {
+                        controlPoints.add(controlPoint);
+                    }
+                }
+            }
 
-        for (int i = 0; i < controlPointsElements.getLength(); i++) {
-            Element controlPointsElement = (Element) controlPointsElements.item(i);
-            String routeName = getChildElementText(controlPointsElement, "RouteName");
-            if (name.equals(routeName)) {
-                String sequenceNumber = getChildElementText(controlPointsElement, "SequenceNumber");
-                elements.put(Integer.parseInt(sequenceNumber), controlPointsElement);
+            if (!summariesFound) {
+                throw new IOException("Failed to parse ROUTE file, no Summaries node");
+            } else if (summary == null) {
+                throw new IOException("Failed to parse ROUTE file, no Summaries node named " + summaryName);
+            } else if (!controlPointsFound) {
+                throw new IOException("Failed to parse ROUTE file, no ControlPoints node");
             }
-        }
 
-        return elements;
-    }
+            route.setName(summary[SUMMARY_NAME]);
+            handler.onHeader(route);
 
-    public Route parse() throws IOException {
-        Route route = new Route();
-        try {
-            DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-            Document doc = docBuilder.parse(new InputSource(reader));
-            // Normalize text representation
-            doc.getDocumentElement().normalize();
-
-            Element summariesElement = getSummariesElement(doc);
-            String name = getChildElementText(summariesElement, "Name");
-            String departureTime = getChildElementText(summariesElement, "DepartureTime");
-            SortedMap<Integer, Element> controlPointsElements = getControlPointsElements(doc, name);
-
-            route.setName(name);
-
-            for (Entry<Integer, Element> entry : controlPointsElements.entrySet()) {
-
-                Element controlPointsElement = entry.getValue();
-                String controlPointsName = getChildElementText(controlPointsElement, "Name");
-                String sequenceNumber = getChildElementText(controlPointsElement, "SequenceNumber");
-                String latitude = getChildElementText(controlPointsElement, "Latitude");
-                String longitude = getChildElementText(controlPointsElement, "Longitude");
-                String turnRadius = getChildElementText(controlPointsElement, "TurnRadius");
-                String departingControlLineType = getChildElementText(controlPointsElement, "DepartingControlLineType");
-                String turnSpeed = getChildElementText(controlPointsElement, "DepartingTrackSpeed");
+            Date departure = null;
+            if (!controlPoints.isEmpty()) {
+                departure = DateTimeParser.ISO_8601.parseDate(summary[DEPARTURE_TIME]);
+                if (departure == null) {
+                    throw new FormatException("Could not parse departure time " + summary[DEPARTURE_TIME]);
+                }
+            }
 
+            for (String[] controlPoint : sortBySequenceNumber(controlPoints)) {
                 Waypoint wp = new Waypoint();
                 RouteLeg leg = new RouteLeg();
                 wp.setRouteLeg(leg);
-                route.getWaypoints().add(wp);
-                
-                Double turningRadius = Double.parseDouble(turnRadius);
+
+                // The first waypoint departs at the departure time of the route
+                wp.setEta(departure);
+                departure = null;
+
+                Double turningRadius = Double.parseDouble(controlPoint[TURN_RADIUS]);
                 turningRadius = turningRadius/(1.852 * 1000);
 
-                wp.setName(waypointName(controlPointsName, Integer.parseInt(sequenceNumber)));
+                wp.setName(waypointName(controlPoint[NAME], Integer.parseInt(controlPoint[SEQUENCE_NUMBER])));
                 wp.setTurnRad(turningRadius);
-                wp.setLatitude(Math.toDegrees(Double.parseDouble(latitude)));
-                wp.setLongitude(Math.toDegrees(Double.parseDouble(longitude)));
+                wp.setLatitude(Math.toDegrees(Double.parseDouble(controlPoint[LATITUDE])));
+                wp.setLongitude(Math.toDegrees(Double.parseDouble(controlPoint[LONGITUDE])));
 
-                leg.setHeading("RhumbLine".equals(departingControlLineType.trim()) ? Heading.RL : Heading.GC);
-                leg.setSpeed(Double.parseDouble(turnSpeed) * 1.943844492);
+                leg.setHeading("RhumbLine".equals(controlPoint[DEPARTING_CONTROL_LINE_TYPE].trim()) ? Heading.RL : Heading.GC);
+                leg.setSpeed(Double.parseDouble(controlPoint[DEPARTING_TRACK_SPEED]) * 1.943844492);
 
                 // default values
                 leg.setXtdPort(defaults.getDefaultXtd());
@@ -176,22 +187,71 @@ public class RouteRouteParser extends RouteParser {
                 // leg.setSFWidth(sFWidth);
                 // leg.setSFLen(sFLen);
 
+                handler.onWaypoint(wp);
             }
-
-            if (route.getWaypoints().size() > 0) {
-                route.getWaypoints().get(0).setEta(DATE_FORMAT.parse(departureTime));
-            }
+            handler.onEnd();
 
         } catch (IOException e) {
             throw new IOException("Error reading ROUTE file", e);
         } catch (Exception e) {
             throw new IOException("Error parsing ROUTE file", e);
         } finally {
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (XMLStreamException ignore) {}
+            }
             if (closeReader) {
                 reader.close();
             }
         }
+    }
+
+    /**
+     * Returns the control points ordered by sequence number. If several control points have the same sequence number
+     * the last one is used. Exported control points are normally already in order, in which case no sorting is done.
+     */
+    private static Collection<String[]> sortBySequenceNumber(List<String[]> controlPoints) {
+        int previous = Integer.MIN_VALUE;
+        for (String[] controlPoint : controlPoints) {
+            int sequenceNumber = Integer.parseInt(controlPoint[SEQUENCE_NUMBER]);
+            if (sequenceNumber <= previous) {
+                SortedMap<Integer, String[]> sorted = new TreeMap<>();
+                for (String[] c : controlPoints) {
+                    sorted.put(Integer.parseInt(c[SEQUENCE_NUMBER]), c);
+                }
+                return sorted.values();
+            }
+            previous = sequenceNumber;
+        }
+        return controlPoints;
+    }
 
-        return route;
+    /**
+     * Reads the current element to its end tag, returning the text of the first descendant element with each of the
+     * specified names, or null for names not found.
+     */
+    private static String[] readElement(XMLStreamReader xml, String[] tags) throws XMLStreamException {
+        String[] values = new String[tags.length];
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String tag = xml.getLocalName();
+                int i = 0;
+                while (i < tags.length && !tags[i].equals(tag)) {
+                    i++;
+                }
+                if (i < tags.length && values[i] == null) {
+                    // Moves to the end tag of the element
+                    values[i] = xml.getElementText();
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return values;
     }
 }
@@ -0,0 +1,137 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.RouteLeg;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+import dk.dma.enav.model.voyage.Waypoint;
+
+/**
+ * Writes routes in the ROUTE format read by {@link RouteRouteParser}. Only the elements read by the parser are
+ * written, not the schema or the alarm limits of a complete VisionMaster FT export.
+ * <p>
+ * The format requires a departure time, which is taken from the ETA of the first waypoint. Routes without it are
+ * written as departing at the epoch.
+ * 
+ * This class is not thread safe.
+ */
+public class RouteRouteWriter extends RouteWriter {
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSxxx");
+
+    /** Meters per nautical mile. */
+    private static final double METERS_PER_NM = 1.852 * 1000;
+
+    /** Knots per meter per second. */
+    private static final double KNOTS_PER_MPS = 1.943844492;
+
+    private final Writer writer;
+
+    public RouteRouteWriter(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+    }
+
+    public RouteRouteWriter(File file) throws IOException {
+        this(new FileWriter(file));
+        closeOutput = true;
+    }
+
+    public RouteRouteWriter(OutputStream out, Map<String, String> config) {
+        this(new OutputStreamWriter(out));
+    }
+
+    public void write(Route route) throws IOException {
+        String name = route.getName() == null ? "" : route.getName();
+        List<Waypoint> waypoints = route.getWaypoints();
+        XMLStreamWriter xml = null;
+        try {
+            synchronized (XML_OUTPUT_FACTORY) {
+                xml = XML_OUTPUT_FACTORY.createXMLStreamWriter(writer);
+            }
+            xml.writeStartDocument();
+            xml.writeStartElement("NewDataSet");
+
+            xml.writeStartElement("Summaries");
+            writeElement(xml, "Name", name);
+            Instant departure = waypoints.isEmpty() || waypoints.get(0).getEta() == null ? Instant.EPOCH
+                    : waypoints.get(0).getEta().toInstant();
+            writeElement(xml, "DepartureTime", DATE_FORMAT.format(departure.atOffset(ZoneOffset.UTC)));
+            xml.writeEndElement();
+
+            for (int i = 0; i < waypoints.size(); i++) {
+                Waypoint wp = waypoints.get(i);
+                RouteLeg leg = wp.getRouteLeg();
+                xml.writeStartElement("ControlPoints");
+                writeElement(xml, "RouteName", name);
+                writeElement(xml, "SequenceNumber", Integer.toString(i + 1));
+                if (wp.getName() != null) {
+                    writeElement(xml, "Name", wp.getName());
+                }
+                writeElement(xml, "Latitude", Double.toString(Math.toRadians(wp.getLatitude())));
+                writeElement(xml, "Longitude", Double.toString(Math.toRadians(wp.getLongitude())));
+                double turnRadius = valueOrDefault(wp.getTurnRad(), getDefaults().getDefaultTurnRad());
+                writeElement(xml, "TurnRadius", Double.toString(turnRadius * METERS_PER_NM));
+                double speed = valueOrDefault(leg == null ? null : leg.getSpeed(), getDefaults().getDefaultSpeed());
+                writeElement(xml, "DepartingTrackSpeed", Double.toString(speed / KNOTS_PER_MPS));
+                boolean greatCircle = leg != null && leg.getHeading() == Heading.GC;
+                writeElement(xml, "DepartingControlLineType", greatCircle ? "GreatCircle" : "RhumbLine");
+                xml.writeEndElement();
+            }
+
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("Error writing ROUTE file", e);
+        } finally {
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (XMLStreamException ignore) {}
+            }
+            if (closeOutput) {
+                writer.close();
+            } else {
+                writer.flush();
+            }
+        }
+    }
+
+    private static void writeElement(XMLStreamWriter xml, String name, String text) throws XMLStreamException {
+        xml.writeStartElement(name);
+        xml.writeCharacters(text);
+        xml.writeEndElement();
+    }
+}
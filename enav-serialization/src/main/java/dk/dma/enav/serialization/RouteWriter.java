@@ -0,0 +1,95 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import dk.dma.enav.model.voyage.Route;
+
+/**
+ * Writes routes in one of the formats read by {@link RouteParser}. Writers are obtained by file extension, mirroring
+ * {@link RouteParser#getRouteParser(File)}. Values that a format requires but a route does not have, are written
+ * using the {@link RouteDefaults}.
+ * <p>
+ * Writers are not thread safe. Writers created from a file close it after writing, other writers only flush.
+ */
+public abstract class RouteWriter {
+
+    RouteDefaults defaults = new RouteDefaults();
+
+    public static RouteWriter getRouteWriter(File file) throws IOException {
+        RouteWriter writer = getRouteWriter(file.getName(), new FileOutputStream(file),
+                Collections.<String, String> emptyMap());
+        writer.closeOutput = true;
+        return writer;
+    }
+
+    public static RouteWriter getRouteWriter(String fileName, OutputStream out, Map<String, String> config) {
+        RouteFormat format = RouteFormat.fromFileName(fileName);
+        if (format == null) {
+            throw new IllegalArgumentException("Unknown file extension. Known extensions are "
+                    + Arrays.toString(RouteFormat.values()) + ".");
+        }
+        return getRouteWriter(format, out, config);
+    }
+
+    public static RouteWriter getRouteWriter(RouteFormat format, OutputStream out, Map<String, String> config) {
+        switch (format) {
+        case TXT:
+            return new SimpleRouteWriter(out, config);
+        case ROU:
+            return new RouRouteWriter(out, config);
+        case RT3:
+            return new Rt3RouteWriter(out, config);
+        case ROUTE:
+            return new RouteRouteWriter(out, config);
+        default:
+            return new BinaryRouteWriter(out, config);
+        }
+    }
+
+    /** Whether the output should be closed after writing, and not just flushed. */
+    boolean closeOutput;
+
+    public RouteWriter defaults(RouteDefaults defaults) {
+        this.defaults = defaults;
+        return this;
+    }
+
+    public RouteDefaults getDefaults() {
+        return defaults;
+    }
+
+    /**
+     * Writes the route.
+     * 
+     * @param route
+     *            the route to write
+     * @throws IOException
+     *             if the route could not be written
+     */
+    public abstract void write(Route route) throws IOException;
+
+    /** Returns the value or the default value if it is null. */
+    static double valueOrDefault(Double value, double defaultValue) {
+        return value == null ? defaultValue : value;
+    }
+}
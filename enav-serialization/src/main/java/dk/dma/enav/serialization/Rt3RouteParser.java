@@ -22,15 +22,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import dk.dma.enav.model.geometry.Position;
 import dk.dma.enav.model.voyage.Route;
@@ -41,12 +40,23 @@ import dk.dma.enav.model.voyage.Waypoint;
 /**
  * Parser for reading routes in RT3 format. RT3 format is among others used by Transas ECDIS.
  * 
+ * The file is read with a streaming XML parser. Waypoints are delivered to the {@link RouteHandler} as they are read,
+ * unless a schedule is selected by the <tt>name</tt> configuration. The speeds of the schedule follow the waypoints in
+ * the file, so the waypoints are then kept until the end of the file. Of the calculations only the speeds of the
+ * selected schedule are kept.
+ * 
  * @author Jesper Tejlgaard
  */
 public class Rt3RouteParser extends RouteParser {
 
     // private static final Logger LOGGER = LoggerFactory.getLogger(RouteLoader.class);
 
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
     private boolean closeReader;
     private BufferedReader reader;
     private String scheduleName;
@@ -72,120 +82,96 @@ public class Rt3RouteParser extends RouteParser {
         scheduleName = config.get("name");
     }
 
-    public Route parse() throws IOException {
+    public void parse(RouteHandler handler) throws IOException {
 
         Route route = new Route();
 
+        XMLStreamReader xml = null;
         try {
-            DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-            Document doc = docBuilder.parse(new InputSource(reader));
-            // Normalize text representation
-            doc.getDocumentElement().normalize();
-
-            // Get name
-            route.setName(doc.getDocumentElement().getAttribute("RtName"));
-            if (route.getName() == null) {
-                route.setName("NO NAME");
+            synchronized (XML_INPUT_FACTORY) {
+                xml = XML_INPUT_FACTORY.createXMLStreamReader(reader);
             }
 
-            // Get waypoints
-            NodeList waypointsList = doc.getElementsByTagName("WayPoints");
-            if (waypointsList == null || waypointsList.getLength() < 1) {
-                throw new IOException("Failed to parse RT3, no WayPoints node");
-            }
-            Element waypointsNode = (Element) waypointsList.item(0);
-            NodeList waypoints = waypointsNode.getElementsByTagName("WayPoint");
-            if (waypoints == null || waypoints.getLength() == 0) {
-                throw new IOException("Failed to parse RT3, no WayPoint nodes");
-            }
+            // Depth of the element we are currently inside of, or -1
+            int waypointsDepth = -1;
+            int calculationsDepth = -1;
+            int calculationDepth = -1;
+            boolean waypointsFound = false;
+            boolean calculationsFound = false;
+
+            // Speeds of the WayPointEx elements of the selected calculation. Only the selected calculation is kept.
+            List<String> speeds = null;
 
-            NodeList wpsExList = null;
-            NodeList calculationsList = doc.getElementsByTagName("Calculations");
-            if (calculationsList != null && calculationsList.getLength() >= 1) {
-                Element calculationsNode = (Element) calculationsList.item(0);
-                NodeList calculationList = calculationsNode.getElementsByTagName("Calculation");
-                if (calculationList != null) {
-                    for (int i = 0; i < calculationList.getLength(); i++) {
-                        Element calculationElem = (Element) calculationList.item(i);
-                        String name = calculationElem.getAttribute("CalcName");
-                        if (scheduleName != null && scheduleName.equals(name)) {
-                            wpsExList = calculationElem.getElementsByTagName("WayPointEx");
-                            break;
+            // The waypoints waiting for the speeds of the selected calculation
+            List<Waypoint> waypoints = scheduleName == null ? null : new ArrayList<>();
+            int waypointCount = 0;
+
+            int depth = 0;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String tag = xml.getLocalName();
+                    if (depth == 1) {
+                        // Get name
+                        route.setName(attribute(xml, "RtName"));
+                        handler.onHeader(route);
+                    } else if (waypointsDepth > 0) {
+                        if (tag.equals("WayPoint")) {
+                            Waypoint wp = parseWaypoint(xml, waypointCount++);
+                            if (waypoints == null) {
+                                handler.onWaypoint(wp);
+                            } else {
+                                waypoints.add(wp);
+                            }
+                        }
+                    } else if (calculationDepth > 0) {
+                        if (tag.equals("WayPointEx")) {
+                            speeds.add(attribute(xml, "Speed"));
+                        }
+                    } else if (calculationsDepth > 0) {
+                        if (speeds == null && tag.equals("Calculation") && scheduleName != null
+                                && scheduleName.equals(attribute(xml, "CalcName"))) {
+                            calculationDepth = depth;
+                            speeds = new ArrayList<>();
                         }
+                    } else if (!waypointsFound && tag.equals("WayPoints")) {
+                        waypointsFound = true;
+                        waypointsDepth = depth;
+                    } else if (!calculationsFound && tag.equals("Calculations")) {
+                        calculationsFound = true;
+                        calculationsDepth = depth;
                     }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == waypointsDepth) {
+                        waypointsDepth = -1;
+                    } else if (depth == calculationDepth) {
+                        calculationDepth = -1;
+                    } else if (depth == calculationsDepth) {
+                        calculationsDepth = -1;
+                    }
+                    depth--;
                 }
             }
+
+            if (!waypointsFound) {
+                throw new IOException("Failed to parse RT3, no WayPoints node");
+            }
+            if (waypointCount == 0) {
+                throw new IOException("Failed to parse RT3, no WayPoint nodes");
+            }
             // Log "No <Calculations> element. Assuming default values for Speed, Heading"
 
-            // Iterate thorugh Waypoints/Waypoint && Calculations/Calculation[name="x"]/WaypointExs/waypointEx
-            for (int i = 0; i < waypoints.getLength(); i++) {
-                // Get waypoint element
-                Element wpElem = (Element) waypoints.item(i);
-                // Create route objects
-                Waypoint wp = new Waypoint();
-
-                // Set defaults
-                wp.setTurnRad(getDefaults().getDefaultTurnRad());
-
-                // Wp name
-                String name = wpElem.getAttribute("WPName");
-                wp.setName(waypointName(name, i+1));
-
-                // Lat and lon
-                Double lat = ParseUtils.parseDouble(wpElem.getAttribute("Lat"));
-                Double lon = ParseUtils.parseDouble(wpElem.getAttribute("Lon"));
-                if (lat == null || lon == null) {
-                    throw new IOException("Missing latitude/longitude for WP " + wp.getName());
+            if (waypoints != null) {
+                // Speeds of Calculations/Calculation[name="x"]/WaypointExs/waypointEx apply to the waypoint with the same index
+                for (int i = 0; speeds != null && i < speeds.size() && i < waypoints.size(); i++) {
+                    waypoints.get(i).getRouteLeg().setSpeed(Double.valueOf(speeds.get(i)));
                 }
-
-                // RT3 position are given in minutes. Transform to degrees
-                lat = lat / 60;
-                lon = lon / 60;
-
-                Position pos = Position.create(lat, lon);
-
-                wp.setLatitude(pos.getLatitude());
-                wp.setLongitude(pos.getLongitude());
-
-                // Turn rad
-                String turnRad = wpElem.getAttribute("TurnRadius");
-                if (turnRad != null && turnRad.length() > 0) {
-                    wp.setTurnRad(ParseUtils.parseDouble(turnRad));
+                for (Waypoint wp : waypoints) {
+                    handler.onWaypoint(wp);
                 }
-
-                if (i < waypoints.getLength()) {
-                    RouteLeg leg = new RouteLeg();
-                    wp.setRouteLeg(leg);
-                    leg.setSpeed(getDefaults().getDefaultSpeed());
-                    leg.setXtdPort(getDefaults().getDefaultXtd());
-                    leg.setXtdStarboard(getDefaults().getDefaultXtd());
-
-                    if (wpsExList != null && i < wpsExList.getLength()) {
-                        Element wpsEx = (Element) wpsExList.item(i);
-                        String speedStr = wpsEx.getAttribute("Speed");
-                        leg.setSpeed(Double.valueOf(speedStr));
-                    }
-
-                    // XTE
-                    String xte = wpElem.getAttribute("PortXTE");
-                    if (xte != null && xte.length() > 0) {
-                        leg.setXtdPort(ParseUtils.parseDouble(xte));
-                    }
-                    xte = wpElem.getAttribute("StbXTE");
-                    if (xte != null && xte.length() > 0) {
-                        leg.setXtdStarboard(ParseUtils.parseDouble(xte));
-                    }
-                    // Leg type
-                    String legType = wpElem.getAttribute("LegType");
-                    if (legType != null && !legType.equals("0")) {
-                        leg.setHeading(Heading.GC);
-                    } else {
-                        leg.setHeading(Heading.RL);
-                    }
-                }
-                route.getWaypoints().add(wp);
             }
+            handler.onEnd();
 
         } catch (IOException e) {
             // LOG.error("Failed to load RT3 route file: " + e.getMessage());
@@ -194,11 +180,78 @@ public class Rt3RouteParser extends RouteParser {
             // LOG.error("Failed to parse RT3 route file: " + e.getMessage());
             throw new IOException("Error parsing RT3 route file", e);
         } finally{
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (XMLStreamException ignore) {}
+            }
             if(closeReader){
                 reader.close();
             }
         }
+    }
+
+    private Waypoint parseWaypoint(XMLStreamReader wpElem, int i) throws FormatException, IOException {
+        // Create route objects
+        Waypoint wp = new Waypoint();
+
+        // Set defaults
+        wp.setTurnRad(getDefaults().getDefaultTurnRad());
+
+        // Wp name
+        String name = attribute(wpElem, "WPName");
+        wp.setName(waypointName(name, i+1));
+
+        // Lat and lon
+        Double lat = ParseUtils.parseDouble(attribute(wpElem, "Lat"));
+        Double lon = ParseUtils.parseDouble(attribute(wpElem, "Lon"));
+        if (lat == null || lon == null) {
+            throw new IOException("Missing latitude/longitude for WP " + wp.getName());
+        }
+
+        // RT3 position are given in minutes. Transform to degrees
+        lat = lat / 60;
+        lon = lon / 60;
+
+        Position pos = Position.create(lat, lon);
+
+        wp.setLatitude(pos.getLatitude());
+        wp.setLongitude(pos.getLongitude());
+
+        // Turn rad
+        String turnRad = attribute(wpElem, "TurnRadius");
+        if (turnRad.length() > 0) {
+            wp.setTurnRad(ParseUtils.parseDouble(turnRad));
+        }
+
+        RouteLeg leg = new RouteLeg();
+        wp.setRouteLeg(leg);
+        leg.setSpeed(getDefaults().getDefaultSpeed());
+        leg.setXtdPort(getDefaults().getDefaultXtd());
+        leg.setXtdStarboard(getDefaults().getDefaultXtd());
+
+        // XTE
+        String xte = attribute(wpElem, "PortXTE");
+        if (xte.length() > 0) {
+            leg.setXtdPort(ParseUtils.parseDouble(xte));
+        }
+        xte = attribute(wpElem, "StbXTE");
+        if (xte.length() > 0) {
+            leg.setXtdStarboard(ParseUtils.parseDouble(xte));
+        }
+        // Leg type
+        String legType = attribute(wpElem, "LegType");
+        if (!legType.equals("0")) {
+            leg.setHeading(Heading.GC);
+        } else {
+            leg.setHeading(Heading.RL);
+        }
+        return wp;
+    }
 
-        return route;
+    /** Returns the value of an attribute of the current element, or the empty string if it is not present. */
+    private static String attribute(XMLStreamReader xml, String name) {
+        String value = xml.getAttributeValue(null, name);
+        return value == null ? "" : value;
     }
 }
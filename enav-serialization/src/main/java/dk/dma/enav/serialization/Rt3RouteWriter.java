@@ -0,0 +1,143 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.RouteLeg;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+import dk.dma.enav.model.voyage.Waypoint;
+
+/**
+ * Writes routes in the RT3 format read by {@link Rt3RouteParser}.
+ * <p>
+ * Speeds are written as a single calculation, named by the <tt>name</tt> configuration or
+ * {@value #DEFAULT_CALCULATION_NAME}. The parser only reads speeds when configured with the same name.
+ * 
+ * This class is not thread safe.
+ */
+public class Rt3RouteWriter extends RouteWriter {
+
+    /** The name of the calculation holding the speeds, if not configured. */
+    public static final String DEFAULT_CALCULATION_NAME = "Default";
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private final Writer writer;
+
+    private String calculationName = DEFAULT_CALCULATION_NAME;
+
+    public Rt3RouteWriter(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+    }
+
+    public Rt3RouteWriter(File file) throws IOException {
+        this(new FileWriter(file));
+        closeOutput = true;
+    }
+
+    public Rt3RouteWriter(OutputStream out, Map<String, String> config) {
+        this(new OutputStreamWriter(out));
+        if (config.get("name") != null) {
+            calculationName = config.get("name");
+        }
+    }
+
+    public void write(Route route) throws IOException {
+        XMLStreamWriter xml = null;
+        try {
+            synchronized (XML_OUTPUT_FACTORY) {
+                xml = XML_OUTPUT_FACTORY.createXMLStreamWriter(writer);
+            }
+            xml.writeStartDocument();
+            xml.writeStartElement("TSH_Route");
+            xml.writeAttribute("RtVersion", "3");
+            if (route.getName() != null) {
+                xml.writeAttribute("RtName", route.getName());
+            }
+
+            xml.writeStartElement("WayPoints");
+            xml.writeAttribute("WPCount", Integer.toString(route.getWaypoints().size()));
+            for (Waypoint wp : route.getWaypoints()) {
+                RouteLeg leg = wp.getRouteLeg();
+                xml.writeEmptyElement("WayPoint");
+                xml.writeAttribute("WPName", wp.getName() == null ? "" : wp.getName());
+                if (leg == null || leg.getHeading() != Heading.GC) {
+                    xml.writeAttribute("LegType", "0");
+                } else {
+                    xml.writeAttribute("LegType", "1");
+                }
+                // RT3 positions are given in minutes
+                xml.writeAttribute("Lat", Double.toString(wp.getLatitude() * 60));
+                xml.writeAttribute("Lon", Double.toString(wp.getLongitude() * 60));
+                if (leg != null) {
+                    writeNumber(xml, "PortXTE", leg.getXtdPort());
+                    writeNumber(xml, "StbXTE", leg.getXtdStarboard());
+                }
+                writeNumber(xml, "TurnRadius", wp.getTurnRad());
+            }
+            xml.writeEndElement();
+
+            xml.writeStartElement("Calculations");
+            xml.writeStartElement("Calculation");
+            xml.writeAttribute("CalcName", calculationName);
+            xml.writeStartElement("WayPointExs");
+            for (Waypoint wp : route.getWaypoints()) {
+                RouteLeg leg = wp.getRouteLeg();
+                xml.writeEmptyElement("WayPointEx");
+                xml.writeAttribute("Speed", Double.toString(valueOrDefault(leg == null ? null : leg.getSpeed(),
+                        getDefaults().getDefaultSpeed())));
+            }
+            xml.writeEndElement();
+            xml.writeEndElement();
+            xml.writeEndElement();
+
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("Error writing RT3 route file", e);
+        } finally {
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (XMLStreamException ignore) {}
+            }
+            if (closeOutput) {
+                writer.close();
+            } else {
+                writer.flush();
+            }
+        }
+    }
+
+    private static void writeNumber(XMLStreamWriter xml, String name, Double value) throws XMLStreamException {
+        if (value != null) {
+            xml.writeAttribute(name, value.toString());
+        }
+    }
+}
@@ -14,7 +14,6 @@
  */
 package dk.dma.enav.serialization;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -41,17 +40,20 @@ public class SimpleRouteParser extends RouteParser {
 
     // private static final Logger LOG = LoggerFactory.getLogger(RouteLoader.class);
 
-    private BufferedReader reader;
+    /** The number of tab separated fields of a waypoint line. */
+    private static final int WAYPOINT_FIELDS = 7;
+
+    private final LineReader reader;
+
+    private final LineTokenizer tokenizer = LineTokenizer.on('\t');
+
+    /** The start and end indexes of the fields of the current waypoint line. */
+    private final int[] fieldStart = new int[WAYPOINT_FIELDS];
+    private final int[] fieldEnd = new int[WAYPOINT_FIELDS];
     
-    private Route route;
-    private Waypoint waypoint;
 
     public SimpleRouteParser(Reader reader) {
-        if (reader instanceof BufferedReader) {
-            this.reader = (BufferedReader) reader;
-        } else {
-            this.reader = new BufferedReader(reader);
-        }
+        this.reader = new LineReader(reader);
     }
 
     public SimpleRouteParser(File file) throws FileNotFoundException {
@@ -64,38 +66,47 @@ public class SimpleRouteParser extends RouteParser {
 
     private static final String FORMAT_ERR_MSG = "Error in route format.";
 
-    public Route parse() throws IOException {
-        route = null;
+    public void parse(RouteHandler handler) throws IOException {
         try {
             boolean firstLine = true;
-            String line = null;
-            while ((line = reader.readLine()) != null) {
+            LineReader line = reader;
+            while (line.readLine()) {
                 // Ignore empty lines and comments
                 if (line.length() == 0 || line.startsWith("//") || line.startsWith("#")) {
                     continue;
                 }
-                // Split line by tab
-                String[] fields = line.split("\t");
                 // Handle first line name\tdeparture\tdestination
                 if (firstLine) {
-                    if (fields.length == 0) {
+                    // Trailing empty fields are ignored like String.split() does
+                    String[] fields = new String[3];
+                    int count = 0;
+                    tokenizer.reset(line);
+                    for (int i = 0; tokenizer.next(); i++) {
+                        if (tokenizer.start() != tokenizer.end()) {
+                            count = i + 1;
+                        }
+                        if (i < fields.length) {
+                            fields[i] = tokenizer.token();
+                        }
+                    }
+                    if (count == 0) {
                         // LOG.error("First line has no fields: " + line);
                         throw newException("First line must contain at least route name.", line);
                     }
                     String destination = null;
                     String departure = null;
-                    if (fields.length >= 3) {
+                    if (count >= 3) {
                         destination = fields[2];
                     }
-                    if (fields.length >= 2) {
+                    if (count >= 2) {
                         departure = fields[1];
                     }
                     firstLine = false;
 
-                    route = createRoute(fields[0], departure, destination);
+                    handler.onHeader(createRoute(fields[0], departure, destination));
                 } else {
                     // Handle waypoint lines
-                    if (fields.length < 7) {
+                    if (splitWaypointLine(line) < WAYPOINT_FIELDS) {
                         // LOG.error("Waypoint line has less than seven fields: " + line);
                         throw newException("Waypoint line has less than seven fields", line);
                     }
@@ -107,57 +118,61 @@ public class SimpleRouteParser extends RouteParser {
                     Heading heading = null;
                     // Get position
                     try {
-                        latitude = ParseUtils.parseLatitude(fields[1]);
-                        longitude = ParseUtils.parseLongitude(fields[2]);
+                        latitude = ParseUtils.parseLatitude(line, fieldStart[1], fieldEnd[1]);
+                        longitude = ParseUtils.parseLongitude(line, fieldStart[2], fieldEnd[2]);
                     } catch (FormatException e) {
                         throw newException("Error in position", line);
                     }
                     // Get turn radius
                     try {
-                        turnRadius = ParseUtils.parseDouble(fields[6].trim());
+                        turnRadius = parseOptionalDouble(line, fieldStart[6], fieldEnd[6]);
                     } catch (FormatException e) {
                         throw newException("Error in turn radius", line);
                     }
 
                     // Get speed
                     try {
-                        speed = ParseUtils.parseDouble(fields[3].trim());
+                        speed = parseOptionalDouble(line, fieldStart[3], fieldEnd[3]);
                     } catch (FormatException e) {
                         throw newException("Error in speed", line);
                     }
 
-                    waypoint = createWaypoint(fields[0], null, latitude, longitude, null, turnRadius);
+                    String name = line.subSequence(fieldStart[0], fieldEnd[0]).toString();
+                    Waypoint waypoint = createWaypoint(name, null, latitude, longitude, null, turnRadius);
 
                     // Get heading
                     try {
-                        heading = Heading.valueOf(ParseUtils.parseInt(fields[4].trim()));
+                        heading = Heading.valueOf(ParseUtils.parseInt(line, fieldStart[4], fieldEnd[4]));
                     } catch (FormatException e) {
                         throw newException("Error in heading", line);
                     }
 
-                    // Get XTD
-                    String xtd = fields[5];
-                    String xtdStarboard = xtd;
-                    String xtdPort = xtd;
-                    if (xtd.contains(",")) {
-                        String[] xtdParts = xtd.split(",");
-                        if (xtdParts.length != 2) {
-                            throw newException("Error in XTD", line);
+                    // Get XTD, either a single value or starboard,port
+                    int xtdStart = fieldStart[5];
+                    int xtdEnd = fieldEnd[5];
+                    int starboardEnd = xtdEnd;
+                    int portStart = xtdStart;
+                    for (int i = xtdStart; i < xtdEnd; i++) {
+                        if (line.charAt(i) == ',') {
+                            if (starboardEnd != xtdEnd || i == xtdEnd - 1) {
+                                throw newException("Error in XTD", line);
+                            }
+                            starboardEnd = i;
+                            portStart = i + 1;
                         }
-                        xtdStarboard = xtdParts[0];
-                        xtdPort = xtdParts[1];
                     }
 
                     Double xtdDouble = null;
                     Double xtdStarboardDouble = null;
                     try {
-                        xtdStarboardDouble = ParseUtils.parseDouble(xtdStarboard.trim());
-                        xtdDouble = ParseUtils.parseDouble(xtdPort.trim());
+                        xtdStarboardDouble = parseOptionalDouble(line, xtdStart, starboardEnd);
+                        xtdDouble = parseOptionalDouble(line, portStart, xtdEnd);
                     } catch (FormatException e) {
                         throw newException("Error in XTD", line);
                     }
 
-                    createWaypointLeg(speed, heading, xtdDouble, xtdStarboardDouble);
+                    waypoint.setRouteLeg(createWaypointLeg(speed, heading, xtdDouble, xtdStarboardDouble));
+                    handler.onWaypoint(waypoint);
                 }
             }
             reader.close();
@@ -165,8 +180,34 @@ public class SimpleRouteParser extends RouteParser {
             // LOG.error("Failed to load route file: " + e.getMessage());
             throw e;
         }
+        handler.onEnd();
+    }
 
-        return route;
+    /**
+     * Records the ranges of the first seven fields of a waypoint line.
+     * 
+     * @return the number of fields, not counting trailing empty fields
+     */
+    private int splitWaypointLine(CharSequence line) {
+        int count = 0;
+        tokenizer.reset(line);
+        for (int i = 0; tokenizer.next(); i++) {
+            if (tokenizer.start() != tokenizer.end()) {
+                count = i + 1;
+            }
+            if (i < WAYPOINT_FIELDS) {
+                fieldStart[i] = tokenizer.start();
+                fieldEnd[i] = tokenizer.end();
+            }
+        }
+        return count;
+    }
+
+    private static Double parseOptionalDouble(CharSequence line, int start, int end) throws FormatException {
+        if (ParseUtils.trimStart(line, start, end) == end) {
+            return null;
+        }
+        return ParseUtils.parseDouble(line, start, end);
     }
 
     private Route createRoute(String name, String destination, String departure) {
@@ -174,18 +215,14 @@ public class SimpleRouteParser extends RouteParser {
     }
 
     private Waypoint createWaypoint(String name, Date eta, double latitude, double longitude, Double rot, Double turnRad) {
-        Waypoint w = new Waypoint(name, latitude, longitude, rot, turnRad);
-        route.getWaypoints().add(w);
-        return w;
+        return new Waypoint(name, latitude, longitude, rot, turnRad);
     }
 
     private RouteLeg createWaypointLeg(Double speed, Heading heading, Double xtdPort, Double xtdStarboard) {
-        RouteLeg leg = new RouteLeg(speed, heading, xtdPort, xtdStarboard);
-        waypoint.setRouteLeg(leg);
-        return leg;
+        return new RouteLeg(speed, heading, xtdPort, xtdStarboard);
     }
     
-    private IOException newException(String msg, String line){
-        return new IOException(FORMAT_ERR_MSG + " " + msg + ". " + line);
+    private IOException newException(String msg, CharSequence line){
+        return new IOException(FORMAT_ERR_MSG + " " + msg + ". " + line.toString());
     }
 }
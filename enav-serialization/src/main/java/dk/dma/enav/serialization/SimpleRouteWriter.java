@@ -0,0 +1,134 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.RouteLeg;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+import dk.dma.enav.model.voyage.Waypoint;
+
+/**
+ * Writes routes in the tab separated TXT format read by {@link SimpleRouteParser}.
+ * <p>
+ * Positions are written as degrees and minutes with three decimals, about 2 meters. The format has no way of
+ * representing a missing heading, which is written as rhumb line.
+ * 
+ * This class is not thread safe.
+ */
+public class SimpleRouteWriter extends RouteWriter {
+
+    private final Writer writer;
+
+    public SimpleRouteWriter(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+    }
+
+    public SimpleRouteWriter(File file) throws IOException {
+        this(new FileWriter(file));
+        closeOutput = true;
+    }
+
+    public SimpleRouteWriter(OutputStream out, Map<String, String> config) {
+        this(new OutputStreamWriter(out));
+    }
+
+    public void write(Route route) throws IOException {
+        try {
+            // name\tdeparture\tdestination
+            writer.write(text(route.getName()));
+            if (route.getDeparture() != null || route.getDestination() != null) {
+                writer.write('\t');
+                writer.write(text(route.getDeparture()));
+                if (route.getDestination() != null) {
+                    writer.write('\t');
+                    writer.write(text(route.getDestination()));
+                }
+            }
+            writer.write("\r\n");
+
+            // name\tlatitude\tlongitude\tspeed\theading\txtd\tturn radius
+            StringBuilder line = new StringBuilder(80);
+            for (Waypoint wp : route.getWaypoints()) {
+                RouteLeg leg = wp.getRouteLeg();
+                line.setLength(0);
+                line.append(text(wp.getName())).append('\t');
+                appendDegreesMinutes(line, wp.getLatitude(), 2, 'N', 'S').append('\t');
+                appendDegreesMinutes(line, wp.getLongitude(), 3, 'E', 'W').append('\t');
+                appendNumber(line, leg == null ? null : leg.getSpeed()).append('\t');
+                line.append(leg != null && leg.getHeading() == Heading.GC ? '0' : '1').append('\t');
+                Double xtdStarboard = leg == null ? null : leg.getXtdStarboard();
+                Double xtdPort = leg == null ? null : leg.getXtdPort();
+                appendNumber(line, xtdStarboard);
+                if (xtdStarboard == null ? xtdPort != null : !xtdStarboard.equals(xtdPort)) {
+                    // starboard,port. A blank rather than empty port XTD, as a trailing comma is an error
+                    line.append(',');
+                    if (xtdPort == null) {
+                        line.append(' ');
+                    } else {
+                        appendNumber(line, xtdPort);
+                    }
+                }
+                line.append('\t');
+                appendNumber(line, wp.getTurnRad());
+                writer.append(line).write("\r\n");
+            }
+        } finally {
+            if (closeOutput) {
+                writer.close();
+            } else {
+                writer.flush();
+            }
+        }
+    }
+
+    /** Returns the text with tabs and line breaks replaced by spaces, or the empty string for null. */
+    private static String text(String s) {
+        return s == null ? "" : s.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    private static StringBuilder appendNumber(StringBuilder sb, Double value) {
+        return value == null ? sb : sb.append(value.doubleValue());
+    }
+
+    /** Appends the coordinate as for example <tt>055 42.510N</tt>, rounding to thousandths of minutes. */
+    static StringBuilder appendDegreesMinutes(StringBuilder sb, double value, int degreeDigits, char positive,
+            char negative) {
+        long thousandths = Math.round(Math.abs(value) * 60000);
+        long degrees = thousandths / 60000;
+        long minutes = thousandths % 60000;
+        appendPadded(sb, degrees, degreeDigits).append(' ');
+        appendPadded(sb, minutes / 1000, 2).append('.');
+        appendPadded(sb, minutes % 1000, 3);
+        return sb.append(value < 0 && thousandths != 0 ? negative : positive);
+    }
+
+    private static StringBuilder appendPadded(StringBuilder sb, long value, int digits) {
+        for (long limit = 10; --digits > 0; limit *= 10) {
+            if (value < limit) {
+                sb.append('0');
+            }
+        }
+        return sb.append(value);
+    }
+}
@@ -0,0 +1,101 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DateTimeParserTest {
+
+    @Test
+    public void testIso8601() throws FormatException {
+        Assert.assertEquals(LocalDateTime.of(2013, 3, 7, 14, 30, 5).toInstant(ZoneOffset.UTC),
+                DateTimeParser.ISO_8601.parseInstant("2013-03-07T14:30:05"));
+        Assert.assertEquals(LocalDateTime.of(2011, 5, 26, 4, 26, 26, 523_000_000).toInstant(ZoneOffset.UTC),
+                DateTimeParser.ISO_8601.parseInstant("2011-05-26T06:26:26.523+02:00"));
+        Assert.assertEquals(Date.from(LocalDateTime.of(2013, 3, 7, 14, 30).toInstant(ZoneOffset.UTC)),
+                ParseUtils.parseIso8602(" 2013-03-07T14:30:00 "));
+    }
+
+    @Test
+    public void testIso8601Offset() throws FormatException {
+        Assert.assertEquals(Date.from(LocalDateTime.of(2014, 5, 26, 8, 0).toInstant(ZoneOffset.UTC)),
+                ParseUtils.parseIso8602("2014-05-26T10:00:00+02:00"));
+        Assert.assertEquals(Date.from(LocalDateTime.of(2014, 5, 26, 10, 0).toInstant(ZoneOffset.UTC)),
+                ParseUtils.parseIso8602("2014-05-26T10:00:00Z"));
+        Assert.assertEquals(Date.from(LocalDateTime.of(2014, 5, 26, 10, 0, 0, 250_000_000).toInstant(ZoneOffset.UTC)),
+                ParseUtils.parseIso8602("2014-05-26T10:00:00.25"));
+    }
+
+    @Test(expected = FormatException.class)
+    public void testIso8601Invalid() throws FormatException {
+        ParseUtils.parseIso8602("2013-13-07T14:30:00");
+    }
+
+    @Test
+    public void testVarious() {
+        ZoneId zone = ZoneId.systemDefault();
+        Assert.assertEquals(Date.from(LocalDateTime.of(2012, 7, 9, 12, 30, 15).atZone(zone).toInstant()),
+                ParseUtils.parseVariuosDateTime("07/09/2012 12:30:15"));
+        Assert.assertEquals(Date.from(LocalDateTime.of(2012, 7, 9, 12, 30).atZone(zone).toInstant()),
+                ParseUtils.parseVariuosDateTime("09-07-2012 12:30 (UTC+1)"));
+        Assert.assertEquals(Date.from(LocalDateTime.of(1970, 7, 9, 12, 30).atZone(zone).toInstant()),
+                ParseUtils.parseVariuosDateTime("07/09 12:30"));
+        Assert.assertNull(ParseUtils.parseVariuosDateTime("tomorrow"));
+        Assert.assertNull(ParseUtils.parseVariuosDateTime("07/09/2012 12:30 extra"));
+    }
+
+    @Test
+    public void testVariousSingleDigits() {
+        ZoneId zone = ZoneId.systemDefault();
+        Assert.assertEquals(Date.from(LocalDateTime.of(2014, 5, 26, 10, 0).atZone(zone).toInstant()),
+                ParseUtils.parseVariuosDateTime("5/26/2014 10:00"));
+        Assert.assertEquals(Date.from(LocalDateTime.of(2014, 5, 26, 8, 0).atZone(zone).toInstant()),
+                ParseUtils.parseVariuosDateTime("26-5-2014 8:00"));
+        Assert.assertEquals(Date.from(LocalDateTime.of(1970, 5, 26, 9, 5).atZone(zone).toInstant()),
+                ParseUtils.parseVariuosDateTime("05/26 9:05"));
+        Assert.assertEquals(Date.from(LocalDateTime.of(2014, 1, 2, 3, 4, 5).atZone(zone).toInstant()),
+                ParseUtils.parseVariuosDateTime("1/2/2014 3:04:05"));
+    }
+
+    @Test
+    public void testSharedBetweenThreads() throws InterruptedException {
+        final Date expected = ParseUtils.parseVariuosDateTime("07/09/2012 12:30:15");
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        if (!expected.equals(ParseUtils.parseVariuosDateTime("07/09/2012 12:30:15"))
+                                || ParseUtils.parseVariuosDateTime("07/09 12:30") == null) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertFalse(failed[0]);
+    }
+}
@@ -0,0 +1,101 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LineTokenizerTest {
+
+    private static List<String> tokens(LineTokenizer tokenizer) {
+        List<String> tokens = new ArrayList<>();
+        while (tokenizer.next()) {
+            tokens.add(tokenizer.token());
+        }
+        return tokens;
+    }
+
+    @Test
+    public void testSeparator() {
+        LineTokenizer tokenizer = LineTokenizer.on('\t');
+        Assert.assertEquals(Arrays.asList("a", "", " b", ""), tokens(tokenizer.reset("a\t\t b\t")));
+        Assert.assertEquals(Arrays.asList(""), tokens(tokenizer.reset("")));
+        Assert.assertEquals(Arrays.asList("b", "c"), tokens(tokenizer.reset("a\tb\tc\td", 2, 5)));
+        Assert.assertFalse(tokenizer.next());
+    }
+
+    @Test
+    public void testWhitespace() {
+        LineTokenizer tokenizer = LineTokenizer.onWhitespace();
+        Assert.assertEquals(Arrays.asList("1.0", "2.0", "3"), tokens(tokenizer.reset("  1.0 \t2.0   3  ")));
+        Assert.assertEquals(Arrays.asList(), tokens(tokenizer.reset("   ")));
+    }
+
+    @Test
+    public void testRanges() throws FormatException {
+        LineTokenizer tokenizer = LineTokenizer.on(',').reset("1.5, 2 ,x");
+        Assert.assertTrue(tokenizer.next());
+        Assert.assertEquals(1.5, ParseUtils.parseDouble(tokenizer.text(), tokenizer.start(), tokenizer.end()), 0.0);
+        Assert.assertTrue(tokenizer.next());
+        Assert.assertFalse(tokenizer.isBlank());
+        Assert.assertEquals(2, ParseUtils.parseInt(tokenizer.text(), tokenizer.start(), tokenizer.end()));
+    }
+
+    @Test
+    public void testLineReader() throws IOException {
+        LineReader reader = new LineReader(new StringReader("first\r\n\nthird\rfourth\r\n// last"));
+        List<String> lines = new ArrayList<>();
+        while (reader.readLine()) {
+            lines.add(reader.toString());
+        }
+        Assert.assertEquals(Arrays.asList("first", "", "third", "fourth", "// last"), lines);
+        Assert.assertEquals(0, reader.length());
+        reader.close();
+    }
+
+    @Test
+    public void testLineReaderCrLfAtEnd() throws IOException {
+        for (String text : Arrays.asList("abc\r\ndef\r\n", "abc\r\ndef\r", "abc\ndef\n")) {
+            LineReader reader = new LineReader(new StringReader(text));
+            List<String> lines = new ArrayList<>();
+            while (reader.readLine()) {
+                lines.add(reader.toString());
+            }
+            Assert.assertEquals(Arrays.asList("abc", "def"), lines);
+        }
+        LineReader reader = new LineReader(new StringReader("\r\n"));
+        Assert.assertTrue(reader.readLine());
+        Assert.assertEquals(0, reader.length());
+        Assert.assertFalse(reader.readLine());
+    }
+
+    @Test
+    public void testLineReaderLongLine() throws IOException {
+        char[] chars = new char[20000];
+        Arrays.fill(chars, 'x');
+        LineReader reader = new LineReader(new StringReader(new String(chars) + "\n#"));
+        Assert.assertTrue(reader.readLine());
+        Assert.assertEquals(chars.length, reader.length());
+        Assert.assertTrue(reader.readLine());
+        Assert.assertTrue(reader.startsWith("#"));
+        Assert.assertFalse(reader.readLine());
+    }
+}
@@ -0,0 +1,72 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParseUtilsTest {
+
+    @Test
+    public void testParseDouble() throws FormatException {
+        String[] values = { "0", "-0.0", "10.00", " 0.500 ", "5.44254088e+001", "1.909859e-001", ".5", "-7.", "+3",
+                "123456789012345678", "4.9e-324", "1e400", "NaN" };
+        for (String value : values) {
+            Assert.assertEquals(value, Double.valueOf(value), Double.valueOf(ParseUtils.parseDouble(value, 0,
+                    value.length())));
+        }
+        Assert.assertEquals(42.510, ParseUtils.parseDouble("55 42.510N", 3, 9), 0.0);
+    }
+
+    @Test(expected = FormatException.class)
+    public void testParseDoubleInvalid() throws FormatException {
+        ParseUtils.parseDouble("1.2.3", 0, 5);
+    }
+
+    @Test(expected = FormatException.class)
+    public void testParseDoubleEmpty() throws FormatException {
+        ParseUtils.parseDouble("WP\t \t", 2, 5);
+    }
+
+    @Test
+    public void testParseInt() throws FormatException {
+        Assert.assertEquals(1, ParseUtils.parseInt("\t 1\t", 0, 4));
+        Assert.assertEquals(-12, ParseUtils.parseInt("x-12x", 1, 4));
+        Assert.assertEquals(Integer.MIN_VALUE, ParseUtils.parseInt("-2147483648", 0, 11));
+        Assert.assertEquals(Integer.MAX_VALUE, ParseUtils.parseInt("2147483647", 0, 10));
+        for (String value : new String[] { "", "-", "1.0", "2147483648", "1a" }) {
+            try {
+                ParseUtils.parseInt(value, 0, value.length());
+                Assert.fail(value);
+            } catch (FormatException ignore) {
+            }
+        }
+    }
+
+    @Test
+    public void testParseLatitudeLongitude() throws FormatException {
+        Assert.assertEquals(55.7085, ParseUtils.parseLatitude("55 42.510N"), 1e-12);
+        Assert.assertEquals(-55.7085, ParseUtils.parseLatitude("WP\t55 42.510S\t", 3, 13), 1e-12);
+        Assert.assertEquals(12.612066666666667, ParseUtils.parseLongitude("012 36.724E"), 1e-12);
+        Assert.assertEquals(-12.612066666666667, ParseUtils.parseLongitude("012 36.724W"), 1e-12);
+        for (String value : new String[] { "55N", "5542.510N", "55 42.510E", "55 42.510", "x5 42.510N" }) {
+            try {
+                ParseUtils.parseLatitude(value);
+                Assert.fail(value);
+            } catch (FormatException ignore) {
+            }
+        }
+    }
+}
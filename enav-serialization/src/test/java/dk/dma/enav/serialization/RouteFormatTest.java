@@ -0,0 +1,123 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dk.dma.enav.model.voyage.Route;
+
+public class RouteFormatTest {
+
+    static byte[] resource(String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = RouteFormatTest.class.getResourceAsStream("/routes/" + name)) {
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) >= 0;) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static RouteFormat detect(byte[] bytes) throws IOException {
+        return RouteFormat.detect(new BufferedInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void testDetectResources() throws IOException {
+        Assert.assertEquals(RouteFormat.TXT, detect(resource("CPH-AAH.txt")));
+        Assert.assertEquals(RouteFormat.ROU, detect(resource("Gdansk to Rostock.rou")));
+        Assert.assertEquals(RouteFormat.ROU, detect(resource("Gdynia-Aarhus via The Sound.rou")));
+        Assert.assertEquals(RouteFormat.RT3, detect(resource("Malmoe - Karlshavn.rt3")));
+        Assert.assertEquals(RouteFormat.RT3, detect(resource("Nuuk-Paamiut 008.rt3")));
+        Assert.assertEquals(RouteFormat.RT3, detect(resource("GOT to KIEL via South Channel 1,0N.RT3")));
+        Assert.assertEquals(RouteFormat.ROUTE, detect(resource("Sisimiut - Nuuk.route")));
+        Assert.assertEquals(RouteFormat.ROUTE, detect(resource("SISIMIUT - NUUK - 2Routes.ROUTE")));
+    }
+
+    @Test
+    public void testDetectBinary() throws IOException {
+        Route route = RouteParser.getRouteParser("CPH-AAH.txt", new ByteArrayInputStream(resource("CPH-AAH.txt")),
+                Collections.<String, String> emptyMap()).parse();
+        Assert.assertEquals(RouteFormat.BRT, detect(BinaryRouteWriter.toBytes(route)));
+    }
+
+    @Test
+    public void testDetectUnknown() throws IOException {
+        Assert.assertNull(detect(new byte[0]));
+        Assert.assertNull(detect("Not a route".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertNull(detect("<html><body/></html>".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertNull(detect(new byte[] { 'a', '\t', 0, '\t', '\t', '\t', '\t', '\t', '\t' }));
+    }
+
+    @Test
+    public void testDetectDoesNotConsume() throws IOException {
+        byte[] bytes = resource("Malmoe - Karlshavn.rt3");
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(bytes));
+        RouteFormat.detect(in);
+        Assert.assertEquals(bytes[0], in.read());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDetectRequiresMark() throws IOException {
+        RouteFormat.detect(new InputStream() {
+            public int read() {
+                return -1;
+            }
+        });
+    }
+
+    @Test
+    public void testFromFileName() {
+        Assert.assertEquals(RouteFormat.RT3, RouteFormat.fromFileName("GOT to KIEL via South Channel 1,0N.RT3"));
+        Assert.assertEquals(RouteFormat.ROUTE, RouteFormat.fromFileName("Sisimiut - Nuuk.route"));
+        Assert.assertNull(RouteFormat.fromFileName("readme.md"));
+        Assert.assertNull(RouteFormat.fromFileName("route"));
+    }
+
+    @Test
+    public void testParseMisnamed() throws IOException {
+        InputStream in = new ByteArrayInputStream(resource("Malmoe - Karlshavn.rt3"));
+        Route route = RouteParser.getRouteParser("Malmoe - Karlshavn.txt", in, Collections.<String, String> emptyMap())
+                .parse();
+        Route expected = new Rt3RouteParser(new ByteArrayInputStream(resource("Malmoe - Karlshavn.rt3")),
+                Collections.<String, String> emptyMap()).parse();
+        Assert.assertEquals(expected.getWaypoints().size(), route.getWaypoints().size());
+        Assert.assertEquals(expected.getName(), route.getName());
+    }
+
+    @Test
+    public void testParseWithoutExtension() throws IOException {
+        Route route = RouteParser.getRouteParser("route", new ByteArrayInputStream(resource("Gdansk to Rostock.rou")),
+                Collections.<String, String> emptyMap()).parse();
+        Assert.assertEquals(RouteFormat.ROU, detect(resource("Gdansk to Rostock.rou")));
+        Assert.assertTrue(route.getWaypoints().size() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseUnknown() throws IOException {
+        RouteParser.getRouteParser("readme.md", new ByteArrayInputStream("Not a route".getBytes(StandardCharsets.UTF_8)),
+                Collections.<String, String> emptyMap());
+    }
+}
@@ -0,0 +1,143 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dk.dma.enav.model.voyage.CompactRoute;
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.Waypoint;
+
+public class RouteHandlerTest {
+
+    /** Records the calls made by a parser. */
+    static class RecordingHandler implements RouteHandler {
+
+        final List<String> events = new ArrayList<>();
+
+        Route header;
+
+        public void onHeader(Route header) {
+            Assert.assertTrue(header.getWaypoints().isEmpty());
+            this.header = header;
+            events.add("header");
+        }
+
+        public void onWaypoint(Waypoint waypoint) {
+            events.add(waypoint.toString());
+        }
+
+        public void onEnd() {
+            events.add("end");
+        }
+    }
+
+    static RouteParser parser(String resource, Map<String, String> config) {
+        InputStream in = RouteHandlerTest.class.getResourceAsStream("/routes/" + resource);
+        return RouteParser.getRouteParser(resource, in, config);
+    }
+
+    static void assertSameAsParse(String resource, Map<String, String> config) throws IOException {
+        Route route = parser(resource, config).parse();
+        RecordingHandler handler = new RecordingHandler();
+        parser(resource, config).parse(handler);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("header");
+        for (Waypoint wp : route) {
+            expected.add(wp.toString());
+        }
+        expected.add("end");
+        Assert.assertEquals(expected, handler.events);
+        Assert.assertEquals(route.getName(), handler.header.getName());
+        Assert.assertEquals(route.getDeparture(), handler.header.getDeparture());
+        Assert.assertEquals(route.getDestination(), handler.header.getDestination());
+    }
+
+    @Test
+    public void testSameAsParse() throws IOException {
+        Map<String, String> config = Collections.emptyMap();
+        assertSameAsParse("CPH-AAH.txt", config);
+        assertSameAsParse("Gdansk to Rostock.rou", config);
+        assertSameAsParse("Gdynia-Aarhus via The Sound.rou", config);
+        assertSameAsParse("Malmoe - Karlshavn.rt3", config);
+        assertSameAsParse("Nuuk-Paamiut 008.rt3", config);
+        assertSameAsParse("Sisimiut - Nuuk.route", config);
+        assertSameAsParse("SISIMIUT - NUUK - 2Routes.ROUTE", config);
+    }
+
+    @Test
+    public void testSameAsParseWithSchedule() throws IOException {
+        Map<String, String> config = new HashMap<>();
+        config.put("name", "Schedule1");
+        assertSameAsParse("Nuuk-Paamiut 008.rt3", config);
+    }
+
+    @Test
+    public void testParseCompact() throws IOException {
+        Map<String, String> config = Collections.emptyMap();
+        for (String resource : new String[] { "CPH-AAH.txt", "Gdansk to Rostock.rou", "Malmoe - Karlshavn.rt3",
+                "Sisimiut - Nuuk.route" }) {
+            Route route = parser(resource, config).parse();
+            CompactRoute compact = parser(resource, config).parseCompact();
+            Assert.assertEquals(route.getName(), compact.getName());
+            Assert.assertEquals(route.getWaypoints().size(), compact.size());
+            for (int i = 0; i < compact.size(); i++) {
+                Assert.assertEquals(route.getWaypoints().get(i).toString(), compact.getWaypoint(i).toString());
+            }
+        }
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        Route route = RouteWriterTest.createRoute();
+        RecordingHandler handler = new RecordingHandler();
+        BinaryRouteParser parser = new BinaryRouteParser(new ByteArrayInputStream(BinaryRouteWriter.toBytes(route)));
+        Assert.assertTrue(parser.next(handler));
+        Assert.assertEquals(route.getWaypoints().size() + 2, handler.events.size());
+        Assert.assertEquals(route.getWaypoints().get(0).toString(), handler.events.get(1));
+        Assert.assertEquals("Copenhagen - Aarhus", handler.header.getName());
+        Assert.assertFalse(parser.next(handler));
+    }
+
+    @Test
+    public void testHandlerStopsParsing() throws IOException {
+        RecordingHandler handler = new RecordingHandler() {
+            public void onWaypoint(Waypoint waypoint) {
+                super.onWaypoint(waypoint);
+                if (events.size() == 3) {
+                    throw new IllegalStateException("Stop");
+                }
+            }
+        };
+        try {
+            parser("CPH-AAH.txt", Collections.<String, String> emptyMap()).parse(handler);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(3, handler.events.size());
+            Assert.assertFalse(handler.events.contains("end"));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.dma.enav.serialization.RouteImporter.Result;
+
+public class RouteImporterTest {
+
+    static final String[] ROUTES = { "CPH-AAH.txt", "Gdansk to Rostock.rou", "Gdynia-Aarhus via The Sound.rou",
+            "Malmoe - Karlshavn.rt3", "Sisimiut - Nuuk.route" };
+
+    Path dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("routes");
+        Files.createDirectory(dir.resolve("sub"));
+        for (int i = 0; i < ROUTES.length; i++) {
+            try (InputStream in = getClass().getResourceAsStream("/routes/" + ROUTES[i])) {
+                Files.copy(in, (i % 2 == 0 ? dir : dir.resolve("sub")).resolve(ROUTES[i]));
+            }
+        }
+        Files.write(dir.resolve("broken.txt"), "Route\nWP_001\tnot a position\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("readme.md"), "Not a route".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    static Map<String, Result> byFileName(Stream<Result> results) {
+        Map<String, Result> map = new TreeMap<>();
+        try (Stream<Result> s = results) {
+            s.forEach(r -> map.put(r.getName().substring(r.getName().lastIndexOf('/') + 1), r));
+        }
+        return map;
+    }
+
+    void assertImported(Map<String, Result> results) throws IOException {
+        Assert.assertEquals(ROUTES.length + 1, results.size());
+        for (String name : ROUTES) {
+            Result r = results.get(name);
+            Assert.assertTrue(name, r.isSuccess());
+            try (InputStream in = getClass().getResourceAsStream("/routes/" + name)) {
+                List<?> expected = RouteParser.getRouteParser(name, in, new TreeMap<String, String>()).parse()
+                        .getWaypoints();
+                Assert.assertEquals(name, expected.size(), r.getRoute().getWaypoints().size());
+            }
+        }
+        Result broken = results.get("broken.txt");
+        Assert.assertFalse(broken.isSuccess());
+        Assert.assertNull(broken.getRoute());
+        Assert.assertNotNull(broken.getError());
+    }
+
+    @Test
+    public void testImportDirectory() throws IOException {
+        try (RouteImporter importer = new RouteImporter()) {
+            assertImported(byFileName(importer.importDirectory(dir)));
+        }
+    }
+
+    @Test
+    public void testImportZip() throws IOException {
+        Path zip = Files.createTempFile("routes", ".zip");
+        try {
+            try (OutputStream out = Files.newOutputStream(zip); ZipOutputStream zout = new ZipOutputStream(out)) {
+                try (Stream<Path> files = Files.walk(dir)) {
+                    for (Path p : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                        zout.putNextEntry(new ZipEntry(dir.relativize(p).toString()));
+                        Files.copy(p, zout);
+                        zout.closeEntry();
+                    }
+                }
+            }
+            try (RouteImporter importer = new RouteImporter()) {
+                assertImported(byFileName(importer.importZip(zip)));
+            }
+        } finally {
+            Files.delete(zip);
+        }
+    }
+
+    @Test
+    public void testImportFilesWithSmallWindow() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            RouteImporter importer = new RouteImporter(executor).window(1);
+            Map<String, Result> results = byFileName(importer.importFiles(Stream.of(dir.resolve(ROUTES[0]),
+                    dir.resolve("readme.md"), dir.resolve("missing.rou"))));
+            Assert.assertEquals(3, results.size());
+            Assert.assertTrue(results.get(ROUTES[0]).isSuccess());
+            Assert.assertFalse(results.get("readme.md").isSuccess());
+            Assert.assertFalse(results.get("missing.rou").isSuccess());
+
+            // Closing a partially consumed stream waits for the files in flight
+            Stream<Result> stream = importer.window(2).importDirectory(dir);
+            Assert.assertTrue(stream.iterator().hasNext());
+            stream.close();
+            importer.close();
+            Assert.assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -16,6 +16,7 @@ package dk.dma.enav.serialization;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -147,4 +148,35 @@ public class RouteRouteParserTest {
         Assert.assertEquals(0.10, waypoint.getRouteLeg().getXtdStarboard(), 0.0);
     }
 
+    @Test
+    public void testParseUnorderedControlPoints() throws IOException {
+        StringBuilder sb = new StringBuilder("<NewDataSet><Summaries><Name>R</Name>");
+        sb.append("<DepartureTime>2011-05-26T04:26:26.523+00:00</DepartureTime></Summaries>");
+        for (int seq : new int[] { 3, 1, 2 }) {
+            sb.append("<ControlPoints><RouteName>R</RouteName><SequenceNumber>").append(seq).append("</SequenceNumber>");
+            sb.append("<Latitude>1.0</Latitude><Longitude>").append(seq / 10.0).append("</Longitude>");
+            sb.append("<TurnRadius>1852</TurnRadius><DepartingTrackSpeed>5</DepartingTrackSpeed>");
+            sb.append("<DepartingControlLineType>GreatCircle</DepartingControlLineType></ControlPoints>");
+        }
+        sb.append("<ControlPoints><RouteName>Other</RouteName><SequenceNumber>0</SequenceNumber></ControlPoints>");
+        sb.append("</NewDataSet>");
+
+        Route r = new RouteRouteParser(new StringReader(sb.toString())).parse();
+
+        Assert.assertEquals(3, r.getWaypoints().size());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(String.format("WP_%03d", i + 1), r.getWaypoints().get(i).getName());
+            Assert.assertEquals(Math.toDegrees((i + 1) / 10.0), r.getWaypoints().get(i).getLongitude(), 0.0);
+            Assert.assertEquals(Heading.GC, r.getWaypoints().get(i).getRouteLeg().getHeading());
+        }
+        Assert.assertNotNull(r.getWaypoints().get(0).getEta());
+    }
+
+    @Test(expected = IOException.class)
+    public void testParseUnknownRouteName() throws IOException {
+        config.put("name", "Unknown");
+        InputStream is = getClass().getResourceAsStream("/routes/Sisimiut - Nuuk.route");
+        new RouteRouteParser(is, config).parse();
+    }
+
 }
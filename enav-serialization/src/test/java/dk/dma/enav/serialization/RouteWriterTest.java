@@ -0,0 +1,225 @@
+/* Copyright (c) 2011 Danish Maritime Authority.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dk.dma.enav.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dk.dma.enav.model.voyage.Route;
+import dk.dma.enav.model.voyage.RouteLeg;
+import dk.dma.enav.model.voyage.RouteLeg.Heading;
+import dk.dma.enav.model.voyage.Waypoint;
+
+public class RouteWriterTest {
+
+    static Route createRoute() {
+        Route route = new Route("id-1", "Copenhagen - Aarhus", "Copenhagen", "Aarhus");
+        for (int i = 0; i < 20; i++) {
+            Waypoint wp = new Waypoint("WP_" + i, 55.5 + i * 0.0371, -12.25 + i * 0.0513, null, 0.5 + i % 3 * 0.1);
+            wp.setRouteLeg(new RouteLeg(9.5 + i % 4, i % 2 == 0 ? Heading.RL : Heading.GC, 0.1, 0.1 + i % 2 * 0.1));
+            route.getWaypoints().add(wp);
+        }
+        route.getWaypoints().get(0).setEta(new Date(1371200000123L));
+        return route;
+    }
+
+    static Route roundTrip(String fileName, Route route, Map<String, String> config) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RouteWriter.getRouteWriter(fileName, out, config).write(route);
+        return RouteParser.getRouteParser(fileName, new ByteArrayInputStream(out.toByteArray()), config).parse();
+    }
+
+    static void assertWaypoints(Route expected, Route actual, double positionDelta, boolean names) {
+        Assert.assertEquals(expected.getWaypoints().size(), actual.getWaypoints().size());
+        for (int i = 0; i < expected.getWaypoints().size(); i++) {
+            Waypoint e = expected.getWaypoints().get(i);
+            Waypoint a = actual.getWaypoints().get(i);
+            if (names) {
+                Assert.assertEquals(e.getName(), a.getName());
+            }
+            Assert.assertEquals(e.getLatitude(), a.getLatitude(), positionDelta);
+            Assert.assertEquals(e.getLongitude(), a.getLongitude(), positionDelta);
+            Assert.assertEquals(e.getTurnRad(), a.getTurnRad(), 1e-9);
+            Assert.assertEquals(e.getRouteLeg().getSpeed(), a.getRouteLeg().getSpeed(), 1e-9);
+            Assert.assertEquals(e.getRouteLeg().getHeading(), a.getRouteLeg().getHeading());
+        }
+    }
+
+    static void assertXtds(Route expected, Route actual) {
+        for (int i = 0; i < expected.getWaypoints().size(); i++) {
+            RouteLeg e = expected.getWaypoints().get(i).getRouteLeg();
+            RouteLeg a = actual.getWaypoints().get(i).getRouteLeg();
+            Assert.assertEquals(e.getXtdPort(), a.getXtdPort());
+            Assert.assertEquals(e.getXtdStarboard(), a.getXtdStarboard());
+        }
+    }
+
+    @Test
+    public void testTxt() throws IOException {
+        Route route = createRoute();
+        Route read = roundTrip("route.txt", route, new HashMap<String, String>());
+        Assert.assertEquals(route.getName(), read.getName());
+        Assert.assertEquals(route.getDeparture(), read.getDeparture());
+        Assert.assertEquals(route.getDestination(), read.getDestination());
+        // Three decimals of minutes
+        assertWaypoints(route, read, 1e-5, true);
+        assertXtds(route, read);
+    }
+
+    @Test
+    public void testTxtCoordinates() {
+        StringBuilder sb = new StringBuilder();
+        SimpleRouteWriter.appendDegreesMinutes(sb, 55.7085, 2, 'N', 'S').append(' ');
+        SimpleRouteWriter.appendDegreesMinutes(sb, -12.612066666666667, 3, 'E', 'W').append(' ');
+        SimpleRouteWriter.appendDegreesMinutes(sb, 9.9999999, 2, 'N', 'S');
+        Assert.assertEquals("55 42.510N 012 36.724W 10 00.000N", sb.toString());
+    }
+
+    @Test
+    public void testRou() throws IOException {
+        Route route = createRoute();
+        Route read = roundTrip("route.rou", route, new HashMap<String, String>());
+        Assert.assertEquals(route.getName(), read.getName());
+        assertWaypoints(route, read, 0.0, true);
+        assertXtds(route, read);
+    }
+
+    @Test
+    public void testRt3() throws IOException {
+        Route route = createRoute();
+        Map<String, String> config = new HashMap<>();
+        config.put("name", "Schedule");
+        Route read = roundTrip("route.rt3", route, config);
+        Assert.assertEquals(route.getName(), read.getName());
+        assertWaypoints(route, read, 1e-12, true);
+        assertXtds(route, read);
+    }
+
+    @Test
+    public void testRoute() throws IOException {
+        Route route = createRoute();
+        Route read = roundTrip("route.route", route, new HashMap<String, String>());
+        Assert.assertEquals(route.getName(), read.getName());
+        assertWaypoints(route, read, 1e-12, true);
+        Assert.assertEquals(route.getWaypoints().get(0).getEta(), read.getWaypoints().get(0).getEta());
+    }
+
+    @Test
+    public void testSampleRoutes() throws IOException {
+        Map<String, String> config = new HashMap<>();
+        for (String name : RouteImporterTest.ROUTES) {
+            Route route = RouteParser.getRouteParser(name, getClass().getResourceAsStream("/routes/" + name), config)
+                    .parse();
+            for (String format : new String[] { "txt", "rou", "rt3", "route", "brt" }) {
+                Route read = roundTrip("copy." + format, route, config);
+                Assert.assertEquals(name + " as " + format, route.getWaypoints().size(), read.getWaypoints().size());
+            }
+        }
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        Route route = createRoute();
+        route.getWaypoints().get(1).setRot(-1.5);
+        route.getWaypoints().get(2).setRouteLeg(null);
+        route.getWaypoints().get(3).getRouteLeg().setSFWidth(Math.PI);
+        route.getWaypoints().get(3).getRouteLeg().setHeading(null);
+        route.getWaypoints().get(4).setName("Ærø – Ålborg");
+        route.getWaypoints().get(5).setEta(new Date(1371100000000L));
+
+        Route read = BinaryRouteParser.fromBytes(BinaryRouteWriter.toBytes(route));
+        Assert.assertEquals(route.getId(), read.getId());
+        Assert.assertEquals(route.getName(), read.getName());
+        Assert.assertEquals(route.getDeparture(), read.getDeparture());
+        Assert.assertEquals(route.getDestination(), read.getDestination());
+        Assert.assertEquals(route.getWaypoints().size(), read.getWaypoints().size());
+        for (int i = 0; i < route.getWaypoints().size(); i++) {
+            Waypoint e = route.getWaypoints().get(i);
+            Waypoint a = read.getWaypoints().get(i);
+            Assert.assertEquals(e.getName(), a.getName());
+            Assert.assertEquals(e.getEta(), a.getEta());
+            Assert.assertEquals(e.getLatitude(), a.getLatitude(), 1e-7);
+            Assert.assertEquals(e.getLongitude(), a.getLongitude(), 1e-7);
+            Assert.assertEquals(e.getRot(), a.getRot());
+            Assert.assertEquals(e.getTurnRad(), a.getTurnRad());
+            if (e.getRouteLeg() == null) {
+                Assert.assertNull(a.getRouteLeg());
+            } else {
+                Assert.assertEquals(e.getRouteLeg().getSpeed(), a.getRouteLeg().getSpeed());
+                Assert.assertEquals(e.getRouteLeg().getHeading(), a.getRouteLeg().getHeading());
+                Assert.assertEquals(e.getRouteLeg().getXtdPort(), a.getRouteLeg().getXtdPort());
+                Assert.assertEquals(e.getRouteLeg().getXtdStarboard(), a.getRouteLeg().getXtdStarboard());
+                Assert.assertEquals(e.getRouteLeg().getSFWidth(), a.getRouteLeg().getSFWidth());
+                Assert.assertEquals(e.getRouteLeg().getSFLen(), a.getRouteLeg().getSFLen());
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRouteWriter writer = new BinaryRouteWriter(out);
+        for (int i = 0; i < 3; i++) {
+            Route route = createRoute();
+            route.setName("Route " + i);
+            writer.write(route);
+        }
+        BinaryRouteParser parser = new BinaryRouteParser(new ByteArrayInputStream(out.toByteArray()));
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("Route " + i, parser.next().getName());
+        }
+        Assert.assertNull(parser.next());
+        Assert.assertNull(new BinaryRouteParser(new ByteArrayInputStream(new byte[0])).next());
+    }
+
+    @Test
+    public void testBinaryCorrupt() {
+        byte[] bytes = BinaryRouteWriter.toBytes(createRoute());
+        for (int length : new int[] { 2, 6, bytes.length / 2, bytes.length - 1 }) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(bytes, 0, truncated, 0, length);
+            try {
+                BinaryRouteParser.fromBytes(truncated);
+                Assert.fail("Truncated to " + length);
+            } catch (IOException ignore) {
+            }
+        }
+        bytes[bytes.length / 2] ^= 0xFF;
+        try {
+            BinaryRouteParser.fromBytes(bytes);
+        } catch (IOException ignore) {
+            // Either detected or decoded to garbage, but never an unchecked exception
+        }
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanSerialization() throws IOException {
+        Route route = createRoute();
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(serialized)) {
+            oos.writeObject(route);
+        }
+        int binary = BinaryRouteWriter.toBytes(route).length;
+        Assert.assertTrue(binary + " vs " + serialized.size(), binary * 5 < serialized.size());
+    }
+}
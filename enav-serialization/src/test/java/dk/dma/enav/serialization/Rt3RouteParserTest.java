@@ -16,6 +16,7 @@ package dk.dma.enav.serialization;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -195,4 +196,10 @@ public class Rt3RouteParserTest {
         Assert.assertEquals(0.020000, waypoint.getRouteLeg().getXtdStarboard(), 0.0);
     }
 
+    @Test(expected = IOException.class)
+    public void testParseWithoutWaypoints() throws IOException {
+        String rt3 = "<TSH_Route RtVersion=\"3\" RtName=\"Empty\"><Calculations/></TSH_Route>";
+        new Rt3RouteParser(new StringReader(rt3)).parse();
+    }
+
 }
@@ -15,6 +15,10 @@
 
 package dk.dma.enav.util;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+
 import static java.lang.StrictMath.asin;
 import static java.lang.StrictMath.atan;
 import static java.lang.StrictMath.cos;
@@ -40,7 +44,20 @@ import static java.lang.StrictMath.toRadians;
  */
 public final class CoordinateConverter {
     /** Earth radius in metres */
-    private static final double RADIUS = 6356752.3;
+    public static final double RADIUS = 6356752.3;
+
+    /** The maximum number of converters kept by {@link #create(double, double)}. */
+    static final int CACHE_SIZE = 64;
+
+    /** Recently used converters, keyed by their central point. Guarded by itself. */
+    private static final Map<Key, CoordinateConverter> CACHE = new LinkedHashMap<Key, CoordinateConverter>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CoordinateConverter> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
 
     /** Longitude of the central point in degrees */
     private final double lon0;
@@ -54,6 +71,9 @@ public final class CoordinateConverter {
     /** Latitude of the central point in radians */
     private final double lat0Rad;
 
+    /** Sine and cosine of the latitude of the central point */
+    private final double sinLat0, cosLat0;
+
     /**
      * Create and configure a new CoordinateConverter with the tangential plane touching
      * in the provided geodetic coordinates.
@@ -66,6 +86,37 @@ public final class CoordinateConverter {
         this.lat0 = centralLatitude;
         this.lon0Rad = toRadians(centralLongitude);
         this.lat0Rad = toRadians(centralLatitude);
+        this.sinLat0 = sin(lat0Rad);
+        this.cosLat0 = cos(lat0Rad);
+    }
+
+    /**
+     * Returns a CoordinateConverter with the tangential plane touching in the provided geodetic coordinates. A small
+     * number of recently used converters are cached, so callers repeatedly converting around the same central point
+     * share a single instance.
+     *
+     * @param centralLongitude
+     * @param centralLatitude
+     * @return a converter for the central point
+     */
+    public static CoordinateConverter create(double centralLongitude, double centralLatitude) {
+        Key key = new Key(centralLongitude, centralLatitude);
+        synchronized (CACHE) {
+            CoordinateConverter c = CACHE.get(key);
+            if (c == null) {
+                c = new CoordinateConverter(centralLongitude, centralLatitude);
+                CACHE.put(key, c);
+            }
+            return c;
+        }
+    }
+
+    public double getCentralLongitude() {
+        return lon0;
+    }
+
+    public double getCentralLatitude() {
+        return lat0;
     }
 
     /**
@@ -81,7 +132,7 @@ public final class CoordinateConverter {
         double latRad = toRadians(lat);
 
         double x=0.0;
-        double denom = 1.0 + sin(lat0Rad) * sin(latRad) + cos(lat0Rad) * cos(latRad) * cos(lonRad - lon0Rad);
+        double denom = 1.0 + sinLat0 * sin(latRad) + cosLat0 * cos(latRad) * cos(lonRad - lon0Rad);
 
         if (denom != 0.0) {
             x = ((2.0* RADIUS) / denom) * cos(latRad) * sin(lonRad - lon0Rad);
@@ -102,22 +153,97 @@ public final class CoordinateConverter {
         double latRad = toRadians(lat);
 
         double y=0.0;
-        double denom = 1.0 + sin(lat0Rad) * sin(latRad) + cos(lat0Rad) * cos(latRad) * cos(lonRad - lon0Rad);
+        double denom = 1.0 + sinLat0 * sin(latRad) + cosLat0 * cos(latRad) * cos(lonRad - lon0Rad);
 
         if (denom != 0.0) {
-            y = ((2.0* RADIUS) / denom) * (cos(lat0Rad) * sin(latRad) - sin(lat0Rad) * cos(latRad) * cos(lonRad - lon0Rad));
+            y = ((2.0* RADIUS) / denom) * (cosLat0 * sin(latRad) - sinLat0 * cos(latRad) * cos(lonRad - lon0Rad));
         }
 
         return y;
     }
 
+    /**
+     * Calculate the cartesian point (x, y) corresponding to geodetic point (lon, lat). This is equivalent to calling
+     * {@link #lon2x(double, double)} and {@link #lat2y(double, double)} but computes the shared terms only once.
+     *
+     * @param lon
+     * @param lat
+     * @param xy array receiving x in xy[0] and y in xy[1]
+     */
+    public void toXY(double lon, double lat, double[] xy) {
+        toXY(lon, lat, xy, 0, xy, 1);
+    }
+
+    /**
+     * Calculate the cartesian points corresponding to an array of geodetic points.
+     *
+     * @param lons the longitudes of the points
+     * @param lats the latitudes of the points
+     * @param xs array receiving the x-coordinates
+     * @param ys array receiving the y-coordinates
+     */
+    public void toXY(double[] lons, double[] lats, double[] xs, double[] ys) {
+        checkLengths(lons, lats, xs, ys);
+        for (int i = 0; i < lons.length; i++) {
+            toXY(lons[i], lats[i], xs, i, ys, i);
+        }
+    }
+
+    private void toXY(double lon, double lat, double[] xs, int xi, double[] ys, int yi) {
+        double dLonRad = toRadians(lon) - lon0Rad;
+        double latRad = toRadians(lat);
+        double sinLat = sin(latRad);
+        double cosLat = cos(latRad);
+        double cosDLon = cos(dLonRad);
+
+        double x=0.0, y=0.0;
+        double denom = 1.0 + sinLat0 * sinLat + cosLat0 * cosLat * cosDLon;
+
+        if (denom != 0.0) {
+            double k = (2.0* RADIUS) / denom;
+            x = k * cosLat * sin(dLonRad);
+            y = k * (cosLat0 * sinLat - sinLat0 * cosLat * cosDLon);
+        }
+        xs[xi] = x;
+        ys[yi] = y;
+    }
+
+    /**
+     * Calculate the cartesian point (x, y) corresponding to geodetic point (lon, lat), and apply a function to it. This
+     * computes the same point as {@link #toXY(double, double, double[])} without storing it, so callers keeping the
+     * function in a field can use the point without allocating any objects.
+     *
+     * @param lon
+     * @param lat
+     * @param function the function applied to x and y
+     * @return the result of the function
+     */
+    public double project(double lon, double lat, DoubleBinaryOperator function) {
+        double dLonRad = toRadians(lon) - lon0Rad;
+        double latRad = toRadians(lat);
+        double sinLat = sin(latRad);
+        double cosLat = cos(latRad);
+        double cosDLon = cos(dLonRad);
+
+        double x=0.0, y=0.0;
+        double denom = 1.0 + sinLat0 * sinLat + cosLat0 * cosLat * cosDLon;
+
+        if (denom != 0.0) {
+            double k = (2.0* RADIUS) / denom;
+            x = k * cosLat * sin(dLonRad);
+            y = k * (cosLat0 * sinLat - sinLat0 * cosLat * cosDLon);
+        }
+
+        return function.applyAsDouble(x, y);
+    }
+
     /**
      * Calculate longitude of the geodetic point corresponding to cartesian point (x, y).
      */
     public double x2Lon(double x, double y) {
         double ro = sqrt(x*x + y*y);
         double c = 2.0 * atan(ro / (2 * RADIUS));
-        double denom = ro * cos(lat0Rad) * cos(c) - y * sin(lat0Rad) * sin(c);
+        double denom = ro * cosLat0 * cos(c) - y * sinLat0 * sin(c);
 
         double lon=lon0;
         if (denom != 0.0) {
@@ -138,9 +264,82 @@ public final class CoordinateConverter {
         if (ro!=0.0)
         {
             double c = 2.0 * atan(ro / (2.0 * RADIUS));
-            lat = asin(cos(c) * sin(lat0Rad) + (y * sin(c) * cos(lat0Rad)) / ro);
+            lat = asin(cos(c) * sinLat0 + (y * sin(c) * cosLat0) / ro);
             lat = toDegrees(lat);
         }
         return lat;
     }
+
+    /**
+     * Calculate the geodetic point (lon, lat) corresponding to cartesian point (x, y). This is equivalent to calling
+     * {@link #x2Lon(double, double)} and {@link #y2Lat(double, double)} but computes the shared terms only once.
+     *
+     * @param x
+     * @param y
+     * @param lonLat array receiving the longitude in lonLat[0] and the latitude in lonLat[1]
+     */
+    public void toLonLat(double x, double y, double[] lonLat) {
+        toLonLat(x, y, lonLat, 0, lonLat, 1);
+    }
+
+    /**
+     * Calculate the geodetic points corresponding to an array of cartesian points.
+     *
+     * @param xs the x-coordinates of the points
+     * @param ys the y-coordinates of the points
+     * @param lons array receiving the longitudes
+     * @param lats array receiving the latitudes
+     */
+    public void toLonLat(double[] xs, double[] ys, double[] lons, double[] lats) {
+        checkLengths(xs, ys, lons, lats);
+        for (int i = 0; i < xs.length; i++) {
+            toLonLat(xs[i], ys[i], lons, i, lats, i);
+        }
+    }
+
+    private void toLonLat(double x, double y, double[] lons, int loni, double[] lats, int lati) {
+        double lon=lon0, lat=lat0;
+        double ro = sqrt(x*x + y*y);
+        if (ro!=0.0)
+        {
+            double c = 2.0 * atan(ro / (2.0 * RADIUS));
+            double sinC = sin(c);
+            double cosC = cos(c);
+            double denom = ro * cosLat0 * cosC - y * sinLat0 * sinC;
+            if (denom != 0.0) {
+                lon = toDegrees(lon0Rad + atan((x * sinC) / denom));
+            }
+            lat = toDegrees(asin(cosC * sinLat0 + (y * sinC * cosLat0) / ro));
+        }
+        lons[loni] = lon;
+        lats[lati] = lat;
+    }
+
+    private static void checkLengths(double[] a, double[] b, double[] resultA, double[] resultB) {
+        if (a.length != b.length || resultA.length < a.length || resultB.length < a.length) {
+            throw new IllegalArgumentException("Array lengths do not match: " + a.length + ", " + b.length + ", "
+                    + resultA.length + ", " + resultB.length);
+        }
+    }
+
+    /** The cache key of a central point. */
+    private static final class Key {
+        private final long lon, lat;
+
+        Key(double lon, double lat) {
+            this.lon = Double.doubleToLongBits(lon);
+            this.lat = Double.doubleToLongBits(lat);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).lon == lon && ((Key) obj).lat == lat;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = lon * 31 + lat;
+            return (int) (h ^ h >>> 32);
+        }
+    }
 }
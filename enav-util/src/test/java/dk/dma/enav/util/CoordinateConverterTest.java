@@ -19,6 +19,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 public class CoordinateConverterTest {
 
@@ -65,4 +67,46 @@ public class CoordinateConverterTest {
         assertEquals(55.9, transformer.y2Lat(0.0, -11094.628553220642), 1e-10);
     }
 
+    @Test
+    public void testToXYAndToLonLat() throws Exception {
+        double[] xy = new double[2];
+        double[] lonLat = new double[2];
+        double[] lons = { 12, 12.1, 11.9, 12.05, 11.5 };
+        double[] lats = { 56, 56, 56.1, 55.9, 56.3 };
+        for (int i = 0; i < lons.length; i++) {
+            transformer.toXY(lons[i], lats[i], xy);
+            assertEquals(transformer.lon2x(lons[i], lats[i]), xy[0], 1e-9);
+            assertEquals(transformer.lat2y(lons[i], lats[i]), xy[1], 1e-9);
+            transformer.toLonLat(xy[0], xy[1], lonLat);
+            assertEquals(lons[i], lonLat[0], 1e-10);
+            assertEquals(lats[i], lonLat[1], 1e-10);
+        }
+
+        double[] xs = new double[lons.length], ys = new double[lons.length];
+        double[] lons2 = new double[lons.length], lats2 = new double[lons.length];
+        transformer.toXY(lons, lats, xs, ys);
+        transformer.toLonLat(xs, ys, lons2, lats2);
+        for (int i = 0; i < lons.length; i++) {
+            assertEquals(transformer.lon2x(lons[i], lats[i]), xs[i], 1e-9);
+            assertEquals(transformer.lat2y(lons[i], lats[i]), ys[i], 1e-9);
+            assertEquals(lons[i], lons2[i], 1e-10);
+            assertEquals(lats[i], lats2[i], 1e-10);
+        }
+    }
+
+    @Test
+    public void testProject() throws Exception {
+        assertEquals(transformer.lon2x(12.1, 56.1), transformer.project(12.1, 56.1, (x, y) -> x), 1e-9);
+        assertEquals(transformer.lat2y(12.1, 56.1), transformer.project(12.1, 56.1, (x, y) -> y), 1e-9);
+    }
+
+    @Test
+    public void testCreate() throws Exception {
+        CoordinateConverter c = CoordinateConverter.create(12, 56);
+        assertSame(c, CoordinateConverter.create(12, 56));
+        assertNotSame(c, CoordinateConverter.create(12, 56.0000001));
+        assertEquals(12, c.getCentralLongitude(), 0);
+        assertEquals(56, c.getCentralLatitude(), 0);
+        assertEquals(transformer.lon2x(12.1, 56), c.lon2x(12.1, 56), 0);
+    }
 }